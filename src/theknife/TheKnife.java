@@ -1,7 +1,10 @@
 package theknife;
 
+import com.opencsv.exceptions.CsvException;
+import theknife.io_file.GestoreFile;
 import theknife.vista.MenuIniziale;
 
+import java.io.IOException;
 import java.util.Scanner;
 /*
  * Riotto Thomas 760981 VA
@@ -33,6 +36,12 @@ import java.util.Scanner;
  */
 public final class TheKnife {
     public static void main(String[] args) {
+        try {
+            GestoreFile.inizializza();
+        } catch (IOException | CsvException e) {
+            System.err.println("Errore nel caricamento dei dati: " + e.getMessage());
+        }
+
         Scanner scanner = new Scanner(System.in);
         MenuIniziale menuIniziale = new MenuIniziale(scanner);
         menuIniziale.mostra();
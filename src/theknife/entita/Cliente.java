@@ -48,6 +48,23 @@ public final class Cliente extends Utente {
         preferiti = new ArrayList<>();
     }
 
+    /**
+     * Costruisce un cliente la cui password può essere già cifrata.
+     *
+     * @param nome            Nome del cliente.
+     * @param cognome         Cognome del cliente.
+     * @param username        Username del cliente.
+     * @param password        Password del cliente, in chiaro o già cifrata.
+     * @param dataDiNascita   Data di nascita del cliente.
+     * @param luogoDomicilio  Luogo del domicilio del cliente.
+     * @param passwordCifrata {@code true} se la password è già cifrata con BCrypt.
+     * @throws UtenteException Se i dati inseriti sono invalidi.
+     */
+    public Cliente(String nome, String cognome, String username, String password, LocalDate dataDiNascita, String luogoDomicilio, boolean passwordCifrata) {
+        super(nome, cognome, username, password, dataDiNascita, luogoDomicilio, passwordCifrata);
+        preferiti = new ArrayList<>();
+    }
+
     /**
      * Costruisce un nuovo cliente.
      *
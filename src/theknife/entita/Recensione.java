@@ -116,6 +116,21 @@ public final class Recensione {
         this(cliente, ristorante, stelle, "");
     }
 
+    /**
+     * Crea una copia della recensione, compresa l'eventuale risposta del ristoratore.
+     * <p>
+     * Permette di preparare una modifica senza alterare la recensione originale, che può essere
+     * condivisa con l'archivio dei dati.
+     *
+     * @return Copia della recensione
+     */
+    public Recensione copia() {
+        Recensione copia = new Recensione(cliente, ristorante, stelle, messaggio, dataRecensione);
+        copia.rispostaRistoratore = rispostaRistoratore;
+        copia.dataRisposta = dataRisposta;
+        return copia;
+    }
+
     // Getter methods
 
     /**
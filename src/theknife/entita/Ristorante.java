@@ -3,6 +3,7 @@ package theknife.entita;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.Locale;
 import java.util.Objects;
 /*
  * Riotto Thomas 760981 VA
@@ -18,6 +19,19 @@ import java.util.Objects;
  * @author Marco Zaro
  */
 public class Ristorante {
+    /**
+     * Valore dell'identificativo di un ristorante non ancora registrato.
+     */
+    public static final int NESSUN_ID = -1;
+
+    /**
+     * Identificativo numerico del ristorante, salvato nella prima colonna del file dei ristoranti.
+     * <p>
+     * Viene assegnato al momento della registrazione, crescente rispetto a quelli già assegnati,
+     * e vale {@link #NESSUN_ID} finché il ristorante non è stato salvato.
+     */
+    private int id = NESSUN_ID;
+
     /**
      * Nome del ristorante, utilizzato come identificativo.
      */
@@ -68,6 +82,15 @@ public class Ristorante {
      */
     private List<Recensione> recensioni;
 
+    /**
+     * Statistiche aggregate di tutte le recensioni del ristorante presenti sulla piattaforma.
+     * <p>
+     * Sono mantenute dall'archivio dei dati a ogni inserimento, modifica o eliminazione di una
+     * recensione, indipendentemente dalle recensioni caricate in {@link #recensioni}: media e
+     * numero di recensioni sono quindi disponibili anche senza caricare le recensioni.
+     */
+    private final StatisticheRecensioni statistiche;
+
     /**
      * Crea un nuovo oggetto {@code Ristorante} e ne imposta i valori principali.
      * <p>
@@ -99,10 +122,54 @@ public class Ristorante {
         this.descrizione = descrizione != null ? descrizione.trim() : "";
         this.proprietario = proprietario;
         this.recensioni = new ArrayList<>();
+        this.statistiche = new StatisticheRecensioni();
+    }
+
+    /**
+     * Crea una copia di un ristorante con le recensioni indicate.
+     * <p>
+     * La copia ha lo stesso identificativo e condivide con l'originale le statistiche delle recensioni,
+     * che restano quindi aggiornate.
+     *
+     * @param originale  Ristorante da copiare
+     * @param recensioni Recensioni della copia
+     */
+    private Ristorante(Ristorante originale, List<Recensione> recensioni) {
+        this.id = originale.id;
+        this.nome = originale.nome;
+        this.localita = originale.localita;
+        this.tipoDiCucina = originale.tipoDiCucina;
+        this.delivery = originale.delivery;
+        this.prenotazione = originale.prenotazione;
+        this.prezzoMedio = originale.prezzoMedio;
+        this.descrizione = originale.descrizione;
+        this.proprietario = originale.proprietario;
+        this.recensioni = new ArrayList<>(recensioni);
+        this.statistiche = originale.statistiche;
     }
 
     // Getters
 
+    /**
+     * Restituisce l'identificativo numerico del ristorante.
+     *
+     * @return Identificativo del ristorante, o {@link #NESSUN_ID} se non ancora registrato
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Imposta l'identificativo numerico del ristorante.
+     * <p>
+     * Utilizzato dal livello di persistenza al momento della registrazione.
+     *
+     * @param id Identificativo del ristorante
+     */
+    public void setId(int id) {
+        this.id = id;
+    }
+
     /**
      * Restituisce il nome del ristorante.
      *
@@ -278,6 +345,19 @@ public class Ristorante {
     }
 
 
+    /**
+     * Restituisce una copia del ristorante con le recensioni indicate, lasciando invariato questo ristorante.
+     * <p>
+     * Va usato al posto di {@link #setRecensioni(List)} sui ristoranti condivisi con l'archivio dei dati,
+     * che possono essere letti contemporaneamente da altri thread.
+     *
+     * @param recensioni Recensioni della copia
+     * @return Copia del ristorante con le recensioni indicate
+     */
+    public Ristorante conRecensioni(List<Recensione> recensioni) {
+        return new Ristorante(this, recensioni);
+    }
+
     /**
      * Imposta la lista delle recensioni associate al ristorante.
      * <p>
@@ -374,10 +454,11 @@ public class Ristorante {
 
     /**
      * Ritorna il numero totale di recensioni.
+     * Il valore viene letto dalle statistiche aggregate e non richiede di caricare le recensioni.
      * @return Il numero totale di recensioni.
      */
     public int getNumeroRecensioni() {
-        return recensioni.size();
+        return statistiche.getNumero();
     }
 
     /**
@@ -385,36 +466,68 @@ public class Ristorante {
      * @return {@code true} se il ristorante ha recensioni, {@code false} altrimenti.
      */
     public boolean haRecensioni() {
-        return !recensioni.isEmpty();
+        return statistiche.getNumero() > 0;
     }
 
     /**
-     * Calcola la media delle stelle delle recensioni.
-     * CORRETTA: non stampa messaggi, gestisce correttamente il caso senza recensioni.
+     * Restituisce la media delle stelle delle recensioni.
+     * Il valore viene letto dalle statistiche aggregate in tempo costante, senza scorrere le recensioni.
      *
      * @return Media delle stelle (0.0 se non ci sono recensioni)
      */
     public float getMediaStelle() {
-        if (recensioni.isEmpty()) {
-            return 0.0f;
-        }
-
-        float somma = 0;
-        for (Recensione recensione : recensioni) {
-            somma += recensione.getStelle();
-        }
+        return statistiche.getMedia();
+    }
 
-        return somma / recensioni.size();
+    /**
+     * Restituisce le statistiche aggregate delle recensioni del ristorante.
+     * <p>
+     * Le statistiche vanno aggiornate solo da chi registra le recensioni sulla piattaforma,
+     * non da chi ne carica una copia con {@link #setRecensioni(List)}.
+     *
+     * @return Statistiche delle recensioni
+     */
+    public StatisticheRecensioni getStatisticheRecensioni() {
+        return statistiche;
     }
 
     /**
      * Restituisce una chiave identificativa del ristorante.
-     * La chiave è formata dal nome del ristorante e dal suo luogo.
+     * La chiave è formata dal nome del ristorante e dal suo luogo, vedi {@link #calcolaChiave(String, Localita)}.
      * @return La chiave del ristorante (nome + luogo).
      */
     public String getChiave() {
-        return nome + localita.getNazione() + localita.getCitta() +
-                localita.getIndirizzo() + localita.getLatitudine() + localita.getLongitudine();
+        return calcolaChiave(nome, localita);
+    }
+
+    /**
+     * Calcola la chiave identificativa di un ristorante a partire da nome e luogo,
+     * nello stesso formato di {@link #getChiave()}.
+     * <p>
+     * Permette di cercare un ristorante per chiave senza doverne creare l'istanza.
+     * <p>
+     * Due località uguali secondo {@link Localita#equals(Object)} producono di norma la stessa chiave:
+     * se la località ha coordinate la chiave contiene solo le coordinate, arrotondate alla tolleranza
+     * del confronto; altrimenti contiene nazione, città e indirizzo in minuscolo.
+     *
+     * @param nome     Nome del ristorante
+     * @param localita Località del ristorante
+     * @return La chiave del ristorante (nome + luogo).
+     */
+    public static String calcolaChiave(String nome, Localita localita) {
+        if (localita.haCoordinate()) {
+            return nome.trim() + '@' + Math.round(localita.getLatitudine() * 10_000)
+                    + ',' + Math.round(localita.getLongitudine() * 10_000);
+        }
+        return nome.trim() + '@' + minuscolo(localita.getNazione()) + '|' + minuscolo(localita.getCitta())
+                + '|' + minuscolo(localita.getIndirizzo());
+    }
+
+    /**
+     * Converte un campo della località in minuscolo per la chiave; un campo assente diventa vuoto.
+     */
+    private static String minuscolo(String campo) {
+        return campo != null ? campo.toLowerCase(Locale.ROOT) : "";
     }
 
     /**
@@ -44,6 +44,22 @@ public class Ristoratore extends Utente {
         ristoranti = new ArrayList<>();
     }
 
+    /**
+     * Costruttore per creare un ristoratore senza ristoranti, la cui password può essere già cifrata.
+     *
+     * @param nome            Il nome del ristoratore
+     * @param cognome         Il cognome del ristoratore
+     * @param username        Lo username univoco per il login
+     * @param password        La password per l'autenticazione, in chiaro o già cifrata
+     * @param dataDiNascita   La data di nascita del ristoratore
+     * @param luogoDomicilio  Il luogo di domicilio del ristoratore
+     * @param passwordCifrata {@code true} se la password è già cifrata con BCrypt
+     */
+    public Ristoratore(String nome, String cognome, String username, String password, LocalDate dataDiNascita, String luogoDomicilio, boolean passwordCifrata) {
+        super(nome, cognome, username, password, dataDiNascita, luogoDomicilio, passwordCifrata);
+        ristoranti = new ArrayList<>();
+    }
+
     /**
      * Costruttore per creare un ristoratore con una lista di ristoranti esistenti.
      *
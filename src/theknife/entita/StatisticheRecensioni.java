@@ -0,0 +1,148 @@
+package theknife.entita;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Statistiche aggregate delle recensioni di un ristorante: numero di recensioni, somma delle stelle
+ * e numero di recensioni per ciascun valore di stelle.
+ * <p>
+ * Le statistiche vengono aggiornate a ogni inserimento, modifica o eliminazione di una recensione,
+ * così che media e conteggi si leggano in tempo costante senza scorrere le recensioni.
+ * <p>
+ * Numero e somma sono conservati in un unico {@code long}: una lettura concorrente vede sempre
+ * una coppia coerente, mentre gli aggiornamenti sono sincronizzati tra loro.
+ *
+ * @author Marco Zaro
+ */
+public final class StatisticheRecensioni {
+
+    /**
+     * Numero minimo di stelle di una recensione.
+     */
+    public static final int STELLE_MINIME = 1;
+
+    /**
+     * Numero massimo di stelle di una recensione.
+     */
+    public static final int STELLE_MASSIME = 5;
+
+    /**
+     * Numero di recensioni nei 32 bit alti e somma delle stelle nei 32 bit bassi.
+     */
+    private volatile long totale;
+
+    /**
+     * Numero di recensioni per valore di stelle, in posizione {@code stelle - 1}.
+     */
+    private final int[] istogramma = new int[STELLE_MASSIME];
+
+    /**
+     * Crea statistiche vuote.
+     */
+    public StatisticheRecensioni() {
+    }
+
+    /**
+     * Registra una nuova recensione.
+     *
+     * @param stelle Stelle della recensione
+     * @throws IllegalArgumentException se le stelle non sono comprese tra 1 e 5
+     */
+    public synchronized void aggiungi(int stelle) {
+        validaStelle(stelle);
+        istogramma[stelle - 1]++;
+        totale += (1L << 32) + stelle;
+    }
+
+    /**
+     * Annulla una recensione registrata in precedenza.
+     * <p>
+     * Il metodo non fallisce mai: viene invocato quando la recensione è già stata tolta dall'archivio,
+     * per cui un'eccezione lascerebbe le statistiche disallineate da esso. Se le stelle non sono valide
+     * o non ci sono recensioni registrate con quel numero di stelle l'anomalia viene segnalata e le
+     * statistiche restano invariate.
+     *
+     * @param stelle Stelle della recensione
+     */
+    public synchronized void rimuovi(int stelle) {
+        if (stelle < STELLE_MINIME || stelle > STELLE_MASSIME || istogramma[stelle - 1] == 0) {
+            System.err.println("Statistiche delle recensioni incoerenti: nessuna recensione da "
+                    + stelle + " stelle da rimuovere");
+            return;
+        }
+        istogramma[stelle - 1]--;
+        totale -= (1L << 32) + stelle;
+    }
+
+    /**
+     * Sostituisce una recensione registrata con la sua versione modificata.
+     * <p>
+     * Le nuove stelle vengono validate prima di toccare le statistiche, così che un valore non valido
+     * non lasci la vecchia recensione rimossa senza la nuova.
+     *
+     * @param stelleVecchie Stelle della recensione prima della modifica
+     * @param stelleNuove   Stelle della recensione dopo la modifica
+     * @throws IllegalArgumentException se le nuove stelle non sono comprese tra 1 e 5
+     */
+    public synchronized void sostituisci(int stelleVecchie, int stelleNuove) {
+        validaStelle(stelleNuove);
+        rimuovi(stelleVecchie);
+        aggiungi(stelleNuove);
+    }
+
+    /**
+     * Restituisce il numero di recensioni.
+     *
+     * @return Numero di recensioni
+     */
+    public int getNumero() {
+        return (int) (totale >>> 32);
+    }
+
+    /**
+     * Restituisce la somma delle stelle di tutte le recensioni.
+     *
+     * @return Somma delle stelle
+     */
+    public int getSommaStelle() {
+        return (int) totale;
+    }
+
+    /**
+     * Calcola la media delle stelle.
+     *
+     * @return Media delle stelle, 0.0 se non ci sono recensioni
+     */
+    public float getMedia() {
+        long letto = totale;
+        int numero = (int) (letto >>> 32);
+        return numero == 0 ? 0.0f : (float) (int) letto / numero;
+    }
+
+    /**
+     * Restituisce il numero di recensioni con un numero specifico di stelle.
+     *
+     * @param stelle Numero di stelle (1-5)
+     * @return Numero di recensioni con quelle stelle, 0 se il valore non è valido
+     */
+    public synchronized int getNumeroPerStelle(int stelle) {
+        return stelle >= STELLE_MINIME && stelle <= STELLE_MASSIME ? istogramma[stelle - 1] : 0;
+    }
+
+    /**
+     * Verifica che le stelle siano comprese tra il minimo e il massimo.
+     */
+    private static void validaStelle(int stelle) {
+        if (stelle < STELLE_MINIME || stelle > STELLE_MASSIME) {
+            throw new IllegalArgumentException("Le stelle devono essere comprese tra 1 e 5");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.1f/5 (%d recensioni)", getMedia(), getNumero());
+    }
+}
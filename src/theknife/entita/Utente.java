@@ -25,6 +25,12 @@ import java.util.Objects;
  * @author Marco Zaro
  */
 public abstract class Utente {
+    /** Valore dell'identificativo di un utente non ancora registrato */
+    public static final int NESSUN_ID = -1;
+
+    /** Identificativo numerico dell’utente, salvato nella prima colonna del file degli utenti */
+    private int id = NESSUN_ID;
+
     /** Nome dell’utente formattato correttamente */
     private final String nome;
 
@@ -58,17 +64,49 @@ public abstract class Utente {
      */
     public Utente(String nome, String cognome, String username, String password,
                   LocalDate dataNascita, String luogoDomicilio) {
+        this(nome, cognome, username, password, dataNascita, luogoDomicilio, false);
+    }
+
+    /**
+     * Crea un utente la cui password può essere già cifrata, ad esempio perché letta dai file dei dati.
+     * In questo caso la password viene memorizzata così com'è, evitando il costo della cifratura BCrypt.
+     *
+     * @param nome            Nome dell’utente (in chiaro, con qualsiasi formato)
+     * @param cognome         Cognome dell’utente (in chiaro)
+     * @param username        Username scelto per l’accesso
+     * @param password        Password in chiaro oppure già cifrata
+     * @param dataNascita     Data di nascita dell’utente
+     * @param luogoDomicilio  Luogo di domicilio (in chiaro)
+     * @param passwordCifrata {@code true} se la password è già cifrata con BCrypt
+     * @throws UtenteException Se i dati inseriti sono invalidi.
+     */
+    protected Utente(String nome, String cognome, String username, String password,
+                     LocalDate dataNascita, String luogoDomicilio, boolean passwordCifrata) {
         validaAttributi(nome, cognome, username, password, luogoDomicilio);
         this.nome = formattaNome(nome);
         this.cognome = formattaNome(cognome);
         this.username = username;
-        this.password = cifraPassword(password);
+        this.password = passwordCifrata ? password : cifraPassword(password);
         this.dataNascita = dataNascita;
         this.luogoDomicilio = formattaNome(luogoDomicilio);
     }
 
     //region --- Getters e Setters ---
 
+    /**
+     * Restituisce l'identificativo numerico dell’utente
+     *
+     * @return L'identificativo dell’utente, o {@link #NESSUN_ID} se non ancora registrato
+     */
+    public int getId() { return id; }
+
+    /**
+     * Imposta l'identificativo numerico dell’utente.
+     * Utilizzato dal livello di persistenza al momento della registrazione.
+     * @param id Identificativo dell’utente
+     */
+    public void setId(int id) { this.id = id; }
+
     /**
      * Restituisce Il nome formattato dell’utente
      *
@@ -0,0 +1,546 @@
+package theknife.io_file;
+
+import theknife.entita.Recensione;
+import theknife.entita.Ristorante;
+import theknife.entita.StatisticheRecensioni;
+import theknife.entita.Utente;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Archivio residente in memoria dei quattro dataset dell'applicazione.
+ * <p>
+ * Ogni utente e ogni ristorante ha un identificativo numerico ({@link Utente#getId()},
+ * {@link Ristorante#getId()}), salvato nella prima colonna del rispettivo file. Un nuovo utente o
+ * ristorante riceve l'identificativo successivo all'ultimo ({@link #prossimoIdUtente()},
+ * {@link #prossimoIdRistorante()}): poiché i file vengono solo accodati, gli identificativi sono
+ * crescenti nell'ordine del file e, se nessuna riga è stata scartata, coincidono con la posizione.
+ * <p>
+ * Recensioni e preferiti sono salvati e indicizzati tramite questi identificativi: una recensione è
+ * individuata dalla coppia (utente, ristorante) compressa in un {@code long}, e gli indici
+ * secondari per ristorante e per cliente sono tabelle da {@code int}. La chiave testuale
+ * {@link Ristorante#getChiave()} serve solo a riconoscere i ristoranti duplicati e a risolvere
+ * un ristorante ancora privo di identificativo.
+ * <p>
+ * L'archivio è anche l'unico responsabile delle {@link StatisticheRecensioni} di ciascun ristorante:
+ * ogni inserimento, sostituzione o eliminazione di una recensione aggiorna le statistiche del
+ * ristorante in archivio, per cui media e numero di recensioni non richiedono di caricarle.
+ * <p>
+ * L'archivio non accede mai al disco: il caricamento iniziale e la scrittura delle modifiche
+ * sono responsabilità di {@link GestoreFile}, che aggiorna l'archivio solo dopo aver scritto
+ * la modifica sul file corrispondente.
+ * <p>
+ * L'accesso concorrente è regolato da {@link BlocchiDataset}: utenti, ristoranti e preferiti sono
+ * protetti dal blocco del rispettivo dataset, mentre le recensioni possono essere modificate in
+ * parallelo per ristoranti diversi. Per questo le tabelle delle recensioni sono sincronizzate:
+ * gli indici secondari vengono aggiornati in modo atomico per ciascun ristorante e cliente.
+ *
+ * @author Thomas Riotto
+ */
+final class ArchivioDati {
+
+    /**
+     * Utenti registrati, in ordine di identificativo.
+     */
+    private final List<Utente> utenti = new ArrayList<>();
+
+    /**
+     * Identificativi degli utenti, indicizzati per username.
+     */
+    private final Map<String, Integer> idUtenti = new HashMap<>();
+
+    /**
+     * Ristoranti in ordine di identificativo, che è anche l'ordine in cui compaiono nel file.
+     */
+    private final List<Ristorante> ristoranti = new ArrayList<>();
+
+    /**
+     * Ristoranti indicizzati per chiave, vedi {@link Ristorante#calcolaChiave}.
+     */
+    private final Map<String, Ristorante> ristorantiPerChiave = new HashMap<>();
+
+    /**
+     * Recensioni indicizzate per coppia (utente, ristorante), vedi {@link #chiaveRecensione(int, int)}.
+     */
+    private final Map<Long, Recensione> recensioni = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * Indice secondario delle recensioni per ristorante: id del ristorante → (id dell'utente → recensione).
+     */
+    private final Map<Integer, Map<Integer, Recensione>> recensioniPerRistorante = new ConcurrentHashMap<>();
+
+    /**
+     * Indice secondario delle recensioni per cliente: id dell'utente → (id del ristorante → recensione).
+     */
+    private final Map<Integer, Map<Integer, Recensione>> recensioniPerCliente = new ConcurrentHashMap<>();
+
+    /**
+     * Identificativi dei ristoranti preferiti, indicizzati per identificativo del cliente.
+     */
+    private final Map<Integer, Set<Integer>> preferiti = new HashMap<>();
+
+    /**
+     * Crea un archivio vuoto, popolato da {@link GestoreFile} durante il caricamento.
+     */
+    ArchivioDati() {
+    }
+
+    //region === UTENTI ===
+
+    /**
+     * Restituisce tutti gli utenti in ordine di identificativo.
+     *
+     * @return Vista non modificabile degli utenti
+     */
+    List<Utente> utenti() {
+        return Collections.unmodifiableList(utenti);
+    }
+
+    /**
+     * Cerca un utente per username.
+     *
+     * @param username Username dell'utente
+     * @return L'utente trovato o {@code null} se non esiste
+     */
+    Utente cercaUtente(String username) {
+        return cercaUtente(idUtente(username));
+    }
+
+    /**
+     * Cerca un utente per identificativo.
+     *
+     * @param id Identificativo dell'utente
+     * @return L'utente trovato o {@code null} se non esiste
+     */
+    Utente cercaUtente(int id) {
+        int posizione = posizione(utenti, id, Utente::getId);
+        return posizione >= 0 ? utenti.get(posizione) : null;
+    }
+
+    /**
+     * Restituisce l'identificativo da assegnare al prossimo utente registrato.
+     *
+     * @return Identificativo successivo a quello dell'ultimo utente
+     */
+    int prossimoIdUtente() {
+        return utenti.isEmpty() ? 0 : utenti.getLast().getId() + 1;
+    }
+
+    /**
+     * Registra un utente nell'archivio con l'identificativo indicato.
+     * Se lo username è già presente l'utente sostituisce quello esistente, mantenendone l'identificativo;
+     * un utente con un identificativo non successivo all'ultimo viene ignorato.
+     *
+     * @param utente Utente da registrare
+     * @param id     Identificativo dell'utente, letto dal file o ottenuto da {@link #prossimoIdUtente()}
+     */
+    void aggiungiUtente(Utente utente, int id) {
+        Integer esistente = idUtenti.get(utente.getUsername());
+        if (esistente != null) {
+            utente.setId(esistente);
+            utenti.set(posizione(utenti, esistente, Utente::getId), utente);
+            return;
+        }
+        if (id < prossimoIdUtente()) {
+            return;
+        }
+        utente.setId(id);
+        utenti.add(utente);
+        idUtenti.put(utente.getUsername(), id);
+    }
+
+    /**
+     * Restituisce l'identificativo dell'utente con lo username indicato.
+     *
+     * @param username Username dell'utente
+     * @return Identificativo dell'utente, o {@link Utente#NESSUN_ID} se non esiste
+     */
+    private int idUtente(String username) {
+        Integer id = username != null ? idUtenti.get(username) : null;
+        return id != null ? id : Utente.NESSUN_ID;
+    }
+
+    //endregion
+
+    //region === RISTORANTI ===
+
+    /**
+     * Restituisce tutti i ristoranti nell'ordine del file.
+     *
+     * @return Vista non modificabile dei ristoranti
+     */
+    Collection<Ristorante> ristoranti() {
+        return Collections.unmodifiableList(ristoranti);
+    }
+
+    /**
+     * Restituisce i ristoranti a partire dalla posizione indicata, nell'ordine del file.
+     *
+     * @param primo Posizione del primo ristorante restituito
+     * @return Vista non modificabile dei ristoranti dalla posizione {@code primo} in poi
+     */
+    List<Ristorante> ristoranti(int primo) {
+        return Collections.unmodifiableList(ristoranti.subList(Math.min(primo, ristoranti.size()), ristoranti.size()));
+    }
+
+    /**
+     * Restituisce il numero di ristoranti presenti in archivio.
+     *
+     * @return Numero di ristoranti
+     */
+    int numeroRistoranti() {
+        return ristoranti.size();
+    }
+
+    /**
+     * Cerca un ristorante tramite la sua chiave.
+     *
+     * @param chiave Chiave del ristorante
+     * @return Il ristorante trovato o {@code null} se non esiste
+     */
+    Ristorante cercaRistorante(String chiave) {
+        return ristorantiPerChiave.get(chiave);
+    }
+
+    /**
+     * Cerca un ristorante tramite il suo identificativo.
+     *
+     * @param id Identificativo del ristorante
+     * @return Il ristorante trovato o {@code null} se non esiste
+     */
+    Ristorante cercaRistorante(int id) {
+        int posizione = posizione(ristoranti, id, Ristorante::getId);
+        return posizione >= 0 ? ristoranti.get(posizione) : null;
+    }
+
+    /**
+     * Restituisce l'istanza in archivio equivalente al ristorante indicato.
+     * <p>
+     * L'istanza in archivio e le sue copie ({@link Ristorante#conRecensioni(List)}) vengono risolte
+     * tramite l'identificativo; solo un ristorante ancora privo di identificativo viene cercato per chiave.
+     *
+     * @param ristorante Ristorante da risolvere
+     * @return Il ristorante in archivio o {@code null} se non presente
+     */
+    Ristorante risolviRistorante(Ristorante ristorante) {
+        if (ristorante == null) {
+            return null;
+        }
+        Ristorante perId = cercaRistorante(ristorante.getId());
+        // Le copie condividono le statistiche con l'istanza da cui sono state create
+        if (perId != null && perId.getStatisticheRecensioni() == ristorante.getStatisticheRecensioni()) {
+            return perId;
+        }
+        return cercaRistorante(ristorante.getChiave());
+    }
+
+    /**
+     * Verifica che un utente e un ristorante siano le istanze in archivio, o loro copie, e ne portino
+     * quindi l'identificativo: solo così possono essere riferiti nelle righe di recensioni e preferiti.
+     *
+     * @param utente     Utente da verificare
+     * @param ristorante Ristorante da verificare
+     * @return {@code true} se entrambi sono registrati con il proprio identificativo
+     */
+    boolean registrati(Utente utente, Ristorante ristorante) {
+        Utente utenteInArchivio = utente != null ? cercaUtente(utente.getId()) : null;
+        Ristorante ristoranteInArchivio = risolviRistorante(ristorante);
+        return utenteInArchivio != null && utenteInArchivio.getUsername().equals(utente.getUsername())
+                && ristoranteInArchivio != null && ristoranteInArchivio.getId() == ristorante.getId();
+    }
+
+    /**
+     * Restituisce l'identificativo da assegnare al prossimo ristorante registrato.
+     *
+     * @return Identificativo successivo a quello dell'ultimo ristorante
+     */
+    int prossimoIdRistorante() {
+        return ristoranti.isEmpty() ? 0 : ristoranti.getLast().getId() + 1;
+    }
+
+    /**
+     * Registra un ristorante nell'archivio con l'identificativo indicato.
+     * Un ristorante con una chiave già presente, o con un identificativo non successivo all'ultimo,
+     * viene ignorato.
+     *
+     * @param ristorante Ristorante da registrare
+     * @param id         Identificativo del ristorante, letto dal file o ottenuto da {@link #prossimoIdRistorante()}
+     */
+    void aggiungiRistorante(Ristorante ristorante, int id) {
+        String chiave = ristorante.getChiave();
+        if (ristorantiPerChiave.containsKey(chiave) || id < prossimoIdRistorante()) {
+            return;
+        }
+        ristorante.setId(id);
+        ristoranti.add(ristorante);
+        ristorantiPerChiave.put(chiave, ristorante);
+    }
+
+    /**
+     * Restituisce l'identificativo del ristorante in archivio equivalente a quello indicato.
+     *
+     * @param ristorante Ristorante da risolvere
+     * @return Identificativo del ristorante, o {@link Ristorante#NESSUN_ID} se non presente
+     */
+    private int idRistorante(Ristorante ristorante) {
+        Ristorante inArchivio = risolviRistorante(ristorante);
+        return inArchivio != null ? inArchivio.getId() : Ristorante.NESSUN_ID;
+    }
+
+    //endregion
+
+    //region === RECENSIONI ===
+
+    /**
+     * Restituisce tutte le recensioni presenti in archivio.
+     *
+     * @return Copia delle recensioni, nell'ordine di inserimento
+     */
+    List<Recensione> recensioni() {
+        return new ArrayList<>(recensioni.values());
+    }
+
+    /**
+     * Cerca la recensione di un cliente per un ristorante.
+     *
+     * @param username   Username del cliente
+     * @param ristorante Ristorante recensito
+     * @return La recensione trovata o {@code null} se non esiste
+     */
+    Recensione cercaRecensione(String username, Ristorante ristorante) {
+        return recensioni.get(chiaveRecensione(idUtente(username), idRistorante(ristorante)));
+    }
+
+    /**
+     * Restituisce le recensioni di un ristorante tramite l'indice secondario.
+     *
+     * @param ristorante Ristorante di cui cercare le recensioni
+     * @return Recensioni del ristorante, vuota se non ce ne sono
+     */
+    List<Recensione> recensioniRistorante(Ristorante ristorante) {
+        return copia(recensioniPerRistorante.get(idRistorante(ristorante)));
+    }
+
+    /**
+     * Restituisce le recensioni di un cliente tramite l'indice secondario.
+     *
+     * @param username Username del cliente
+     * @return Recensioni del cliente, vuota se non ce ne sono
+     */
+    List<Recensione> recensioniCliente(String username) {
+        return copia(recensioniPerCliente.get(idUtente(username)));
+    }
+
+    /**
+     * Copia le recensioni di un indice secondario, vuota se l'indice non esiste.
+     */
+    private static List<Recensione> copia(Map<Integer, Recensione> indice) {
+        if (indice == null) {
+            return new ArrayList<>();
+        }
+        synchronized (indice) {
+            return new ArrayList<>(indice.values());
+        }
+    }
+
+    /**
+     * Inserisce o sostituisce una recensione nell'archivio, aggiornando gli indici secondari
+     * e le statistiche delle recensioni del ristorante.
+     * La recensione viene ignorata se il cliente o il ristorante non sono presenti in archivio.
+     *
+     * @param recensione Recensione da registrare
+     */
+    void aggiungiRecensione(Recensione recensione) {
+        int idUtente = idUtente(recensione.getCliente().getUsername());
+        int idRistorante = idRistorante(recensione.getRistorante());
+        if (idUtente == Utente.NESSUN_ID || idRistorante == Ristorante.NESSUN_ID) {
+            return;
+        }
+
+        Recensione precedente = recensioni.put(chiaveRecensione(idUtente, idRistorante), recensione);
+        StatisticheRecensioni statistiche = cercaRistorante(idRistorante).getStatisticheRecensioni();
+        if (precedente != null) {
+            statistiche.sostituisci(precedente.getStelle(), recensione.getStelle());
+        } else {
+            statistiche.aggiungi(recensione.getStelle());
+        }
+        inserisci(recensioniPerRistorante, idRistorante, idUtente, recensione);
+        inserisci(recensioniPerCliente, idUtente, idRistorante, recensione);
+    }
+
+    /**
+     * Rimuove una recensione dall'archivio.
+     *
+     * @param recensione Recensione da rimuovere
+     * @return {@code true} se la recensione era presente, {@code false} altrimenti
+     */
+    boolean rimuoviRecensione(Recensione recensione) {
+        return rimuoviRecensione(recensione.getCliente().getUsername(), recensione.getRistorante());
+    }
+
+    /**
+     * Rimuove la recensione di un cliente per un ristorante, aggiornando le statistiche del ristorante.
+     *
+     * @param username   Username del cliente
+     * @param ristorante Ristorante recensito
+     * @return {@code true} se la recensione era presente, {@code false} altrimenti
+     */
+    boolean rimuoviRecensione(String username, Ristorante ristorante) {
+        int idUtente = idUtente(username);
+        int idRistorante = idRistorante(ristorante);
+        Recensione rimossa = recensioni.remove(chiaveRecensione(idUtente, idRistorante));
+        if (rimossa == null) {
+            return false;
+        }
+
+        cercaRistorante(idRistorante).getStatisticheRecensioni().rimuovi(rimossa.getStelle());
+
+        rimuovi(recensioniPerRistorante, idRistorante, idUtente);
+        rimuovi(recensioniPerCliente, idUtente, idRistorante);
+        return true;
+    }
+
+    /**
+     * Inserisce una recensione in un indice secondario. L'operazione è atomica rispetto alle
+     * altre modifiche con la stessa chiave esterna.
+     */
+    private static void inserisci(Map<Integer, Map<Integer, Recensione>> indice, int esterna, int interna,
+                                  Recensione recensione) {
+        indice.compute(esterna, (chiave, recensioni) -> {
+            Map<Integer, Recensione> aggiornate = recensioni != null
+                    ? recensioni : Collections.synchronizedMap(new LinkedHashMap<>());
+            aggiornate.put(interna, recensione);
+            return aggiornate;
+        });
+    }
+
+    /**
+     * Rimuove una recensione da un indice secondario, eliminando la voce esterna se resta vuota.
+     */
+    private static void rimuovi(Map<Integer, Map<Integer, Recensione>> indice, int esterna, int interna) {
+        indice.computeIfPresent(esterna, (chiave, recensioni) -> {
+            recensioni.remove(interna);
+            return recensioni.isEmpty() ? null : recensioni;
+        });
+    }
+
+    /**
+     * Restituisce il numero di recensioni presenti in archivio.
+     *
+     * @return Numero di recensioni
+     */
+    int numeroRecensioni() {
+        return recensioni.size();
+    }
+
+    /**
+     * Calcola la chiave di una recensione comprimendo gli identificativi di cliente e ristorante in un {@code long}.
+     */
+    private static long chiaveRecensione(int idUtente, int idRistorante) {
+        return ((long) idUtente << 32) | (idRistorante & 0xFFFFFFFFL);
+    }
+
+    //endregion
+
+    //region === PREFERITI ===
+
+    /**
+     * Restituisce i ristoranti preferiti di un cliente.
+     *
+     * @param username Username del cliente
+     * @return Lista dei ristoranti preferiti, vuota se non ce ne sono
+     */
+    List<Ristorante> preferiti(String username) {
+        List<Ristorante> risultato = new ArrayList<>();
+        for (int id : preferiti.getOrDefault(idUtente(username), Set.of())) {
+            risultato.add(cercaRistorante(id));
+        }
+        return risultato;
+    }
+
+    /**
+     * Verifica se un ristorante è tra i preferiti di un cliente.
+     *
+     * @param username   Username del cliente
+     * @param ristorante Ristorante da verificare
+     * @return {@code true} se il ristorante è tra i preferiti, {@code false} altrimenti
+     */
+    boolean esistePreferito(String username, Ristorante ristorante) {
+        return preferiti.getOrDefault(idUtente(username), Set.of()).contains(idRistorante(ristorante));
+    }
+
+    /**
+     * Aggiunge un ristorante ai preferiti di un cliente.
+     *
+     * @param username   Username del cliente
+     * @param ristorante Ristorante da aggiungere
+     */
+    void aggiungiPreferito(String username, Ristorante ristorante) {
+        int idUtente = idUtente(username);
+        int idRistorante = idRistorante(ristorante);
+        if (idUtente != Utente.NESSUN_ID && idRistorante != Ristorante.NESSUN_ID) {
+            preferiti.computeIfAbsent(idUtente, k -> new LinkedHashSet<>()).add(idRistorante);
+        }
+    }
+
+    /**
+     * Rimuove un ristorante dai preferiti di un cliente.
+     *
+     * @param username   Username del cliente
+     * @param ristorante Ristorante da rimuovere
+     */
+    void rimuoviPreferito(String username, Ristorante ristorante) {
+        Set<Integer> idPreferiti = preferiti.get(idUtente(username));
+        if (idPreferiti != null) {
+            idPreferiti.remove(idRistorante(ristorante));
+        }
+    }
+
+    //endregion
+
+    /**
+     * Cerca la posizione di un identificativo in una lista ordinata per identificativo.
+     * <p>
+     * Gli identificativi coincidono con le posizioni finché nessuna riga del file è stata scartata:
+     * la posizione viene quindi verificata direttamente e cercata per bisezione solo in caso contrario.
+     *
+     * @return Posizione dell'elemento, o -1 se l'identificativo non è presente
+     */
+    private static <T> int posizione(List<T> lista, int id, ToIntFunction<T> identificativo) {
+        if (id < 0) {
+            return -1;
+        }
+        if (id < lista.size() && identificativo.applyAsInt(lista.get(id)) == id) {
+            return id;
+        }
+        int basso = 0;
+        int alto = Math.min(id, lista.size()) - 1;
+        while (basso <= alto) {
+            int medio = (basso + alto) >>> 1;
+            int idMedio = identificativo.applyAsInt(lista.get(medio));
+            if (idMedio < id) {
+                basso = medio + 1;
+            } else if (idMedio > id) {
+                alto = medio - 1;
+            } else {
+                return medio;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,192 @@
+package theknife.io_file;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Blocchi di lettura e scrittura che regolano l'accesso concorrente ai dataset.
+ * <p>
+ * Ogni dataset ha un proprio {@link ReentrantReadWriteLock}: le letture acquisiscono il blocco
+ * in lettura e non si bloccano mai tra loro, mentre le modifiche all'intero dataset (ad esempio
+ * l'aggiunta di un ristorante o la riscrittura dei preferiti) lo acquisiscono in scrittura.
+ * <p>
+ * Le operazioni su un singolo record usano invece un blocco a segmenti (lock striping): il blocco
+ * del dataset viene acquisito in lettura e quello del segmento associato alla chiave del record in
+ * lettura o in scrittura. Due modifiche a record con chiavi in segmenti diversi, come le recensioni
+ * di due ristoranti diversi, procedono quindi in parallelo; un'operazione che richiede il blocco
+ * del dataset in scrittura attende invece il termine di tutte le operazioni sui record.
+ * <p>
+ * L'ordine dei valori di {@link Dataset} riflette le dipendenze tra i dataset: i ristoranti fanno
+ * riferimento agli utenti, le recensioni a utenti e ristoranti, i preferiti a utenti e ristoranti.
+ * Ogni blocco su un dataset acquisisce anche i dataset precedenti in lettura, sempre nello stesso
+ * ordine, così che non possano verificarsi stalli. Un thread che tiene un blocco in lettura non deve
+ * richiedere lo stesso blocco in scrittura.
+ *
+ * @author Thomas Riotto
+ */
+final class BlocchiDataset {
+
+    /**
+     * Numero di segmenti per dataset, potenza di due.
+     */
+    private static final int NUMERO_SEGMENTI = 64;
+
+    /**
+     * Dataset dell'applicazione, in ordine di dipendenza.
+     */
+    enum Dataset {
+        UTENTI,
+        RISTORANTI,
+        RECENSIONI,
+        PREFERITI
+    }
+
+    /**
+     * Blocco acquisito, da rilasciare con {@link #close()} in un try-with-resources.
+     */
+    @FunctionalInterface
+    interface Blocco extends AutoCloseable {
+
+        /**
+         * Rilascia il blocco.
+         */
+        @Override
+        void close();
+    }
+
+    /**
+     * Blocchi dei dataset, indicizzati per ordinale.
+     */
+    private final ReentrantReadWriteLock[] blocchi = new ReentrantReadWriteLock[Dataset.values().length];
+
+    /**
+     * Blocchi dei segmenti di ogni dataset, indicizzati per ordinale e per segmento.
+     */
+    private final ReentrantReadWriteLock[][] segmenti = new ReentrantReadWriteLock[Dataset.values().length][];
+
+    /**
+     * Crea i blocchi di tutti i dataset.
+     */
+    BlocchiDataset() {
+        for (int i = 0; i < blocchi.length; i++) {
+            blocchi[i] = new ReentrantReadWriteLock();
+            segmenti[i] = new ReentrantReadWriteLock[NUMERO_SEGMENTI];
+            for (int j = 0; j < NUMERO_SEGMENTI; j++) {
+                segmenti[i][j] = new ReentrantReadWriteLock();
+            }
+        }
+    }
+
+    /**
+     * Acquisisce in lettura un dataset e quelli da cui dipende.
+     *
+     * @param dataset Dataset da leggere
+     * @return Il blocco acquisito
+     */
+    Blocco lettura(Dataset dataset) {
+        return acquisisci(precedenti(dataset, blocchi[dataset.ordinal()].readLock()));
+    }
+
+    /**
+     * Acquisisce in scrittura un dataset, e in lettura quelli da cui dipende.
+     *
+     * @param dataset Dataset da modificare
+     * @return Il blocco acquisito
+     */
+    Blocco scrittura(Dataset dataset) {
+        return acquisisci(precedenti(dataset, blocchi[dataset.ordinal()].writeLock()));
+    }
+
+    /**
+     * Acquisisce in lettura il segmento di un record, insieme al dataset e a quelli da cui dipende.
+     *
+     * @param dataset Dataset del record
+     * @param chiave  Chiave del record: record uguali devono avere chiavi uguali
+     * @return Il blocco acquisito
+     */
+    Blocco letturaRecord(Dataset dataset, Object chiave) {
+        Lock[] richiesti = precedenti(dataset, blocchi[dataset.ordinal()].readLock(),
+                segmenti[dataset.ordinal()][segmento(chiave)].readLock());
+        return acquisisci(richiesti);
+    }
+
+    /**
+     * Acquisisce in scrittura i segmenti di uno o più record dello stesso dataset, e in lettura
+     * il dataset e quelli da cui dipende. I segmenti vengono acquisiti in ordine crescente.
+     *
+     * @param dataset Dataset dei record
+     * @param chiavi  Chiavi dei record: record uguali devono avere chiavi uguali
+     * @return Il blocco acquisito
+     */
+    Blocco scritturaRecord(Dataset dataset, Object... chiavi) {
+        int[] indici = new int[chiavi.length];
+        for (int i = 0; i < chiavi.length; i++) {
+            indici[i] = segmento(chiavi[i]);
+        }
+        Arrays.sort(indici);
+
+        // Il blocco del dataset seguito dai segmenti distinti, in ordine crescente
+        Lock[] segmentiRichiesti = new Lock[indici.length + 1];
+        segmentiRichiesti[0] = blocchi[dataset.ordinal()].readLock();
+        int distinti = 0;
+        for (int i = 0; i < indici.length; i++) {
+            if (i == 0 || indici[i] != indici[i - 1]) {
+                segmentiRichiesti[++distinti] = segmenti[dataset.ordinal()][indici[i]].writeLock();
+            }
+        }
+        return acquisisci(precedenti(dataset, Arrays.copyOf(segmentiRichiesti, distinti + 1)));
+    }
+
+    /**
+     * Antepone ai blocchi indicati i blocchi in lettura dei dataset precedenti.
+     */
+    private Lock[] precedenti(Dataset dataset, Lock... successivi) {
+        Lock[] richiesti = new Lock[dataset.ordinal() + successivi.length];
+        for (int i = 0; i < dataset.ordinal(); i++) {
+            richiesti[i] = blocchi[i].readLock();
+        }
+        System.arraycopy(successivi, 0, richiesti, dataset.ordinal(), successivi.length);
+        return richiesti;
+    }
+
+    /**
+     * Acquisisce i blocchi nell'ordine indicato e restituisce l'azione che li rilascia in ordine inverso.
+     */
+    private static Blocco acquisisci(Lock[] richiesti) {
+        int acquisiti = 0;
+        try {
+            for (Lock blocco : richiesti) {
+                blocco.lock();
+                acquisiti++;
+            }
+        } catch (RuntimeException | Error e) {
+            rilascia(richiesti, acquisiti);
+            throw e;
+        }
+        return () -> rilascia(richiesti, richiesti.length);
+    }
+
+    /**
+     * Rilascia i primi blocchi acquisiti, in ordine inverso.
+     */
+    private static void rilascia(Lock[] richiesti, int acquisiti) {
+        for (int i = acquisiti - 1; i >= 0; i--) {
+            richiesti[i].unlock();
+        }
+    }
+
+    /**
+     * Calcola il segmento associato a una chiave.
+     */
+    private static int segmento(Object chiave) {
+        int hash = Objects.hashCode(chiave);
+        return (hash ^ (hash >>> 16)) & (NUMERO_SEGMENTI - 1);
+    }
+}
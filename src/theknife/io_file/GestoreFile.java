@@ -1,25 +1,32 @@
 package theknife.io_file;
 
 import theknife.entita.*;
+import theknife.io_file.BlocchiDataset.Blocco;
+import theknife.io_file.BlocchiDataset.Dataset;
 import com.opencsv.CSVReader;
-import com.opencsv.CSVReaderBuilder;
 import com.opencsv.CSVWriter;
 import com.opencsv.exceptions.CsvException;
 
 import java.nio.file.Paths;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 /*
  * Riotto Thomas 760981 VA
  * Pesavento Antonio 759933 VA
@@ -87,73 +94,113 @@ public class GestoreFile {
      * Intestazione del file recensioni.csv
      */
     private static final String[] INTESTAZIONE_RECENSIONI = {
-            "Username", "Ristorante", "Nazione", "Città", "Indirizzo",
-            "Latitudine", "Longitudine", "Stelle", "Messaggio", "Data", "Risposta", "DataRisposta"
+            "IdCliente", "IdRistorante", "Stelle", "Messaggio", "Data", "Risposta", "DataRisposta"
     };
+
+    /**
+     * Intestazione del file preferiti.csv
+     */
+    private static final String[] INTESTAZIONE_PREFERITI = {"IdCliente", "IdRistorante"};
     //endregion
 
+    /**
+     * Registro append-only delle modifiche alle recensioni, compattato periodicamente in Recensioni.csv.
+     */
+    private static final RegistroRecensioni REGISTRO_RECENSIONI =
+            new RegistroRecensioni(DATASET_RECENSIONI, getPercorso("RegistroRecensioni.csv"), INTESTAZIONE_RECENSIONI);
+
+    /**
+     * Istantanea binaria dei quattro dataset, usata per velocizzare l'avvio.
+     */
+    private static final Path ISTANTANEA = getPercorso("Archivio.dat");
+
+    /**
+     * Scrittori a lotti dei file a cui vengono solo accodate righe.
+     */
+    private static final ScrittoreCSV SCRITTORE_UTENTI = new ScrittoreCSV(DATASET_UTENTI, null);
+    private static final ScrittoreCSV SCRITTORE_RISTORANTI = new ScrittoreCSV(DATASET_RISTORANTI, null);
+    private static final ScrittoreCSV SCRITTORE_PREFERITI = new ScrittoreCSV(DATASET_PREFERITI, null);
+
+    /**
+     * Registro delle transazioni, scritto prima di ogni modifica ai file CSV e riapplicato all'avvio.
+     */
+    private static final RegistroTransazioni REGISTRO_TRANSAZIONI = new RegistroTransazioni(
+            getPercorso("Transazioni.log"), List.of(DATASET_UTENTI, DATASET_RISTORANTI, DATASET_PREFERITI,
+            REGISTRO_RECENSIONI.registro(), REGISTRO_RECENSIONI.registroPrecedente()));
+
+    /**
+     * Blocchi di lettura e scrittura dei dataset. Le modifiche alle recensioni bloccano solo il
+     * segmento del ristorante recensito, mentre la rotazione del registro blocca l'intero dataset,
+     * così che registro e archivio restino allineati.
+     */
+    private static final BlocchiDataset BLOCCHI = new BlocchiDataset();
+
     //region === CLASSI STATICHE PER INDICI COLONNE CSV ===
 
     /**
      * Rappresenta le posizioni dei campi del file Utenti.csv
      */
     private static class ColonneUtenteCSV {
-        public static final int NOME = 0;
-        public static final int COGNOME = 1;
-        public static final int USERNAME = 2;
-        public static final int PASSWORD = 3;
-        public static final int DATA_NASCITA = 4;
-        public static final int LUOGO_DOMICILIO = 5;
-        public static final int TIPO_UTENTE = 6;
+        public static final int ID = 0;
+        public static final int NOME = 1;
+        public static final int COGNOME = 2;
+        public static final int USERNAME = 3;
+        public static final int PASSWORD = 4;
+        public static final int DATA_NASCITA = 5;
+        public static final int LUOGO_DOMICILIO = 6;
+        public static final int TIPO_UTENTE = 7;
     }
 
     /**
      * Rappresenta le posizioni dei campi del file Ristoranti.csv
      */
     private static class ColonneRistoranteCSV {
-        public static final int NOME = 0;
-        public static final int PREZZO_MEDIO = 1;
-        public static final int TIPO_CUCINA = 2;
-        public static final int NAZIONE = 3;
-        public static final int CITTA = 4;
-        public static final int INDIRIZZO = 5;
-        public static final int LATITUDINE = 6;
-        public static final int LONGITUDINE = 7;
-        public static final int DESCRIZIONE = 8;
-        public static final int DELIVERY = 9;
-        public static final int PRENOTAZIONE = 10;
-        public static final int USERNAME = 11;
+        public static final int ID = 0;
+        public static final int NOME = 1;
+        public static final int PREZZO_MEDIO = 2;
+        public static final int TIPO_CUCINA = 3;
+        public static final int NAZIONE = 4;
+        public static final int CITTA = 5;
+        public static final int INDIRIZZO = 6;
+        public static final int LATITUDINE = 7;
+        public static final int LONGITUDINE = 8;
+        public static final int DESCRIZIONE = 9;
+        public static final int DELIVERY = 10;
+        public static final int PRENOTAZIONE = 11;
+        public static final int USERNAME = 12;
     }
 
     /**
      * Rappresenta le posizioni dei campi del file Recensioni.csv
      */
     private static class ColonneRecensioneCSV {
-        public static final int USERNAME = 0;
-        public static final int RISTORANTE = 1;
-        public static final int NAZIONE = 2;
-        public static final int CITTA = 3;
-        public static final int INDIRIZZO = 4;
-        public static final int LATITUDINE = 5;
-        public static final int LONGITUDINE = 6;
-        public static final int STELLE = 7;
-        public static final int MESSAGGIO = 8;
-        public static final int DATA = 9;
-        public static final int RISPOSTA = 10;
-        public static final int DATA_RISPOSTA = 11;
+        public static final int ID_CLIENTE = 0;
+        public static final int ID_RISTORANTE = 1;
+        public static final int STELLE = 2;
+        public static final int MESSAGGIO = 3;
+        public static final int DATA = 4;
+        public static final int RISPOSTA = 5;
+        public static final int DATA_RISPOSTA = 6;
     }
 
     /**
      * Rappresenta le posizioni dei campi del file Preferiti.csv
      */
     private static class ColonnePreferitiCSV {
-        public static final int USERNAME = 0;
-        public static final int RISTORANTE = 1;
-        public static final int NAZIONE = 2;
-        public static final int CITTA = 3;
-        public static final int INDIRIZZO = 4;
-        public static final int LATITUDINE = 5;
-        public static final int LONGITUDINE = 6;
+        public static final int ID_CLIENTE = 0;
+        public static final int ID_RISTORANTE = 1;
+    }
+
+    /**
+     * Rappresenta i tipi di operazione registrati nel registro delle transazioni
+     */
+    private static class OperazioniTransazione {
+        public static final String AGGIUNGI_UTENTE = "AGGIUNGI_UTENTE";
+        public static final String AGGIUNGI_RISTORANTE = "AGGIUNGI_RISTORANTE";
+        public static final String AGGIORNA_RECENSIONE = "AGGIORNA_RECENSIONE";
+        public static final String ELIMINA_RECENSIONE = "ELIMINA_RECENSIONE";
+        public static final String AGGIUNGI_PREFERITO = "AGGIUNGI_PREFERITO";
+        public static final String RIMUOVI_PREFERITO = "RIMUOVI_PREFERITO";
     }
     //endregion
 
@@ -162,6 +209,13 @@ public class GestoreFile {
     /** Valore di lookup per i boolean del delivery e prenotazione. */
     private static final String VALORE_NO = "No";
 
+    /**
+     * Archivio in memoria dei dataset, caricato una sola volta alla prima richiesta.
+     * Tutte le letture vengono servite da qui; le scritture aggiornano l'archivio solo
+     * dopo che la modifica al file CSV è su disco.
+     */
+    private static volatile ArchivioDati archivio;
+
     //endregion
 
     //region === COSTRUTTORI ===
@@ -175,6 +229,347 @@ public class GestoreFile {
 
     //region === METODI ===
 
+    //region === ARCHIVIO IN MEMORIA ===
+
+    /**
+     * Carica in memoria i quattro dataset, se non è già stato fatto.
+     * <p>
+     * Va invocato all'avvio dell'applicazione, così che il costo della lettura dei file
+     * non ricada sulla prima operazione dell'utente. Le chiamate successive non hanno effetto.
+     * <p>
+     * I file ancora nel formato senza identificativi vengono prima convertiti una volta per tutte
+     * ({@link MigrazioneIdentificativi}). Se l'istantanea binaria {@code Archivio.dat} corrisponde ai
+     * file CSV i dati vengono letti da essa; altrimenti vengono letti dai CSV e l'istantanea viene
+     * riscritta per l'avvio successivo.
+     * Infine vengono completate le eventuali transazioni interrotte presenti nel registro delle transazioni.
+     *
+     * @throws IOException  se si verifica un errore di I/O
+     * @throws CsvException se si verifica un errore nel parsing del CSV
+     */
+    public static synchronized void inizializza() throws IOException, CsvException {
+        if (archivio == null) {
+            MigrazioneIdentificativi.esegui(DATASET_UTENTI, DATASET_RISTORANTI, DATASET_RECENSIONI, DATASET_PREFERITI,
+                    List.of(REGISTRO_RECENSIONI.registroPrecedente(), REGISTRO_RECENSIONI.registro()),
+                    INTESTAZIONE_RECENSIONI, INTESTAZIONE_PREFERITI);
+
+            // L'istantanea binaria è valida solo se i file CSV non sono cambiati da quando è stata scritta
+            ArchivioDati istantanea = IstantaneaArchivio.leggi(ISTANTANEA,
+                    DATASET_UTENTI, DATASET_RISTORANTI, DATASET_RECENSIONI, DATASET_PREFERITI);
+            boolean istantaneaDaAggiornare = istantanea == null;
+
+            ArchivioDati nuovoArchivio = istantanea != null ? istantanea : caricaDaFile();
+            caricaRegistroRecensioni(nuovoArchivio);
+
+            // Le transazioni interrotte prima di essere applicate a tutti i file vengono completate
+            if (REGISTRO_TRANSAZIONI.ripristina(operazioni -> ripristinaTransazione(operazioni, nuovoArchivio)) > 0) {
+                istantaneaDaAggiornare = true;
+            }
+            archivio = nuovoArchivio;
+
+            // Un registro ruotato ancora presente indica una compattazione interrotta
+            if (REGISTRO_RECENSIONI.haCompattazioneInSospeso()) {
+                REGISTRO_RECENSIONI.compatta(new ArrayList<>(nuovoArchivio.recensioni()),
+                        GestoreFile::creaRigaDaRecensione);
+                istantaneaDaAggiornare = true;
+            }
+
+            if (istantaneaDaAggiornare) {
+                try {
+                    catturaIstantanea(nuovoArchivio, new ArrayList<>(nuovoArchivio.recensioni()))
+                            .scrivi(ISTANTANEA, DATASET_RECENSIONI);
+                } catch (IOException e) {
+                    // Senza istantanea il prossimo avvio rileggerà i file CSV
+                    System.err.println("Errore nel salvataggio dell'istantanea dei dati: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Carica i quattro dataset dai file CSV.
+     *
+     * @return L'archivio con i dati letti
+     * @throws IOException se si verifica un errore di I/O
+     */
+    private static ArchivioDati caricaDaFile() throws IOException {
+        ArchivioDati archivio = new ArchivioDati();
+        caricaUtentiDaFile(archivio);
+        caricaRistorantiDaFile(archivio);
+        caricaRecensioniDaFile(archivio);
+        caricaPreferitiDaFile(archivio);
+        return archivio;
+    }
+
+    /**
+     * Cattura il contenuto dell'archivio insieme allo stato dei file di utenti, ristoranti e preferiti.
+     */
+    private static IstantaneaArchivio catturaIstantanea(ArchivioDati archivio, ArrayList<Recensione> recensioni)
+            throws IOException {
+        return IstantaneaArchivio.cattura(archivio, recensioni, DATASET_UTENTI, DATASET_RISTORANTI, DATASET_PREFERITI);
+    }
+
+    /**
+     * Restituisce l'archivio in memoria, caricandolo se necessario.
+     *
+     * @return L'archivio dei dati
+     * @throws IOException  se si verifica un errore di I/O
+     * @throws CsvException se si verifica un errore nel parsing del CSV
+     */
+    private static ArchivioDati archivio() throws IOException, CsvException {
+        if (archivio == null) {
+            inizializza();
+        }
+        return archivio;
+    }
+
+    /**
+     * Apre un flusso sulle righe di un file CSV, lette una alla volta dal file.
+     * <p>
+     * Il file resta aperto finché il flusso non viene chiuso: il flusso va quindi
+     * usato in un try-with-resources.
+     *
+     * @param file Path del file da leggere
+     * @return Flusso delle righe del file, intestazione compresa
+     * @throws IOException se il file non può essere aperto
+     */
+    private static Stream<String[]> righe(Path file) throws IOException {
+        CSVReader reader = new CSVReader(Files.newBufferedReader(file));
+        Spliterator<String[]> righe = Spliterators.spliteratorUnknownSize(reader.iterator(),
+                Spliterator.ORDERED | Spliterator.NONNULL);
+
+        return StreamSupport.stream(righe, false).onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Legge il file degli utenti e li registra nell'archivio.
+     */
+    private static void caricaUtentiDaFile(ArchivioDati archivio) throws IOException {
+        try (LettoreCSV riga = new LettoreCSV(DATASET_UTENTI, 1)) {
+            while (riga.prossima()) {
+                Utente utente = creaUtenteDaRiga(riga);
+                if (utente != null) {
+                    archivio.aggiungiUtente(utente, utente.getId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Legge il file dei ristoranti e li registra nell'archivio.
+     * Deve essere invocato dopo il caricamento degli utenti.
+     */
+    private static void caricaRistorantiDaFile(ArchivioDati archivio) throws IOException {
+        try (LettoreCSV riga = new LettoreCSV(DATASET_RISTORANTI, 1)) {
+            while (riga.prossima()) {
+                Ristorante ristorante = creaRistoranteDaRiga(riga, archivio);
+                if (ristorante != null) {
+                    archivio.aggiungiRistorante(ristorante, ristorante.getId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Legge il file delle recensioni e le registra nell'archivio.
+     * Deve essere invocato dopo il caricamento di utenti e ristoranti.
+     */
+    private static void caricaRecensioniDaFile(ArchivioDati archivio) throws IOException {
+        try (LettoreCSV riga = new LettoreCSV(DATASET_RECENSIONI, 1)) {
+            while (riga.prossima()) {
+                Recensione recensione = creaRecensioneDaRiga(riga, archivio);
+                if (recensione != null) {
+                    archivio.aggiungiRecensione(recensione);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applica all'archivio le modifiche alle recensioni presenti nel registro.
+     * Deve essere invocato dopo il caricamento del file delle recensioni.
+     */
+    private static void caricaRegistroRecensioni(ArchivioDati archivio) throws IOException {
+        REGISTRO_RECENSIONI.rileggi((operazione, riga) -> {
+            if (RegistroRecensioni.ELIMINA.equals(operazione)) {
+                Cliente cliente = cercaClienteDaRiga(riga, ColonneRecensioneCSV.ID_CLIENTE, archivio);
+                Ristorante ristorante = cercaRistoranteDaRiga(riga, ColonneRecensioneCSV.ID_RISTORANTE, archivio);
+                if (cliente != null && ristorante != null) {
+                    archivio.rimuoviRecensione(cliente.getUsername(), ristorante);
+                }
+            } else if (RegistroRecensioni.AGGIORNA.equals(operazione)) {
+                Recensione recensione = creaRecensioneDaRiga(riga, archivio);
+                if (recensione != null) {
+                    archivio.aggiungiRecensione(recensione);
+                }
+            }
+        });
+    }
+
+    /**
+     * Legge il file dei preferiti e li registra nell'archivio.
+     * Deve essere invocato dopo il caricamento dei ristoranti.
+     */
+    private static void caricaPreferitiDaFile(ArchivioDati archivio) throws IOException {
+        try (LettoreCSV riga = new LettoreCSV(DATASET_PREFERITI, 1)) {
+            while (riga.prossima()) {
+                Cliente cliente = cercaClienteDaRiga(riga, ColonnePreferitiCSV.ID_CLIENTE, archivio);
+                Ristorante ristorante = cercaRistoranteDaRiga(riga, ColonnePreferitiCSV.ID_RISTORANTE, archivio);
+                if (cliente != null && ristorante != null) {
+                    archivio.aggiungiPreferito(cliente.getUsername(), ristorante);
+                }
+            }
+        }
+    }
+
+    /**
+     * Riapplica una transazione letta dal registro delle transazioni.
+     * Ogni operazione viene eseguita solo se il suo effetto non è già presente nell'archivio.
+     *
+     * @param operazioni Operazioni della transazione
+     * @param archivio   Archivio caricato dai file
+     * @return {@code true} se almeno un'operazione ha modificato i file
+     * @throws IOException se si verifica un errore di I/O
+     */
+    private static boolean ripristinaTransazione(List<RegistroTransazioni.Operazione> operazioni,
+                                                 ArchivioDati archivio) throws IOException {
+        boolean modificato = false;
+        for (RegistroTransazioni.Operazione operazione : operazioni) {
+            if (ripristinaOperazione(operazione.tipo(), operazione.riga(), archivio)) {
+                modificato = true;
+            }
+        }
+        return modificato;
+    }
+
+    /**
+     * Riapplica una singola operazione del registro delle transazioni, se non è già stata applicata.
+     *
+     * @return {@code true} se l'operazione ha modificato i file
+     */
+    private static boolean ripristinaOperazione(String tipo, String[] registrati, ArchivioDati archivio)
+            throws IOException {
+        String[] dati = convertiFormatoPrecedente(tipo, registrati, archivio);
+        if (dati == null) {
+            return false;
+        }
+        RigaCSV riga = RigaCSV.di(dati);
+
+        switch (tipo) {
+            case OperazioniTransazione.AGGIUNGI_UTENTE -> {
+                Utente utente = creaUtenteDaRiga(riga);
+                if (utente == null || archivio.cercaUtente(utente.getUsername()) != null) {
+                    return false;
+                }
+                ScrittoreCSV.attendi(SCRITTORE_UTENTI.accoda(dati));
+                archivio.aggiungiUtente(utente, utente.getId());
+            }
+            case OperazioniTransazione.AGGIUNGI_RISTORANTE -> {
+                Ristorante ristorante = creaRistoranteDaRiga(riga, archivio);
+                if (ristorante == null || archivio.cercaRistorante(ristorante.getChiave()) != null) {
+                    return false;
+                }
+                ScrittoreCSV.attendi(SCRITTORE_RISTORANTI.accoda(dati));
+                archivio.aggiungiRistorante(ristorante, ristorante.getId());
+            }
+            case OperazioniTransazione.AGGIORNA_RECENSIONE -> {
+                Recensione recensione = creaRecensioneDaRiga(riga, archivio);
+                if (recensione == null) {
+                    return false;
+                }
+                Recensione esistente = archivio.cercaRecensione(recensione.getCliente().getUsername(),
+                        recensione.getRistorante());
+                if (esistente != null && Arrays.equals(creaRigaDaRecensione(esistente), dati)) {
+                    return false;
+                }
+                ScrittoreCSV.attendi(REGISTRO_RECENSIONI.registra(RegistroRecensioni.AGGIORNA, dati));
+                archivio.aggiungiRecensione(recensione);
+            }
+            case OperazioniTransazione.ELIMINA_RECENSIONE -> {
+                Cliente cliente = cercaClienteDaRiga(riga, ColonneRecensioneCSV.ID_CLIENTE, archivio);
+                Ristorante ristorante = cercaRistoranteDaRiga(riga, ColonneRecensioneCSV.ID_RISTORANTE, archivio);
+                if (cliente == null || ristorante == null
+                        || archivio.cercaRecensione(cliente.getUsername(), ristorante) == null) {
+                    return false;
+                }
+                ScrittoreCSV.attendi(REGISTRO_RECENSIONI.registra(RegistroRecensioni.ELIMINA, dati));
+                archivio.rimuoviRecensione(cliente.getUsername(), ristorante);
+            }
+            case OperazioniTransazione.AGGIUNGI_PREFERITO -> {
+                Cliente cliente = cercaClienteDaRiga(riga, ColonnePreferitiCSV.ID_CLIENTE, archivio);
+                Ristorante ristorante = cercaRistoranteDaRiga(riga, ColonnePreferitiCSV.ID_RISTORANTE, archivio);
+                if (cliente == null || ristorante == null || archivio.esistePreferito(cliente.getUsername(), ristorante)) {
+                    return false;
+                }
+                ScrittoreCSV.attendi(SCRITTORE_PREFERITI.accoda(dati));
+                archivio.aggiungiPreferito(cliente.getUsername(), ristorante);
+            }
+            case OperazioniTransazione.RIMUOVI_PREFERITO -> {
+                Cliente cliente = cercaClienteDaRiga(riga, ColonnePreferitiCSV.ID_CLIENTE, archivio);
+                Ristorante ristorante = cercaRistoranteDaRiga(riga, ColonnePreferitiCSV.ID_RISTORANTE, archivio);
+                if (cliente == null || ristorante == null || !archivio.esistePreferito(cliente.getUsername(), ristorante)) {
+                    return false;
+                }
+                rimuoviRigaPreferito(cliente, ristorante);
+                archivio.rimuoviPreferito(cliente.getUsername(), ristorante);
+            }
+            default -> {
+                System.err.println("Operazione sconosciuta nel registro delle transazioni: " + tipo);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converte nel formato con identificativi la riga di un'operazione registrata prima della conversione
+     * dei file ({@link MigrazioneIdentificativi}). Le righe del formato precedente si riconoscono dal numero
+     * di colonne: quelle degli utenti e dei ristoranti non hanno l'identificativo, quelle delle recensioni
+     * e dei preferiti riferiscono cliente e ristorante con più colonne.
+     *
+     * @return La riga nel formato con identificativi, invariata se lo era già, o {@code null} se riferisce
+     * un utente o un ristorante inesistente
+     */
+    private static String[] convertiFormatoPrecedente(String tipo, String[] dati, ArchivioDati archivio) {
+        return switch (tipo) {
+            case OperazioniTransazione.AGGIUNGI_UTENTE -> dati.length == MigrazioneIdentificativi.COLONNE_UTENTE
+                    ? MigrazioneIdentificativi.conIdentificativo(archivio.prossimoIdUtente(), dati) : dati;
+            case OperazioniTransazione.AGGIUNGI_RISTORANTE -> dati.length == MigrazioneIdentificativi.COLONNE_RISTORANTE
+                    ? MigrazioneIdentificativi.conIdentificativo(archivio.prossimoIdRistorante(), dati) : dati;
+            case OperazioniTransazione.AGGIORNA_RECENSIONE -> dati.length > INTESTAZIONE_RECENSIONI.length
+                    ? MigrazioneIdentificativi.convertiRiferimento(dati, MigrazioneIdentificativi.di(archivio)) : dati;
+            default -> dati.length > INTESTAZIONE_PREFERITI.length
+                    ? MigrazioneIdentificativi.convertiRiferimento(dati, MigrazioneIdentificativi.di(archivio)) : dati;
+        };
+    }
+
+    /**
+     * Attende che la scrittura di una modifica sia su disco e chiude la sua transazione.
+     * <p>
+     * Va invocato tenendo ancora i blocchi dei dataset e prima di aggiornare l'archivio, così che
+     * l'archivio riceva solo modifiche già su disco e nessun altro thread modifichi lo stesso record
+     * nel frattempo. Le modifiche di altri thread a record diversi continuano a essere scritte nello
+     * stesso lotto.
+     *
+     * @param transazione Transazione della modifica
+     * @param scrittura   Attesa della scrittura dell'ultima riga della modifica
+     * @throws IOException se la scrittura non è andata a buon fine
+     */
+    private static void completa(RegistroTransazioni.Transazione transazione, CompletableFuture<Void> scrittura)
+            throws IOException {
+        // La transazione va chiusa solo dopo la scrittura: chiuderla permette di svuotare il registro
+        try (transazione) {
+            ScrittoreCSV.attendi(scrittura);
+        }
+    }
+
+    //endregion
+
     //region === OPERAZIONI I/O SUI RISTORANTI ===
 
     /**
@@ -185,20 +580,59 @@ public class GestoreFile {
      * @throws CsvException se si verifica un errore nel parsing del CSV
      */
     public static ArrayList<Ristorante> caricaRistoranti() throws IOException, CsvException {
-        ArrayList<Ristorante> ristoranti = new ArrayList<>();
+        ArchivioDati archivio = archivio();
+        try (Blocco _ = BLOCCHI.lettura(Dataset.RISTORANTI)) {
+            return new ArrayList<>(archivio.ristoranti());
+        }
+    }
 
-        try (CSVReader reader = new CSVReader(new FileReader(DATASET_RISTORANTI.toFile()))) {
-            List<String[]> righe = reader.readAll();
+    /**
+     * Restituisce un flusso sui ristoranti, senza copiarli in una nuova lista.
+     * <p>
+     * Adatto alle ricerche che filtrano i ristoranti o si fermano al primo risultato.
+     * Finché il flusso non viene chiuso i ristoranti restano bloccati in lettura: il flusso va
+     * quindi usato in un try-with-resources e chiuso dallo stesso thread che lo ha aperto.
+     *
+     * @return Flusso dei ristoranti, nell'ordine del file
+     * @throws IOException  se si verifica un errore di I/O
+     * @throws CsvException se si verifica un errore nel parsing del CSV
+     */
+    public static Stream<Ristorante> flussoRistoranti() throws IOException, CsvException {
+        ArchivioDati archivio = archivio();
+        Blocco blocco = BLOCCHI.lettura(Dataset.RISTORANTI);
+        return archivio.ristoranti().stream().onClose(blocco::close);
+    }
 
-            // Salta l'intestazione (prima riga)
-            for (int i = 1; i < righe.size(); i++) {
-                String[] riga = righe.get(i);
-                Ristorante ristorante = creaRistoranteDaRiga(riga);
-                ristoranti.add(ristorante);
-            }
-        }
+    /**
+     * Restituisce un flusso sui ristoranti a partire dalla posizione indicata.
+     * <p>
+     * Poiché i ristoranti vengono solo aggiunti in fondo, permette a chi mantiene una copia dei
+     * ristoranti di leggere soltanto quelli aggiunti dopo l'ultima lettura. Valgono le stesse regole
+     * di chiusura di {@link #flussoRistoranti()}.
+     *
+     * @param primo Posizione del primo ristorante del flusso
+     * @return Flusso dei ristoranti dalla posizione {@code primo} in poi, nell'ordine del file
+     * @throws IOException  se si verifica un errore di I/O
+     * @throws CsvException se si verifica un errore nel parsing del CSV
+     */
+    public static Stream<Ristorante> flussoRistoranti(int primo) throws IOException, CsvException {
+        ArchivioDati archivio = archivio();
+        Blocco blocco = BLOCCHI.lettura(Dataset.RISTORANTI);
+        return archivio.ristoranti(primo).stream().onClose(blocco::close);
+    }
 
-        return ristoranti;
+    /**
+     * Restituisce il numero di ristoranti presenti.
+     *
+     * @return Numero di ristoranti
+     * @throws IOException  se si verifica un errore di I/O
+     * @throws CsvException se si verifica un errore nel parsing del CSV
+     */
+    public static int numeroRistoranti() throws IOException, CsvException {
+        ArchivioDati archivio = archivio();
+        try (Blocco _ = BLOCCHI.lettura(Dataset.RISTORANTI)) {
+            return archivio.numeroRistoranti();
+        }
     }
 
     /**
@@ -216,15 +650,11 @@ public class GestoreFile {
         }
 
         ArrayList<Ristorante> ristoranti = new ArrayList<>();
+        ArchivioDati archivio = archivio();
 
-        try (CSVReader reader = new CSVReader(new FileReader(DATASET_RISTORANTI.toFile()))) {
-            List<String[]> righe = reader.readAll();
-
-            // Salta l'intestazione (prima riga)
-            for (int i = 1; i < righe.size(); i++) {
-                String[] riga = righe.get(i);
-                if (username.equals(riga[ColonneRistoranteCSV.USERNAME])) {
-                    Ristorante ristorante = creaRistoranteDaRiga(riga);
+        try (Blocco _ = BLOCCHI.lettura(Dataset.RISTORANTI)) {
+            for (Ristorante ristorante : archivio.ristoranti()) {
+                if (username.equals(ristorante.getUsernameProprietario())) {
                     ristoranti.add(ristorante);
                 }
             }
@@ -243,13 +673,21 @@ public class GestoreFile {
      * @throws CsvException se si verifica un errore nel parsing del CSV
      */
     public static boolean aggiungiRistorante(Ristorante ristorante) throws IOException, CsvException {
-        if (esisteRistorante(ristorante.getNome(), ristorante.getLocalita())) {
-            return false;
-        }
+        ArchivioDati archivio = archivio();
+
+        try (Blocco _ = BLOCCHI.scrittura(Dataset.RISTORANTI)) {
+            if (archivio.cercaRistorante(ristorante.getChiave()) != null) {
+                return false;
+            }
+
+            int id = archivio.prossimoIdRistorante();
+            String[] datiRistorante = creaRigaDaRistorante(ristorante, id);
+            RegistroTransazioni.Transazione transazione = REGISTRO_TRANSAZIONI.inizia(
+                    new RegistroTransazioni.Operazione(OperazioniTransazione.AGGIUNGI_RISTORANTE, datiRistorante));
+            completa(transazione, SCRITTORE_RISTORANTI.accoda(datiRistorante));
 
-        try (CSVWriter writer = new CSVWriter(new FileWriter(DATASET_RISTORANTI.toFile(), true))) {
-            String[] datiRistorante = creaRigaDaRistorante(ristorante);
-            writer.writeNext(datiRistorante);
+            // L'archivio riceve il ristorante, e il ristorante il suo identificativo, solo quando è su disco
+            archivio.aggiungiRistorante(ristorante, id);
         }
 
         return true;
@@ -265,34 +703,26 @@ public class GestoreFile {
      * @throws CsvException se si verifica un errore nel parsing del CSV
      */
     public static Ristorante cercaRistorante(String nome, Localita localita) throws IOException, CsvException {
-        try (CSVReader reader = new CSVReader(new FileReader(DATASET_RISTORANTI.toFile()))) {
-            List<String[]> righe = reader.readAll();
-
-            // Salta l'intestazione (prima riga)
-            for (int i = 1; i < righe.size(); i++) {
-                String[] riga = righe.get(i);
-
-                String nomeFile = riga[ColonneRistoranteCSV.NOME];
-                String nazioneFile = riga[ColonneRistoranteCSV.NAZIONE];
-                String cittaFile = riga[ColonneRistoranteCSV.CITTA];
-                String indirizzoFile = riga[ColonneRistoranteCSV.INDIRIZZO];
-                double latitudineFile = Double.parseDouble(riga[ColonneRistoranteCSV.LATITUDINE]);
-                double longitudineFile = Double.parseDouble(riga[ColonneRistoranteCSV.LONGITUDINE]);
-
-                // Controlla se corrisponde al ristorante cercato
-                if (nomeFile.equals(nome) &&
-                        nazioneFile.equals(localita.getNazione()) &&
-                        cittaFile.equals(localita.getCitta()) &&
-                        indirizzoFile.equals(localita.getIndirizzo()) &&
-                        latitudineFile == localita.getLatitudine() &&
-                        longitudineFile == localita.getLongitudine()) {
-
-                    return creaRistoranteDaRiga(riga);
-                }
-            }
+        ArchivioDati archivio = archivio();
+        try (Blocco _ = BLOCCHI.lettura(Dataset.RISTORANTI)) {
+            // La chiave confronta la località come Localita#equals, senza esaminare gli altri ristoranti
+            return archivio.cercaRistorante(Ristorante.calcolaChiave(nome, localita));
         }
+    }
 
-        return null;
+    /**
+     * Restituisce l'istanza registrata in archivio di un ristorante, ad esempio a partire da una sua copia.
+     *
+     * @param ristorante Il ristorante da risolvere
+     * @return Il ristorante in archivio o null se non esiste
+     * @throws IOException  se si verifica un errore di I/O
+     * @throws CsvException se si verifica un errore nel parsing del CSV
+     */
+    public static Ristorante risolviRistorante(Ristorante ristorante) throws IOException, CsvException {
+        ArchivioDati archivio = archivio();
+        try (Blocco _ = BLOCCHI.lettura(Dataset.RISTORANTI)) {
+            return archivio.risolviRistorante(ristorante);
+        }
     }
 
     /**
@@ -308,33 +738,40 @@ public class GestoreFile {
         return cercaRistorante(nome, localita) != null;
     }
 
-    private static Ristorante creaRistoranteDaRiga(String[] riga) {
+    /**
+     * Crea un oggetto Ristorante da una riga del CSV.
+     * Il proprietario viene cercato tra gli utenti già presenti nell'archivio.
+     */
+    private static Ristorante creaRistoranteDaRiga(RigaCSV riga, ArchivioDati archivio) {
         try {
             // Estrai i dati dalla riga
-            String nome = riga[ColonneRistoranteCSV.NOME];
-            String nazione = riga[ColonneRistoranteCSV.NAZIONE];
-            String citta = riga[ColonneRistoranteCSV.CITTA];
-            String indirizzo = riga[ColonneRistoranteCSV.INDIRIZZO];
-            double latitudine = Double.parseDouble(riga[ColonneRistoranteCSV.LATITUDINE]);
-            double longitudine = Double.parseDouble(riga[ColonneRistoranteCSV.LONGITUDINE]);
-            float prezzoMedio = Float.parseFloat(riga[ColonneRistoranteCSV.PREZZO_MEDIO]);
-            boolean delivery = Boolean.parseBoolean(riga[ColonneRistoranteCSV.DELIVERY]);
-            boolean prenotazione = Boolean.parseBoolean(riga[ColonneRistoranteCSV.PRENOTAZIONE]);
-            TipoCucina tipoCucina = TipoCucina.valueOf(riga[ColonneRistoranteCSV.TIPO_CUCINA].toUpperCase());
-            String descrizione = riga[ColonneRistoranteCSV.DESCRIZIONE];
-            String usernameProprietario = riga[ColonneRistoranteCSV.USERNAME];
+            int id = riga.intero(ColonneRistoranteCSV.ID);
+            String nome = riga.stringa(ColonneRistoranteCSV.NOME);
+            String nazione = riga.stringa(ColonneRistoranteCSV.NAZIONE);
+            String citta = riga.stringa(ColonneRistoranteCSV.CITTA);
+            String indirizzo = riga.stringa(ColonneRistoranteCSV.INDIRIZZO);
+            double latitudine = riga.decimale(ColonneRistoranteCSV.LATITUDINE);
+            double longitudine = riga.decimale(ColonneRistoranteCSV.LONGITUDINE);
+            float prezzoMedio = Float.parseFloat(riga.stringa(ColonneRistoranteCSV.PREZZO_MEDIO));
+            boolean delivery = VALORE_SI.equalsIgnoreCase(riga.stringa(ColonneRistoranteCSV.DELIVERY));
+            boolean prenotazione = VALORE_SI.equalsIgnoreCase(riga.stringa(ColonneRistoranteCSV.PRENOTAZIONE));
+            TipoCucina tipoCucina = TipoCucina.valueOf(riga.stringa(ColonneRistoranteCSV.TIPO_CUCINA).toUpperCase());
+            String descrizione = riga.stringa(ColonneRistoranteCSV.DESCRIZIONE);
+            String usernameProprietario = riga.stringa(ColonneRistoranteCSV.USERNAME);
 
             // Crea la località
             Localita localita = new Localita(nazione, citta, indirizzo, latitudine, longitudine);
 
             // Cerca il ristoratore tramite username
-            Utente utente = cercaUtente(usernameProprietario);
+            Utente utente = archivio.cercaUtente(usernameProprietario);
             if (!(utente instanceof Ristoratore proprietario)) {
                 System.err.println("Ristoratore non trovato o non valido per username: " + usernameProprietario);
                 return null;
             }
-            return new Ristorante(nome, localita, tipoCucina, delivery, prenotazione,
+            Ristorante ristorante = new Ristorante(nome, localita, tipoCucina, delivery, prenotazione,
                     prezzoMedio, descrizione, proprietario);
+            ristorante.setId(id);
+            return ristorante;
 
         } catch (Exception e) {
             System.err.println("Errore nella creazione del ristorante dalla riga CSV: " + e.getMessage());
@@ -344,9 +781,13 @@ public class GestoreFile {
 
     /**
      * Converte un oggetto Ristorante in un array di stringhe per il CSV.
+     *
+     * @param ristorante Il ristorante da convertire
+     * @param id         Identificativo con cui il ristorante viene salvato
      */
-    private static String[] creaRigaDaRistorante(Ristorante ristorante) {
+    private static String[] creaRigaDaRistorante(Ristorante ristorante, int id) {
         return new String[]{
+                String.valueOf(id),
                 ristorante.getNome(),
                 String.valueOf(ristorante.getPrezzoMedio()),
                 String.valueOf(ristorante.getTipoDiCucina()),
@@ -376,13 +817,21 @@ public class GestoreFile {
      * @throws CsvException se si verifica un errore nel parsing del CSV
      */
     public static boolean aggiungiUtente(Utente utente) throws IOException, CsvException {
-        if (esisteUtente(utente.getUsername())) {
-            return false;
-        }
+        ArchivioDati archivio = archivio();
 
-        try (CSVWriter writer = new CSVWriter(new FileWriter(DATASET_UTENTI.toFile(), true))) {
-            String[] datiUtente = creaRigaDaUtente(utente);
-            writer.writeNext(datiUtente);
+        try (Blocco _ = BLOCCHI.scrittura(Dataset.UTENTI)) {
+            if (archivio.cercaUtente(utente.getUsername()) != null) {
+                return false;
+            }
+
+            int id = archivio.prossimoIdUtente();
+            String[] datiUtente = creaRigaDaUtente(utente, id);
+            RegistroTransazioni.Transazione transazione = REGISTRO_TRANSAZIONI.inizia(
+                    new RegistroTransazioni.Operazione(OperazioniTransazione.AGGIUNGI_UTENTE, datiUtente));
+            completa(transazione, SCRITTORE_UTENTI.accoda(datiUtente));
+
+            // L'archivio riceve l'utente, e l'utente il suo identificativo, solo quando è su disco
+            archivio.aggiungiUtente(utente, id);
         }
         return true;
     }
@@ -397,20 +846,10 @@ public class GestoreFile {
      * @throws CsvException se si verifica un errore nel parsing del CSV
      */
     public static Utente cercaUtente(String username) throws IOException, CsvException {
-        try (BufferedReader br = Files.newBufferedReader(DATASET_UTENTI);
-
-             CSVReader reader = new CSVReaderBuilder(br)
-                     .withSkipLines(1)
-                     .build()) {
-
-            String[] riga;
-            while ((riga = reader.readNext()) != null) {
-                if (username.equals(riga[ColonneUtenteCSV.USERNAME])) {
-                    return creaUtenteDaRiga(riga);
-                }
-            }
+        ArchivioDati archivio = archivio();
+        try (Blocco _ = BLOCCHI.lettura(Dataset.UTENTI)) {
+            return archivio.cercaUtente(username);
         }
-        return null;
     }
 
     /**
@@ -440,22 +879,11 @@ public class GestoreFile {
             return null;
         }
 
-        try (BufferedReader br = Files.newBufferedReader(DATASET_UTENTI);
-             CSVReader reader = new CSVReaderBuilder(br)
-                     .withSkipLines(1)
-                     .build()) {
-
-            String[] riga;
-            while ((riga = reader.readNext()) != null) {
-                if (username.equals(riga[ColonneUtenteCSV.USERNAME])) {
-                    Utente utente = creaUtenteDaRiga(riga);
+        // La verifica della password, lenta, avviene senza tenere il blocco degli utenti
+        Utente utente = cercaUtente(username);
 
-                    if (utente != null && utente.verificaPassword(password)) {
-                        return utente;
-                    }
-                    return null;
-                }
-            }
+        if (utente != null && utente.verificaPassword(password)) {
+            return utente;
         }
         return null;
     }
@@ -463,32 +891,33 @@ public class GestoreFile {
     /**
      * Crea un oggetto Utente (Cliente o Ristoratore) da una riga del CSV.
      */
-    private static Utente creaUtenteDaRiga(String[] riga) {
+    private static Utente creaUtenteDaRiga(RigaCSV riga) {
         try {
-            String nome = riga[ColonneUtenteCSV.NOME];
-            String cognome = riga[ColonneUtenteCSV.COGNOME];
-            String username = riga[ColonneUtenteCSV.USERNAME];
-            String password = riga[ColonneUtenteCSV.PASSWORD];
-            LocalDate dataNascita = riga[ColonneUtenteCSV.DATA_NASCITA].isEmpty() ?
-                    null : LocalDate.parse(riga[ColonneUtenteCSV.DATA_NASCITA]);
-            String luogoDomicilio = riga[ColonneUtenteCSV.LUOGO_DOMICILIO];
-            String tipoUtente = riga[ColonneUtenteCSV.TIPO_UTENTE];
+            int id = riga.intero(ColonneUtenteCSV.ID);
+            String nome = riga.stringa(ColonneUtenteCSV.NOME);
+            String cognome = riga.stringa(ColonneUtenteCSV.COGNOME);
+            String username = riga.stringa(ColonneUtenteCSV.USERNAME);
+            String password = riga.stringa(ColonneUtenteCSV.PASSWORD);
+            LocalDate dataNascita = riga.vuota(ColonneUtenteCSV.DATA_NASCITA) ?
+                    null : LocalDate.parse(riga.stringa(ColonneUtenteCSV.DATA_NASCITA));
+            String luogoDomicilio = riga.stringa(ColonneUtenteCSV.LUOGO_DOMICILIO);
+            String tipoUtente = riga.stringa(ColonneUtenteCSV.TIPO_UTENTE);
 
             Utente utente;
 
+            // La password nel file è già cifrata: non viene cifrata di nuovo
             switch (tipoUtente.toLowerCase()) {
                 case "cliente":
-                    utente = new Cliente(nome, cognome, username, "temp", dataNascita, luogoDomicilio);
+                    utente = new Cliente(nome, cognome, username, password, dataNascita, luogoDomicilio, true);
                     break;
                 case "ristoratore":
-                    utente = new Ristoratore(nome, cognome, username, "temp", dataNascita, luogoDomicilio);
+                    utente = new Ristoratore(nome, cognome, username, password, dataNascita, luogoDomicilio, true);
                     break;
                 default:
                     return null;
             }
 
-            // Imposta la password già cifrata
-            utente.setPasswordCifrata(password);
+            utente.setId(id);
             return utente;
 
         } catch (Exception e) {
@@ -498,9 +927,13 @@ public class GestoreFile {
 
     /**
      * Converte un oggetto Utente in un array di stringhe per il CSV.
+     *
+     * @param utente L'utente da convertire
+     * @param id     Identificativo con cui l'utente viene salvato
      */
-    private static String[] creaRigaDaUtente(Utente utente) {
+    private static String[] creaRigaDaUtente(Utente utente, int id) {
         return new String[]{
+                String.valueOf(id),
                 utente.getNome(),
                 utente.getCognome(),
                 utente.getUsername(),
@@ -523,21 +956,10 @@ public class GestoreFile {
      * @throws CsvException se si verifica un errore nel parsing del CSV
      */
     public static ArrayList<Recensione> caricaRecensioni() throws IOException, CsvException {
-        ArrayList<Recensione> recensioni = new ArrayList<>();
-
-        try (CSVReader reader = new CSVReader(new FileReader(DATASET_RECENSIONI.toFile()))) {
-            List<String[]> righe = reader.readAll();
-
-            // Salta l'intestazione (prima riga)
-            for (int i = 1; i < righe.size(); i++) {
-                String[] riga = righe.get(i);
-                Recensione recensione = creaRecensioneDaRiga(riga);
-                if (recensione != null) {
-                    recensioni.add(recensione);
-                }
-            }
+        ArchivioDati archivio = archivio();
+        try (Blocco _ = BLOCCHI.lettura(Dataset.RECENSIONI)) {
+            return new ArrayList<>(archivio.recensioni());
         }
-        return recensioni;
     }
 
     /**
@@ -550,16 +972,27 @@ public class GestoreFile {
      * @throws CsvException se si verifica un errore nel parsing del CSV
      */
     public static boolean aggiungiRecensione(Recensione recensione) throws IOException, CsvException {
-        Recensione recensioneEsistente = cercaRecensione(recensione.getCliente(), recensione.getRistorante());
+        ArchivioDati archivio = archivio();
 
-        if (recensioneEsistente != null) {
-            return false;
-        }
+        // Le recensioni di ristoranti diversi possono essere modificate in parallelo
+        try (Blocco _ = BLOCCHI.scritturaRecord(Dataset.RECENSIONI, recensione.getRistorante().getNome())) {
+            Recensione recensioneEsistente = archivio.cercaRecensione(recensione.getCliente().getUsername(),
+                    recensione.getRistorante());
+
+            if (recensioneEsistente != null
+                    || !archivio.registrati(recensione.getCliente(), recensione.getRistorante())) {
+                return false;
+            }
 
-        try (CSVWriter csvWriter = new CSVWriter(new FileWriter(DATASET_RECENSIONI.toFile(), true))) {
             String[] datiRecensione = creaRigaDaRecensione(recensione);
-            csvWriter.writeNext(datiRecensione);
+            RegistroTransazioni.Transazione transazione = REGISTRO_TRANSAZIONI.inizia(
+                    new RegistroTransazioni.Operazione(OperazioniTransazione.AGGIORNA_RECENSIONE, datiRecensione));
+            completa(transazione, REGISTRO_RECENSIONI.registra(RegistroRecensioni.AGGIORNA, datiRecensione));
+
+            // L'archivio riceve la recensione solo quando è su disco
+            archivio.aggiungiRecensione(recensione);
         }
+        verificaCompattazioneRecensioni();
         return true;
     }
 
@@ -572,15 +1005,10 @@ public class GestoreFile {
      * @throws CsvException se si verifica un errore nel parsing del CSV
      */
     public static ArrayList<Recensione> caricaRecensioniCliente(String username) throws IOException, CsvException {
-        ArrayList<Recensione> recensioniCliente = new ArrayList<>();
-
-        for (Recensione recensione : caricaRecensioni()) {
-            if (recensione.appartieneA(username)) {
-                recensioniCliente.add(recensione);
-            }
+        ArchivioDati archivio = archivio();
+        try (Blocco _ = BLOCCHI.lettura(Dataset.RECENSIONI)) {
+            return new ArrayList<>(archivio.recensioniCliente(username));
         }
-
-        return recensioniCliente;
     }
 
     /**
@@ -603,31 +1031,20 @@ public class GestoreFile {
      * @throws CsvException se si verifica un errore nel parsing del CSV
      */
     public static ArrayList<Recensione> caricaRecensioniRistorante(Ristorante ristorante) throws IOException, CsvException {
-        ArrayList<Recensione> recensioniRistorante = new ArrayList<>();
-
-        try (CSVReader reader = new CSVReader(new FileReader(DATASET_RECENSIONI.toFile()))) {
-            List<String[]> righe = reader.readAll();
-
-            // Salta l'intestazione (prima riga)
-            for (int i = 1; i < righe.size(); i++) {
-                String[] riga = righe.get(i);
-                Recensione recensione = creaRecensioneDaRiga(riga);
-
-                if (recensione != null && recensione.getRistorante().equals(ristorante)) {
-                    recensioniRistorante.add(recensione);
-                }
-            }
+        ArchivioDati archivio = archivio();
+        try (Blocco _ = BLOCCHI.letturaRecord(Dataset.RECENSIONI, ristorante.getNome())) {
+            return new ArrayList<>(archivio.recensioniRistorante(ristorante));
         }
-
-        return recensioniRistorante;
     }
 
 
     /**
-     * Aggiorna una recensione esistente nel file CSV
+     * Aggiorna una recensione esistente.
+     * La modifica viene accodata al registro delle recensioni senza riscrivere il file CSV.
      *
      * @param vecchiaRecensione La recensione da sostituire
      * @param nuovaRecensione   La nuova recensione
+     * @return {@code true} se la recensione è stata aggiornata, {@code false} se non esiste
      * @throws IOException  se si verifica un errore di I/O
      * @throws CsvException se si verifica un errore nel parsing del CSV
      */
@@ -642,20 +1059,66 @@ public class GestoreFile {
             return false;
         }
 
-        ArrayList<Recensione> tutteRecensioni = caricaRecensioni();
+        ArchivioDati archivio = archivio();
 
-        for (int i = 0; i < tutteRecensioni.size(); i++) {
-            if (tutteRecensioni.get(i).equals(vecchiaRecensione)) {
-                tutteRecensioni.set(i, nuovaRecensione);
-                break;
+        // Se la recensione cambia ristorante vengono bloccati i segmenti di entrambi
+        try (Blocco _ = BLOCCHI.scritturaRecord(Dataset.RECENSIONI,
+                vecchiaRecensione.getRistorante().getNome(), nuovaRecensione.getRistorante().getNome())) {
+            if (archivio.cercaRecensione(vecchiaRecensione.getCliente().getUsername(),
+                    vecchiaRecensione.getRistorante()) == null
+                    || !archivio.registrati(vecchiaRecensione.getCliente(), vecchiaRecensione.getRistorante())
+                    || !archivio.registrati(nuovaRecensione.getCliente(), nuovaRecensione.getRistorante())) {
+                return false;
             }
+
+            // Se cambia cliente o ristorante la vecchia recensione va nascosta con un tombstone:
+            // tombstone e nuova riga appartengono alla stessa transazione
+            boolean cambiaChiave = !vecchiaRecensione.equals(nuovaRecensione);
+            String[] chiaveVecchia = creaChiaveDaRecensione(vecchiaRecensione);
+            String[] datiNuova = creaRigaDaRecensione(nuovaRecensione);
+            RegistroTransazioni.Operazione aggiorna =
+                    new RegistroTransazioni.Operazione(OperazioniTransazione.AGGIORNA_RECENSIONE, datiNuova);
+
+            RegistroTransazioni.Transazione transazione;
+            if (cambiaChiave) {
+                transazione = REGISTRO_TRANSAZIONI.inizia(new RegistroTransazioni.Operazione(
+                        OperazioniTransazione.ELIMINA_RECENSIONE, chiaveVecchia), aggiorna);
+                REGISTRO_RECENSIONI.registra(RegistroRecensioni.ELIMINA, chiaveVecchia);
+            } else {
+                transazione = REGISTRO_TRANSAZIONI.inizia(aggiorna);
+            }
+            // I record sono scritti in ordine: basta attendere l'ultimo
+            completa(transazione, REGISTRO_RECENSIONI.registra(RegistroRecensioni.AGGIORNA, datiNuova));
+
+            // L'archivio viene aggiornato solo quando entrambi i record sono su disco
+            if (cambiaChiave) {
+                archivio.rimuoviRecensione(vecchiaRecensione);
+            }
+            archivio.aggiungiRecensione(nuovaRecensione);
         }
-        riscriviFileRecensioni(tutteRecensioni);
+        verificaCompattazioneRecensioni();
         return true;
     }
 
     /**
-     * Elimina una recensione dal file CSV
+     * Salva la risposta del ristoratore a una recensione già presente.
+     * Viene accodato al registro un solo record con lo stato aggiornato della recensione.
+     *
+     * @param recensione La recensione contenente la risposta da salvare
+     * @return {@code true} se la risposta è stata salvata, {@code false} se la recensione non esiste
+     * @throws IOException  se si verifica un errore di I/O
+     * @throws CsvException se si verifica un errore nel parsing del CSV
+     */
+    public static boolean salvaRispostaRecensione(Recensione recensione) throws IOException, CsvException {
+        if (recensione == null) {
+            return false;
+        }
+        return aggiornaRecensione(recensione, recensione);
+    }
+
+    /**
+     * Elimina una recensione.
+     * Viene accodato al registro un tombstone che la nasconde, senza riscrivere il file CSV.
      *
      * @param recensione La recensione da eliminare
      * @return {@code true} se la recensione è stata rimossa correttamente, {@code false} altrimenti
@@ -663,11 +1126,27 @@ public class GestoreFile {
      * @throws CsvException se si verifica un errore nel parsing del CSV
      */
     public static boolean eliminaRecensione(Recensione recensione) throws IOException, CsvException {
-        ArrayList<Recensione> tutteRecensioni = caricaRecensioni();
-        tutteRecensioni.removeIf(r -> r.equals(recensione));
+        if (recensione == null) {
+            return false;
+        }
+
+        ArchivioDati archivio = archivio();
+
+        try (Blocco _ = BLOCCHI.scritturaRecord(Dataset.RECENSIONI, recensione.getRistorante().getNome())) {
+            if (archivio.cercaRecensione(recensione.getCliente().getUsername(), recensione.getRistorante()) == null
+                    || !archivio.registrati(recensione.getCliente(), recensione.getRistorante())) {
+                return false;
+            }
 
-        // Riscrivi tutto il file
-        riscriviFileRecensioni(tutteRecensioni);
+            String[] chiave = creaChiaveDaRecensione(recensione);
+            RegistroTransazioni.Transazione transazione = REGISTRO_TRANSAZIONI.inizia(
+                    new RegistroTransazioni.Operazione(OperazioniTransazione.ELIMINA_RECENSIONE, chiave));
+            completa(transazione, REGISTRO_RECENSIONI.registra(RegistroRecensioni.ELIMINA, chiave));
+
+            // La recensione resta nell'archivio finché il tombstone non è su disco
+            archivio.rimuoviRecensione(recensione);
+        }
+        verificaCompattazioneRecensioni();
         return true;
     }
 
@@ -681,60 +1160,37 @@ public class GestoreFile {
      * @throws CsvException se si verifica un errore nel parsing del CSV
      */
     public static Recensione cercaRecensione(Cliente cliente, Ristorante ristorante) throws IOException, CsvException {
-        for (Recensione recensione : caricaRecensioni()) {
-            if (recensione.getCliente().equals(cliente) && recensione.getRistorante().equals(ristorante)) {
-                return recensione;
-            }
+        ArchivioDati archivio = archivio();
+        try (Blocco _ = BLOCCHI.letturaRecord(Dataset.RECENSIONI, ristorante.getNome())) {
+            return archivio.cercaRecensione(cliente.getUsername(), ristorante);
         }
-        return null;
     }
 
     /**
      * Crea un oggetto Recensione da una riga del CSV.
+     * Cliente e ristorante vengono cercati tra quelli già presenti nell'archivio.
      */
-    private static Recensione creaRecensioneDaRiga(String[] riga) {
+    private static Recensione creaRecensioneDaRiga(RigaCSV riga, ArchivioDati archivio) {
         try {
-            String username = riga[ColonneRecensioneCSV.USERNAME];
-            String nomeRistorante = riga[ColonneRecensioneCSV.RISTORANTE];
-            String nazione = riga[ColonneRecensioneCSV.NAZIONE];
-            String citta = riga[ColonneRecensioneCSV.CITTA];
-            String indirizzo = riga[ColonneRecensioneCSV.INDIRIZZO];
-            double latitudine = Double.parseDouble(riga[ColonneRecensioneCSV.LATITUDINE]);
-            double longitudine = Double.parseDouble(riga[ColonneRecensioneCSV.LONGITUDINE]);
-            int stelle = Integer.parseInt(riga[ColonneRecensioneCSV.STELLE]);
-            String messaggio = riga[ColonneRecensioneCSV.MESSAGGIO];
-            LocalDateTime data = LocalDateTime.parse(riga[ColonneRecensioneCSV.DATA]);
-
-            // Trova il cliente
-            Utente utente = cercaUtente(username);
-            if (!(utente instanceof Cliente cliente)) {
-                return null;
-            }
-
-            // Crea il ristorante dalla riga (assumendo che esista nel file ristoranti)
-            Localita localita = new Localita(nazione, citta, indirizzo, latitudine, longitudine);
+            // Trova cliente e ristorante: le altre colonne vengono decodificate solo se esistono
+            Cliente cliente = cercaClienteDaRiga(riga, ColonneRecensioneCSV.ID_CLIENTE, archivio);
+            Ristorante ristorante = cercaRistoranteDaRiga(riga, ColonneRecensioneCSV.ID_RISTORANTE, archivio);
 
-            // Trova il ristorante completo dal database
-            Ristorante ristorante = null;
-            for (Ristorante r : caricaRistoranti()) {
-                if (r.getNome().equals(nomeRistorante) && r.getLocalita().equals(localita)) {
-                    ristorante = r;
-                    break;
-                }
-            }
-
-            if (ristorante == null) {
+            if (cliente == null || ristorante == null) {
                 return null;
             }
 
+            int stelle = riga.intero(ColonneRecensioneCSV.STELLE);
+            String messaggio = riga.stringa(ColonneRecensioneCSV.MESSAGGIO);
+            LocalDateTime data = LocalDateTime.parse(riga.stringa(ColonneRecensioneCSV.DATA));
+
             // Crea la recensione
             Recensione recensione = new Recensione(cliente, ristorante, stelle, messaggio, data);
 
             // Gestisce risposta del ristoratore se presente
-            String risposta = riga[ColonneRecensioneCSV.RISPOSTA];
-            if (risposta != null && !risposta.trim().isEmpty()) {
-                recensione.aggiungiRisposta(risposta);
-                recensione.setDataRisposta(LocalDateTime.parse(riga[ColonneRecensioneCSV.DATA_RISPOSTA]));
+            if (!riga.vuota(ColonneRecensioneCSV.RISPOSTA)) {
+                recensione.aggiungiRisposta(riga.stringa(ColonneRecensioneCSV.RISPOSTA));
+                recensione.setDataRisposta(LocalDateTime.parse(riga.stringa(ColonneRecensioneCSV.DATA_RISPOSTA)));
             }
 
             return recensione;
@@ -746,16 +1202,12 @@ public class GestoreFile {
 
     /**
      * Converte un oggetto Recensione in un array di stringhe per il CSV.
+     * Cliente e ristorante sono riferiti tramite il loro identificativo, vedi {@link ArchivioDati#registrati}.
      */
     private static String[] creaRigaDaRecensione(Recensione recensione) {
         return new String[]{
-                recensione.getCliente().getUsername(),
-                recensione.getRistorante().getNome(),
-                recensione.getRistorante().getLocalita().getNazione(),
-                recensione.getRistorante().getLocalita().getCitta(),
-                recensione.getRistorante().getLocalita().getIndirizzo(),
-                String.valueOf(recensione.getRistorante().getLocalita().getLatitudine()),
-                String.valueOf(recensione.getRistorante().getLocalita().getLongitudine()),
+                String.valueOf(recensione.getCliente().getId()),
+                String.valueOf(recensione.getRistorante().getId()),
                 String.valueOf(recensione.getStelle()),
                 recensione.getMessaggio(),
                 recensione.getDataRecensione().toString(),
@@ -765,18 +1217,43 @@ public class GestoreFile {
     }
 
     /**
-     * Riscrive completamente il file delle recensioni
+     * Converte la chiave di una recensione (cliente e ristorante) in un array di stringhe per il CSV.
+     * Usato per i tombstone del registro, che non necessitano del contenuto della recensione.
+     */
+    private static String[] creaChiaveDaRecensione(Recensione recensione) {
+        return Arrays.copyOf(creaRigaDaRecensione(recensione), ColonneRecensioneCSV.ID_RISTORANTE + 1);
+    }
+
+    /**
+     * Avvia la compattazione del registro delle recensioni se ha superato la soglia prevista.
+     * Il registro viene ruotato tenendo il blocco delle recensioni in scrittura, così che lo stato
+     * passato alla compattazione corrisponda esattamente ai record del registro: va quindi invocato
+     * senza tenere alcun blocco sulle recensioni.
+     * <p>
+     * Segnala inoltre l'errore dell'ultima compattazione fallita in background, come gli altri errori
+     * di I/O: la modifica appena salvata resta comunque valida.
      *
-     * @param recensioni Lista delle recensioni da scrivere
-     * @throws IOException se si verifica un errore di I/O
+     * @throws IOException  se non è possibile ruotare il registro o l'ultima compattazione è fallita
+     * @throws CsvException se si verifica un errore nel parsing del CSV
      */
-    private static void riscriviFileRecensioni(ArrayList<Recensione> recensioni) throws IOException {
-        try (CSVWriter writer = new CSVWriter(new FileWriter(DATASET_RECENSIONI.toFile()))) {
-            writer.writeNext(INTESTAZIONE_RECENSIONI);
+    private static void verificaCompattazioneRecensioni() throws IOException, CsvException {
+        ArchivioDati archivio = archivio();
+        REGISTRO_RECENSIONI.verificaCompattazione();
+        if (!REGISTRO_RECENSIONI.richiedeCompattazione(archivio.numeroRecensioni())) {
+            return;
+        }
 
-            for (Recensione recensione : recensioni) {
-                String[] riga = creaRigaDaRecensione(recensione);
-                writer.writeNext(riga);
+        // L'istantanea legge anche i preferiti, che seguono le recensioni nell'ordine dei blocchi
+        try (Blocco _ = BLOCCHI.scrittura(Dataset.RECENSIONI);
+             Blocco _ = BLOCCHI.lettura(Dataset.PREFERITI)) {
+            // Un altro thread può aver già avviato la compattazione mentre si attendeva il blocco
+            if (REGISTRO_RECENSIONI.richiedeCompattazione(archivio.numeroRecensioni())) {
+                ArrayList<Recensione> recensioni = new ArrayList<>(archivio.recensioni());
+
+                // L'istantanea viene catturata ora, ma scritta solo dopo la riscrittura di Recensioni.csv
+                IstantaneaArchivio istantanea = catturaIstantanea(archivio, recensioni);
+                REGISTRO_RECENSIONI.avviaCompattazione(recensioni, GestoreFile::creaRigaDaRecensione,
+                        () -> istantanea.scrivi(ISTANTANEA, DATASET_RECENSIONI));
             }
         }
     }
@@ -794,24 +1271,10 @@ public class GestoreFile {
      * @throws CsvException se si verifica un errore nel parsing del CSV
      */
     public static ArrayList<Ristorante> caricaPreferiti(String username) throws IOException, CsvException {
-        ArrayList<Ristorante> ristoranti = new ArrayList<>();
-
-        try (CSVReader reader = new CSVReader(new FileReader(DATASET_PREFERITI.toFile()))) {
-            List<String[]> righe = reader.readAll();
-
-            // Salta l'intestazione (prima riga)
-            for (int i = 1; i < righe.size(); i++) {
-                String[] riga = righe.get(i);
-
-                if (riga[ColonnePreferitiCSV.USERNAME].equals(username)) {
-                    Ristorante ristorante = creaRistoranteDaRigaPreferiti(riga);
-                    if (ristorante != null) {
-                        ristoranti.add(ristorante);
-                    }
-                }
-            }
+        ArchivioDati archivio = archivio();
+        try (Blocco _ = BLOCCHI.lettura(Dataset.PREFERITI)) {
+            return new ArrayList<>(archivio.preferiti(username));
         }
-        return ristoranti;
     }
 
     /**
@@ -825,13 +1288,22 @@ public class GestoreFile {
      * @throws CsvException se si verifica un errore nel parsing del CSV
      */
     public static boolean aggiungiPreferito(Cliente cliente, Ristorante ristorante) throws IOException, CsvException {
-        if (esistePreferito(cliente.getUsername(), ristorante)) {
-            return false;
-        }
+        ArchivioDati archivio = archivio();
+
+        // Il file dei preferiti è condiviso da tutti i clienti: le modifiche bloccano l'intero dataset
+        try (Blocco _ = BLOCCHI.scrittura(Dataset.PREFERITI)) {
+            if (archivio.esistePreferito(cliente.getUsername(), ristorante)
+                    || !archivio.registrati(cliente, ristorante)) {
+                return false;
+            }
 
-        try (CSVWriter writer = new CSVWriter(new FileWriter(DATASET_PREFERITI.toFile(), true))) {
             String[] datiPreferito = creaRigaDaPreferito(cliente, ristorante);
-            writer.writeNext(datiPreferito);
+            RegistroTransazioni.Transazione transazione = REGISTRO_TRANSAZIONI.inizia(
+                    new RegistroTransazioni.Operazione(OperazioniTransazione.AGGIUNGI_PREFERITO, datiPreferito));
+            completa(transazione, SCRITTORE_PREFERITI.accoda(datiPreferito));
+
+            // L'archivio riceve il preferito solo quando è su disco
+            archivio.aggiungiPreferito(cliente.getUsername(), ristorante);
         }
         return true;
     }
@@ -846,46 +1318,76 @@ public class GestoreFile {
      * @throws CsvException se si verifica un errore nel parsing del CSV
      */
     public static boolean rimuoviPreferito(Cliente cliente, Ristorante ristorante) throws IOException, CsvException {
-        LinkedList<String[]> tutteLeRighe = new LinkedList<>();
-        boolean rimosso = false;
+        ArchivioDati archivio = archivio();
 
-        try (CSVReader reader = new CSVReader(new FileReader(DATASET_PREFERITI.toFile()))) {
-            List<String[]> righe = reader.readAll();
+        try (Blocco _ = BLOCCHI.scrittura(Dataset.PREFERITI)) {
+            if (!archivio.esistePreferito(cliente.getUsername(), ristorante)
+                    || !archivio.registrati(cliente, ristorante)) {
+                return false;
+            }
 
-            // Aggiungi l'intestazione
-            if (!righe.isEmpty()) {
-                tutteLeRighe.add(righe.getFirst());
+            try (RegistroTransazioni.Transazione _ = REGISTRO_TRANSAZIONI.inizia(new RegistroTransazioni.Operazione(
+                    OperazioniTransazione.RIMUOVI_PREFERITO, creaRigaDaPreferito(cliente, ristorante)))) {
+                rimuoviRigaPreferito(cliente, ristorante);
+                archivio.rimuoviPreferito(cliente.getUsername(), ristorante);
             }
+        }
+        return true;
+    }
+
+    /**
+     * Riscrive il file dei preferiti senza la riga del cliente e del ristorante indicati.
+     *
+     * @param cliente    Il cliente proprietario del preferito
+     * @param ristorante Il ristorante da rimuovere dai preferiti
+     * @return {@code true} se la riga era presente nel file
+     * @throws IOException se si verifica un errore di I/O
+     */
+    private static boolean rimuoviRigaPreferito(Cliente cliente, Ristorante ristorante) throws IOException {
+        Path temporaneo = DATASET_PREFERITI.resolveSibling(DATASET_PREFERITI.getFileName() + ".tmp");
+        boolean rimosso = false;
 
-            // Processa le righe saltando quella da rimuovere
-            for (int i = 1; i < righe.size(); i++) {
-                String[] riga = righe.get(i);
+        // Le righe ancora in attesa di essere accodate devono finire nel file prima di riscriverlo
+        SCRITTORE_PREFERITI.svuota();
 
-                String usernameFile = riga[ColonnePreferitiCSV.USERNAME];
-                String nomeRistorante = riga[ColonnePreferitiCSV.RISTORANTE];
-                String nazione = riga[ColonnePreferitiCSV.NAZIONE];
-                String citta = riga[ColonnePreferitiCSV.CITTA];
-                String indirizzo = riga[ColonnePreferitiCSV.INDIRIZZO];
+        // Le righe vengono copiate una alla volta nel file temporaneo, saltando quelle da rimuovere
+        try (Stream<String[]> righe = righe(DATASET_PREFERITI);
+             CSVWriter writer = new CSVWriter(Files.newBufferedWriter(temporaneo, StandardCharsets.UTF_8))) {
+            Iterator<String[]> iteratore = righe.iterator();
 
-                // Se questa è la riga da rimuovere, saltala
-                if (usernameFile.equals(cliente.getUsername()) &&
-                        nomeRistorante.equals(ristorante.getNome()) &&
-                        nazione.equals(ristorante.getLocalita().getNazione()) &&
-                        citta.equals(ristorante.getLocalita().getCitta()) &&
-                        indirizzo.equals(ristorante.getLocalita().getIndirizzo())) {
+            // Copia l'intestazione
+            if (iteratore.hasNext()) {
+                writer.writeNext(iteratore.next());
+            }
+
+            while (iteratore.hasNext()) {
+                String[] riga = iteratore.next();
+                if (corrispondePreferito(riga, cliente, ristorante)) {
                     rimosso = true;
                     continue; // Salta questa riga
                 }
-
-                tutteLeRighe.add(riga);
+                writer.writeNext(riga);
             }
         }
 
-        if (rimosso) {
-            // Riscrivi tutto il file
-            riscriviFilePreferiti(tutteLeRighe);
+        if (!rimosso) {
+            Files.deleteIfExists(temporaneo);
+            return false;
         }
-        return rimosso;
+
+        Files.move(temporaneo, DATASET_PREFERITI, StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    /**
+     * Verifica se una riga del CSV dei preferiti corrisponde al cliente e al ristorante indicati.
+     */
+    private static boolean corrispondePreferito(String[] riga, Cliente cliente, Ristorante ristorante) {
+        if (riga.length <= ColonnePreferitiCSV.ID_RISTORANTE) {
+            return false;
+        }
+        return riga[ColonnePreferitiCSV.ID_CLIENTE].equals(String.valueOf(cliente.getId())) &&
+                riga[ColonnePreferitiCSV.ID_RISTORANTE].equals(String.valueOf(ristorante.getId()));
     }
 
     /**
@@ -898,60 +1400,39 @@ public class GestoreFile {
      * @throws CsvException se si verifica un errore nel parsing del CSV
      */
     public static boolean esistePreferito(String username, Ristorante ristorante) throws IOException, CsvException {
-        try (CSVReader reader = new CSVReader(new FileReader(DATASET_PREFERITI.toFile()))) {
-            List<String[]> righe = reader.readAll();
-
-            // Salta l'intestazione (prima riga)
-            for (int i = 1; i < righe.size(); i++) {
-                String[] riga = righe.get(i);
-
-                String usernameFile = riga[ColonnePreferitiCSV.USERNAME];
-                String nomeRistorante = riga[ColonnePreferitiCSV.RISTORANTE];
-                String nazione = riga[ColonnePreferitiCSV.NAZIONE];
-                String citta = riga[ColonnePreferitiCSV.CITTA];
-                String indirizzo = riga[ColonnePreferitiCSV.INDIRIZZO];
-                double latitudine = Double.parseDouble(riga[ColonnePreferitiCSV.LATITUDINE]);
-                double longitudine = Double.parseDouble(riga[ColonnePreferitiCSV.LONGITUDINE]);
-
-                if (usernameFile.equals(username) &&
-                        nomeRistorante.equals(ristorante.getNome()) &&
-                        nazione.equals(ristorante.getLocalita().getNazione()) &&
-                        citta.equals(ristorante.getLocalita().getCitta()) &&
-                        indirizzo.equals(ristorante.getLocalita().getIndirizzo()) &&
-                        latitudine == ristorante.getLocalita().getLatitudine() &&
-                        longitudine == ristorante.getLocalita().getLongitudine()) {
-                    return true;
-                }
-            }
+        ArchivioDati archivio = archivio();
+        try (Blocco _ = BLOCCHI.lettura(Dataset.PREFERITI)) {
+            return archivio.esistePreferito(username, ristorante);
         }
-
-        return false;
     }
 
     /**
-     * Crea un oggetto Ristorante da una riga del CSV dei preferiti.
+     * Cerca nell'archivio il cliente riferito da una colonna di una riga del CSV.
      *
-     * @param riga Array contenente i dati della riga CSV
-     * @return Ristorante creato dai dati della riga, o null se si verifica un errore
+     * @param riga     Riga del CSV
+     * @param colonna  Colonna con l'identificativo del cliente
+     * @param archivio Archivio in cui cercare il cliente
+     * @return Il cliente trovato, o null se non esiste, non è un cliente o la riga non è valida
      */
-    private static Ristorante creaRistoranteDaRigaPreferiti(String[] riga) {
+    private static Cliente cercaClienteDaRiga(RigaCSV riga, int colonna, ArchivioDati archivio) {
         try {
-            String nomeRistorante = riga[ColonnePreferitiCSV.RISTORANTE];
-            String nazione = riga[ColonnePreferitiCSV.NAZIONE];
-            String citta = riga[ColonnePreferitiCSV.CITTA];
-            String indirizzo = riga[ColonnePreferitiCSV.INDIRIZZO];
-            double latitudine = Double.parseDouble(riga[ColonnePreferitiCSV.LATITUDINE]);
-            double longitudine = Double.parseDouble(riga[ColonnePreferitiCSV.LONGITUDINE]);
-
-            Localita localita = new Localita(nazione, citta, indirizzo, latitudine, longitudine);
-
-            for (Ristorante r : caricaRistoranti()) {
-                if (r.getNome().equals(nomeRistorante) && r.getLocalita().equals(localita)) {
-                    return r;
-                }
-            }
+            return archivio.cercaUtente(riga.intero(colonna)) instanceof Cliente cliente ? cliente : null;
+        } catch (Exception e) {
             return null;
+        }
+    }
 
+    /**
+     * Cerca nell'archivio il ristorante riferito da una colonna di una riga del CSV.
+     *
+     * @param riga     Riga del CSV
+     * @param colonna  Colonna con l'identificativo del ristorante
+     * @param archivio Archivio in cui cercare il ristorante
+     * @return Il ristorante trovato, o null se non esiste o la riga non è valida
+     */
+    private static Ristorante cercaRistoranteDaRiga(RigaCSV riga, int colonna, ArchivioDati archivio) {
+        try {
+            return archivio.cercaRistorante(riga.intero(colonna));
         } catch (Exception e) {
             return null;
         }
@@ -966,30 +1447,10 @@ public class GestoreFile {
      */
     private static String[] creaRigaDaPreferito(Cliente cliente, Ristorante ristorante) {
         return new String[]{
-                cliente.getUsername(),
-                ristorante.getNome(),
-                ristorante.getLocalita().getNazione(),
-                ristorante.getLocalita().getCitta(),
-                ristorante.getLocalita().getIndirizzo(),
-                String.valueOf(ristorante.getLocalita().getLatitudine()),
-                String.valueOf(ristorante.getLocalita().getLongitudine())
+                String.valueOf(cliente.getId()),
+                String.valueOf(ristorante.getId())
         };
     }
 
-    /**
-     * Riscrive completamente il file dei preferiti.
-     *
-     * @param righe Lista delle righe (inclusa intestazione) da scrivere
-     * @throws IOException se si verifica un errore di I/O
-     */
-    private static void riscriviFilePreferiti(LinkedList<String[]> righe) throws IOException {
-        try (CSVWriter writer = new CSVWriter(new FileWriter(DATASET_PREFERITI.toFile()))) {
-            // Scrivi tutte le righe (intestazione + dati)
-            for (String[] riga : righe) {
-                writer.writeNext(riga);
-            }
-        }
-    }
-
     //endregion
 }
\ No newline at end of file
@@ -0,0 +1,459 @@
+package theknife.io_file;
+
+import theknife.entita.Cliente;
+import theknife.entita.Localita;
+import theknife.entita.Recensione;
+import theknife.entita.Ristoratore;
+import theknife.entita.Ristorante;
+import theknife.entita.TipoCucina;
+import theknife.entita.Utente;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Istantanea binaria dell'archivio, usata per velocizzare l'avvio.
+ * <p>
+ * I file CSV restano il formato di riferimento dei dati: l'istantanea ne è una copia in formato
+ * binario, che evita il parsing del testo, delle coordinate e delle date. Il file contiene:
+ * <ul>
+ *     <li>un numero magico e la versione del formato ({@link #VERSIONE})</li>
+ *     <li>dimensione e data di modifica dei quattro file CSV da cui è stata ricavata</li>
+ *     <li>utenti, ristoranti, recensioni e preferiti, in quest'ordine</li>
+ * </ul>
+ * Le stringhe sono precedute dalla loro lunghezza in byte (UTF-8), le coordinate sono scritte come
+ * {@code double}, le date come secondi e nanosecondi dall'epoca e il tipo di cucina come ordinale
+ * di {@link TipoCucina}. Ogni utente e ristorante è preceduto dal suo identificativo, tramite il quale
+ * viene riferito nel resto del file.
+ * <p>
+ * All'avvio l'istantanea viene usata solo se i file CSV non sono cambiati da quando è stata
+ * scritta; in caso contrario, o se il file è illeggibile o di una versione diversa, i dati
+ * vengono riletti dai CSV. Il registro delle recensioni viene sempre riletto dopo l'istantanea:
+ * poiché ogni suo record descrive lo stato finale di una recensione, riapplicare record già
+ * inclusi nell'istantanea non altera il risultato.
+ *
+ * @author Thomas Riotto
+ */
+final class IstantaneaArchivio {
+
+    /**
+     * Numero magico che identifica il file dell'istantanea ("TKNF").
+     */
+    private static final int MAGICO = 0x544B4E46;
+
+    /**
+     * Versione del formato, da incrementare a ogni modifica della struttura del file.
+     */
+    private static final int VERSIONE = 2;
+
+    /**
+     * Dimensione del buffer di lettura e scrittura.
+     */
+    private static final int DIMENSIONE_BUFFER = 1 << 16;
+
+    /**
+     * Tipo di utente: cliente.
+     */
+    private static final byte CLIENTE = 0;
+
+    /**
+     * Tipo di utente: ristoratore.
+     */
+    private static final byte RISTORATORE = 1;
+
+    /**
+     * Dimensione e data di modifica di un file CSV.
+     *
+     * @param dimensione Dimensione in byte, -1 se il file non esiste
+     * @param modifica   Data dell'ultima modifica in millisecondi, -1 se il file non esiste
+     */
+    record StatoFile(long dimensione, long modifica) {
+
+        /**
+         * Rileva lo stato corrente di un file.
+         *
+         * @param file Path del file
+         * @return Lo stato del file
+         * @throws IOException se si verifica un errore di I/O
+         */
+        static StatoFile di(Path file) throws IOException {
+            if (Files.notExists(file)) {
+                return new StatoFile(-1, -1);
+            }
+            return new StatoFile(Files.size(file), Files.getLastModifiedTime(file).toMillis());
+        }
+    }
+
+    /**
+     * Utenti da scrivere, in ordine di identificativo.
+     */
+    private final List<Utente> utenti;
+
+    /**
+     * Ristoranti da scrivere, in ordine di identificativo.
+     */
+    private final List<Ristorante> ristoranti;
+
+    /**
+     * Recensioni da scrivere.
+     */
+    private final List<Recensione> recensioni;
+
+    /**
+     * Identificativo del proprietario di ogni ristorante, nello stesso ordine di {@link #ristoranti}.
+     */
+    private final int[] proprietari;
+
+    /**
+     * Identificativi del cliente e del ristorante di ogni recensione, nello stesso ordine di {@link #recensioni}.
+     */
+    private final int[] clienti, ristorantiRecensiti;
+
+    /**
+     * Ristoranti preferiti di ogni cliente che ne ha.
+     */
+    private final Map<Utente, List<Ristorante>> preferiti;
+
+    /**
+     * Stato dei file degli utenti, dei ristoranti e dei preferiti al momento della cattura.
+     */
+    private final StatoFile statoUtenti, statoRistoranti, statoPreferiti;
+
+    /**
+     * Crea un'istantanea copiando il contenuto dell'archivio, vedi {@link #cattura}.
+     */
+    private IstantaneaArchivio(ArchivioDati archivio, List<Recensione> recensioni,
+                               StatoFile statoUtenti, StatoFile statoRistoranti, StatoFile statoPreferiti) {
+        this.utenti = new ArrayList<>(archivio.utenti());
+        this.ristoranti = new ArrayList<>(archivio.ristoranti());
+        this.recensioni = recensioni;
+
+        // I riferimenti vengono risolti sull'archivio, perché le entità collegate
+        // potrebbero essere copie prive di identificativo
+        this.proprietari = new int[ristoranti.size()];
+        for (int i = 0; i < proprietari.length; i++) {
+            proprietari[i] = idUtente(archivio, ristoranti.get(i).getUsernameProprietario());
+        }
+        this.clienti = new int[recensioni.size()];
+        this.ristorantiRecensiti = new int[recensioni.size()];
+        for (int i = 0; i < clienti.length; i++) {
+            Recensione recensione = recensioni.get(i);
+            Ristorante ristorante = archivio.risolviRistorante(recensione.getRistorante());
+            clienti[i] = idUtente(archivio, recensione.getCliente().getUsername());
+            ristorantiRecensiti[i] = ristorante != null ? ristorante.getId() : Ristorante.NESSUN_ID;
+        }
+
+        this.preferiti = new LinkedHashMap<>();
+        for (Utente utente : utenti) {
+            List<Ristorante> delCliente = archivio.preferiti(utente.getUsername());
+            if (!delCliente.isEmpty()) {
+                preferiti.put(utente, delCliente);
+            }
+        }
+
+        this.statoUtenti = statoUtenti;
+        this.statoRistoranti = statoRistoranti;
+        this.statoPreferiti = statoPreferiti;
+    }
+
+    /**
+     * Cattura il contenuto dell'archivio, così che possa essere scritto in seguito anche da un altro thread.
+     * <p>
+     * Va invocato mentre nessun'altra modifica ai dati è in corso, così che lo stato dei file
+     * rilevato corrisponda al contenuto catturato.
+     *
+     * @param archivio        Archivio da catturare
+     * @param recensioni      Recensioni da includere, già copiate dall'archivio
+     * @param fileUtenti      Path del file degli utenti
+     * @param fileRistoranti  Path del file dei ristoranti
+     * @param filePreferiti   Path del file dei preferiti
+     * @return L'istantanea catturata
+     * @throws IOException se non è possibile rilevare lo stato dei file
+     */
+    static IstantaneaArchivio cattura(ArchivioDati archivio, List<Recensione> recensioni,
+                                      Path fileUtenti, Path fileRistoranti, Path filePreferiti) throws IOException {
+        return new IstantaneaArchivio(archivio, recensioni,
+                StatoFile.di(fileUtenti), StatoFile.di(fileRistoranti), StatoFile.di(filePreferiti));
+    }
+
+    /**
+     * Scrive l'istantanea su file, sostituendo in modo atomico quella precedente.
+     *
+     * @param file            Path del file dell'istantanea
+     * @param fileRecensioni  Path del file delle recensioni, il cui stato viene rilevato al momento della scrittura
+     * @throws IOException se si verifica un errore di I/O
+     */
+    void scrivi(Path file, Path fileRecensioni) throws IOException {
+        Path temporaneo = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (OutputStream os = Files.newOutputStream(temporaneo);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, DIMENSIONE_BUFFER))) {
+            out.writeInt(MAGICO);
+            out.writeInt(VERSIONE);
+            scriviStato(out, statoUtenti);
+            scriviStato(out, statoRistoranti);
+            scriviStato(out, StatoFile.di(fileRecensioni));
+            scriviStato(out, statoPreferiti);
+
+            out.writeInt(utenti.size());
+            for (Utente utente : utenti) {
+                out.writeInt(utente.getId());
+                out.writeByte(utente instanceof Ristoratore ? RISTORATORE : CLIENTE);
+                scriviStringa(out, utente.getNome());
+                scriviStringa(out, utente.getCognome());
+                scriviStringa(out, utente.getUsername());
+                scriviStringa(out, utente.getPassword());
+                out.writeLong(utente.getDataNascita() != null ? utente.getDataNascita().toEpochDay() : Long.MIN_VALUE);
+                scriviStringa(out, utente.getLuogoDomicilio());
+            }
+
+            out.writeInt(ristoranti.size());
+            for (int i = 0; i < ristoranti.size(); i++) {
+                Ristorante ristorante = ristoranti.get(i);
+                Localita localita = ristorante.getLocalita();
+                out.writeInt(ristorante.getId());
+                scriviStringa(out, ristorante.getNome());
+                scriviStringa(out, localita.getNazione());
+                scriviStringa(out, localita.getCitta());
+                scriviStringa(out, localita.getIndirizzo());
+                out.writeDouble(localita.getLatitudine());
+                out.writeDouble(localita.getLongitudine());
+                out.writeByte(ristorante.getTipoDiCucina().ordinal());
+                out.writeBoolean(ristorante.getDelivery());
+                out.writeBoolean(ristorante.getPrenotazione());
+                out.writeFloat(ristorante.getPrezzoMedio());
+                scriviStringa(out, ristorante.getDescrizione());
+                out.writeInt(proprietari[i]);
+            }
+
+            out.writeInt(recensioni.size());
+            for (int i = 0; i < recensioni.size(); i++) {
+                Recensione recensione = recensioni.get(i);
+                out.writeInt(clienti[i]);
+                out.writeInt(ristorantiRecensiti[i]);
+                out.writeByte(recensione.getStelle());
+                scriviStringa(out, recensione.getMessaggio());
+                scriviData(out, recensione.getDataRecensione());
+                out.writeBoolean(recensione.haRisposta());
+                if (recensione.haRisposta()) {
+                    scriviStringa(out, recensione.getRispostaRistoratore());
+                    scriviData(out, recensione.getDataRisposta());
+                }
+            }
+
+            out.writeInt(preferiti.size());
+            for (Map.Entry<Utente, List<Ristorante>> voce : preferiti.entrySet()) {
+                out.writeInt(voce.getKey().getId());
+                out.writeInt(voce.getValue().size());
+                for (Ristorante ristorante : voce.getValue()) {
+                    out.writeInt(ristorante.getId());
+                }
+            }
+        }
+
+        // Il file deve essere su disco prima di sostituire quello precedente
+        try (FileChannel canale = FileChannel.open(temporaneo, StandardOpenOption.WRITE)) {
+            canale.force(true);
+        }
+
+        try {
+            Files.move(temporaneo, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaneo, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Legge l'istantanea e ricostruisce l'archivio, se è ancora valida.
+     *
+     * @param file           Path del file dell'istantanea
+     * @param fileUtenti     Path del file degli utenti
+     * @param fileRistoranti Path del file dei ristoranti
+     * @param fileRecensioni Path del file delle recensioni
+     * @param filePreferiti  Path del file dei preferiti
+     * @return L'archivio ricostruito, o {@code null} se l'istantanea non esiste, non è leggibile
+     * o non corrisponde più ai file CSV
+     */
+    static ArchivioDati leggi(Path file, Path fileUtenti, Path fileRistoranti,
+                              Path fileRecensioni, Path filePreferiti) {
+        if (Files.notExists(file)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), DIMENSIONE_BUFFER))) {
+            if (in.readInt() != MAGICO || in.readInt() != VERSIONE) {
+                return null;
+            }
+            if (!leggiStato(in).equals(StatoFile.di(fileUtenti))
+                    || !leggiStato(in).equals(StatoFile.di(fileRistoranti))
+                    || !leggiStato(in).equals(StatoFile.di(fileRecensioni))
+                    || !leggiStato(in).equals(StatoFile.di(filePreferiti))) {
+                return null;
+            }
+
+            ArchivioDati archivio = new ArchivioDati();
+
+            int numeroUtenti = in.readInt();
+            for (int i = 0; i < numeroUtenti; i++) {
+                int id = in.readInt();
+                byte tipo = in.readByte();
+                String nome = leggiStringa(in);
+                String cognome = leggiStringa(in);
+                String username = leggiStringa(in);
+                String password = leggiStringa(in);
+                long giorno = in.readLong();
+                LocalDate dataNascita = giorno != Long.MIN_VALUE ? LocalDate.ofEpochDay(giorno) : null;
+                String luogoDomicilio = leggiStringa(in);
+
+                archivio.aggiungiUtente(tipo == RISTORATORE
+                        ? new Ristoratore(nome, cognome, username, password, dataNascita, luogoDomicilio, true)
+                        : new Cliente(nome, cognome, username, password, dataNascita, luogoDomicilio, true), id);
+            }
+
+            TipoCucina[] tipiCucina = TipoCucina.values();
+            int numeroRistoranti = in.readInt();
+            for (int i = 0; i < numeroRistoranti; i++) {
+                int id = in.readInt();
+                String nome = leggiStringa(in);
+                Localita localita = new Localita(leggiStringa(in), leggiStringa(in), leggiStringa(in),
+                        in.readDouble(), in.readDouble());
+                TipoCucina tipoCucina = tipiCucina[in.readUnsignedByte()];
+                boolean delivery = in.readBoolean();
+                boolean prenotazione = in.readBoolean();
+                float prezzoMedio = in.readFloat();
+                String descrizione = leggiStringa(in);
+                Ristoratore proprietario = (Ristoratore) archivio.cercaUtente(in.readInt());
+
+                archivio.aggiungiRistorante(new Ristorante(nome, localita, tipoCucina, delivery, prenotazione,
+                        prezzoMedio, descrizione, proprietario), id);
+            }
+
+            int numeroRecensioni = in.readInt();
+            for (int i = 0; i < numeroRecensioni; i++) {
+                Cliente cliente = (Cliente) archivio.cercaUtente(in.readInt());
+                Ristorante ristorante = archivio.cercaRistorante(in.readInt());
+                int stelle = in.readByte();
+                String messaggio = leggiStringa(in);
+                LocalDateTime data = leggiData(in);
+
+                Recensione recensione = new Recensione(cliente, ristorante, stelle, messaggio, data);
+                if (in.readBoolean()) {
+                    recensione.aggiungiRisposta(leggiStringa(in));
+                    recensione.setDataRisposta(leggiData(in));
+                }
+                archivio.aggiungiRecensione(recensione);
+            }
+
+            int numeroClienti = in.readInt();
+            for (int i = 0; i < numeroClienti; i++) {
+                String username = archivio.cercaUtente(in.readInt()).getUsername();
+                int numeroPreferiti = in.readInt();
+                for (int j = 0; j < numeroPreferiti; j++) {
+                    archivio.aggiungiPreferito(username, archivio.cercaRistorante(in.readInt()));
+                }
+            }
+
+            return archivio;
+
+        } catch (IOException | RuntimeException e) {
+            // Istantanea incompleta o incoerente: i dati vengono riletti dai file CSV
+            return null;
+        }
+    }
+
+    /**
+     * Restituisce l'identificativo dell'utente in archivio con lo username indicato.
+     */
+    private static int idUtente(ArchivioDati archivio, String username) {
+        Utente utente = archivio.cercaUtente(username);
+        return utente != null ? utente.getId() : Utente.NESSUN_ID;
+    }
+
+    /**
+     * Scrive lo stato di un file.
+     */
+    private static void scriviStato(DataOutputStream out, StatoFile stato) throws IOException {
+        out.writeLong(stato.dimensione());
+        out.writeLong(stato.modifica());
+    }
+
+    /**
+     * Legge lo stato di un file.
+     */
+    private static StatoFile leggiStato(DataInputStream in) throws IOException {
+        return new StatoFile(in.readLong(), in.readLong());
+    }
+
+    /**
+     * Scrive una stringa preceduta dalla sua lunghezza in byte; -1 indica una stringa nulla.
+     */
+    static void scriviStringa(DataOutputStream out, String stringa) throws IOException {
+        if (stringa == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] byteStringa = stringa.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(byteStringa.length);
+        out.write(byteStringa);
+    }
+
+    /**
+     * Legge una stringa scritta da {@link #scriviStringa(DataOutputStream, String)}.
+     */
+    static String leggiStringa(DataInputStream in) throws IOException {
+        int lunghezza = in.readInt();
+        if (lunghezza < 0) {
+            return null;
+        }
+        byte[] byteStringa = new byte[lunghezza];
+        in.readFully(byteStringa);
+        return new String(byteStringa, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Scrive una data come secondi e nanosecondi dall'epoca; {@link Long#MIN_VALUE} indica una data nulla.
+     */
+    private static void scriviData(DataOutputStream out, LocalDateTime data) throws IOException {
+        if (data == null) {
+            out.writeLong(Long.MIN_VALUE);
+            return;
+        }
+        out.writeLong(data.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(data.getNano());
+    }
+
+    /**
+     * Legge una data scritta da {@link #scriviData(DataOutputStream, LocalDateTime)}.
+     */
+    private static LocalDateTime leggiData(DataInputStream in) throws IOException {
+        long secondi = in.readLong();
+        if (secondi == Long.MIN_VALUE) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(secondi, in.readInt(), ZoneOffset.UTC);
+    }
+}
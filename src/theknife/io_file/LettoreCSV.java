@@ -0,0 +1,417 @@
+package theknife.io_file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Lettore sequenziale dei file CSV della cartella {@code data}, basato su file mappati in memoria.
+ * <p>
+ * Il file viene mappato con {@link FileChannel#map} e suddiviso in colonne direttamente sui byte
+ * mappati: per ogni riga vengono registrati soltanto gli estremi delle colonne, senza creare
+ * stringhe. Le colonne vengono decodificate (UTF-8) solo quando richieste tramite
+ * {@link RigaCSV#stringa(int)} o {@link RigaCSV#decimale(int)}, così che il costo del caricamento
+ * dipenda dalle colonne effettivamente usate e non dalla dimensione della riga.
+ * <p>
+ * Il formato supportato è quello prodotto da {@link com.opencsv.CSVWriter}: colonne separate da
+ * virgola, eventualmente racchiuse tra virgolette, con le virgolette interne raddoppiate
+ * (RFC 4180). Sono ammessi terminatori di riga {@code \n} e {@code \r\n}, andate a capo
+ * all'interno delle colonne tra virgolette e il BOM UTF-8 iniziale; le righe vuote vengono saltate.
+ * <p>
+ * I file più grandi di {@link #DIMENSIONE_FINESTRA} vengono mappati a finestre successive.
+ * I file più piccoli di {@link #SOGLIA_MAPPATURA} vengono invece letti in un unico buffer:
+ * per dimensioni simili la mappatura non porta vantaggi e, su Windows, impedirebbe di
+ * riscrivere il file finché la mappatura non viene rilasciata dal garbage collector.
+ * Il lettore stesso rappresenta la riga corrente, che resta valida fino alla successiva
+ * invocazione di {@link #prossima()}.
+ *
+ * @author Thomas Riotto
+ */
+final class LettoreCSV implements RigaCSV, Closeable {
+
+    /**
+     * Dimensione massima della porzione di file mappata in memoria.
+     */
+    private static final int DIMENSIONE_FINESTRA = 64 * 1024 * 1024;
+
+    /**
+     * Dimensione sotto la quale il file viene letto in memoria invece di essere mappato.
+     */
+    private static final int SOGLIA_MAPPATURA = 4 * 1024 * 1024;
+
+    /**
+     * Canale del file in lettura.
+     */
+    private final FileChannel canale;
+
+    /**
+     * Dimensione del file in byte.
+     */
+    private final long dimensione;
+
+    /**
+     * Porzione del file attualmente mappata.
+     */
+    private ByteBuffer finestra;
+
+    /**
+     * Posizione nel file del primo byte della finestra.
+     */
+    private long inizioFinestra;
+
+    /**
+     * Posizione, relativa alla finestra, della prossima riga da leggere.
+     */
+    private int posizione;
+
+    /**
+     * Inizio di ogni colonna della riga corrente, relativo alla finestra.
+     */
+    private int[] inizi = new int[16];
+
+    /**
+     * Fine (esclusa) di ogni colonna della riga corrente, relativa alla finestra.
+     */
+    private int[] fini = new int[16];
+
+    /**
+     * Indica, per ogni colonna, se contiene virgolette raddoppiate da ridurre.
+     */
+    private boolean[] virgolette = new boolean[16];
+
+    /**
+     * Numero di colonne della riga corrente.
+     */
+    private int colonne;
+
+    /**
+     * Area di appoggio riutilizzata per decodificare le colonne.
+     */
+    private byte[] appoggio = new byte[256];
+
+    /**
+     * Apre un file CSV e salta le prime righe indicate.
+     *
+     * @param file           Path del file da leggere
+     * @param righeDaSaltare Numero di righe iniziali da saltare, ad esempio l'intestazione
+     * @throws IOException se il file non esiste o non può essere mappato
+     */
+    LettoreCSV(Path file, int righeDaSaltare) throws IOException {
+        this.canale = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            this.dimensione = canale.size();
+            mappa(0);
+            if (dimensione >= 3 && finestra.get(0) == (byte) 0xEF
+                    && finestra.get(1) == (byte) 0xBB && finestra.get(2) == (byte) 0xBF) {
+                posizione = 3;
+            }
+            for (int i = 0; i < righeDaSaltare && prossima(); i++) {
+                // righe saltate
+            }
+        } catch (IOException | RuntimeException e) {
+            canale.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Avanza alla riga successiva.
+     *
+     * @return {@code true} se è stata letta una riga, {@code false} a fine file
+     * @throws IOException se la riga non entra nella finestra o il file non può essere mappato
+     */
+    boolean prossima() throws IOException {
+        while (inizioFinestra + posizione < dimensione) {
+            int fine = analizzaRiga(posizione);
+
+            if (fine < 0) {
+                // La riga prosegue oltre la finestra: la finestra viene spostata all'inizio della riga
+                if (posizione == 0) {
+                    throw new IOException("Riga CSV più lunga di " + DIMENSIONE_FINESTRA + " byte");
+                }
+                mappa(inizioFinestra + posizione);
+                continue;
+            }
+
+            posizione = fine;
+            if (colonne > 1 || fini[0] > inizi[0]) {
+                return true;
+            }
+        }
+        colonne = 0;
+        return false;
+    }
+
+    /**
+     * Restituisce la riga corrente come array di stringhe, decodificando tutte le colonne.
+     *
+     * @return Le colonne della riga corrente
+     */
+    String[] riga() {
+        String[] riga = new String[colonne];
+        for (int i = 0; i < colonne; i++) {
+            riga[i] = stringa(i);
+        }
+        return riga;
+    }
+
+    /**
+     * Restituisce una vista della riga corrente che parte dalla colonna indicata.
+     * <p>
+     * La vista segue l'avanzamento del lettore: può essere creata una sola volta e riutilizzata.
+     *
+     * @param primaColonna Colonna del lettore che diventa la colonna 0 della vista
+     * @return Vista della riga corrente
+     */
+    RigaCSV da(int primaColonna) {
+        return new RigaCSV() {
+            @Override
+            public int numeroColonne() {
+                return Math.max(0, colonne - primaColonna);
+            }
+
+            @Override
+            public String stringa(int colonna) {
+                return LettoreCSV.this.stringa(primaColonna + verifica(colonna));
+            }
+
+            @Override
+            public double decimale(int colonna) {
+                return LettoreCSV.this.decimale(primaColonna + verifica(colonna));
+            }
+
+            @Override
+            public int intero(int colonna) {
+                return LettoreCSV.this.intero(primaColonna + verifica(colonna));
+            }
+
+            @Override
+            public boolean vuota(int colonna) {
+                return LettoreCSV.this.vuota(primaColonna + verifica(colonna));
+            }
+
+            private int verifica(int colonna) {
+                if (colonna < 0) {
+                    throw new IndexOutOfBoundsException("Colonna " + colonna + " inesistente");
+                }
+                return colonna;
+            }
+        };
+    }
+
+    @Override
+    public int numeroColonne() {
+        return colonne;
+    }
+
+    @Override
+    public String stringa(int colonna) {
+        int lunghezza = copia(colonna);
+        if (virgolette[colonna]) {
+            lunghezza = riduciVirgolette(lunghezza);
+        }
+        return lunghezza == 0 ? "" : new String(appoggio, 0, lunghezza, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public double decimale(int colonna) {
+        return Double.parseDouble(numero(colonna));
+    }
+
+    @Override
+    public int intero(int colonna) {
+        return Integer.parseInt(numero(colonna).trim());
+    }
+
+    @Override
+    public boolean vuota(int colonna) {
+        verificaColonna(colonna);
+        for (int i = inizi[colonna]; i < fini[colonna]; i++) {
+            byte b = finestra.get(i);
+            if (b != ' ' && b != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Chiude il file.
+     *
+     * @throws IOException se si verifica un errore di I/O
+     */
+    @Override
+    public void close() throws IOException {
+        finestra = null;
+        canale.close();
+    }
+
+    /**
+     * Mappa la porzione di file che parte dalla posizione indicata.
+     */
+    private void mappa(long inizio) throws IOException {
+        if (dimensione < SOGLIA_MAPPATURA) {
+            finestra = ByteBuffer.allocate((int) dimensione);
+            while (finestra.hasRemaining() && canale.read(finestra, finestra.position()) >= 0) {
+                // lettura completa del file
+            }
+            finestra.flip();
+        } else {
+            long lunghezza = Math.min(DIMENSIONE_FINESTRA, dimensione - inizio);
+            finestra = canale.map(FileChannel.MapMode.READ_ONLY, inizio, lunghezza);
+        }
+        inizioFinestra = inizio;
+        posizione = 0;
+    }
+
+    /**
+     * Individua le colonne della riga che inizia alla posizione indicata.
+     *
+     * @param inizio Posizione della riga nella finestra
+     * @return Posizione della riga successiva, o -1 se la riga prosegue oltre la finestra
+     */
+    private int analizzaRiga(int inizio) {
+        int limite = finestra.limit();
+        boolean ultimaFinestra = inizioFinestra + limite >= dimensione;
+        int i = inizio;
+        colonne = 0;
+
+        while (true) {
+            if (i < limite && finestra.get(i) == '"') {
+                int inizioColonna = ++i;
+                boolean raddoppiate = false;
+
+                while (true) {
+                    if (i >= limite) {
+                        if (!ultimaFinestra) {
+                            return -1;
+                        }
+                        break; // virgolette non chiuse a fine file
+                    }
+                    if (finestra.get(i) == '"') {
+                        if (i + 1 >= limite && !ultimaFinestra) {
+                            return -1;
+                        }
+                        if (i + 1 < limite && finestra.get(i + 1) == '"') {
+                            raddoppiate = true;
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                aggiungiColonna(inizioColonna, i, raddoppiate);
+
+                // Eventuali caratteri tra la virgoletta di chiusura e il separatore vengono ignorati
+                while (i < limite && !fineColonna(finestra.get(i))) {
+                    i++;
+                }
+            } else {
+                int inizioColonna = i;
+                while (i < limite && !fineColonna(finestra.get(i))) {
+                    i++;
+                }
+                aggiungiColonna(inizioColonna, i, false);
+            }
+
+            if (i >= limite) {
+                return ultimaFinestra ? i : -1;
+            }
+
+            byte separatore = finestra.get(i++);
+            if (separatore == ',') {
+                continue;
+            }
+            if (separatore == '\r') {
+                if (i >= limite && !ultimaFinestra) {
+                    return -1;
+                }
+                if (i < limite && finestra.get(i) == '\n') {
+                    i++;
+                }
+            }
+            return i;
+        }
+    }
+
+    /**
+     * Verifica se un byte termina una colonna non racchiusa tra virgolette.
+     */
+    private static boolean fineColonna(byte b) {
+        return b == ',' || b == '\n' || b == '\r';
+    }
+
+    /**
+     * Registra gli estremi di una colonna della riga corrente.
+     */
+    private void aggiungiColonna(int inizio, int fine, boolean raddoppiate) {
+        if (colonne == inizi.length) {
+            inizi = Arrays.copyOf(inizi, colonne * 2);
+            fini = Arrays.copyOf(fini, colonne * 2);
+            virgolette = Arrays.copyOf(virgolette, colonne * 2);
+        }
+        inizi[colonne] = inizio;
+        fini[colonne] = fine;
+        virgolette[colonne] = raddoppiate;
+        colonne++;
+    }
+
+    /**
+     * Copia i byte di una colonna nell'area di appoggio.
+     *
+     * @return Numero di byte copiati
+     */
+    private int copia(int colonna) {
+        verificaColonna(colonna);
+        int lunghezza = fini[colonna] - inizi[colonna];
+        if (lunghezza > appoggio.length) {
+            appoggio = new byte[Math.max(lunghezza, appoggio.length * 2)];
+        }
+        finestra.get(inizi[colonna], appoggio, 0, lunghezza);
+        return lunghezza;
+    }
+
+    /**
+     * Riduce le virgolette raddoppiate presenti nell'area di appoggio.
+     *
+     * @return Nuova lunghezza del contenuto
+     */
+    private int riduciVirgolette(int lunghezza) {
+        int scritti = 0;
+        for (int i = 0; i < lunghezza; i++) {
+            appoggio[scritti++] = appoggio[i];
+            if (appoggio[i] == '"' && i + 1 < lunghezza && appoggio[i + 1] == '"') {
+                i++;
+            }
+        }
+        return scritti;
+    }
+
+    /**
+     * Decodifica una colonna numerica, composta da soli caratteri ASCII.
+     */
+    private String numero(int colonna) {
+        int lunghezza = copia(colonna);
+        return new String(appoggio, 0, lunghezza, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Verifica che la colonna indicata esista nella riga corrente.
+     */
+    private void verificaColonna(int colonna) {
+        if (colonna < 0 || colonna >= colonne) {
+            throw new IndexOutOfBoundsException("Colonna " + colonna + " inesistente in una riga di " + colonne);
+        }
+    }
+}
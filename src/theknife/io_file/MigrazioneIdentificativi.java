@@ -0,0 +1,392 @@
+package theknife.io_file;
+
+import com.opencsv.CSVWriter;
+import theknife.entita.Localita;
+import theknife.entita.Ristorante;
+import theknife.entita.Utente;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Conversione una tantum dei file dei dati al formato con identificativi numerici.
+ * <p>
+ * Nel formato precedente utenti e ristoranti non avevano un identificativo salvato, e le righe
+ * delle recensioni e dei preferiti riferivano cliente e ristorante tramite username, nome e le
+ * cinque colonne della località. La conversione:
+ * <ul>
+ *     <li>aggiunge ai file degli utenti e dei ristoranti una prima colonna {@code Id}, pari alla
+ *     posizione della riga nel file</li>
+ *     <li>sostituisce, nelle righe delle recensioni, del loro registro e dei preferiti, le colonne
+ *     del cliente e del ristorante con i due identificativi; le righe che non riferiscono un utente
+ *     o un ristorante esistente vengono scartate, come già avveniva al caricamento</li>
+ * </ul>
+ * Ogni file viene convertito solo se la sua intestazione è ancora quella del formato precedente,
+ * scritto in un file temporaneo e poi sostituito in modo atomico; i file degli utenti e dei
+ * ristoranti, da cui dipendono gli identificativi, vengono sostituiti per ultimi. Un'interruzione
+ * durante la conversione lascia quindi ogni file nel formato precedente o in quello nuovo, e la
+ * conversione viene completata all'avvio successivo.
+ * <p>
+ * Il registro delle transazioni non viene convertito: le sue operazioni in sospeso nel formato
+ * precedente vengono convertite da {@link GestoreFile} al momento del ripristino, con gli
+ * identificativi dell'archivio già caricato ({@link #di(ArchivioDati)}).
+ *
+ * @author Thomas Riotto
+ */
+final class MigrazioneIdentificativi {
+
+    /**
+     * Intestazione della colonna degli identificativi nei file degli utenti e dei ristoranti.
+     */
+    static final String COLONNA_ID = "Id";
+
+    /**
+     * Intestazione della colonna del cliente nei file delle recensioni e dei preferiti.
+     */
+    static final String COLONNA_ID_CLIENTE = "IdCliente";
+
+    /**
+     * Numero di colonne delle righe degli utenti nel formato precedente.
+     */
+    static final int COLONNE_UTENTE = 7;
+
+    /**
+     * Numero di colonne delle righe dei ristoranti nel formato precedente.
+     */
+    static final int COLONNE_RISTORANTE = 12;
+
+    /**
+     * Numero di colonne che, nel formato precedente, riferiscono cliente e ristorante all'inizio
+     * delle righe delle recensioni e dei preferiti.
+     */
+    static final int COLONNE_RIFERIMENTO = 7;
+
+    /**
+     * Posizione dello username nelle righe degli utenti del formato precedente.
+     */
+    private static final int USERNAME_UTENTE = 2;
+
+    /**
+     * Posizioni di nome e località nelle righe dei ristoranti del formato precedente.
+     */
+    private static final int NOME_RISTORANTE = 0, NAZIONE_RISTORANTE = 3;
+
+    /**
+     * Posizioni di username, nome del ristorante e località nelle righe delle recensioni
+     * e dei preferiti del formato precedente.
+     */
+    private static final int USERNAME_RIFERIMENTO = 0, NOME_RIFERIMENTO = 1, NAZIONE_RIFERIMENTO = 2;
+
+    /**
+     * Identificativi di utenti e ristoranti, usati per convertire le righe che li riferiscono.
+     */
+    interface Identificativi {
+
+        /**
+         * Restituisce l'identificativo di un utente.
+         *
+         * @param username Username dell'utente
+         * @return Identificativo dell'utente, o -1 se non esiste
+         */
+        int utente(String username);
+
+        /**
+         * Restituisce l'identificativo di un ristorante.
+         *
+         * @param chiave Chiave del ristorante, vedi {@link Ristorante#calcolaChiave}
+         * @return Identificativo del ristorante, o -1 se non esiste
+         */
+        int ristorante(String chiave);
+    }
+
+    /**
+     * Costruttore privato: la classe espone solo metodi statici.
+     */
+    private MigrazioneIdentificativi() {
+    }
+
+    /**
+     * Restituisce gli identificativi degli utenti e dei ristoranti presenti in un archivio, usati per
+     * convertire le operazioni del registro delle transazioni scritte nel formato precedente.
+     *
+     * @param archivio Archivio già caricato
+     * @return Identificativi dell'archivio
+     */
+    static Identificativi di(ArchivioDati archivio) {
+        return new Identificativi() {
+            @Override
+            public int utente(String username) {
+                Utente utente = archivio.cercaUtente(username);
+                return utente != null ? utente.getId() : Utente.NESSUN_ID;
+            }
+
+            @Override
+            public int ristorante(String chiave) {
+                Ristorante ristorante = archivio.cercaRistorante(chiave);
+                return ristorante != null ? ristorante.getId() : Ristorante.NESSUN_ID;
+            }
+        };
+    }
+
+    /**
+     * Converte al nuovo formato i file dei dati ancora nel formato precedente.
+     *
+     * @param utenti                 Path del file degli utenti
+     * @param ristoranti             Path del file dei ristoranti
+     * @param recensioni             Path del file delle recensioni
+     * @param preferiti              Path del file dei preferiti
+     * @param registri               Path dei file del registro delle recensioni
+     * @param intestazioneRecensioni Intestazione del file delle recensioni nel nuovo formato
+     * @param intestazionePreferiti  Intestazione del file dei preferiti nel nuovo formato
+     * @return {@code true} se almeno un file è stato convertito
+     * @throws IOException se si verifica un errore di I/O
+     */
+    static boolean esegui(Path utenti, Path ristoranti, Path recensioni, Path preferiti, List<Path> registri,
+                          String[] intestazioneRecensioni, String[] intestazionePreferiti) throws IOException {
+        boolean convertiRecensioni = daConvertire(recensioni, 0, COLONNA_ID_CLIENTE);
+        boolean convertiPreferiti = daConvertire(preferiti, 0, COLONNA_ID_CLIENTE);
+        boolean convertiRegistri = false;
+        for (Path registro : registri) {
+            convertiRegistri |= daConvertire(registro, 1, COLONNA_ID_CLIENTE);
+        }
+        boolean convertiUtenti = daConvertire(utenti, 0, COLONNA_ID);
+        boolean convertiRistoranti = daConvertire(ristoranti, 0, COLONNA_ID);
+
+        if (convertiRecensioni || convertiPreferiti || convertiRegistri) {
+            Identificativi identificativi = leggiIdentificativi(utenti, convertiUtenti, ristoranti, convertiRistoranti);
+            if (convertiRecensioni) {
+                convertiRiferimenti(recensioni, 0, intestazioneRecensioni, identificativi);
+            }
+            String[] intestazioneRegistro = new String[intestazioneRecensioni.length + 1];
+            intestazioneRegistro[0] = "Operazione";
+            System.arraycopy(intestazioneRecensioni, 0, intestazioneRegistro, 1, intestazioneRecensioni.length);
+            for (Path registro : registri) {
+                if (daConvertire(registro, 1, COLONNA_ID_CLIENTE)) {
+                    convertiRiferimenti(registro, 1, intestazioneRegistro, identificativi);
+                }
+            }
+            if (convertiPreferiti) {
+                convertiRiferimenti(preferiti, 0, intestazionePreferiti, identificativi);
+            }
+        }
+        if (convertiRistoranti) {
+            aggiungiIdentificativi(ristoranti);
+        }
+        if (convertiUtenti) {
+            aggiungiIdentificativi(utenti);
+        }
+        return convertiRecensioni || convertiPreferiti || convertiRegistri || convertiUtenti || convertiRistoranti;
+    }
+
+    /**
+     * Aggiunge l'identificativo all'inizio di una riga.
+     *
+     * @param id   Identificativo da aggiungere
+     * @param riga Riga nel formato precedente
+     * @return La riga con l'identificativo nella prima colonna
+     */
+    static String[] conIdentificativo(int id, String[] riga) {
+        String[] convertita = new String[riga.length + 1];
+        convertita[0] = String.valueOf(id);
+        System.arraycopy(riga, 0, convertita, 1, riga.length);
+        return convertita;
+    }
+
+    /**
+     * Sostituisce le colonne del cliente e del ristorante di una riga delle recensioni o dei preferiti
+     * con i loro identificativi; le colonne successive restano invariate.
+     *
+     * @param riga           Riga nel formato precedente
+     * @param identificativi Identificativi di utenti e ristoranti
+     * @return La riga convertita, o {@code null} se il cliente o il ristorante non esistono
+     */
+    static String[] convertiRiferimento(String[] riga, Identificativi identificativi) {
+        if (riga.length < COLONNE_RIFERIMENTO) {
+            return null;
+        }
+        int idCliente = identificativi.utente(riga[USERNAME_RIFERIMENTO]);
+        int idRistorante = identificativi.ristorante(chiave(riga, NOME_RIFERIMENTO, NAZIONE_RIFERIMENTO));
+        if (idCliente < 0 || idRistorante < 0) {
+            return null;
+        }
+        String[] convertita = new String[riga.length - COLONNE_RIFERIMENTO + 2];
+        convertita[0] = String.valueOf(idCliente);
+        convertita[1] = String.valueOf(idRistorante);
+        System.arraycopy(riga, COLONNE_RIFERIMENTO, convertita, 2, riga.length - COLONNE_RIFERIMENTO);
+        return convertita;
+    }
+
+    /**
+     * Verifica se un file ha ancora l'intestazione del formato precedente.
+     */
+    private static boolean daConvertire(Path file, int colonna, String nuova) throws IOException {
+        if (Files.notExists(file)) {
+            return false;
+        }
+        try (LettoreCSV intestazione = new LettoreCSV(file, 0)) {
+            return intestazione.prossima() && intestazione.numeroColonne() > colonna
+                    && !nuova.equals(intestazione.stringa(colonna));
+        }
+    }
+
+    /**
+     * Legge gli identificativi di utenti e ristoranti, nel formato in cui si trovano i rispettivi file.
+     * Nel formato precedente l'identificativo è la posizione della riga; a parità di username o di
+     * chiave prevale la prima riga, come nell'archivio.
+     */
+    private static Identificativi leggiIdentificativi(Path utenti, boolean utentiDaConvertire,
+                                                      Path ristoranti, boolean ristorantiDaConvertire)
+            throws IOException {
+        Map<String, Integer> idUtenti = new HashMap<>();
+        int spostamento = utentiDaConvertire ? 0 : 1;
+        try (LettoreCSV riga = new LettoreCSV(utenti, 1)) {
+            for (int posizione = 0; riga.prossima(); posizione++) {
+                try {
+                    int id = utentiDaConvertire ? posizione : riga.intero(0);
+                    idUtenti.putIfAbsent(riga.stringa(USERNAME_UTENTE + spostamento), id);
+                } catch (RuntimeException e) {
+                    // Riga non valida: verrà scartata anche al caricamento
+                }
+            }
+        }
+
+        Map<String, Integer> idRistoranti = new HashMap<>();
+        spostamento = ristorantiDaConvertire ? 0 : 1;
+        try (LettoreCSV lettore = new LettoreCSV(ristoranti, 1)) {
+            for (int posizione = 0; lettore.prossima(); posizione++) {
+                try {
+                    String[] riga = lettore.riga();
+                    int id = ristorantiDaConvertire ? posizione : Integer.parseInt(riga[0].trim());
+                    idRistoranti.putIfAbsent(chiave(riga, NOME_RISTORANTE + spostamento,
+                            NAZIONE_RISTORANTE + spostamento), id);
+                } catch (RuntimeException e) {
+                    // Riga non valida: verrà scartata anche al caricamento
+                }
+            }
+        }
+
+        return new Identificativi() {
+            @Override
+            public int utente(String username) {
+                return idUtenti.getOrDefault(username, -1);
+            }
+
+            @Override
+            public int ristorante(String chiave) {
+                return chiave != null ? idRistoranti.getOrDefault(chiave, -1) : -1;
+            }
+        };
+    }
+
+    /**
+     * Calcola la chiave di un ristorante dal nome e dalle cinque colonne della località
+     * (nazione, città, indirizzo, latitudine, longitudine) di una riga.
+     *
+     * @return La chiave, o {@code null} se la riga non è valida
+     */
+    private static String chiave(String[] riga, int nome, int nazione) {
+        try {
+            Localita localita = new Localita(riga[nazione], riga[nazione + 1], riga[nazione + 2],
+                    Double.parseDouble(riga[nazione + 3].trim()), Double.parseDouble(riga[nazione + 4].trim()));
+            return Ristorante.calcolaChiave(riga[nome], localita);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Riscrive un file di utenti o ristoranti aggiungendo a ogni riga la sua posizione come identificativo.
+     */
+    private static void aggiungiIdentificativi(Path file) throws IOException {
+        Path temporaneo = temporaneo(file);
+        try (LettoreCSV riga = new LettoreCSV(file, 0);
+             CSVWriter writer = new CSVWriter(Files.newBufferedWriter(temporaneo, StandardCharsets.UTF_8))) {
+            if (riga.prossima()) {
+                writer.writeNext(conIntestazione(riga.riga()));
+            }
+            for (int posizione = 0; riga.prossima(); posizione++) {
+                writer.writeNext(conIdentificativo(posizione, riga.riga()));
+            }
+        }
+        sostituisci(temporaneo, file);
+    }
+
+    /**
+     * Riscrive un file di recensioni, di registro o di preferiti sostituendo i riferimenti a cliente
+     * e ristorante con i loro identificativi, a partire dalla colonna indicata.
+     */
+    private static void convertiRiferimenti(Path file, int primaColonna, String[] intestazione,
+                                            Identificativi identificativi) throws IOException {
+        Path temporaneo = temporaneo(file);
+        int scartate = 0;
+        try (LettoreCSV riga = new LettoreCSV(file, 1);
+             CSVWriter writer = new CSVWriter(Files.newBufferedWriter(temporaneo, StandardCharsets.UTF_8))) {
+            writer.writeNext(intestazione);
+            while (riga.prossima()) {
+                String[] colonne = riga.riga();
+                String[] riferimento = new String[Math.max(0, colonne.length - primaColonna)];
+                System.arraycopy(colonne, primaColonna, riferimento, 0, riferimento.length);
+
+                String[] convertito = convertiRiferimento(riferimento, identificativi);
+                if (convertito == null) {
+                    scartate++;
+                    continue;
+                }
+                String[] convertita = new String[primaColonna + convertito.length];
+                System.arraycopy(colonne, 0, convertita, 0, primaColonna);
+                System.arraycopy(convertito, 0, convertita, primaColonna, convertito.length);
+                writer.writeNext(convertita);
+            }
+        }
+        if (scartate > 0) {
+            System.err.println("Conversione di " + file.getFileName() + ": scartate " + scartate
+                    + " righe che non riferiscono un utente o un ristorante esistente");
+        }
+        sostituisci(temporaneo, file);
+    }
+
+    /**
+     * Aggiunge la colonna degli identificativi all'intestazione di un file.
+     */
+    private static String[] conIntestazione(String[] intestazione) {
+        String[] convertita = new String[intestazione.length + 1];
+        convertita[0] = COLONNA_ID;
+        System.arraycopy(intestazione, 0, convertita, 1, intestazione.length);
+        return convertita;
+    }
+
+    /**
+     * Restituisce il path del file temporaneo usato per convertire un file.
+     */
+    private static Path temporaneo(Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    /**
+     * Sincronizza su disco il file convertito e lo sostituisce in modo atomico a quello originale.
+     */
+    private static void sostituisci(Path temporaneo, Path file) throws IOException {
+        try (FileChannel canale = FileChannel.open(temporaneo, StandardOpenOption.WRITE)) {
+            canale.force(true);
+        }
+        try {
+            Files.move(temporaneo, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaneo, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
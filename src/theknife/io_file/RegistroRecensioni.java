@@ -0,0 +1,390 @@
+package theknife.io_file;
+
+import com.opencsv.CSVWriter;
+import theknife.entita.Recensione;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Registro append-only delle modifiche alle recensioni.
+ * <p>
+ * Ogni inserimento, modifica, risposta o eliminazione di una recensione viene accodata al registro
+ * come singolo record, invece di riscrivere l'intero file {@code Recensioni.csv}. I record vengono
+ * scritti a lotti da uno {@link ScrittoreCSV}:
+ * <ul>
+ *     <li>{@link #AGGIORNA}: riga completa della recensione, che sostituisce quella con lo stesso cliente e ristorante</li>
+ *     <li>{@link #ELIMINA}: tombstone che nasconde la recensione con lo stesso cliente e ristorante</li>
+ * </ul>
+ * All'avvio il registro viene riletto dopo il file delle recensioni, così che l'ultimo record
+ * di ogni recensione prevalga sulla riga originale.
+ * <p>
+ * Quando i record superano una soglia proporzionale al numero di recensioni, il registro viene
+ * ruotato e un thread in background riscrive {@code Recensioni.csv} dallo stato in memoria
+ * (compattazione). Poiché ogni record descrive lo stato finale di una recensione, rileggere
+ * un registro già compattato non altera il risultato: un'interruzione durante la compattazione
+ * non comporta perdita di dati.
+ *
+ * @author Thomas Riotto
+ */
+final class RegistroRecensioni {
+
+    /**
+     * Operazione che inserisce o sostituisce una recensione.
+     */
+    static final String AGGIORNA = "AGGIORNA";
+
+    /**
+     * Operazione che elimina una recensione (tombstone).
+     */
+    static final String ELIMINA = "ELIMINA";
+
+    /**
+     * Numero minimo di record oltre il quale viene avviata la compattazione.
+     */
+    private static final int SOGLIA_MINIMA_COMPATTAZIONE = 1000;
+
+    /**
+     * Path del file delle recensioni da compattare.
+     */
+    private final Path dataset;
+
+    /**
+     * Path del registro corrente, in cui vengono accodati i nuovi record.
+     */
+    private final Path registro;
+
+    /**
+     * Path del registro ruotato, in attesa di essere incorporato nel file delle recensioni.
+     */
+    private final Path registroPrecedente;
+
+    /**
+     * Path del file temporaneo usato durante la compattazione.
+     */
+    private final Path temporaneo;
+
+    /**
+     * Intestazione del file delle recensioni.
+     */
+    private final String[] intestazione;
+
+    /**
+     * Scrittore che accoda i record al registro corrente.
+     */
+    private final ScrittoreCSV scrittore;
+
+    /**
+     * Executor a thread singolo che esegue le compattazioni in background.
+     */
+    private final ExecutorService compattatore = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "compattazione-recensioni");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Numero di record presenti nel registro corrente.
+     */
+    private int recordRegistrati;
+
+    /**
+     * Compattazione in corso, o {@code null} se non ce ne sono.
+     */
+    private Future<?> compattazione;
+
+    /**
+     * Errore dell'ultima compattazione fallita in background, non ancora segnalato, o {@code null}.
+     */
+    private IOException erroreCompattazione;
+
+    /**
+     * Crea il registro delle modifiche associato al file delle recensioni.
+     *
+     * @param dataset      Path del file delle recensioni
+     * @param registro     Path del file di registro
+     * @param intestazione Intestazione del file delle recensioni
+     */
+    RegistroRecensioni(Path dataset, Path registro, String[] intestazione) {
+        this.dataset = dataset;
+        this.registro = registro;
+        this.registroPrecedente = registro.resolveSibling(registro.getFileName() + ".1");
+        this.temporaneo = dataset.resolveSibling(dataset.getFileName() + ".tmp");
+        this.intestazione = intestazione;
+        this.scrittore = new ScrittoreCSV(registro, intestazioneRegistro());
+    }
+
+    /**
+     * Accoda un record al registro.
+     * <p>
+     * Il record viene scritto insieme a quelli accodati nello stesso intervallo da altri thread:
+     * l'attesa restituita va attesa prima di considerare la modifica salvata.
+     *
+     * @param operazione Operazione da registrare ({@link #AGGIORNA} o {@link #ELIMINA})
+     * @param riga       Riga della recensione nel formato di {@code Recensioni.csv}
+     * @return Attesa completata quando il record è su disco
+     */
+    synchronized CompletableFuture<Void> registra(String operazione, String[] riga) {
+        String[] record = new String[riga.length + 1];
+        record[0] = operazione;
+        System.arraycopy(riga, 0, record, 1, riga.length);
+        recordRegistrati++;
+        return scrittore.accoda(record);
+    }
+
+    /**
+     * Restituisce il path del registro corrente.
+     *
+     * @return Path del registro corrente
+     */
+    Path registro() {
+        return registro;
+    }
+
+    /**
+     * Restituisce il path del registro ruotato in attesa di compattazione.
+     *
+     * @return Path del registro ruotato
+     */
+    Path registroPrecedente() {
+        return registroPrecedente;
+    }
+
+    /**
+     * Rilegge i record del registro, nell'ordine in cui sono stati scritti.
+     * Viene letto prima l'eventuale registro ruotato e non ancora compattato, poi quello corrente.
+     *
+     * @param applica Azione invocata per ogni record con l'operazione e la riga della recensione,
+     *                valida solo durante l'invocazione
+     * @throws IOException se si verifica un errore di I/O
+     */
+    synchronized void rileggi(BiConsumer<String, RigaCSV> applica) throws IOException {
+        Files.deleteIfExists(temporaneo);
+        rileggi(registroPrecedente, applica);
+        recordRegistrati = rileggi(registro, applica);
+    }
+
+    /**
+     * Rilegge un singolo file di registro.
+     *
+     * @return Numero di record letti
+     */
+    private int rileggi(Path file, BiConsumer<String, RigaCSV> applica) throws IOException {
+        if (Files.notExists(file)) {
+            return 0;
+        }
+
+        int letti = 0;
+        try (LettoreCSV record = new LettoreCSV(file, 1)) {
+            RigaCSV riga = record.da(1);
+
+            while (record.prossima()) {
+                if (record.numeroColonne() < 2) {
+                    continue;
+                }
+                applica.accept(record.stringa(0), riga);
+                letti++;
+            }
+        }
+        return letti;
+    }
+
+    /**
+     * Verifica se esiste un registro ruotato non ancora incorporato nel file delle recensioni,
+     * ad esempio perché l'applicazione è stata chiusa durante una compattazione.
+     *
+     * @return {@code true} se è necessaria una compattazione
+     */
+    synchronized boolean haCompattazioneInSospeso() {
+        return Files.exists(registroPrecedente);
+    }
+
+    /**
+     * Verifica se il registro corrente ha superato la soglia di compattazione.
+     *
+     * @param numeroRecensioni Numero di recensioni attualmente in memoria
+     * @return {@code true} se conviene avviare una compattazione
+     */
+    synchronized boolean richiedeCompattazione(int numeroRecensioni) {
+        boolean inCorso = compattazione != null && !compattazione.isDone();
+        return !inCorso && recordRegistrati >= Math.max(SOGLIA_MINIMA_COMPATTAZIONE, numeroRecensioni / 4);
+    }
+
+    /**
+     * Ruota il registro e avvia in background la riscrittura del file delle recensioni.
+     * <p>
+     * Va invocato mentre nessun'altra modifica alle recensioni è in corso, così che le recensioni
+     * passate riflettano esattamente i record del registro ruotato.
+     *
+     * @param recensioni Stato corrente delle recensioni
+     * @param inRiga     Conversione di una recensione in riga CSV
+     * @param alTermine  Azione eseguita in background dopo una compattazione riuscita
+     * @throws IOException se non è possibile ruotare il registro
+     */
+    synchronized void avviaCompattazione(List<Recensione> recensioni, Function<Recensione, String[]> inRiga,
+                                         AzioneFile alTermine) throws IOException {
+        if (compattazione != null && !compattazione.isDone()) {
+            return;
+        }
+
+        // I record ancora in attesa devono finire nel registro che viene ruotato
+        scrittore.svuota();
+
+        // Se una compattazione precedente è fallita il registro ruotato è ancora presente:
+        // il registro corrente resta valido e verrà ruotato alla prossima occasione
+        if (Files.notExists(registroPrecedente) && Files.exists(registro)) {
+            Files.move(registro, registroPrecedente, StandardCopyOption.REPLACE_EXISTING);
+            recordRegistrati = 0;
+        }
+
+        compattazione = compattatore.submit(() -> {
+            try {
+                compatta(recensioni, inRiga);
+                alTermine.esegui();
+            } catch (IOException e) {
+                // Il registro ruotato resta su disco: l'errore viene segnalato alla prossima modifica
+                synchronized (this) {
+                    erroreCompattazione = e;
+                }
+            }
+        });
+    }
+
+    /**
+     * Segnala l'errore dell'ultima compattazione fallita in background, se non è ancora stato segnalato.
+     * <p>
+     * Il registro ruotato non viene eliminato finché la compattazione non riesce, per cui nessuna
+     * modifica va persa: la compattazione viene ritentata alla rotazione successiva.
+     *
+     * @throws IOException se l'ultima compattazione non è andata a buon fine
+     */
+    synchronized void verificaCompattazione() throws IOException {
+        IOException errore = erroreCompattazione;
+        if (errore != null) {
+            erroreCompattazione = null;
+            throw new IOException("Errore nella compattazione delle recensioni: " + errore.getMessage(), errore);
+        }
+    }
+
+    /**
+     * Attende il termine dell'eventuale compattazione in corso.
+     *
+     * @throws IOException se la compattazione non è andata a buon fine
+     */
+    void attendiCompattazione() throws IOException {
+        Future<?> inCorso;
+        synchronized (this) {
+            inCorso = compattazione;
+        }
+        if (inCorso == null) {
+            return;
+        }
+        try {
+            inCorso.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IOException("Errore nella compattazione delle recensioni: " + e.getMessage(), e);
+        }
+        verificaCompattazione();
+    }
+
+    /**
+     * Operazione su file eseguita al termine di una compattazione.
+     */
+    @FunctionalInterface
+    interface AzioneFile {
+
+        /**
+         * Esegue l'operazione.
+         *
+         * @throws IOException se si verifica un errore di I/O
+         */
+        void esegui() throws IOException;
+    }
+
+    /**
+     * Riscrive il file delle recensioni in un file temporaneo, lo sostituisce a quello esistente
+     * e infine elimina il registro ruotato ormai incorporato.
+     *
+     * @param recensioni Stato delle recensioni da scrivere
+     * @param inRiga     Conversione di una recensione in riga CSV
+     * @throws IOException se si verifica un errore di I/O
+     */
+    void compatta(List<Recensione> recensioni, Function<Recensione, String[]> inRiga) throws IOException {
+        try (CSVWriter writer = new CSVWriter(Files.newBufferedWriter(temporaneo, StandardCharsets.UTF_8))) {
+            writer.writeNext(intestazione);
+
+            for (Recensione recensione : recensioni) {
+                writer.writeNext(inRiga.apply(recensione));
+            }
+        }
+
+        // Il file deve essere su disco prima di sostituire quello originale
+        try (FileChannel canale = FileChannel.open(temporaneo, StandardOpenOption.WRITE)) {
+            canale.force(true);
+        }
+
+        try {
+            Files.move(temporaneo, dataset, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaneo, dataset, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        // La sostituzione deve essere su disco prima di eliminare il registro che la rende superflua
+        sincronizzaCartella(dataset.toAbsolutePath().getParent());
+
+        Files.deleteIfExists(registroPrecedente);
+    }
+
+    /**
+     * Sincronizza su disco il contenuto di una cartella, così che le rinomine al suo interno
+     * sopravvivano a un'interruzione.
+     * <p>
+     * Sui sistemi che non permettono di aprire una cartella (Windows) la sincronizzazione viene
+     * saltata: lì la rinomina è già resa persistente dal file system.
+     *
+     * @param cartella Cartella da sincronizzare
+     * @throws IOException se la sincronizzazione non è andata a buon fine
+     */
+    private static void sincronizzaCartella(Path cartella) throws IOException {
+        FileChannel canale;
+        try {
+            canale = FileChannel.open(cartella, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (canale) {
+            canale.force(true);
+        }
+    }
+
+    /**
+     * Restituisce l'intestazione del registro: l'operazione seguita dalle colonne delle recensioni.
+     */
+    private String[] intestazioneRegistro() {
+        String[] intestazioneRegistro = new String[intestazione.length + 1];
+        intestazioneRegistro[0] = "Operazione";
+        System.arraycopy(intestazione, 0, intestazioneRegistro, 1, intestazione.length);
+        return intestazioneRegistro;
+    }
+}
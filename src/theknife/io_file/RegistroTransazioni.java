@@ -0,0 +1,361 @@
+package theknife.io_file;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Registro delle transazioni (write-ahead log) che rende atomiche le modifiche ai file CSV.
+ * <p>
+ * Prima di modificare i file, ogni operazione di scrittura accoda al registro una transazione
+ * con tutte le operazioni che la compongono e attende che sia su disco; solo dopo vengono
+ * modificati i file CSV e l'archivio in memoria. Se l'applicazione si interrompe a metà di una
+ * modifica, all'avvio successivo le transazioni del registro vengono riapplicate: ogni operazione
+ * viene eseguita solo se il suo effetto non è già presente, così che riapplicare una transazione
+ * già completata non abbia effetti.
+ * <p>
+ * Ogni transazione è scritta come un blocco preceduto dalla sua lunghezza e dal suo checksum
+ * (CRC-32C). Un blocco scritto solo in parte, o con checksum errato, indica una transazione
+ * interrotta prima di diventare durevole: la transazione e quelle successive vengono ignorate.
+ * <p>
+ * La sincronizzazione su disco è raggruppata (group commit): mentre un thread esegue la
+ * sincronizzazione, le transazioni accodate dagli altri thread attendono e vengono rese durevoli
+ * tutte insieme dalla sincronizzazione successiva, invece di richiederne una ciascuna.
+ * <p>
+ * Quando il registro supera {@link #SOGLIA_TRONCAMENTO} byte e non ci sono transazioni in corso,
+ * i file dei dati vengono sincronizzati su disco e il registro viene svuotato.
+ *
+ * @author Thomas Riotto
+ */
+final class RegistroTransazioni {
+
+    /**
+     * Dimensione del registro oltre la quale viene svuotato.
+     */
+    private static final long SOGLIA_TRONCAMENTO = 1 << 20;
+
+    /**
+     * Dimensione massima di una transazione, usata per riconoscere blocchi danneggiati.
+     */
+    private static final int DIMENSIONE_MASSIMA_TRANSAZIONE = 1 << 24;
+
+    /**
+     * Singola operazione di una transazione.
+     *
+     * @param tipo Tipo dell'operazione
+     * @param riga Riga CSV a cui si riferisce l'operazione
+     */
+    record Operazione(String tipo, String[] riga) {
+    }
+
+    /**
+     * Azione che riapplica all'avvio una transazione letta dal registro.
+     */
+    @FunctionalInterface
+    interface Ripristino {
+
+        /**
+         * Riapplica le operazioni di una transazione, saltando quelle il cui effetto è già presente.
+         *
+         * @param operazioni Operazioni della transazione, nell'ordine in cui sono state registrate
+         * @return {@code true} se almeno un'operazione ha modificato i dati
+         * @throws IOException se si verifica un errore di I/O
+         */
+        boolean applica(List<Operazione> operazioni) throws IOException;
+    }
+
+    /**
+     * Path del file di registro.
+     */
+    private final Path file;
+
+    /**
+     * File dei dati da sincronizzare su disco prima di svuotare il registro.
+     */
+    private final List<Path> datiProtetti;
+
+    /**
+     * Canale del registro, aperto alla prima transazione.
+     */
+    private FileChannel canale;
+
+    /**
+     * Numero progressivo dell'ultima transazione accodata.
+     */
+    private long transazioniScritte;
+
+    /**
+     * Numero progressivo dell'ultima transazione sincronizzata su disco.
+     */
+    private long transazioniDurevoli;
+
+    /**
+     * Indica se un thread sta sincronizzando il registro su disco.
+     */
+    private boolean sincronizzazioneInCorso;
+
+    /**
+     * Numero di transazioni registrate ma non ancora applicate ai file.
+     */
+    private int transazioniAperte;
+
+    /**
+     * Crea il registro delle transazioni.
+     *
+     * @param file         Path del file di registro
+     * @param datiProtetti File dei dati modificati dalle transazioni
+     */
+    RegistroTransazioni(Path file, List<Path> datiProtetti) {
+        this.file = file;
+        this.datiProtetti = datiProtetti;
+    }
+
+    /**
+     * Transazione registrata e durevole, da chiudere dopo averla applicata ai file.
+     */
+    final class Transazione implements Closeable {
+
+        /**
+         * Indica se la transazione è già stata chiusa.
+         */
+        private boolean chiusa;
+
+        private Transazione() {
+        }
+
+        /**
+         * Segnala che la transazione è stata applicata ai file dei dati.
+         *
+         * @throws IOException se non è possibile svuotare il registro
+         */
+        @Override
+        public void close() throws IOException {
+            if (!chiusa) {
+                chiusa = true;
+                termina();
+            }
+        }
+    }
+
+    /**
+     * Registra una transazione e attende che sia sincronizzata su disco.
+     * <p>
+     * La transazione restituita va chiusa dopo aver applicato le operazioni ai file,
+     * preferibilmente con un try-with-resources.
+     *
+     * @param operazioni Operazioni che compongono la transazione
+     * @return La transazione registrata
+     * @throws IOException se non è possibile scrivere o sincronizzare il registro
+     */
+    Transazione inizia(Operazione... operazioni) throws IOException {
+        byte[] corpo = codifica(operazioni);
+        CRC32C checksum = new CRC32C();
+        checksum.update(corpo);
+
+        ByteBuffer blocco = ByteBuffer.allocate(2 * Integer.BYTES + corpo.length);
+        blocco.putInt(corpo.length).putInt((int) checksum.getValue()).put(corpo).flip();
+
+        long numero;
+        synchronized (this) {
+            apri();
+            long inizio = canale.position();
+            try {
+                while (blocco.hasRemaining()) {
+                    canale.write(blocco);
+                }
+            } catch (IOException e) {
+                // Un blocco scritto a metà renderebbe illeggibili le transazioni successive
+                canale.truncate(inizio);
+                throw e;
+            }
+            numero = ++transazioniScritte;
+            transazioniAperte++;
+        }
+
+        try {
+            rendiDurevole(numero);
+        } catch (IOException e) {
+            synchronized (this) {
+                transazioniAperte--;
+            }
+            throw e;
+        }
+        return new Transazione();
+    }
+
+    /**
+     * Attende che la transazione indicata sia su disco. Se nessun altro thread sta sincronizzando
+     * il registro, la sincronizzazione viene eseguita dal thread corrente e include tutte le
+     * transazioni accodate fino a quel momento.
+     */
+    private void rendiDurevole(long numero) throws IOException {
+        long obiettivo;
+        synchronized (this) {
+            while (transazioniDurevoli < numero && sincronizzazioneInCorso) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Attesa della sincronizzazione interrotta", e);
+                }
+            }
+            if (transazioniDurevoli >= numero) {
+                return;
+            }
+            sincronizzazioneInCorso = true;
+            obiettivo = transazioniScritte;
+        }
+
+        boolean riuscita = false;
+        try {
+            canale.force(false);
+            riuscita = true;
+        } finally {
+            synchronized (this) {
+                if (riuscita) {
+                    transazioniDurevoli = Math.max(transazioniDurevoli, obiettivo);
+                }
+                sincronizzazioneInCorso = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Chiude una transazione applicata e svuota il registro se ha superato la soglia.
+     */
+    private synchronized void termina() throws IOException {
+        transazioniAperte--;
+        if (transazioniAperte == 0 && canale.size() >= SOGLIA_TRONCAMENTO) {
+            tronca();
+        }
+    }
+
+    /**
+     * Riapplica le transazioni presenti nel registro, nell'ordine in cui sono state scritte,
+     * e infine svuota il registro.
+     * <p>
+     * Va invocato all'avvio, dopo il caricamento dei dati e prima di qualsiasi nuova transazione.
+     *
+     * @param ripristino Azione che riapplica una transazione
+     * @return Numero di transazioni che hanno modificato i dati
+     * @throws IOException se si verifica un errore di I/O
+     */
+    synchronized int ripristina(Ripristino ripristino) throws IOException {
+        if (Files.notExists(file)) {
+            return 0;
+        }
+
+        int applicate = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            CRC32C checksum = new CRC32C();
+            while (true) {
+                int lunghezza = in.readInt();
+                int valore = in.readInt();
+                if (lunghezza < 0 || lunghezza > DIMENSIONE_MASSIMA_TRANSAZIONE) {
+                    break;
+                }
+                byte[] corpo = new byte[lunghezza];
+                in.readFully(corpo);
+
+                checksum.reset();
+                checksum.update(corpo);
+                if ((int) checksum.getValue() != valore) {
+                    break;
+                }
+                if (ripristino.applica(decodifica(corpo))) {
+                    applicate++;
+                }
+            }
+        } catch (EOFException e) {
+            // Fine del registro, oppure ultima transazione scritta solo in parte: viene ignorata
+        }
+
+        apri();
+        tronca();
+        return applicate;
+    }
+
+    /**
+     * Apre il canale del registro, se non è già aperto.
+     */
+    private void apri() throws IOException {
+        if (canale == null) {
+            canale = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            canale.position(canale.size());
+        }
+    }
+
+    /**
+     * Sincronizza su disco i file dei dati e svuota il registro.
+     * Va invocato tenendo il monitor del registro e senza transazioni aperte.
+     */
+    private void tronca() throws IOException {
+        for (Path dato : datiProtetti) {
+            try (FileChannel canaleDato = FileChannel.open(dato, StandardOpenOption.WRITE)) {
+                canaleDato.force(true);
+            } catch (NoSuchFileException e) {
+                // File non ancora creato o già sostituito: non c'è nulla da sincronizzare
+            }
+        }
+        canale.truncate(0);
+        canale.position(0);
+        canale.force(true);
+    }
+
+    /**
+     * Codifica le operazioni di una transazione.
+     */
+    private static byte[] codifica(Operazione[] operazioni) throws IOException {
+        ByteArrayOutputStream corpo = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(corpo)) {
+            out.writeInt(operazioni.length);
+            for (Operazione operazione : operazioni) {
+                IstantaneaArchivio.scriviStringa(out, operazione.tipo());
+                out.writeInt(operazione.riga().length);
+                for (String colonna : operazione.riga()) {
+                    IstantaneaArchivio.scriviStringa(out, colonna);
+                }
+            }
+        }
+        return corpo.toByteArray();
+    }
+
+    /**
+     * Decodifica le operazioni scritte da {@link #codifica(Operazione[])}.
+     */
+    private static List<Operazione> decodifica(byte[] corpo) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(corpo))) {
+            int numeroOperazioni = in.readInt();
+            List<Operazione> operazioni = new ArrayList<>(numeroOperazioni);
+            for (int i = 0; i < numeroOperazioni; i++) {
+                String tipo = IstantaneaArchivio.leggiStringa(in);
+                String[] riga = new String[in.readInt()];
+                for (int j = 0; j < riga.length; j++) {
+                    riga[j] = IstantaneaArchivio.leggiStringa(in);
+                }
+                operazioni.add(new Operazione(tipo, riga));
+            }
+            return operazioni;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package theknife.io_file;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Riga di un file CSV le cui colonne vengono convertite solo quando richieste.
+ * <p>
+ * A differenza di un {@code String[]}, una riga non materializza le colonne in anticipo:
+ * ogni accesso decodifica direttamente la colonna richiesta. Una riga è valida solo fino
+ * all'avanzamento del lettore che l'ha prodotta.
+ *
+ * @author Thomas Riotto
+ * @see LettoreCSV
+ */
+interface RigaCSV {
+
+    /**
+     * Restituisce il numero di colonne della riga.
+     *
+     * @return Numero di colonne
+     */
+    int numeroColonne();
+
+    /**
+     * Restituisce il contenuto testuale di una colonna.
+     *
+     * @param colonna Indice della colonna, a partire da 0
+     * @return Il contenuto della colonna, stringa vuota se la colonna è vuota
+     * @throws IndexOutOfBoundsException se la colonna non esiste
+     */
+    String stringa(int colonna);
+
+    /**
+     * Restituisce il valore numerico di una colonna.
+     *
+     * @param colonna Indice della colonna, a partire da 0
+     * @return Il valore della colonna
+     * @throws NumberFormatException     se la colonna non contiene un numero
+     * @throws IndexOutOfBoundsException se la colonna non esiste
+     */
+    double decimale(int colonna);
+
+    /**
+     * Restituisce il valore intero di una colonna.
+     *
+     * @param colonna Indice della colonna, a partire da 0
+     * @return Il valore della colonna
+     * @throws NumberFormatException     se la colonna non contiene un intero
+     * @throws IndexOutOfBoundsException se la colonna non esiste
+     */
+    int intero(int colonna);
+
+    /**
+     * Verifica se una colonna è vuota o contiene solo spazi.
+     *
+     * @param colonna Indice della colonna, a partire da 0
+     * @return {@code true} se la colonna è vuota
+     * @throws IndexOutOfBoundsException se la colonna non esiste
+     */
+    boolean vuota(int colonna);
+
+    /**
+     * Crea una riga a partire dalle colonne già separate, ad esempio quelle di un record
+     * del registro delle transazioni.
+     *
+     * @param colonne Colonne della riga
+     * @return La riga corrispondente
+     */
+    static RigaCSV di(String... colonne) {
+        return new RigaCSV() {
+            @Override
+            public int numeroColonne() {
+                return colonne.length;
+            }
+
+            @Override
+            public String stringa(int colonna) {
+                String valore = colonne[colonna];
+                return valore != null ? valore : "";
+            }
+
+            @Override
+            public double decimale(int colonna) {
+                return Double.parseDouble(stringa(colonna).trim());
+            }
+
+            @Override
+            public int intero(int colonna) {
+                return Integer.parseInt(stringa(colonna).trim());
+            }
+
+            @Override
+            public boolean vuota(int colonna) {
+                return stringa(colonna).isBlank();
+            }
+        };
+    }
+}
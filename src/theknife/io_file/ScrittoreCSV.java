@@ -0,0 +1,244 @@
+package theknife.io_file;
+
+import com.opencsv.CSVWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Scrittore che accoda righe a un file CSV raggruppandole in lotti.
+ * <p>
+ * Invece di aprire, scrivere e chiudere il file per ogni riga, le righe accodate dai chiamanti
+ * vengono raccolte in memoria e scritte da un thread dedicato con un'unica apertura del file e
+ * un'unica sincronizzazione su disco. Un lotto viene scritto quando raggiunge
+ * {@link #DIMENSIONE_LOTTO} righe, oppure quando la prima riga in attesa supera
+ * {@link #ATTESA_MASSIMA_MILLIS} millisecondi.
+ * <p>
+ * Ogni chiamata a {@link #accoda(String[])} restituisce un {@link CompletableFuture} che viene
+ * completato quando la riga è su disco, o completato con l'errore se la scrittura fallisce.
+ * Le righe vengono scritte nell'ordine in cui sono state accodate.
+ * <p>
+ * Il file viene aperto per nome a ogni lotto: prima di sostituire o spostare il file è
+ * sufficiente invocare {@link #svuota()}.
+ *
+ * @author Thomas Riotto
+ */
+final class ScrittoreCSV {
+
+    /**
+     * Numero di righe oltre il quale un lotto viene scritto subito.
+     */
+    private static final int DIMENSIONE_LOTTO = 512;
+
+    /**
+     * Tempo massimo di attesa di una riga prima della scrittura del suo lotto.
+     */
+    private static final long ATTESA_MASSIMA_MILLIS = 2;
+
+    /**
+     * Path del file su cui scrivere.
+     */
+    private final Path file;
+
+    /**
+     * Intestazione da scrivere se il file non esiste o è vuoto, {@code null} se non prevista.
+     */
+    private final String[] intestazione;
+
+    /**
+     * Righe in attesa di essere scritte.
+     */
+    private List<String[]> righe = new ArrayList<>();
+
+    /**
+     * Attese dei chiamanti, nello stesso ordine delle righe.
+     */
+    private List<CompletableFuture<Void>> attese = new ArrayList<>();
+
+    /**
+     * Istante in cui è stata accodata la prima riga in attesa, in nanosecondi.
+     */
+    private long inizioAttesa;
+
+    /**
+     * Numero di righe accodate dalla creazione dello scrittore.
+     */
+    private long accodate;
+
+    /**
+     * Numero di righe per cui la scrittura è terminata, con successo o meno.
+     */
+    private long elaborate;
+
+    /**
+     * Indica se il lotto corrente va scritto senza attendere la soglia di tempo.
+     */
+    private boolean urgente;
+
+    /**
+     * Thread che scrive i lotti, avviato alla prima riga.
+     */
+    private Thread scrittore;
+
+    /**
+     * Crea uno scrittore per il file indicato.
+     *
+     * @param file         Path del file su cui accodare le righe
+     * @param intestazione Intestazione da scrivere in un file nuovo, o {@code null}
+     */
+    ScrittoreCSV(Path file, String[] intestazione) {
+        this.file = file;
+        this.intestazione = intestazione;
+    }
+
+    /**
+     * Accoda una riga al file.
+     *
+     * @param riga Riga da scrivere
+     * @return Attesa completata quando la riga è su disco
+     */
+    synchronized CompletableFuture<Void> accoda(String[] riga) {
+        if (scrittore == null) {
+            scrittore = new Thread(this::scriviLotti, "scrittura-" + file.getFileName());
+            scrittore.setDaemon(true);
+            scrittore.start();
+        }
+
+        CompletableFuture<Void> attesa = new CompletableFuture<>();
+        if (righe.isEmpty()) {
+            inizioAttesa = System.nanoTime();
+            notifyAll();
+        }
+        righe.add(riga);
+        attese.add(attesa);
+        accodate++;
+        if (righe.size() >= DIMENSIONE_LOTTO) {
+            notifyAll();
+        }
+        return attesa;
+    }
+
+    /**
+     * Scrive subito le righe in attesa e attende che siano state elaborate.
+     * Va invocato prima di leggere, sostituire o spostare il file.
+     *
+     * @throws IOException se l'attesa viene interrotta
+     */
+    synchronized void svuota() throws IOException {
+        long obiettivo = accodate;
+        urgente = true;
+        notifyAll();
+        while (elaborate < obiettivo) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Attesa della scrittura interrotta", e);
+            }
+        }
+    }
+
+    /**
+     * Attende il completamento di una scrittura, riportando l'eventuale errore come {@link IOException}.
+     *
+     * @param attesa Attesa restituita da {@link #accoda(String[])}
+     * @throws IOException se la scrittura non è andata a buon fine o l'attesa viene interrotta
+     */
+    static void attendi(CompletableFuture<Void> attesa) throws IOException {
+        try {
+            attesa.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Attesa della scrittura interrotta", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException errore) {
+                throw errore;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Ciclo del thread di scrittura: attende un lotto completo, o la scadenza della prima
+     * riga in attesa, e lo scrive.
+     */
+    private void scriviLotti() {
+        while (true) {
+            List<String[]> lotto;
+            List<CompletableFuture<Void>> attesaLotto;
+
+            synchronized (this) {
+                try {
+                    while (righe.isEmpty()) {
+                        wait();
+                    }
+                    long scadenza = inizioAttesa + TimeUnit.MILLISECONDS.toNanos(ATTESA_MASSIMA_MILLIS);
+                    long restante;
+                    while (!urgente && righe.size() < DIMENSIONE_LOTTO
+                            && (restante = scadenza - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(this, restante);
+                    }
+                } catch (InterruptedException e) {
+                    // Il thread è un demone: un'interruzione anticipa solo la scrittura del lotto
+                }
+                lotto = righe;
+                attesaLotto = attese;
+                righe = new ArrayList<>();
+                attese = new ArrayList<>();
+                urgente = false;
+            }
+
+            IOException errore = null;
+            try {
+                scrivi(lotto);
+            } catch (IOException e) {
+                errore = e;
+            }
+            for (CompletableFuture<Void> attesa : attesaLotto) {
+                if (errore == null) {
+                    attesa.complete(null);
+                } else {
+                    attesa.completeExceptionally(errore);
+                }
+            }
+
+            synchronized (this) {
+                elaborate += lotto.size();
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Scrive un lotto in coda al file e lo sincronizza su disco.
+     */
+    private void scrivi(List<String[]> lotto) throws IOException {
+        boolean nuovo = Files.notExists(file) || Files.size(file) == 0;
+
+        try (FileOutputStream out = new FileOutputStream(file.toFile(), true);
+             CSVWriter writer = new CSVWriter(new OutputStreamWriter(new BufferedOutputStream(out),
+                     StandardCharsets.UTF_8))) {
+            if (nuovo && intestazione != null) {
+                writer.writeNext(intestazione);
+            }
+            writer.writeAll(lotto);
+            writer.flush();
+            out.getChannel().force(false);
+        }
+    }
+}
@@ -11,10 +11,22 @@
  * <ul>
  *     <li>{@code Preferiti.csv}: mantiene i dati dei ristoranti preferiti dei clienti</li>
  *     <li>{@code Recensioni.csv}: mantiene i dati delle recensioni dei ristoranti</li>
+ *     <li>{@code RegistroRecensioni.csv}: registro append-only delle modifiche alle recensioni,
+ *     compattato periodicamente in {@code Recensioni.csv}</li>
  *     <li>{@code Ristoranti.csv}: mantiene i dati dei ristoranti</li>
  *     <li>{@code Utenti.csv}: mantiene i dati degli utenti e le loro credenziali</li>
+ *     <li>{@code Transazioni.log}: registro delle transazioni, scritto prima di ogni modifica ai file
+ *     e riapplicato all'avvio per completare le modifiche interrotte</li>
  * </ul>
  * <p>
+ * I quattro dataset vengono caricati una sola volta nella classe {@code ArchivioDati}, che serve
+ * tutte le letture dalla memoria; ogni modifica viene scritta prima sul file e poi nell'archivio.
+ * La lettura dei file avviene tramite {@code LettoreCSV}, che suddivide le righe direttamente
+ * sui byte del file e decodifica solo le colonne richieste, mentre le righe aggiunte vengono
+ * scritte a lotti da {@code ScrittoreCSV}, con un'unica sincronizzazione su disco per lotto.
+ * <p>
+ * Dopo ogni caricamento dai file CSV l'archivio viene salvato in un'istantanea binaria
+ * ({@code Archivio.dat}), letta agli avvii successivi finché i file CSV non vengono modificati.
  */
 package theknife.io_file;
 
@@ -0,0 +1,450 @@
+package theknife.servizi;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Albero k-d sulle coordinate dei ristoranti, usato per la ricerca dei ristoranti più vicini.
+ * <p>
+ * Latitudine e longitudine vengono convertite in un punto della sfera unitaria: la distanza
+ * euclidea tra due punti (la corda) cresce con la distanza sulla superficie, per cui l'albero
+ * può lavorare in tre dimensioni senza casi particolari per i poli o per il meridiano 180.
+ * <p>
+ * L'albero viene costruito una volta, bilanciato, su un insieme di ristoranti. La ricerca visita
+ * i nodi in ordine di distanza minima dal punto cercato (best-first) e si ferma quando il nodo
+ * successivo non può contenere ristoranti più vicini del k-esimo già trovato. La classe è
+ * immutabile dopo la costruzione e può essere interrogata da più thread.
+ *
+ * @author Marco Zaro
+ */
+final class AlberoKD {
+
+    /**
+     * Numero massimo di punti in una foglia.
+     */
+    private static final int DIMENSIONE_FOGLIA = 8;
+
+    /**
+     * Identificativi dei ristoranti, nell'ordine delle foglie.
+     */
+    private final int[] id;
+
+    /**
+     * Coordinate dei punti sulla sfera unitaria, tre per punto, nell'ordine delle foglie.
+     */
+    private final double[] punti;
+
+    /**
+     * Primo punto di ogni nodo.
+     */
+    private final int[] inizio;
+
+    /**
+     * Punto successivo all'ultimo di ogni nodo.
+     */
+    private final int[] fine;
+
+    /**
+     * Figlio sinistro di ogni nodo, o -1 per le foglie; il destro è {@code sinistro + 1}.
+     */
+    private final int[] sinistro;
+
+    /**
+     * Estremi del riquadro di ogni nodo: minimo e massimo per ciascuna delle tre coordinate.
+     */
+    private final double[] riquadri;
+
+    /**
+     * Numero di nodi costruiti.
+     */
+    private int nodi;
+
+    /**
+     * Costruisce l'albero sui ristoranti indicati.
+     *
+     * @param id          Identificativi dei ristoranti
+     * @param latitudini  Latitudini in gradi, nello stesso ordine
+     * @param longitudini Longitudini in gradi, nello stesso ordine
+     * @param numero      Numero di ristoranti da considerare
+     */
+    AlberoKD(int[] id, double[] latitudini, double[] longitudini, int numero) {
+        this.id = Arrays.copyOf(id, numero);
+        this.punti = new double[3 * numero];
+        for (int i = 0; i < numero; i++) {
+            sfera(latitudini[i], longitudini[i], punti, 3 * i);
+        }
+
+        // Ogni foglia contiene almeno metà della dimensione massima
+        int massimoNodi = 2 * (numero / (DIMENSIONE_FOGLIA / 2) + 1);
+        inizio = new int[massimoNodi];
+        fine = new int[massimoNodi];
+        sinistro = new int[massimoNodi];
+        riquadri = new double[6 * massimoNodi];
+        costruisci(nuovoNodo(0, numero));
+    }
+
+    /**
+     * Restituisce il numero di ristoranti nell'albero.
+     *
+     * @return Numero di ristoranti
+     */
+    int numero() {
+        return id.length;
+    }
+
+    /**
+     * Cerca i ristoranti più vicini al punto indicato che soddisfano il filtro,
+     * offrendoli all'insieme dei vicini.
+     *
+     * @param punto  Punto cercato sulla sfera unitaria, ottenuto con {@link #sfera(double, double, double[], int)}
+     * @param filtro Filtro sugli identificativi, valutato solo per i ristoranti abbastanza vicini
+     * @param vicini Insieme dei vicini da completare
+     */
+    void vicini(double[] punto, IntPredicate filtro, Vicini vicini) {
+        if (id.length == 0) {
+            return;
+        }
+
+        CodaNodi coda = new CodaNodi();
+        coda.aggiungi(0, distanzaRiquadro(0, punto));
+        while (!coda.vuota()) {
+            if (vicini.pieno() && coda.limiteMinimo() > vicini.soglia()) {
+                return;
+            }
+            int nodo = coda.estrai();
+            if (sinistro[nodo] >= 0) {
+                coda.aggiungi(sinistro[nodo], distanzaRiquadro(sinistro[nodo], punto));
+                coda.aggiungi(sinistro[nodo] + 1, distanzaRiquadro(sinistro[nodo] + 1, punto));
+                continue;
+            }
+            for (int i = inizio[nodo]; i < fine[nodo]; i++) {
+                double distanza = distanza(punti, 3 * i, punto);
+                if ((!vicini.pieno() || distanza <= vicini.soglia()) && filtro.test(id[i])) {
+                    vicini.offri(id[i], distanza);
+                }
+            }
+        }
+    }
+
+    /**
+     * Converte latitudine e longitudine in un punto della sfera unitaria.
+     *
+     * @param latitudine   Latitudine in gradi
+     * @param longitudine  Longitudine in gradi
+     * @param destinazione Array in cui scrivere le tre coordinate
+     * @param posizione    Posizione della prima coordinata nell'array
+     */
+    static void sfera(double latitudine, double longitudine, double[] destinazione, int posizione) {
+        double phi = Math.toRadians(latitudine);
+        double lambda = Math.toRadians(longitudine);
+        double cosPhi = Math.cos(phi);
+        destinazione[posizione] = cosPhi * Math.cos(lambda);
+        destinazione[posizione + 1] = cosPhi * Math.sin(lambda);
+        destinazione[posizione + 2] = Math.sin(phi);
+    }
+
+    /**
+     * Calcola il quadrato della distanza euclidea tra un punto dell'array e il punto cercato.
+     *
+     * @param punti     Array delle coordinate
+     * @param posizione Posizione della prima coordinata del punto
+     * @param punto     Punto cercato
+     * @return Quadrato della corda tra i due punti
+     */
+    static double distanza(double[] punti, int posizione, double[] punto) {
+        double dx = punti[posizione] - punto[0];
+        double dy = punti[posizione + 1] - punto[1];
+        double dz = punti[posizione + 2] - punto[2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Converte il quadrato di una corda sulla sfera unitaria nella distanza in chilometri sulla superficie.
+     *
+     * @param distanza Quadrato della corda
+     * @param raggioKm Raggio della sfera in chilometri
+     * @return Distanza sulla superficie in chilometri
+     */
+    static double chilometri(double distanza, double raggioKm) {
+        return 2 * raggioKm * Math.asin(Math.min(1, Math.sqrt(distanza) / 2));
+    }
+
+    /**
+     * Crea un nodo sull'intervallo di punti indicato e ne calcola il riquadro.
+     */
+    private int nuovoNodo(int da, int a) {
+        int nodo = nodi++;
+        inizio[nodo] = da;
+        fine[nodo] = a;
+        sinistro[nodo] = -1;
+
+        int base = 6 * nodo;
+        for (int d = 0; d < 3; d++) {
+            riquadri[base + 2 * d] = Double.POSITIVE_INFINITY;
+            riquadri[base + 2 * d + 1] = Double.NEGATIVE_INFINITY;
+        }
+        for (int i = da; i < a; i++) {
+            for (int d = 0; d < 3; d++) {
+                double valore = punti[3 * i + d];
+                riquadri[base + 2 * d] = Math.min(riquadri[base + 2 * d], valore);
+                riquadri[base + 2 * d + 1] = Math.max(riquadri[base + 2 * d + 1], valore);
+            }
+        }
+        return nodo;
+    }
+
+    /**
+     * Suddivide ricorsivamente un nodo sulla mediana della coordinata più estesa.
+     */
+    private void costruisci(int nodo) {
+        int da = inizio[nodo];
+        int a = fine[nodo];
+        if (a - da <= DIMENSIONE_FOGLIA) {
+            return;
+        }
+
+        int base = 6 * nodo;
+        int asse = 0;
+        for (int d = 1; d < 3; d++) {
+            if (riquadri[base + 2 * d + 1] - riquadri[base + 2 * d]
+                    > riquadri[base + 2 * asse + 1] - riquadri[base + 2 * asse]) {
+                asse = d;
+            }
+        }
+
+        int mediana = (da + a) >>> 1;
+        seleziona(da, a - 1, mediana, asse);
+
+        // I figli occupano posizioni consecutive
+        int figlio = nuovoNodo(da, mediana);
+        nuovoNodo(mediana, a);
+        sinistro[nodo] = figlio;
+        costruisci(figlio);
+        costruisci(figlio + 1);
+    }
+
+    /**
+     * Riordina i punti tra {@code sinistra} e {@code destra} in modo che quello in posizione {@code k}
+     * sia la mediana lungo l'asse, con i minori prima e i maggiori dopo (quickselect).
+     */
+    private void seleziona(int sinistra, int destra, int k, int asse) {
+        while (sinistra < destra) {
+            double perno = punti[3 * ((sinistra + destra) >>> 1) + asse];
+            int i = sinistra;
+            int j = destra;
+            while (i <= j) {
+                while (punti[3 * i + asse] < perno) {
+                    i++;
+                }
+                while (punti[3 * j + asse] > perno) {
+                    j--;
+                }
+                if (i <= j) {
+                    scambia(i++, j--);
+                }
+            }
+            if (k <= j) {
+                destra = j;
+            } else if (k >= i) {
+                sinistra = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Scambia due punti con i rispettivi identificativi.
+     */
+    private void scambia(int i, int j) {
+        int idTemporaneo = id[i];
+        id[i] = id[j];
+        id[j] = idTemporaneo;
+        for (int d = 0; d < 3; d++) {
+            double temporaneo = punti[3 * i + d];
+            punti[3 * i + d] = punti[3 * j + d];
+            punti[3 * j + d] = temporaneo;
+        }
+    }
+
+    /**
+     * Calcola il quadrato della distanza minima tra il punto cercato e il riquadro di un nodo.
+     */
+    private double distanzaRiquadro(int nodo, double[] punto) {
+        int base = 6 * nodo;
+        double somma = 0;
+        for (int d = 0; d < 3; d++) {
+            double sotto = riquadri[base + 2 * d] - punto[d];
+            double sopra = punto[d] - riquadri[base + 2 * d + 1];
+            double scarto = Math.max(0, Math.max(sotto, sopra));
+            somma += scarto * scarto;
+        }
+        return somma;
+    }
+
+    /**
+     * Coda con priorità dei nodi da visitare, ordinata per distanza minima crescente.
+     */
+    private static final class CodaNodi {
+
+        private int[] nodi = new int[64];
+        private double[] limiti = new double[64];
+        private int numero;
+
+        private boolean vuota() {
+            return numero == 0;
+        }
+
+        private double limiteMinimo() {
+            return limiti[0];
+        }
+
+        private void aggiungi(int nodo, double limite) {
+            if (numero == nodi.length) {
+                nodi = Arrays.copyOf(nodi, numero * 2);
+                limiti = Arrays.copyOf(limiti, numero * 2);
+            }
+            int i = numero++;
+            while (i > 0 && limiti[(i - 1) / 2] > limite) {
+                nodi[i] = nodi[(i - 1) / 2];
+                limiti[i] = limiti[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            nodi[i] = nodo;
+            limiti[i] = limite;
+        }
+
+        private int estrai() {
+            int primo = nodi[0];
+            int ultimoNodo = nodi[--numero];
+            double ultimoLimite = limiti[numero];
+            int i = 0;
+            while (2 * i + 1 < numero) {
+                int figlio = 2 * i + 1;
+                if (figlio + 1 < numero && limiti[figlio + 1] < limiti[figlio]) {
+                    figlio++;
+                }
+                if (limiti[figlio] >= ultimoLimite) {
+                    break;
+                }
+                nodi[i] = nodi[figlio];
+                limiti[i] = limiti[figlio];
+                i = figlio;
+            }
+            nodi[i] = ultimoNodo;
+            limiti[i] = ultimoLimite;
+            return primo;
+        }
+    }
+
+    /**
+     * Insieme limitato dei k ristoranti più vicini trovati finora.
+     * <p>
+     * È un heap con il più lontano in cima: un nuovo ristorante entra solo se è più vicino di
+     * quello in cima, che viene scartato. A parità di distanza prevale l'identificativo minore,
+     * così che il risultato non dipenda dall'ordine di visita.
+     */
+    static final class Vicini {
+
+        private final int[] id;
+        private final double[] distanze;
+        private int numero;
+
+        /**
+         * Crea un insieme vuoto.
+         *
+         * @param k Numero massimo di ristoranti
+         */
+        Vicini(int k) {
+            id = new int[k];
+            distanze = new double[k];
+        }
+
+        /**
+         * Indica se l'insieme contiene già k ristoranti.
+         *
+         * @return {@code true} se l'insieme è pieno
+         */
+        boolean pieno() {
+            return numero == id.length;
+        }
+
+        /**
+         * Restituisce la distanza del più lontano dei ristoranti trovati.
+         *
+         * @return Distanza del k-esimo ristorante, valida solo se l'insieme è pieno
+         */
+        double soglia() {
+            return distanze[0];
+        }
+
+        /**
+         * Propone un ristorante, che entra nell'insieme se è tra i k più vicini trovati finora.
+         *
+         * @param nuovo    Identificativo del ristorante
+         * @param distanza Distanza del ristorante dal punto cercato
+         */
+        void offri(int nuovo, double distanza) {
+            if (numero < id.length) {
+                int i = numero++;
+                while (i > 0 && precede(id[(i - 1) / 2], distanze[(i - 1) / 2], nuovo, distanza)) {
+                    id[i] = id[(i - 1) / 2];
+                    distanze[i] = distanze[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                id[i] = nuovo;
+                distanze[i] = distanza;
+                return;
+            }
+            if (numero == 0 || !precede(nuovo, distanza, id[0], distanze[0])) {
+                return;
+            }
+            int i = 0;
+            while (2 * i + 1 < numero) {
+                int figlio = 2 * i + 1;
+                if (figlio + 1 < numero && precede(id[figlio], distanze[figlio], id[figlio + 1], distanze[figlio + 1])) {
+                    figlio++;
+                }
+                if (!precede(nuovo, distanza, id[figlio], distanze[figlio])) {
+                    break;
+                }
+                id[i] = id[figlio];
+                distanze[i] = distanze[figlio];
+                i = figlio;
+            }
+            id[i] = nuovo;
+            distanze[i] = distanza;
+        }
+
+        /**
+         * Restituisce gli identificativi trovati, dal più vicino al più lontano.
+         *
+         * @return Identificativi ordinati per distanza crescente
+         */
+        int[] ordinati() {
+            Integer[] ordine = new Integer[numero];
+            for (int i = 0; i < numero; i++) {
+                ordine[i] = i;
+            }
+            Arrays.sort(ordine, (a, b) -> a.equals(b) ? 0 : precede(id[a], distanze[a], id[b], distanze[b]) ? -1 : 1);
+
+            int[] risultato = new int[numero];
+            for (int i = 0; i < numero; i++) {
+                risultato[i] = id[ordine[i]];
+            }
+            return risultato;
+        }
+
+        /**
+         * Indica se il primo ristorante precede il secondo: è più vicino o, a pari distanza, ha identificativo minore.
+         */
+        private static boolean precede(int primoId, double primaDistanza, int secondoId, double secondaDistanza) {
+            return primaDistanza < secondaDistanza || (primaDistanza == secondaDistanza && primoId < secondoId);
+        }
+    }
+}
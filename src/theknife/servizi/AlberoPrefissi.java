@@ -0,0 +1,366 @@
+package theknife.servizi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Albero dei prefissi compatto (radix trie) sulle chiavi delle voci da suggerire, con le voci
+ * migliori di ogni sottoalbero già pronte.
+ * <p>
+ * Ogni arco porta una sequenza di caratteri invece di uno solo, per cui un nodo esiste solo dove
+ * due chiavi si separano o una chiave termina: i nodi sono al più il doppio delle chiavi, qualunque
+ * sia la loro lunghezza. I figli di un nodo sono ordinati per primo carattere e cercati per bisezione.
+ * <p>
+ * Ogni nodo con più di {@link #SOGLIA_MIGLIORI} voci nel sottoalbero conserva le sue {@link #MIGLIORI}
+ * voci migliori secondo {@link #ORDINE}: un completamento scende lungo il prefisso e le legge dal nodo
+ * raggiunto, oppure ordina le poche voci del sottoalbero. Quando una voce viene aggiunta o cambia
+ * peso, vengono aggiornati solo i nodi lungo il percorso della sua chiave: la voce entra tra le
+ * migliori di un nodo se supera l'ultima, e solo se ne faceva già parte le migliori del nodo vengono
+ * ricalcolate da quelle dei figli, dal basso verso l'alto.
+ * <p>
+ * La classe non è sincronizzata.
+ *
+ * @author Marco Zaro
+ */
+final class AlberoPrefissi {
+
+    /**
+     * Numero massimo di voci migliori conservate per nodo, e quindi di suggerimenti.
+     */
+    static final int MIGLIORI = 10;
+
+    /**
+     * Numero di voci del sottoalbero oltre il quale un nodo conserva le sue voci migliori.
+     */
+    private static final int SOGLIA_MIGLIORI = 32;
+
+    /**
+     * Ordine dei suggerimenti: peso decrescente, poi testo e ordine di inserimento.
+     */
+    static final Comparator<Voce> ORDINE = Comparator.comparingInt((Voce voce) -> -voce.peso)
+            .thenComparing(voce -> voce.testo)
+            .thenComparingInt(voce -> voce.progressivo);
+
+    /**
+     * Voce dell'albero: un nome da suggerire con la sua chiave e il suo peso.
+     */
+    static final class Voce {
+
+        /**
+         * Chiave normalizzata su cui si cercano i prefissi.
+         */
+        final String chiave;
+
+        /**
+         * Tipo del nome.
+         */
+        final Suggerimento.Tipo tipo;
+
+        /**
+         * Nome da mostrare.
+         */
+        final String testo;
+
+        /**
+         * Dettaglio da mostrare, o {@code null}.
+         */
+        final String dettaglio;
+
+        /**
+         * Ordine di inserimento, che distingue le voci con lo stesso testo.
+         */
+        final int progressivo;
+
+        /**
+         * Peso della voce: a parità di prefisso vengono suggerite prima le voci più pesanti.
+         * Va modificato solo insieme a {@link #pesoModificato(Voce)}.
+         */
+        int peso;
+
+        /**
+         * Crea una voce.
+         *
+         * @param chiave      Chiave normalizzata
+         * @param tipo        Tipo del nome
+         * @param testo       Nome da mostrare
+         * @param dettaglio   Dettaglio da mostrare, o {@code null}
+         * @param progressivo Ordine di inserimento
+         * @param peso        Peso iniziale
+         */
+        Voce(String chiave, Suggerimento.Tipo tipo, String testo, String dettaglio, int progressivo, int peso) {
+            this.chiave = chiave;
+            this.tipo = tipo;
+            this.testo = testo;
+            this.dettaglio = dettaglio;
+            this.progressivo = progressivo;
+            this.peso = peso;
+        }
+
+        /**
+         * Crea il suggerimento corrispondente alla voce.
+         *
+         * @return Suggerimento con il peso attuale
+         */
+        Suggerimento suggerimento() {
+            return new Suggerimento(tipo, testo, dettaglio, peso);
+        }
+    }
+
+    /**
+     * Radice dell'albero, con etichetta vuota.
+     */
+    private final Nodo radice = new Nodo("");
+
+    /**
+     * Aggiunge una voce all'albero.
+     *
+     * @param voce Voce da aggiungere
+     */
+    void aggiungi(Voce voce) {
+        String chiave = voce.chiave;
+        var percorso = new ArrayList<Nodo>();
+        Nodo nodo = radice;
+        percorso.add(nodo);
+        int i = 0;
+        while (i < chiave.length()) {
+            int posizione = Arrays.binarySearch(nodo.primi, chiave.charAt(i));
+            if (posizione < 0) {
+                Nodo foglia = new Nodo(chiave.substring(i));
+                nodo.inserisciFiglio(-posizione - 1, foglia);
+                nodo = foglia;
+                percorso.add(nodo);
+                break;
+            }
+            Nodo figlio = nodo.figli[posizione];
+            int comune = prefissoComune(figlio.etichetta, chiave, i);
+            if (comune < figlio.etichetta.length()) {
+                // La chiave si separa a metà dell'arco: il nodo intermedio ha lo stesso sottoalbero del figlio
+                Nodo intermedio = new Nodo(figlio.etichetta.substring(0, comune));
+                figlio.etichetta = figlio.etichetta.substring(comune);
+                intermedio.inserisciFiglio(0, figlio);
+                intermedio.dimensione = figlio.dimensione;
+                intermedio.migliori = figlio.migliori;
+                nodo.figli[posizione] = intermedio;
+                figlio = intermedio;
+            }
+            nodo = figlio;
+            percorso.add(nodo);
+            i += comune;
+        }
+
+        nodo.voci = Arrays.copyOf(nodo.voci, nodo.voci.length + 1);
+        nodo.voci[nodo.voci.length - 1] = voce;
+        for (int j = percorso.size() - 1; j >= 0; j--) {
+            Nodo attraversato = percorso.get(j);
+            attraversato.dimensione++;
+            if (attraversato.dimensione <= SOGLIA_MIGLIORI) {
+                attraversato.migliori = null;
+            } else if (attraversato.migliori == null) {
+                // Il sottoalbero ha appena superato la soglia
+                ricalcolaMigliori(attraversato);
+            } else {
+                attraversato.migliori = proponi(attraversato.migliori, voce);
+            }
+        }
+    }
+
+    /**
+     * Aggiorna le voci migliori dopo la modifica del peso di una voce già presente.
+     *
+     * @param voce Voce il cui peso è cambiato
+     */
+    void pesoModificato(Voce voce) {
+        var percorso = new ArrayList<Nodo>();
+        Nodo nodo = radice;
+        percorso.add(nodo);
+        int i = 0;
+        while (i < voce.chiave.length()) {
+            int posizione = Arrays.binarySearch(nodo.primi, voce.chiave.charAt(i));
+            if (posizione < 0) {
+                return;
+            }
+            nodo = nodo.figli[posizione];
+            i += nodo.etichetta.length();
+            percorso.add(nodo);
+        }
+        for (int j = percorso.size() - 1; j >= 0; j--) {
+            Nodo attraversato = percorso.get(j);
+            if (attraversato.migliori == null) {
+                continue;
+            }
+            if (Arrays.asList(attraversato.migliori).contains(voce)) {
+                ricalcolaMigliori(attraversato);
+            } else {
+                attraversato.migliori = proponi(attraversato.migliori, voce);
+            }
+        }
+    }
+
+    /**
+     * Restituisce le voci migliori tra quelle la cui chiave inizia con un prefisso.
+     *
+     * @param prefisso Prefisso normalizzato, anche vuoto
+     * @param numero   Numero massimo di voci, al più {@link #MIGLIORI}
+     * @return Voci in ordine di suggerimento
+     */
+    List<Voce> completa(String prefisso, int numero) {
+        Nodo nodo = radice;
+        int i = 0;
+        while (i < prefisso.length()) {
+            int posizione = Arrays.binarySearch(nodo.primi, prefisso.charAt(i));
+            if (posizione < 0) {
+                return List.of();
+            }
+            nodo = nodo.figli[posizione];
+            int comune = prefissoComune(nodo.etichetta, prefisso, i);
+            // Il prefisso deve esaurirsi sull'arco o percorrerlo per intero
+            if (comune < nodo.etichetta.length() && i + comune < prefisso.length()) {
+                return List.of();
+            }
+            i += comune;
+        }
+
+        Voce[] migliori = nodo.migliori;
+        if (migliori == null) {
+            var voci = new ArrayList<Voce>(nodo.dimensione);
+            raccogli(nodo, voci);
+            voci.sort(ORDINE);
+            migliori = voci.toArray(new Voce[0]);
+        }
+        return List.of(Arrays.copyOf(migliori, Math.min(numero, migliori.length)));
+    }
+
+    /**
+     * Ricalcola le voci migliori di un nodo dalle sue voci e dalle migliori dei figli.
+     */
+    private static void ricalcolaMigliori(Nodo nodo) {
+        var candidati = new ArrayList<Voce>(Arrays.asList(nodo.voci));
+        for (Nodo figlio : nodo.figli) {
+            if (figlio.migliori != null) {
+                candidati.addAll(Arrays.asList(figlio.migliori));
+            } else {
+                raccogli(figlio, candidati);
+            }
+        }
+        candidati.sort(ORDINE);
+        nodo.migliori = candidati.subList(0, Math.min(MIGLIORI, candidati.size())).toArray(new Voce[0]);
+    }
+
+    /**
+     * Inserisce una voce che non ne fa parte tra le migliori, se supera l'ultima.
+     *
+     * @return Le stesse voci migliori se la voce non vi entra, altrimenti un nuovo array
+     */
+    private static Voce[] proponi(Voce[] migliori, Voce voce) {
+        int posizione = -Arrays.binarySearch(migliori, voce, ORDINE) - 1;
+        if (posizione >= MIGLIORI) {
+            return migliori;
+        }
+        // Un nuovo array, perché un nodo intermedio appena creato condivide le migliori del figlio
+        Voce[] nuove = new Voce[Math.min(MIGLIORI, migliori.length + 1)];
+        System.arraycopy(migliori, 0, nuove, 0, posizione);
+        nuove[posizione] = voce;
+        System.arraycopy(migliori, posizione, nuove, posizione + 1, nuove.length - posizione - 1);
+        return nuove;
+    }
+
+    /**
+     * Aggiunge alla lista tutte le voci del sottoalbero di un nodo.
+     */
+    private static void raccogli(Nodo nodo, List<Voce> voci) {
+        voci.addAll(Arrays.asList(nodo.voci));
+        for (Nodo figlio : nodo.figli) {
+            raccogli(figlio, voci);
+        }
+    }
+
+    /**
+     * Calcola la lunghezza del prefisso comune tra un'etichetta e il testo a partire da una posizione.
+     */
+    private static int prefissoComune(String etichetta, String testo, int inizio) {
+        int massimo = Math.min(etichetta.length(), testo.length() - inizio);
+        int comune = 0;
+        while (comune < massimo && etichetta.charAt(comune) == testo.charAt(inizio + comune)) {
+            comune++;
+        }
+        return comune;
+    }
+
+    /**
+     * Nodo dell'albero.
+     */
+    private static final class Nodo {
+
+        /**
+         * Primi caratteri dei nodi senza figli, condivisi: gli inserimenti creano sempre un nuovo array.
+         */
+        private static final char[] NESSUN_CARATTERE = new char[0];
+
+        /**
+         * Figli dei nodi senza figli, condivisi come {@link #NESSUN_CARATTERE}.
+         */
+        private static final Nodo[] NESSUN_NODO = new Nodo[0];
+
+        /**
+         * Voci dei nodi in cui non termina nessuna chiave, condivise come {@link #NESSUN_CARATTERE}.
+         */
+        private static final Voce[] NESSUNA_VOCE = new Voce[0];
+
+        /**
+         * Caratteri dell'arco che entra nel nodo.
+         */
+        String etichetta;
+
+        /**
+         * Primo carattere dell'etichetta di ogni figlio, in ordine crescente.
+         */
+        char[] primi = NESSUN_CARATTERE;
+
+        /**
+         * Figli, nello stesso ordine di {@link #primi}.
+         */
+        Nodo[] figli = NESSUN_NODO;
+
+        /**
+         * Voci la cui chiave termina nel nodo.
+         */
+        Voce[] voci = NESSUNA_VOCE;
+
+        /**
+         * Numero di voci nel sottoalbero, comprese quelle del nodo.
+         */
+        int dimensione;
+
+        /**
+         * Voci migliori del sottoalbero in ordine di suggerimento, {@code null} se il sottoalbero
+         * non supera {@link #SOGLIA_MIGLIORI} voci.
+         */
+        Voce[] migliori;
+
+        /**
+         * Crea un nodo senza figli né voci.
+         */
+        Nodo(String etichetta) {
+            this.etichetta = etichetta;
+        }
+
+        /**
+         * Inserisce un figlio nella posizione indicata, mantenendo l'ordine dei primi caratteri.
+         */
+        void inserisciFiglio(int posizione, Nodo figlio) {
+            primi = Arrays.copyOf(primi, primi.length + 1);
+            figli = Arrays.copyOf(figli, figli.length + 1);
+            System.arraycopy(primi, posizione, primi, posizione + 1, primi.length - posizione - 1);
+            System.arraycopy(figli, posizione, figli, posizione + 1, figli.length - posizione - 1);
+            primi[posizione] = figlio.etichetta.charAt(0);
+            figli[posizione] = figlio;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package theknife.servizi;
+
+import theknife.entita.Localita;
+import theknife.entita.Ristorante;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Cache dei risultati delle ricerche per località, con politica LRU e scadenza delle voci.
+ * <p>
+ * La chiave di una ricerca per raggio contiene i filtri, il raggio e la cella di una griglia di
+ * {@link #QUANTO_GRADI} gradi in cui cade la località, così che ricerche ripetute da punti vicini
+ * condividano la stessa voce. La voce conserva i ristoranti che soddisfano i filtri entro il raggio
+ * allargato di {@link #margineKm()} attorno al centro della cella: per la disuguaglianza triangolare
+ * contiene tutti i risultati di qualunque località della cella, che vengono poi estratti con il
+ * filtro esatto. Le ricerche per zona usano come chiave i filtri e i nomi normalizzati di città e nazione,
+ * quelle senza località solo i filtri.
+ * <p>
+ * Una voce viene eliminata quando un ristorante aggiunto, o un ristorante di cui cambiano le recensioni,
+ * può rientrarvi: cioè quando si trova nell'area della voce e soddisfa i filtri che non dipendono
+ * dalle recensioni. Le modifiche delle recensioni interessano solo le voci con il filtro sulla media
+ * delle stelle, perché gli altri filtri non ne dipendono. La scadenza copre le modifiche fatte senza
+ * passare dai servizi. Se il catalogo viene ricostruito da capo, la cache viene svuotata.
+ * <p>
+ * Tutti i metodi sono sincronizzati: la cache è condivisa dalle ricerche di tutti i thread.
+ *
+ * @author Marco Zaro
+ */
+final class CacheRicerche {
+
+    /**
+     * Lato in gradi delle celle in cui vengono raggruppate le località, circa 1 km.
+     */
+    static final double QUANTO_GRADI = 0.01;
+
+    /**
+     * Latitudine massima, in valore assoluto, delle ricerche per raggio che vengono memorizzate.
+     */
+    private static final double LATITUDINE_MASSIMA = 89;
+
+    /**
+     * Raggio medio della Terra in chilometri, lo stesso usato da {@link Localita}.
+     */
+    private static final double RAGGIO_TERRA_KM = 6371.0;
+
+    /**
+     * Margine in chilometri che assorbe gli arrotondamenti nel calcolo delle distanze.
+     */
+    private static final double TOLLERANZA_KM = 1e-3;
+
+    /**
+     * Numero massimo predefinito di voci.
+     */
+    static final int CAPACITA_PREDEFINITA = 256;
+
+    /**
+     * Durata predefinita di una voce.
+     */
+    static final long DURATA_PREDEFINITA_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    /**
+     * Voci in ordine di utilizzo, dalla meno recente.
+     */
+    private final LinkedHashMap<Chiave, Voce> voci;
+
+    /**
+     * Durata di una voce in nanosecondi.
+     */
+    private final long durataNanos;
+
+    /**
+     * Generazione del catalogo a cui si riferiscono le voci.
+     */
+    private long generazione;
+
+    /**
+     * Numero di modifiche al catalogo notificate alla cache: una ricerca iniziata prima di una
+     * modifica non viene memorizzata, perché potrebbe non tenerne conto.
+     */
+    private long versione;
+
+    /**
+     * Ricerche servite dalla cache.
+     */
+    private long successi;
+
+    /**
+     * Ricerche non trovate nella cache, o trovate scadute.
+     */
+    private long mancati;
+
+    /**
+     * Voci eliminate per l'aggiunta di un ristorante o per la modifica delle sue recensioni.
+     */
+    private long invalidazioni;
+
+    /**
+     * Crea una cache con la capacità e la durata indicate.
+     *
+     * @param capacita    Numero massimo di voci
+     * @param durataNanos Durata di una voce in nanosecondi
+     */
+    CacheRicerche(int capacita, long durataNanos) {
+        this.durataNanos = durataNanos;
+        this.voci = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Chiave, Voce> eldest) {
+                return size() > capacita;
+            }
+        };
+    }
+
+    /**
+     * Chiave di una ricerca.
+     *
+     * @param filtri           Filtri della ricerca
+     * @param raggioKm         Raggio della ricerca, o {@code null} per le ricerche per zona
+     * @param cellaLatitudine  Indice di latitudine della cella, 0 per le ricerche per zona
+     * @param cellaLongitudine Indice di longitudine della cella, 0 per le ricerche per zona
+     * @param citta            Città normalizzata per le ricerche per zona, {@code null} per le altre
+     * @param nazione          Nazione normalizzata per le ricerche per zona, {@code null} per le altre
+     */
+    record Chiave(FiltriRicerca filtri, Double raggioKm, long cellaLatitudine, long cellaLongitudine,
+                  String citta, String nazione) {
+
+        /**
+         * Crea la chiave di una ricerca.
+         *
+         * @param localita Località della ricerca, o {@code null} per le ricerche ovunque
+         * @param raggioKm Raggio della ricerca, o {@code null} per cercare nella stessa zona
+         * @param filtri   Filtri della ricerca
+         * @return Chiave della ricerca, o {@code null} se la ricerca non va memorizzata
+         */
+        static Chiave di(Localita localita, Double raggioKm, FiltriRicerca filtri) {
+            if (localita == null) {
+                return new Chiave(filtri, null, 0, 0, null, null);
+            }
+            if (raggioKm == null) {
+                if (localita.getCitta() == null || localita.getNazione() == null) {
+                    return null;
+                }
+                return new Chiave(filtri, null, 0, 0, ColonneRistoranti.normalizza(localita.getCitta()),
+                        ColonneRistoranti.normalizza(localita.getNazione()));
+            }
+            if (!localita.haCoordinate() || Math.abs(localita.getLatitudine()) > LATITUDINE_MASSIMA) {
+                return null;
+            }
+            return new Chiave(filtri, raggioKm, (long) Math.floor(localita.getLatitudine() / QUANTO_GRADI),
+                    (long) Math.floor(localita.getLongitudine() / QUANTO_GRADI), null, null);
+        }
+
+        /**
+         * Restituisce la località da cui cercare i ristoranti della voce: il centro della cella
+         * per le ricerche per raggio, la località stessa per quelle per zona.
+         *
+         * @param localita Località della ricerca
+         * @return Località della ricerca memorizzata
+         */
+        Localita centro(Localita localita) {
+            if (raggioKm == null) {
+                return localita;
+            }
+            return new Localita((cellaLatitudine + 0.5) * QUANTO_GRADI, (cellaLongitudine + 0.5) * QUANTO_GRADI);
+        }
+
+        /**
+         * Restituisce il raggio della ricerca memorizzata, allargato del margine della cella.
+         *
+         * @return Raggio allargato, o {@code null} per le ricerche per zona
+         */
+        Double raggioEsteso() {
+            return raggioKm != null ? raggioKm + margineKm() : null;
+        }
+    }
+
+    /**
+     * Calcola la distanza massima tra un punto di una cella e il suo centro. Su una sfera la distanza
+     * non supera la somma degli archi lungo il meridiano e lungo il parallelo, e l'arco lungo il
+     * parallelo non supera quello all'equatore: basta quindi mezza cella per direzione all'equatore.
+     *
+     * @return Margine in chilometri, con la tolleranza sugli arrotondamenti
+     */
+    static double margineKm() {
+        return RAGGIO_TERRA_KM * Math.toRadians(QUANTO_GRADI) + TOLLERANZA_KM;
+    }
+
+    /**
+     * Cerca una voce valida.
+     *
+     * @param chiave      Chiave della ricerca
+     * @param generazione Generazione attuale del catalogo
+     * @return Ristoranti della voce, o {@code null} se la voce manca o è scaduta
+     */
+    synchronized ArrayList<Ristorante> cerca(Chiave chiave, long generazione) {
+        allinea(generazione);
+        Voce voce = voci.get(chiave);
+        if (voce == null || System.nanoTime() - voce.creazione() > durataNanos) {
+            if (voce != null) {
+                voci.remove(chiave);
+            }
+            mancati++;
+            return null;
+        }
+        successi++;
+        return voce.ristoranti();
+    }
+
+    /**
+     * Restituisce il numero di modifiche notificate, da leggere prima di eseguire una ricerca da memorizzare.
+     *
+     * @return Versione attuale della cache
+     */
+    synchronized long versione() {
+        return versione;
+    }
+
+    /**
+     * Memorizza il risultato di una ricerca, a meno che nel frattempo sia stata notificata una modifica.
+     *
+     * @param chiave      Chiave della ricerca
+     * @param generazione Generazione del catalogo su cui è stata eseguita la ricerca
+     * @param versione    Versione della cache letta prima di eseguire la ricerca
+     * @param ristoranti  Ristoranti della voce, da non modificare in seguito
+     * @param area        Filtro dell'area della voce
+     * @param filtri      Filtro sui criteri che non dipendono dalle recensioni
+     */
+    synchronized void inserisci(Chiave chiave, long generazione, long versione, ArrayList<Ristorante> ristoranti,
+                                Predicate<Ristorante> area, Predicate<Ristorante> filtri) {
+        allinea(generazione);
+        if (generazione == this.generazione && versione == this.versione) {
+            voci.put(chiave, new Voce(ristoranti, area, filtri, System.nanoTime()));
+        }
+    }
+
+    /**
+     * Elimina le voci in cui un ristorante aggiunto può rientrare.
+     *
+     * @param ristorante Ristorante aggiunto
+     */
+    synchronized void ristoranteAggiunto(Ristorante ristorante) {
+        invalida(ristorante, false);
+    }
+
+    /**
+     * Elimina le voci in cui un ristorante può entrare o da cui può uscire per la modifica delle sue recensioni.
+     *
+     * @param ristorante Ristorante di cui sono cambiate le recensioni
+     */
+    synchronized void recensioniModificate(Ristorante ristorante) {
+        invalida(ristorante, true);
+    }
+
+    /**
+     * Svuota la cache, senza azzerare i contatori.
+     */
+    synchronized void svuota() {
+        voci.clear();
+    }
+
+    /**
+     * Restituisce i contatori della cache.
+     *
+     * @return Statistiche della cache
+     */
+    synchronized StatisticheCache statistiche() {
+        return new StatisticheCache(successi, mancati, invalidazioni, voci.size());
+    }
+
+    /**
+     * Elimina le voci interessate da un ristorante, solo quelle con il filtro sulle stelle se
+     * sono cambiate solo le sue recensioni.
+     */
+    private void invalida(Ristorante ristorante, boolean soloStelle) {
+        versione++;
+        Iterator<Map.Entry<Chiave, Voce>> iteratore = voci.entrySet().iterator();
+        while (iteratore.hasNext()) {
+            Map.Entry<Chiave, Voce> voce = iteratore.next();
+            if (soloStelle && voce.getKey().filtri().mediaStelle() == null) {
+                continue;
+            }
+            if (voce.getValue().area().test(ristorante) && voce.getValue().filtri().test(ristorante)) {
+                iteratore.remove();
+                invalidazioni++;
+            }
+        }
+    }
+
+    /**
+     * Svuota la cache se il catalogo è stato ricostruito dopo la creazione delle voci.
+     */
+    private void allinea(long generazione) {
+        if (generazione > this.generazione) {
+            voci.clear();
+            this.generazione = generazione;
+        }
+    }
+
+    /**
+     * Voce della cache.
+     *
+     * @param ristoranti Ristoranti che soddisfano i filtri nell'area della voce, nell'ordine del file
+     * @param area       Filtro dell'area della voce
+     * @param filtri     Filtro sui criteri che non dipendono dalle recensioni
+     * @param creazione  Istante di creazione in nanosecondi
+     */
+    private record Voce(ArrayList<Ristorante> ristoranti, Predicate<Ristorante> area,
+                        Predicate<Ristorante> filtri, long creazione) {
+    }
+}
@@ -0,0 +1,865 @@
+package theknife.servizi;
+
+import com.opencsv.exceptions.CsvException;
+import theknife.entita.Localita;
+import theknife.entita.Ristorante;
+import theknife.entita.TipoCucina;
+import theknife.io_file.GestoreFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Catalogo dei ristoranti usato dalle ricerche, con gli indici costruiti sui loro attributi.
+ * <p>
+ * Il catalogo conserva i ristoranti per identificativo, che coincide con la posizione nel file,
+ * e li indicizza una sola volta. Poiché i ristoranti vengono solo aggiunti, prima di ogni ricerca
+ * {@link #aggiorna()} legge da {@link GestoreFile} soltanto quelli aggiunti dopo l'ultima lettura.
+ * <p>
+ * Gli attributi usati dalle ricerche sono copiati in {@link ColonneRistoranti}, un array primitivo per
+ * attributo: i filtri vengono valutati sulle colonne e gli oggetti {@link Ristorante} vengono letti
+ * solo per i ristoranti che le superano, per la verifica completa e il risultato.
+ * <p>
+ * Gli attributi categorici sono indicizzati con una bitmap per valore ({@link BitSet}), in cui il bit
+ * in posizione {@code id} indica se il ristorante ha quel valore: una combinazione di filtri si
+ * risolve intersecando le bitmap, senza esaminare i singoli ristoranti.
+ * <p>
+ * Le parole del nome e della descrizione sono indicizzate da un {@link IndiceTesto}, costruito alla
+ * prima ricerca per parole ({@link #preparaTesto()}) e poi aggiornato a ogni ristorante aggiunto.
+ * Allo stesso modo i nomi dei ristoranti e dei luoghi sono indicizzati per prefisso da un
+ * {@link IndiceSuggerimenti}, costruito alla prima richiesta di suggerimenti ({@link #preparaSuggerimenti()}),
+ * e per trigrammi da un {@link IndiceTrigrammi}, costruito alla prima ricerca di nomi simili
+ * ({@link #preparaTrigrammi()}).
+ * <p>
+ * Il prezzo medio è indicizzato da un {@link IndicePrezzi}, in cui una fascia di prezzo corrisponde
+ * a un intervallo contiguo. L'albero k-d e l'indice dei prezzi sono divisi in segmenti
+ * ({@link IndiciSegmentati}): i ristoranti aggiunti formano nuovi segmenti, fusi con i precedenti
+ * in modo logaritmico, e solo gli ultimi, meno di {@link IndiciSegmentati#DIMENSIONE_CODA},
+ * vengono esaminati uno a uno.
+ * <p>
+ * Ogni ricerca viene prima pianificata ({@link #pianifica}), scegliendo l'indice di partenza con il
+ * minor costo stimato, e poi eseguita ({@link #esegui}) applicando gli altri filtri ai candidati.
+ * <p>
+ * Le ricerche acquisiscono il catalogo in lettura e procedono in parallelo tra loro;
+ * l'aggiornamento lo acquisisce in scrittura.
+ *
+ * @author Marco Zaro
+ */
+final class CatalogoRistoranti {
+
+    /**
+     * Numero di ristoranti valutati da {@link FiltroColonne} nel tempo in cui il filtro completo
+     * ne verifica uno: il filtro sulle colonne legge array primitivi contigui, mentre il filtro
+     * completo segue i riferimenti di ogni {@link Ristorante}.
+     */
+    private static final int COSTO_RELATIVO_COLONNE = 4;
+
+    /**
+     * Numero predefinito di ristoranti del catalogo oltre il quale le scansioni vengono eseguite in parallelo.
+     */
+    static final int SOGLIA_PARALLELA_PREDEFINITA = 100_000;
+
+    /**
+     * Ristoranti indicizzati per identificativo, validi fino a {@link #numero}.
+     */
+    private Ristorante[] ristoranti = new Ristorante[0];
+
+    /**
+     * Attributi dei ristoranti per colonne, nello stesso ordine di {@link #ristoranti}.
+     */
+    private ColonneRistoranti colonne = new ColonneRistoranti();
+
+    /**
+     * Numero di ristoranti presenti nel catalogo.
+     */
+    private int numero;
+
+    /**
+     * Indice spaziale sulle coordinate dei ristoranti.
+     */
+    private IndiceGriglia griglia = new IndiceGriglia();
+
+    /**
+     * Indice bitmap per tipo di cucina: il bit di un ristorante è attivo nella bitmap della sua cucina.
+     */
+    private BitSet[] cucine = nuoveBitmapCucine();
+
+    /**
+     * Alberi k-d sui ristoranti con coordinate, per le ricerche dei più vicini, e indici ordinati sul prezzo medio.
+     */
+    private IndiciSegmentati segmentati = new IndiciSegmentati();
+
+    /**
+     * Indice invertito sulle parole del nome e della descrizione, {@code null} finché nessuna ricerca lo usa.
+     */
+    private IndiceTesto testo;
+
+    /**
+     * Indice per prefisso dei nomi dei ristoranti e dei luoghi, {@code null} finché nessuno chiede suggerimenti.
+     */
+    private IndiceSuggerimenti suggerimenti;
+
+    /**
+     * Indice dei trigrammi dei nomi, {@code null} finché nessuno cerca nomi simili.
+     */
+    private IndiceTrigrammi trigrammi;
+
+    /**
+     * Numero di volte in cui il catalogo è stato ricostruito da capo dopo un nuovo caricamento dei dati.
+     */
+    private volatile long generazione;
+
+    /**
+     * Numero di ristoranti del catalogo oltre il quale le scansioni vengono eseguite in parallelo.
+     */
+    private volatile int sogliaParallela = SOGLIA_PARALLELA_PREDEFINITA;
+
+    /**
+     * Blocco che separa le ricerche dagli aggiornamenti.
+     */
+    private final ReentrantReadWriteLock blocco = new ReentrantReadWriteLock();
+
+    /**
+     * Allinea il catalogo ai ristoranti presenti, indicizzando quelli aggiunti dall'ultimo aggiornamento.
+     * Se i dati sono stati ricaricati, il catalogo viene ricostruito da capo.
+     *
+     * @throws IOException  se si verifica un errore durante il caricamento dei ristoranti
+     * @throws CsvException se si verifica un errore nel parsing del CSV
+     */
+    void aggiorna() throws IOException, CsvException {
+        int presenti = GestoreFile.numeroRistoranti();
+        blocco.readLock().lock();
+        try {
+            if (presenti == numero) {
+                return;
+            }
+        } finally {
+            blocco.readLock().unlock();
+        }
+
+        blocco.writeLock().lock();
+        try {
+            // Si riparte dall'ultimo ristorante noto per verificare che l'archivio sia lo stesso
+            int primo = Math.max(numero - 1, 0);
+            try (Stream<Ristorante> flusso = GestoreFile.flussoRistoranti(primo)) {
+                Iterator<Ristorante> nuovi = flusso.iterator();
+                if (numero > 0 && (!nuovi.hasNext() || nuovi.next() != ristoranti[numero - 1])) {
+                    svuota();
+                    try (Stream<Ristorante> tutti = GestoreFile.flussoRistoranti(0)) {
+                        tutti.forEach(this::indicizza);
+                    }
+                } else {
+                    nuovi.forEachRemaining(this::indicizza);
+                }
+            }
+
+            segmentati.aggiorna(colonne, numero);
+        } finally {
+            blocco.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Costruisce l'indice del testo sui ristoranti presenti, se non è già stato costruito.
+     * Da quel momento l'indice viene aggiornato a ogni ristorante aggiunto, anche se il catalogo
+     * viene ricostruito da capo: le ricerche che non usano le parole non ne pagano il costo.
+     */
+    void preparaTesto() {
+        blocco.readLock().lock();
+        try {
+            if (testo != null) {
+                return;
+            }
+        } finally {
+            blocco.readLock().unlock();
+        }
+
+        blocco.writeLock().lock();
+        try {
+            if (testo == null) {
+                testo = new IndiceTesto();
+                for (int id = 0; id < numero; id++) {
+                    testo.aggiungi(id, ristoranti[id]);
+                }
+            }
+        } finally {
+            blocco.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Costruisce l'indice dei suggerimenti sui ristoranti presenti, se non è già stato costruito.
+     * Come l'indice del testo, da quel momento viene aggiornato a ogni ristorante aggiunto.
+     */
+    void preparaSuggerimenti() {
+        blocco.readLock().lock();
+        try {
+            if (suggerimenti != null) {
+                return;
+            }
+        } finally {
+            blocco.readLock().unlock();
+        }
+
+        blocco.writeLock().lock();
+        try {
+            if (suggerimenti == null) {
+                suggerimenti = new IndiceSuggerimenti();
+                for (int id = 0; id < numero; id++) {
+                    suggerimenti.aggiungi(id, ristoranti[id]);
+                }
+            }
+        } finally {
+            blocco.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Suggerisce i nomi dei ristoranti che iniziano con un prefisso, dal più recensito.
+     * Richiede l'indice dei suggerimenti, da costruire prima con {@link #preparaSuggerimenti()}.
+     *
+     * @param prefisso Prefisso digitato
+     * @param numero   Numero massimo di suggerimenti
+     * @return Suggerimenti in ordine
+     */
+    List<Suggerimento> suggerisciRistoranti(String prefisso, int numero) {
+        blocco.readLock().lock();
+        try {
+            return suggerimenti.suggerisciRistoranti(prefisso, numero);
+        } finally {
+            blocco.readLock().unlock();
+        }
+    }
+
+    /**
+     * Suggerisce i nomi delle città e delle nazioni che iniziano con un prefisso, dalla più recensita.
+     * Richiede l'indice dei suggerimenti, da costruire prima con {@link #preparaSuggerimenti()}.
+     *
+     * @param prefisso Prefisso digitato
+     * @param numero   Numero massimo di suggerimenti
+     * @return Suggerimenti in ordine
+     */
+    List<Suggerimento> suggerisciLuoghi(String prefisso, int numero) {
+        blocco.readLock().lock();
+        try {
+            return suggerimenti.suggerisciLuoghi(prefisso, numero);
+        } finally {
+            blocco.readLock().unlock();
+        }
+    }
+
+    /**
+     * Costruisce l'indice dei trigrammi sui ristoranti presenti, se non è già stato costruito.
+     * Come l'indice del testo, da quel momento viene aggiornato a ogni ristorante aggiunto.
+     */
+    void preparaTrigrammi() {
+        blocco.readLock().lock();
+        try {
+            if (trigrammi != null) {
+                return;
+            }
+        } finally {
+            blocco.readLock().unlock();
+        }
+
+        blocco.writeLock().lock();
+        try {
+            if (trigrammi == null) {
+                trigrammi = new IndiceTrigrammi();
+                for (int id = 0; id < numero; id++) {
+                    trigrammi.aggiungi(id, ristoranti[id]);
+                }
+            }
+        } finally {
+            blocco.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Cerca i ristoranti con il nome a distanza di modifica limitata da quello indicato, ordinati per
+     * distanza dal nome e poi per vicinanza alla località, se indicata: per distanza in km se la
+     * località ha coordinate, altrimenti prima quelli nella stessa città.
+     * Richiede l'indice dei trigrammi, da costruire prima con {@link #preparaTrigrammi()}.
+     *
+     * @param nome     Nome cercato
+     * @param distanza Distanza massima, già ridotta con {@link IndiceTrigrammi#distanzaAmmessa}
+     * @param localita Località di riferimento, o {@code null}
+     * @param numero   Numero massimo di ristoranti
+     * @return Ristoranti trovati, in ordine
+     */
+    ArrayList<Ristorante> simili(String nome, int distanza, Localita localita, int numero) {
+        blocco.readLock().lock();
+        try {
+            List<IndiceTrigrammi.Corrispondenza> corrispondenze = trigrammi.cerca(nome, distanza,
+                    id -> ristoranti[id].getNome());
+            Comparator<IndiceTrigrammi.Corrispondenza> ordine =
+                    Comparator.comparingInt(IndiceTrigrammi.Corrispondenza::distanza);
+            if (localita != null) {
+                ordine = ordine.thenComparingDouble(corrispondenza -> lontananza(ristoranti[corrispondenza.id()], localita));
+            }
+            corrispondenze.sort(ordine.thenComparingInt(IndiceTrigrammi.Corrispondenza::id));
+
+            var risultato = new ArrayList<Ristorante>(Math.min(numero, corrispondenze.size()));
+            for (int i = 0; i < corrispondenze.size() && i < numero; i++) {
+                risultato.add(ristoranti[corrispondenze.get(i).id()]);
+            }
+            return risultato;
+        } finally {
+            blocco.readLock().unlock();
+        }
+    }
+
+    /**
+     * Aggiorna l'indice dei suggerimenti dopo la modifica delle recensioni di un ristorante del catalogo.
+     * Il numero di recensioni viene letto dall'istanza del catalogo, che è quella aggiornata dall'archivio.
+     *
+     * @param ristorante Ristorante le cui recensioni sono cambiate, già risolto nella sua istanza in archivio
+     *                   con {@link theknife.io_file.GestoreFile#risolviRistorante}
+     */
+    void recensioniModificate(Ristorante ristorante) {
+        // Finché nessuno chiede suggerimenti le scritture delle recensioni non attendono le ricerche in corso;
+        // un indice costruito dopo questo controllo legge già il numero aggiornato
+        blocco.readLock().lock();
+        try {
+            if (suggerimenti == null) {
+                return;
+            }
+        } finally {
+            blocco.readLock().unlock();
+        }
+
+        blocco.writeLock().lock();
+        try {
+            int id = posizione(ristorante);
+            if (suggerimenti != null && id >= 0) {
+                suggerimenti.recensioniModificate(id, ristorante);
+            }
+        } finally {
+            blocco.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Restituisce la generazione del catalogo, che aumenta ogni volta che il catalogo viene
+     * ricostruito da capo: i risultati calcolati in una generazione precedente non sono più validi.
+     *
+     * @return Generazione del catalogo
+     */
+    long generazione() {
+        return generazione;
+    }
+
+    /**
+     * Imposta il numero di ristoranti del catalogo oltre il quale le scansioni vengono eseguite in parallelo.
+     *
+     * @param soglia Numero minimo di ristoranti per la scansione parallela
+     */
+    void impostaSogliaParallela(int soglia) {
+        sogliaParallela = soglia;
+    }
+
+    /**
+     * Restituisce il numero di ristoranti del catalogo oltre il quale le scansioni vengono eseguite in parallelo.
+     *
+     * @return Numero minimo di ristoranti per la scansione parallela
+     */
+    int getSogliaParallela() {
+        return sogliaParallela;
+    }
+
+    /**
+     * Sceglie il piano di una ricerca confrontando il costo stimato degli accessi disponibili.
+     * <p>
+     * Il numero di candidati è esatto per l'indice spaziale e per l'indice dei prezzi, mentre per
+     * i filtri categorici e per la zona viene stimato dalla frequenza di ciascun valore, supponendo
+     * i filtri indipendenti. Il costo di ogni accesso somma la produzione dei candidati (le parole
+     * delle bitmap, il riordino della fascia di prezzo, la valutazione delle colonne) e la verifica
+     * completa dei ristoranti che superano tutti i filtri indicizzati, stimati allo stesso modo.
+     * Una zona assente dal dizionario delle città o delle nazioni non ha ristoranti, come una parola
+     * assente dall'indice del testo.
+     * <p>
+     * Le parole restringono i candidati solo per l'accesso tramite l'indice del testo, che interseca le
+     * loro liste: con gli altri accessi vengono verificate dal filtro completo. Le ricerche con le parole
+     * richiedono l'indice del testo, da costruire prima con {@link #preparaTesto()}.
+     *
+     * @param localita Località di riferimento, o {@code null} per cercare ovunque senza raggio
+     * @param raggioKm Raggio di ricerca in chilometri, o {@code null} per cercare nella stessa zona
+     * @param filtri   Filtri della ricerca
+     * @return Piano della ricerca
+     */
+    PianoRicerca pianifica(Localita localita, Double raggioKm, FiltriRicerca filtri) {
+        PianoRicerca piano = new PianoRicerca(localita, raggioKm, filtri);
+        blocco.readLock().lock();
+        try {
+            // Senza coordinate nessun ristorante può trovarsi nel raggio
+            if (raggioKm != null && !localita.haCoordinate()) {
+                piano.scegli(PianoRicerca.Accesso.NESSUNO);
+                return piano;
+            }
+            long inZona = numero;
+            if (perZona(localita, raggioKm)) {
+                int codiceCitta = colonne.codiceCitta(localita.getCitta());
+                if (codiceCitta == ColonneRistoranti.NESSUN_CODICE
+                        || colonne.codiceNazione(localita.getNazione()) == ColonneRistoranti.NESSUN_CODICE) {
+                    piano.scegli(PianoRicerca.Accesso.NESSUNO);
+                    return piano;
+                }
+                inZona = colonne.ristorantiInCitta(codiceCitta);
+            }
+            // Ristoranti che contengono tutte le parole, supponendo le parole indipendenti
+            double conParole = numero;
+            long paroleDecodificate = 0;
+            if (filtri.parole() != null) {
+                for (String parola : filtri.parole()) {
+                    int frequenza = testo.frequenza(parola);
+                    if (frequenza == 0) {
+                        piano.scegli(PianoRicerca.Accesso.NESSUNO);
+                        return piano;
+                    }
+                    conParole = conParole * frequenza / numero;
+                    paroleDecodificate += frequenza;
+                }
+            }
+
+            // Frazione dei ristoranti che supera ciascun filtro indicizzato
+            long inRaggio = raggioKm != null
+                    ? griglia.stima(localita.getLatitudine(), localita.getLongitudine(), raggioKm) : numero;
+            boolean conPrezzo = filtri.prezzoMinimo() != null || filtri.prezzoMassimo() != null;
+            long inFascia = conPrezzo ? segmentati.contaFascia(filtri.prezzoMinimo(), filtri.prezzoMassimo())
+                    + (numero - segmentati.indicizzati()) : numero;
+            double selettivita = selettivitaCategorie(filtri);
+
+            // Ristoranti da verificare uno a uno con il filtro completo, qualunque sia l'accesso
+            long daVerificare = numero == 0 ? 0
+                    : Math.round(selettivita * inFascia * ((double) inRaggio / numero) * ((double) inZona / numero));
+
+            piano.valuta(PianoRicerca.Accesso.SCANSIONE, numero,
+                    numero / COSTO_RELATIVO_COLONNE + daVerificare);
+            if (raggioKm != null) {
+                piano.valuta(PianoRicerca.Accesso.GRIGLIA, inRaggio, inRaggio + daVerificare);
+            }
+            if (conPrezzo) {
+                // I candidati vanno riordinati per identificativo prima di essere esaminati
+                piano.valuta(PianoRicerca.Accesso.PREZZO, inFascia, 2 * inFascia + daVerificare);
+            }
+            int bitmap = bitmapCategorie(filtri);
+            if (bitmap > 0) {
+                long candidati = Math.round(numero * selettivita);
+                piano.valuta(PianoRicerca.Accesso.CATEGORIE, candidati, (long) bitmap * (numero / 64 + 1)
+                        + candidati / COSTO_RELATIVO_COLONNE + daVerificare);
+            }
+            if (filtri.parole() != null) {
+                // Le liste vengono decodificate per intero; i candidati superano già le parole
+                long candidati = Math.round(conParole);
+                piano.valuta(PianoRicerca.Accesso.TESTO, candidati,
+                        paroleDecodificate + candidati + Math.round(daVerificare * conParole / numero));
+            }
+            return piano;
+        } finally {
+            blocco.readLock().unlock();
+        }
+    }
+
+    /**
+     * Esegue un piano di ricerca e ne registra l'esito.
+     * <p>
+     * I candidati dell'accesso scelto vengono prima ristretti con un {@link FiltroColonne} su
+     * coordinate, zona, cucina e prezzo, a blocchi di 64 per la scansione e le bitmap, e poi esaminati nell'ordine
+     * del file con il filtro completo: il filtro deve quindi verificare tutti i criteri della ricerca,
+     * compresa la distanza esatta, indipendentemente dall'accesso.
+     * <p>
+     * Quando il catalogo supera la soglia parallela e sono disponibili più processori, la scansione
+     * e l'accesso tramite bitmap vengono suddivisi in blocchi elaborati da {@link ScansioneParallela};
+     * il risultato è lo stesso, nello stesso ordine, della scansione sequenziale.
+     *
+     * @param piano  Piano da eseguire
+     * @param filtro Filtro completo da applicare ai candidati
+     * @return Ristoranti che soddisfano il filtro, nell'ordine del file
+     */
+    ArrayList<Ristorante> esegui(PianoRicerca piano, Predicate<Ristorante> filtro) {
+        long inizio = System.nanoTime();
+        var risultato = new ArrayList<Ristorante>();
+        long esaminati = 0;
+        int blocchiParalleli = 0;
+
+        Localita localita = piano.localita();
+        FiltriRicerca filtri = piano.filtri();
+        CerchioRicerca cerchio = piano.raggioKm() != null && localita.haCoordinate()
+                ? new CerchioRicerca(localita.getLatitudine(), localita.getLongitudine(), piano.raggioKm()) : null;
+
+        blocco.readLock().lock();
+        try {
+            switch (piano.accesso()) {
+                case NESSUNO -> {
+                }
+                case SCANSIONE, CATEGORIE -> {
+                    BitSet selezione;
+                    if (piano.accesso() == PianoRicerca.Accesso.CATEGORIE) {
+                        selezione = selezioneCategorie(filtri);
+                    } else {
+                        selezione = new BitSet(numero);
+                        selezione.set(0, numero);
+                        interseca(selezione, colonne.conDelivery(), filtri.delivery());
+                        interseca(selezione, colonne.conPrenotazione(), filtri.prenotazione());
+                    }
+                    long[] maschera = selezione.toLongArray();
+                    FiltroColonne filtroColonne = filtroColonne(localita, piano.raggioKm(), cerchio, filtri);
+                    if (numero >= sogliaParallela && ForkJoinPool.getCommonPoolParallelism() > 1) {
+                        blocchiParalleli = ScansioneParallela.blocchi(maschera);
+                        esaminati = ScansioneParallela.esegui(maschera,
+                                filtroColonne.restrittivo() ? filtroColonne : null, ristoranti, filtro, risultato);
+                    } else {
+                        if (filtroColonne.restrittivo()) {
+                            filtroColonne.seleziona(maschera);
+                        }
+                        for (int parola = 0; parola < maschera.length; parola++) {
+                            for (long bit = maschera[parola]; bit != 0; bit &= bit - 1) {
+                                valuta((parola << 6) + Long.numberOfTrailingZeros(bit), filtro, risultato);
+                                esaminati++;
+                            }
+                        }
+                    }
+                }
+                case GRIGLIA, PREZZO, TESTO -> {
+                    int[] candidati = switch (piano.accesso()) {
+                        case GRIGLIA -> griglia.candidati(localita.getLatitudine(), localita.getLongitudine(),
+                                piano.raggioKm());
+                        case PREZZO -> fasciaPrezzo(filtri);
+                        default -> testo.cerca(filtri.parole());
+                    };
+                    // La fascia di prezzo garantisce già il prezzo: le colonne servono per gli altri filtri
+                    FiltroColonne residuo = filtroColonne(localita, piano.raggioKm(), cerchio,
+                            piano.accesso() == PianoRicerca.Accesso.PREZZO ? filtri.senzaPrezzo() : filtri);
+                    boolean conColonne = residuo.restrittivo();
+                    for (int id : candidati) {
+                        if (haServizi(id, filtri) && (!conColonne || residuo.ammette(id))) {
+                            valuta(id, filtro, risultato);
+                            esaminati++;
+                        }
+                    }
+                }
+            }
+        } finally {
+            blocco.readLock().unlock();
+        }
+
+        piano.registraEsecuzione(esaminati, risultato.size(), blocchiParalleli, System.nanoTime() - inizio);
+        return risultato;
+    }
+
+    /**
+     * Aggiunge il ristorante al risultato se soddisfa il filtro.
+     */
+    private void valuta(int id, Predicate<Ristorante> filtro, ArrayList<Ristorante> risultato) {
+        if (filtro.test(ristoranti[id])) {
+            risultato.add(ristoranti[id]);
+        }
+    }
+
+    /**
+     * Restituisce i {@code k} ristoranti più vicini alla località che soddisfano il filtro,
+     * dal più vicino al più lontano. I ristoranti senza coordinate vengono ignorati.
+     * <p>
+     * La distanza viene calcolata solo per i ristoranti nei nodi degli alberi k-d che possono
+     * ancora migliorare il risultato; per quelli abbastanza vicini vengono verificati i servizi,
+     * la cucina e il prezzo sulle colonne, e solo per chi li supera il filtro completo.
+     *
+     * @param localita Località di riferimento, con coordinate
+     * @param k        Numero massimo di ristoranti restituiti
+     * @param filtri   Filtri della ricerca, verificati sulle colonne prima del filtro completo
+     * @param filtro   Filtro completo da applicare ai ristoranti
+     * @return Ristoranti più vicini che soddisfano il filtro
+     */
+    ArrayList<Ristorante> vicini(Localita localita, int k, FiltriRicerca filtri, Predicate<Ristorante> filtro) {
+        double[] punto = new double[3];
+        AlberoKD.sfera(localita.getLatitudine(), localita.getLongitudine(), punto, 0);
+        AlberoKD.Vicini vicini = new AlberoKD.Vicini(k);
+
+        blocco.readLock().lock();
+        try {
+            FiltroColonne residuo = filtroColonne(null, null, null, filtri);
+            boolean conColonne = residuo.restrittivo();
+            IntPredicate ammesso = id -> haServizi(id, filtri) && (!conColonne || residuo.ammette(id))
+                    && filtro.test(ristoranti[id]);
+            segmentati.vicini(punto, ammesso, vicini);
+
+            // Coda dei ristoranti non ancora indicizzati nei segmenti
+            double[] latitudini = colonne.latitudini();
+            double[] longitudini = colonne.longitudini();
+            double[] coordinate = new double[3];
+            for (int id = segmentati.indicizzati(); id < numero; id++) {
+                if (Double.isNaN(latitudini[id])) {
+                    continue;
+                }
+                AlberoKD.sfera(latitudini[id], longitudini[id], coordinate, 0);
+                double distanza = AlberoKD.distanza(coordinate, 0, punto);
+                if ((!vicini.pieno() || distanza <= vicini.soglia()) && ammesso.test(id)) {
+                    vicini.offri(id, distanza);
+                }
+            }
+
+            var risultato = new ArrayList<Ristorante>(k);
+            for (int id : vicini.ordinati()) {
+                risultato.add(ristoranti[id]);
+            }
+            return risultato;
+        } finally {
+            blocco.readLock().unlock();
+        }
+    }
+
+    /**
+     * Interseca le bitmap dei filtri categorici.
+     *
+     * @param filtri Filtri della ricerca
+     * @return Identificativi dei ristoranti che soddisfano i filtri categorici, tutti se non ce ne sono
+     */
+    private BitSet selezioneCategorie(FiltriRicerca filtri) {
+        BitSet selezione;
+        if (filtri.tipoCucina() != null) {
+            selezione = (BitSet) cucine[filtri.tipoCucina().ordinal()].clone();
+        } else {
+            selezione = new BitSet(numero);
+            selezione.set(0, numero);
+        }
+        interseca(selezione, colonne.conDelivery(), filtri.delivery());
+        interseca(selezione, colonne.conPrenotazione(), filtri.prenotazione());
+        return selezione;
+    }
+
+    /**
+     * Verifica se un ristorante offre i servizi richiesti dai filtri (delivery e prenotazione online).
+     */
+    private boolean haServizi(int id, FiltriRicerca filtri) {
+        return (filtri.delivery() == null || colonne.conDelivery().get(id) == filtri.delivery())
+                && (filtri.prenotazione() == null || colonne.conPrenotazione().get(id) == filtri.prenotazione());
+    }
+
+    /**
+     * Crea il filtro sulle colonne di una ricerca. La zona viene filtrata solo per le ricerche senza
+     * raggio e con città e nazione note al dizionario; negli altri casi la verifica resta al filtro completo.
+     *
+     * @param localita Località di riferimento
+     * @param raggioKm Raggio di ricerca in chilometri, o {@code null} per cercare nella stessa zona
+     * @param cerchio  Cerchio della ricerca per raggio, o {@code null}
+     * @param filtri   Filtri della ricerca
+     * @return Filtro sulle colonne del catalogo
+     */
+    private FiltroColonne filtroColonne(Localita localita, Double raggioKm, CerchioRicerca cerchio,
+                                        FiltriRicerca filtri) {
+        int codiceCitta = ColonneRistoranti.NESSUN_CODICE;
+        int codiceNazione = ColonneRistoranti.NESSUN_CODICE;
+        if (perZona(localita, raggioKm)) {
+            codiceNazione = colonne.codiceNazione(localita.getNazione());
+            codiceCitta = codiceNazione != ColonneRistoranti.NESSUN_CODICE
+                    ? colonne.codiceCitta(localita.getCitta()) : ColonneRistoranti.NESSUN_CODICE;
+        }
+        return new FiltroColonne(colonne, cerchio, codiceCitta, codiceNazione, filtri);
+    }
+
+    /**
+     * Indica se una ricerca è per zona, con città e nazione da confrontare.
+     */
+    private static boolean perZona(Localita localita, Double raggioKm) {
+        return raggioKm == null && localita != null && localita.getCitta() != null && localita.getNazione() != null;
+    }
+
+    /**
+     * Restituisce i ristoranti nella fascia di prezzo dei filtri, compresi quelli della coda
+     * non ancora indicizzata, in ordine di identificativo.
+     *
+     * @param filtri Filtri della ricerca
+     * @return Identificativi dei ristoranti nella fascia, in ordine crescente
+     */
+    private int[] fasciaPrezzo(FiltriRicerca filtri) {
+        int[] indicizzati = segmentati.fascia(filtri.prezzoMinimo(), filtri.prezzoMassimo());
+        int[] fascia = Arrays.copyOf(indicizzati, indicizzati.length + (numero - segmentati.indicizzati()));
+        int trovati = indicizzati.length;
+        for (int id = segmentati.indicizzati(); id < numero; id++) {
+            if (nellaFascia(colonne.prezzi()[id], filtri)) {
+                fascia[trovati++] = id;
+            }
+        }
+        fascia = Arrays.copyOf(fascia, trovati);
+        Arrays.sort(fascia);
+        return fascia;
+    }
+
+    /**
+     * Conta le bitmap da intersecare per i filtri categorici.
+     */
+    private static int bitmapCategorie(FiltriRicerca filtri) {
+        int bitmap = 0;
+        if (filtri.tipoCucina() != null) {
+            bitmap++;
+        }
+        if (filtri.delivery() != null) {
+            bitmap++;
+        }
+        if (filtri.prenotazione() != null) {
+            bitmap++;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Stima la frazione di ristoranti che soddisfa i filtri categorici dalla frequenza di ciascun
+     * valore, supponendo i filtri indipendenti.
+     */
+    private double selettivitaCategorie(FiltriRicerca filtri) {
+        if (numero == 0) {
+            return 0;
+        }
+        double selettivita = 1;
+        if (filtri.tipoCucina() != null) {
+            selettivita *= (double) colonne.ristorantiPerCucina(filtri.tipoCucina()) / numero;
+        }
+        if (filtri.delivery() != null) {
+            double frazione = (double) colonne.ristorantiConDelivery() / numero;
+            selettivita *= filtri.delivery() ? frazione : 1 - frazione;
+        }
+        if (filtri.prenotazione() != null) {
+            double frazione = (double) colonne.ristorantiConPrenotazione() / numero;
+            selettivita *= filtri.prenotazione() ? frazione : 1 - frazione;
+        }
+        return selettivita;
+    }
+
+    /**
+     * Verifica se un prezzo rientra nella fascia dei filtri.
+     */
+    private static boolean nellaFascia(float prezzo, FiltriRicerca filtri) {
+        return (filtri.prezzoMinimo() == null || prezzo >= filtri.prezzoMinimo())
+                && (filtri.prezzoMassimo() == null || prezzo <= filtri.prezzoMassimo());
+    }
+
+    /**
+     * Restringe la selezione ai ristoranti con il valore richiesto di un attributo booleano.
+     */
+    private static void interseca(BitSet selezione, BitSet indice, Boolean valore) {
+        if (valore == null) {
+            return;
+        }
+        if (valore) {
+            selezione.and(indice);
+        } else {
+            selezione.andNot(indice);
+        }
+    }
+
+    /**
+     * Aggiunge un ristorante al catalogo e agli indici.
+     */
+    private void indicizza(Ristorante ristorante) {
+        int id = colonne.aggiungi(ristorante);
+        if (id == ristoranti.length) {
+            ristoranti = Arrays.copyOf(ristoranti, Math.max(16, id * 2));
+        }
+        ristoranti[id] = ristorante;
+        numero = id + 1;
+
+        if (ristorante.getTipoDiCucina() != null) {
+            cucine[ristorante.getTipoDiCucina().ordinal()].set(id);
+        }
+        if (!Double.isNaN(colonne.latitudini()[id])) {
+            griglia.aggiungi(id, colonne.latitudini()[id], colonne.longitudini()[id]);
+        }
+        if (testo != null) {
+            testo.aggiungi(id, ristorante);
+        }
+        if (suggerimenti != null) {
+            suggerimenti.aggiungi(id, ristorante);
+        }
+        if (trigrammi != null) {
+            trigrammi.aggiungi(id, ristorante);
+        }
+    }
+
+    /**
+     * Restituisce la posizione di un ristorante nel catalogo.
+     * <p>
+     * Gli identificativi dei ristoranti crescono nell'ordine del catalogo e coincidono con la posizione
+     * finché nessuna riga del file è stata scartata: la posizione viene quindi verificata direttamente
+     * e cercata per bisezione solo in caso contrario.
+     *
+     * @return Posizione del ristorante, o -1 se non è nel catalogo
+     */
+    private int posizione(Ristorante ristorante) {
+        int id = ristorante.getId();
+        if (id >= 0 && id < numero && ristoranti[id] == ristorante) {
+            return id;
+        }
+        int basso = 0;
+        int alto = Math.min(id, numero) - 1;
+        while (basso <= alto) {
+            int medio = (basso + alto) >>> 1;
+            int idMedio = ristoranti[medio].getId();
+            if (idMedio < id) {
+                basso = medio + 1;
+            } else if (idMedio > id) {
+                alto = medio - 1;
+            } else {
+                return ristoranti[medio] == ristorante ? medio : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Svuota il catalogo e gli indici.
+     */
+    private void svuota() {
+        ristoranti = new Ristorante[0];
+        colonne = new ColonneRistoranti();
+        numero = 0;
+        griglia = new IndiceGriglia();
+        cucine = nuoveBitmapCucine();
+        segmentati = new IndiciSegmentati();
+        testo = testo != null ? new IndiceTesto() : null;
+        suggerimenti = suggerimenti != null ? new IndiceSuggerimenti() : null;
+        trigrammi = trigrammi != null ? new IndiceTrigrammi() : null;
+        generazione++;
+    }
+
+    /**
+     * Misura quanto un ristorante è lontano da una località, per ordinare i ristoranti dal più vicino:
+     * la distanza in km se la località ha coordinate, altrimenti 0 nella stessa città; infinito per i
+     * ristoranti di cui non si può dire.
+     */
+    private static double lontananza(Ristorante ristorante, Localita localita) {
+        Localita posizione = ristorante.getLocalita();
+        if (posizione == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (localita.haCoordinate()) {
+            return posizione.haCoordinate() ? posizione.calcolaDistanza(localita) : Double.POSITIVE_INFINITY;
+        }
+        return posizione.stessaZonaGeografica(localita) ? 0 : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Crea una bitmap vuota per ogni tipo di cucina.
+     */
+    private static BitSet[] nuoveBitmapCucine() {
+        BitSet[] bitmap = new BitSet[TipoCucina.values().length];
+        for (int i = 0; i < bitmap.length; i++) {
+            bitmap[i] = new BitSet();
+        }
+        return bitmap;
+    }
+}
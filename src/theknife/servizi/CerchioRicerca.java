@@ -0,0 +1,234 @@
+package theknife.servizi;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Cerchio di una ricerca per raggio, che verifica se un punto dista dal centro al più il raggio.
+ * <p>
+ * I valori trigonometrici del centro e il rettangolo che racchiude il cerchio vengono calcolati una
+ * sola volta alla costruzione. Per ogni punto la verifica procede per passi di costo crescente:
+ * <ol>
+ *     <li>il rettangolo scarta i punti lontani con due sottrazioni;</li>
+ *     <li>per raggi piccoli e latitudini non polari, l'approssimazione equirettangolare, calcolata con
+ *     sole moltiplicazioni, decide i punti chiaramente dentro o fuori dal cerchio;</li>
+ *     <li>solo i punti in una fascia sottile attorno al bordo richiedono la formula di Haversine.</li>
+ * </ol>
+ * La formula di Haversine è la stessa di {@link theknife.entita.Localita#calcolaDistanza}, con gli
+ * stessi passaggi: l'esito coincide con quello di {@code calcolaDistanza(...) <= raggio}.
+ * La classe è immutabile e può essere usata da più thread.
+ *
+ * @author Marco Zaro
+ */
+final class CerchioRicerca {
+
+    /**
+     * Raggio medio della Terra in chilometri, lo stesso usato da {@link theknife.entita.Localita}.
+     */
+    private static final double RAGGIO_TERRA_KM = 6371.0;
+
+    /**
+     * Raggio massimo per cui si usa l'approssimazione equirettangolare.
+     */
+    private static final double RAGGIO_MASSIMO_APPROSSIMAZIONE_KM = 50;
+
+    /**
+     * Latitudine massima del centro, in valore assoluto, per cui si usa l'approssimazione equirettangolare.
+     */
+    private static final double LATITUDINE_MASSIMA_APPROSSIMAZIONE = 80;
+
+    /**
+     * Errore relativo tollerato dall'approssimazione: entro 50 km e 80 gradi di latitudine l'errore
+     * misurato rispetto alla formula di Haversine resta sotto 2e-4, per cui il margine è ampio.
+     */
+    private static final double TOLLERANZA = 1e-3;
+
+    /**
+     * Latitudine del centro in gradi.
+     */
+    private final double latitudine;
+
+    /**
+     * Longitudine del centro in gradi.
+     */
+    private final double longitudine;
+
+    /**
+     * Coseno della latitudine del centro.
+     */
+    private final double cosenoLatitudine;
+
+    /**
+     * Seno della latitudine del centro.
+     */
+    private final double senoLatitudine;
+
+    /**
+     * Raggio in chilometri.
+     */
+    private final double raggioKm;
+
+    /**
+     * Massima differenza di latitudine, in gradi, di un punto nel cerchio.
+     */
+    private final double deltaLatitudine;
+
+    /**
+     * Massima differenza di longitudine, in gradi, di un punto nel cerchio; 180 se il cerchio include un polo.
+     */
+    private final double deltaLongitudine;
+
+    /**
+     * Indica se il rettangolo attraversa il meridiano 180, per cui le differenze di longitudine
+     * vanno riportate tra -180 e 180.
+     */
+    private final boolean attraversaAntimeridiano;
+
+    /**
+     * Indica se l'approssimazione equirettangolare è abbastanza precisa per questo cerchio.
+     */
+    private final boolean approssimabile;
+
+    /**
+     * Quadrato del raggio angolare sotto cui un punto è sicuramente nel cerchio.
+     */
+    private final double sogliaInterna;
+
+    /**
+     * Quadrato del raggio angolare oltre cui un punto è sicuramente fuori dal cerchio.
+     */
+    private final double sogliaEsterna;
+
+    /**
+     * Crea il cerchio con il centro e il raggio indicati.
+     *
+     * @param latitudine  Latitudine del centro in gradi
+     * @param longitudine Longitudine del centro in gradi
+     * @param raggioKm    Raggio in chilometri
+     */
+    CerchioRicerca(double latitudine, double longitudine, double raggioKm) {
+        this.latitudine = latitudine;
+        this.longitudine = longitudine;
+        this.cosenoLatitudine = Math.cos(Math.toRadians(latitudine));
+        this.senoLatitudine = Math.sin(Math.toRadians(latitudine));
+        this.raggioKm = raggioKm;
+
+        // Rettangolo che racchiude il cerchio sulla sfera, come in IndiceGriglia, allargato della
+        // tolleranza perché gli arrotondamenti non escludano punti che Haversine pone sul bordo
+        double raggioAngolare = raggioKm / RAGGIO_TERRA_KM;
+        deltaLatitudine = Math.toDegrees(raggioAngolare) * (1 + TOLLERANZA);
+        double seno = Math.sin(raggioAngolare);
+        if (Math.abs(latitudine) + deltaLatitudine >= 90 || seno >= cosenoLatitudine) {
+            deltaLongitudine = 180;
+        } else {
+            deltaLongitudine = Math.toDegrees(Math.asin(seno / cosenoLatitudine)) * (1 + TOLLERANZA);
+        }
+
+        attraversaAntimeridiano = Math.abs(longitudine) + deltaLongitudine > 180;
+        approssimabile = raggioKm <= RAGGIO_MASSIMO_APPROSSIMAZIONE_KM
+                && Math.abs(latitudine) <= LATITUDINE_MASSIMA_APPROSSIMAZIONE;
+        sogliaInterna = quadrato(raggioAngolare * (1 - TOLLERANZA));
+        sogliaEsterna = quadrato(raggioAngolare * (1 + TOLLERANZA));
+    }
+
+    /**
+     * Verifica se un punto si trova nel cerchio.
+     *
+     * @param latitudinePunto  Latitudine del punto in gradi
+     * @param longitudinePunto Longitudine del punto in gradi
+     * @return {@code true} se la distanza dal centro non supera il raggio
+     */
+    boolean contiene(double latitudinePunto, double longitudinePunto) {
+        double differenzaLatitudine = latitudinePunto - latitudine;
+        if (Math.abs(differenzaLatitudine) > deltaLatitudine) {
+            return false;
+        }
+        double differenzaLongitudine = longitudinePunto - longitudine;
+        if (differenzaLongitudine > 180) {
+            differenzaLongitudine -= 360;
+        } else if (differenzaLongitudine < -180) {
+            differenzaLongitudine += 360;
+        }
+        if (Math.abs(differenzaLongitudine) > deltaLongitudine) {
+            return false;
+        }
+
+        if (approssimabile) {
+            // Distanza equirettangolare, in radianti, con il coseno della latitudine media sviluppato
+            // attorno al centro: cos(φ + h) ≈ cos φ (1 - h²/2) - sin φ h, con h piccolo
+            double y = Math.toRadians(differenzaLatitudine);
+            double h = y / 2;
+            double x = Math.toRadians(differenzaLongitudine)
+                    * (cosenoLatitudine * (1 - h * h / 2) - senoLatitudine * h);
+            double distanza = x * x + y * y;
+            if (distanza <= sogliaInterna) {
+                return true;
+            }
+            if (distanza > sogliaEsterna) {
+                return false;
+            }
+        }
+        return haversine(latitudinePunto, longitudinePunto) <= raggioKm;
+    }
+
+    /**
+     * Verifica in modo conservativo se un punto può trovarsi nel cerchio, senza diramazioni che
+     * dipendano dal punto: è pensato per i cicli su colonne di coordinate, in cui il compilatore
+     * JIT può eliminare i salti condizionali.
+     * <p>
+     * Restituisce {@code true} per ogni punto del cerchio e, al più, per i punti nella fascia attorno
+     * al bordo in cui l'approssimazione non è decisiva: l'esito va confermato con {@link #contiene}.
+     * Le coordinate {@code NaN} non sono mai contenute.
+     *
+     * @param latitudinePunto  Latitudine del punto in gradi
+     * @param longitudinePunto Longitudine del punto in gradi
+     * @return {@code false} solo se il punto è sicuramente fuori dal cerchio
+     */
+    boolean puoContenere(double latitudinePunto, double longitudinePunto) {
+        double differenzaLatitudine = latitudinePunto - latitudine;
+        double differenzaLongitudine = longitudinePunto - longitudine;
+        if (attraversaAntimeridiano) {
+            differenzaLongitudine -= 360 * Math.rint(differenzaLongitudine / 360);
+        }
+        boolean nelRiquadro = Math.abs(differenzaLatitudine) <= deltaLatitudine
+                & Math.abs(differenzaLongitudine) <= deltaLongitudine;
+        if (!approssimabile) {
+            return nelRiquadro;
+        }
+
+        double y = Math.toRadians(differenzaLatitudine);
+        double h = y / 2;
+        double x = Math.toRadians(differenzaLongitudine)
+                * (cosenoLatitudine * (1 - h * h / 2) - senoLatitudine * h);
+        return nelRiquadro & x * x + y * y <= sogliaEsterna;
+    }
+
+    /**
+     * Calcola la distanza in chilometri tra un punto e il centro con la formula di Haversine,
+     * negli stessi passaggi di {@link theknife.entita.Localita#calcolaDistanza} chiamato sul punto.
+     */
+    private double haversine(double latitudinePunto, double longitudinePunto) {
+        double lat1Rad = Math.toRadians(latitudinePunto);
+        double deltaLatRad = Math.toRadians(latitudine - latitudinePunto);
+        double deltaLonRad = Math.toRadians(longitudine - longitudinePunto);
+
+        double sinDeltaLat = Math.sin(deltaLatRad / 2);
+        double sinDeltaLon = Math.sin(deltaLonRad / 2);
+
+        double a = sinDeltaLat * sinDeltaLat +
+                Math.cos(lat1Rad) * cosenoLatitudine *
+                        sinDeltaLon * sinDeltaLon;
+
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        return RAGGIO_TERRA_KM * c;
+    }
+
+    /**
+     * Calcola il quadrato di un valore.
+     */
+    private static double quadrato(double valore) {
+        return valore * valore;
+    }
+}
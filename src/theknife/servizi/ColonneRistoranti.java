@@ -0,0 +1,345 @@
+package theknife.servizi;
+
+import theknife.entita.Localita;
+import theknife.entita.Ristorante;
+import theknife.entita.TipoCucina;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Attributi dei ristoranti del catalogo memorizzati per colonne: un array primitivo per attributo,
+ * indicizzato dall'identificativo del ristorante.
+ * <p>
+ * Le ricerche scorrono le colonne in memoria contigua invece di seguire i riferimenti di ogni
+ * {@link Ristorante} e della sua {@link Localita}. Le colonne sono:
+ * <ul>
+ *     <li>latitudine e longitudine ({@code double}), {@code NaN} per i ristoranti senza coordinate;</li>
+ *     <li>prezzo medio ({@code float});</li>
+ *     <li>tipo di cucina, come ordinale in un {@code byte}, {@link #NESSUN_CODICE} se assente;</li>
+ *     <li>città e nazione, codificate con un dizionario: ogni nome distinto riceve un codice intero;</li>
+ *     <li>delivery e prenotazione online, come bitmap.</li>
+ * </ul>
+ * I nomi di città e nazione sono confrontati ignorando maiuscole e minuscole, come in
+ * {@link Localita#stessaZonaGeografica}: due nomi hanno lo stesso codice se e solo se sono uguali
+ * carattere per carattere a meno del caso.
+ * <p>
+ * Gli array restituiti sono quelli interni, validi fino a {@link #numero()} e da non modificare;
+ * possono essere sostituiti da {@link #aggiungi}, per cui vanno letti con il catalogo bloccato.
+ *
+ * @author Marco Zaro
+ */
+final class ColonneRistoranti {
+
+    /**
+     * Codice di un valore assente o sconosciuto, che nessun ristorante possiede.
+     */
+    static final int NESSUN_CODICE = -1;
+
+    /**
+     * Numero di ristoranti memorizzati.
+     */
+    private int numero;
+
+    /**
+     * Latitudini per identificativo.
+     */
+    private double[] latitudini = new double[0];
+
+    /**
+     * Longitudini per identificativo.
+     */
+    private double[] longitudini = new double[0];
+
+    /**
+     * Prezzi medi per identificativo.
+     */
+    private float[] prezzi = new float[0];
+
+    /**
+     * Ordinali del tipo di cucina per identificativo.
+     */
+    private byte[] cucine = new byte[0];
+
+    /**
+     * Codici della città per identificativo.
+     */
+    private int[] citta = new int[0];
+
+    /**
+     * Codici della nazione per identificativo.
+     */
+    private int[] nazioni = new int[0];
+
+    /**
+     * Bitmap dei ristoranti che offrono il delivery.
+     */
+    private final BitSet conDelivery = new BitSet();
+
+    /**
+     * Bitmap dei ristoranti che accettano prenotazioni online.
+     */
+    private final BitSet conPrenotazione = new BitSet();
+
+    /**
+     * Dizionario delle città: codice per nome normalizzato.
+     */
+    private final HashMap<String, Integer> codiciCitta = new HashMap<>();
+
+    /**
+     * Dizionario delle nazioni: codice per nome normalizzato.
+     */
+    private final HashMap<String, Integer> codiciNazioni = new HashMap<>();
+
+    /**
+     * Numero di ristoranti per codice di città.
+     */
+    private int[] ristorantiPerCitta = new int[0];
+
+    /**
+     * Numero di ristoranti per tipo di cucina.
+     */
+    private final int[] ristorantiPerCucina = new int[TipoCucina.values().length];
+
+    /**
+     * Numero di ristoranti con delivery.
+     */
+    private int ristorantiConDelivery;
+
+    /**
+     * Numero di ristoranti con prenotazione online.
+     */
+    private int ristorantiConPrenotazione;
+
+    /**
+     * Aggiunge un ristorante in fondo alle colonne.
+     *
+     * @param ristorante Ristorante da aggiungere
+     * @return Identificativo assegnato al ristorante
+     */
+    int aggiungi(Ristorante ristorante) {
+        if (numero == prezzi.length) {
+            int capacita = Math.max(16, numero * 2);
+            latitudini = Arrays.copyOf(latitudini, capacita);
+            longitudini = Arrays.copyOf(longitudini, capacita);
+            prezzi = Arrays.copyOf(prezzi, capacita);
+            cucine = Arrays.copyOf(cucine, capacita);
+            citta = Arrays.copyOf(citta, capacita);
+            nazioni = Arrays.copyOf(nazioni, capacita);
+        }
+        int id = numero++;
+        prezzi[id] = ristorante.getPrezzoMedio();
+
+        TipoCucina tipoCucina = ristorante.getTipoDiCucina();
+        cucine[id] = (byte) (tipoCucina != null ? tipoCucina.ordinal() : NESSUN_CODICE);
+        if (tipoCucina != null) {
+            ristorantiPerCucina[tipoCucina.ordinal()]++;
+        }
+        if (ristorante.getDelivery()) {
+            conDelivery.set(id);
+            ristorantiConDelivery++;
+        }
+        if (ristorante.getPrenotazione()) {
+            conPrenotazione.set(id);
+            ristorantiConPrenotazione++;
+        }
+
+        Localita localita = ristorante.getLocalita();
+        if (localita != null && localita.haCoordinate()) {
+            latitudini[id] = localita.getLatitudine();
+            longitudini[id] = localita.getLongitudine();
+        } else {
+            latitudini[id] = Double.NaN;
+            longitudini[id] = Double.NaN;
+        }
+        citta[id] = localita != null ? codifica(codiciCitta, localita.getCitta()) : NESSUN_CODICE;
+        nazioni[id] = localita != null ? codifica(codiciNazioni, localita.getNazione()) : NESSUN_CODICE;
+        if (citta[id] != NESSUN_CODICE) {
+            if (citta[id] == ristorantiPerCitta.length) {
+                ristorantiPerCitta = Arrays.copyOf(ristorantiPerCitta, Math.max(16, citta[id] * 2));
+            }
+            ristorantiPerCitta[citta[id]]++;
+        }
+        return id;
+    }
+
+    /**
+     * Restituisce il numero di ristoranti memorizzati.
+     *
+     * @return Numero di ristoranti
+     */
+    int numero() {
+        return numero;
+    }
+
+    /**
+     * Restituisce la colonna delle latitudini.
+     *
+     * @return Latitudini per identificativo, {@code NaN} per i ristoranti senza coordinate
+     */
+    double[] latitudini() {
+        return latitudini;
+    }
+
+    /**
+     * Restituisce la colonna delle longitudini.
+     *
+     * @return Longitudini per identificativo, {@code NaN} per i ristoranti senza coordinate
+     */
+    double[] longitudini() {
+        return longitudini;
+    }
+
+    /**
+     * Restituisce la colonna dei prezzi medi.
+     *
+     * @return Prezzi medi per identificativo
+     */
+    float[] prezzi() {
+        return prezzi;
+    }
+
+    /**
+     * Restituisce la colonna dei tipi di cucina.
+     *
+     * @return Ordinali del tipo di cucina per identificativo, {@link #NESSUN_CODICE} se assente
+     */
+    byte[] cucine() {
+        return cucine;
+    }
+
+    /**
+     * Restituisce la colonna delle città.
+     *
+     * @return Codici della città per identificativo
+     */
+    int[] citta() {
+        return citta;
+    }
+
+    /**
+     * Restituisce la colonna delle nazioni.
+     *
+     * @return Codici della nazione per identificativo
+     */
+    int[] nazioni() {
+        return nazioni;
+    }
+
+    /**
+     * Restituisce la bitmap dei ristoranti con delivery.
+     *
+     * @return Bitmap con il bit attivo per i ristoranti che offrono il delivery
+     */
+    BitSet conDelivery() {
+        return conDelivery;
+    }
+
+    /**
+     * Restituisce la bitmap dei ristoranti con prenotazione online.
+     *
+     * @return Bitmap con il bit attivo per i ristoranti che accettano prenotazioni online
+     */
+    BitSet conPrenotazione() {
+        return conPrenotazione;
+    }
+
+    /**
+     * Cerca il codice di una città nel dizionario.
+     *
+     * @param nome Nome della città
+     * @return Codice della città, {@link #NESSUN_CODICE} se nessun ristorante si trova in quella città
+     */
+    int codiceCitta(String nome) {
+        return codice(codiciCitta, nome);
+    }
+
+    /**
+     * Cerca il codice di una nazione nel dizionario.
+     *
+     * @param nome Nome della nazione
+     * @return Codice della nazione, {@link #NESSUN_CODICE} se nessun ristorante si trova in quella nazione
+     */
+    int codiceNazione(String nome) {
+        return codice(codiciNazioni, nome);
+    }
+
+    /**
+     * Restituisce il numero di ristoranti in una città, di qualunque nazione.
+     *
+     * @param codice Codice della città
+     * @return Numero di ristoranti nella città
+     */
+    int ristorantiInCitta(int codice) {
+        return codice >= 0 && codice < ristorantiPerCitta.length ? ristorantiPerCitta[codice] : 0;
+    }
+
+    /**
+     * Restituisce il numero di ristoranti con un tipo di cucina.
+     *
+     * @param tipoCucina Tipo di cucina
+     * @return Numero di ristoranti con quel tipo di cucina
+     */
+    int ristorantiPerCucina(TipoCucina tipoCucina) {
+        return ristorantiPerCucina[tipoCucina.ordinal()];
+    }
+
+    /**
+     * Restituisce il numero di ristoranti con delivery.
+     *
+     * @return Numero di ristoranti che offrono il delivery
+     */
+    int ristorantiConDelivery() {
+        return ristorantiConDelivery;
+    }
+
+    /**
+     * Restituisce il numero di ristoranti con prenotazione online.
+     *
+     * @return Numero di ristoranti che accettano prenotazioni online
+     */
+    int ristorantiConPrenotazione() {
+        return ristorantiConPrenotazione;
+    }
+
+    /**
+     * Restituisce il codice di un nome, aggiungendolo al dizionario se non è presente.
+     */
+    private static int codifica(HashMap<String, Integer> dizionario, String nome) {
+        if (nome == null) {
+            return NESSUN_CODICE;
+        }
+        return dizionario.computeIfAbsent(normalizza(nome), _ -> dizionario.size());
+    }
+
+    /**
+     * Restituisce il codice di un nome senza modificare il dizionario.
+     */
+    private static int codice(HashMap<String, Integer> dizionario, String nome) {
+        if (nome == null) {
+            return NESSUN_CODICE;
+        }
+        return dizionario.getOrDefault(normalizza(nome), NESSUN_CODICE);
+    }
+
+    /**
+     * Normalizza un nome carattere per carattere, con la stessa conversione di
+     * {@link String#equalsIgnoreCase}: prima in maiuscolo e poi in minuscolo.
+     *
+     * @param nome Nome da normalizzare
+     * @return Nome normalizzato, uguale per i nomi che differiscono solo per maiuscole e minuscole
+     */
+    static String normalizza(String nome) {
+        char[] caratteri = nome.toCharArray();
+        for (int i = 0; i < caratteri.length; i++) {
+            caratteri[i] = Character.toLowerCase(Character.toUpperCase(caratteri[i]));
+        }
+        return new String(caratteri);
+    }
+}
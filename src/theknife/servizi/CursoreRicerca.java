@@ -0,0 +1,230 @@
+package theknife.servizi;
+
+import theknife.entita.Localita;
+import theknife.entita.TipoCucina;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Stato di una ricerca a pagine: i parametri della ricerca, l'ordinamento, la dimensione delle pagine
+ * e la posizione dell'ultimo ristorante restituito nell'ordine dei risultati.
+ * <p>
+ * Il cursore non conserva i risultati: la pagina successiva ripete la ricerca e tiene solo i ristoranti
+ * che seguono l'ultimo restituito, per cui il servizio non deve ricordare le ricerche in corso.
+ * Viene consegnato al chiamante come testo opaco ({@link #codifica()}), che contiene tutto il necessario
+ * per proseguire.
+ *
+ * @param localita     Località della ricerca
+ * @param raggioKm     Raggio di ricerca in chilometri, o {@code null} per cercare nella stessa zona
+ * @param filtri       Filtri della ricerca
+ * @param ordinamento  Ordinamento dei risultati
+ * @param dimensione   Numero massimo di ristoranti per pagina
+ * @param ultimaChiave Chiave di ordinamento dell'ultimo ristorante restituito
+ * @param ultimoId     Identificativo dell'ultimo ristorante restituito, {@link #INIZIO} per la prima pagina
+ * @author Marco Zaro
+ */
+record CursoreRicerca(Localita localita, Double raggioKm, FiltriRicerca filtri, OrdinamentoRistoranti ordinamento,
+                      int dimensione, double ultimaChiave, int ultimoId) {
+
+    /**
+     * Identificativo che indica che nessun ristorante è ancora stato restituito.
+     */
+    static final int INIZIO = -1;
+
+    /**
+     * Versione del formato del cursore codificato.
+     */
+    private static final byte VERSIONE = 2;
+
+    /**
+     * Crea il cursore della prima pagina di una ricerca.
+     *
+     * @param localita    Località della ricerca
+     * @param raggioKm    Raggio di ricerca in chilometri, o {@code null}
+     * @param filtri      Filtri della ricerca
+     * @param ordinamento Ordinamento dei risultati
+     * @param dimensione  Numero massimo di ristoranti per pagina
+     * @return Cursore posto prima del primo risultato
+     */
+    static CursoreRicerca inizio(Localita localita, Double raggioKm, FiltriRicerca filtri,
+                                 OrdinamentoRistoranti ordinamento, int dimensione) {
+        return new CursoreRicerca(localita, raggioKm, filtri, ordinamento, dimensione, 0, INIZIO);
+    }
+
+    /**
+     * Crea il cursore che riprende dopo un ristorante.
+     *
+     * @param chiave Chiave di ordinamento del ristorante
+     * @param id     Identificativo del ristorante
+     * @return Cursore posto dopo il ristorante indicato
+     */
+    CursoreRicerca dopo(double chiave, int id) {
+        return new CursoreRicerca(localita, raggioKm, filtri, ordinamento, dimensione, chiave, id);
+    }
+
+    /**
+     * Verifica se un ristorante segue la posizione del cursore nell'ordine dei risultati.
+     *
+     * @param chiave Chiave di ordinamento del ristorante
+     * @param id     Identificativo del ristorante
+     * @return {@code true} se il ristorante non è ancora stato restituito
+     */
+    boolean segue(double chiave, int id) {
+        if (ultimoId == INIZIO) {
+            return true;
+        }
+        int confronto = Double.compare(chiave, ultimaChiave);
+        return confronto > 0 || confronto == 0 && id > ultimoId;
+    }
+
+    /**
+     * Codifica il cursore come testo opaco, utilizzabile in un URL.
+     *
+     * @return Cursore codificato
+     */
+    String codifica() {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSIONE);
+            scriviTesto(out, localita.getNazione());
+            scriviTesto(out, localita.getCitta());
+            scriviTesto(out, localita.getIndirizzo());
+            out.writeDouble(localita.getLatitudine());
+            out.writeDouble(localita.getLongitudine());
+            out.writeBoolean(raggioKm != null);
+            if (raggioKm != null) {
+                out.writeDouble(raggioKm);
+            }
+            out.writeByte(filtri.tipoCucina() != null ? filtri.tipoCucina().ordinal() : -1);
+            scriviDecimale(out, filtri.prezzoMinimo());
+            scriviDecimale(out, filtri.prezzoMassimo());
+            scriviBooleano(out, filtri.delivery());
+            scriviBooleano(out, filtri.prenotazione());
+            scriviDecimale(out, filtri.mediaStelle());
+            out.writeInt(filtri.parole() != null ? filtri.parole().size() : -1);
+            if (filtri.parole() != null) {
+                for (String parola : filtri.parole()) {
+                    out.writeUTF(parola);
+                }
+            }
+            out.writeByte(ordinamento.ordinal());
+            out.writeInt(dimensione);
+            out.writeDouble(ultimaChiave);
+            out.writeInt(ultimoId);
+        } catch (IOException e) {
+            // Lo stream in memoria non produce errori di I/O
+            throw new IllegalStateException(e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * Ricostruisce un cursore dal testo prodotto da {@link #codifica()}.
+     *
+     * @param testo Cursore codificato
+     * @return Cursore ricostruito
+     * @throws IllegalArgumentException se il testo non è un cursore valido
+     */
+    static CursoreRicerca decodifica(String testo) {
+        if (testo == null || testo.isBlank()) {
+            throw new IllegalArgumentException("Il cursore non può essere vuoto");
+        }
+        try (var in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(testo)))) {
+            if (in.readByte() != VERSIONE) {
+                throw new IllegalArgumentException("Versione del cursore non supportata");
+            }
+            var localita = new Localita(leggiTesto(in), leggiTesto(in), leggiTesto(in), in.readDouble(), in.readDouble());
+            Double raggioKm = in.readBoolean() ? in.readDouble() : null;
+            byte cucina = in.readByte();
+            TipoCucina tipoCucina = cucina >= 0 ? TipoCucina.values()[cucina] : null;
+            var filtri = new FiltriRicerca(tipoCucina, leggiDecimale(in), leggiDecimale(in),
+                    leggiBooleano(in), leggiBooleano(in), leggiDecimale(in), leggiParole(in));
+            OrdinamentoRistoranti ordinamento = OrdinamentoRistoranti.values()[in.readByte()];
+            int dimensione = in.readInt();
+            double ultimaChiave = in.readDouble();
+            int ultimoId = in.readInt();
+            if (in.available() > 0 || dimensione <= 0) {
+                throw new IllegalArgumentException("Cursore non valido");
+            }
+            return new CursoreRicerca(localita, raggioKm, filtri, ordinamento, dimensione, ultimaChiave, ultimoId);
+        } catch (IOException | IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Cursore non valido", e);
+        }
+    }
+
+    /**
+     * Scrive un testo che può essere {@code null}.
+     */
+    private static void scriviTesto(DataOutputStream out, String testo) throws IOException {
+        out.writeBoolean(testo != null);
+        if (testo != null) {
+            out.writeUTF(testo);
+        }
+    }
+
+    /**
+     * Legge un testo scritto da {@link #scriviTesto}.
+     */
+    private static String leggiTesto(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Legge le parole della ricerca, scritte come numero di parole (-1 se assenti) seguito dalle parole.
+     */
+    private static List<String> leggiParole(DataInputStream in) throws IOException {
+        int numero = in.readInt();
+        if (numero < 0) {
+            return null;
+        }
+        var parole = new ArrayList<String>(Math.min(numero, 16));
+        for (int i = 0; i < numero; i++) {
+            parole.add(in.readUTF());
+        }
+        return List.copyOf(parole);
+    }
+
+    /**
+     * Scrive un decimale che può essere {@code null}.
+     */
+    private static void scriviDecimale(DataOutputStream out, Float valore) throws IOException {
+        out.writeBoolean(valore != null);
+        if (valore != null) {
+            out.writeFloat(valore);
+        }
+    }
+
+    /**
+     * Legge un decimale scritto da {@link #scriviDecimale}.
+     */
+    private static Float leggiDecimale(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readFloat() : null;
+    }
+
+    /**
+     * Scrive un valore booleano che può essere {@code null}.
+     */
+    private static void scriviBooleano(DataOutputStream out, Boolean valore) throws IOException {
+        out.writeByte(valore == null ? -1 : valore ? 1 : 0);
+    }
+
+    /**
+     * Legge un valore booleano scritto da {@link #scriviBooleano}.
+     */
+    private static Boolean leggiBooleano(DataInputStream in) throws IOException {
+        byte valore = in.readByte();
+        return valore < 0 ? null : valore == 1;
+    }
+}
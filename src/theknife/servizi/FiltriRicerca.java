@@ -0,0 +1,65 @@
+package theknife.servizi;
+
+import theknife.entita.TipoCucina;
+
+import java.util.List;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Filtri di una ricerca di ristoranti che non dipendono dalla località.
+ * <p>
+ * Ogni filtro è opzionale: un valore {@code null} indica che il filtro non va applicato.
+ * Il catalogo usa questi valori per restringere i candidati tramite i suoi indici,
+ * prima di verificare i singoli ristoranti.
+ *
+ * @param tipoCucina    Tipo di cucina richiesto
+ * @param prezzoMinimo  Prezzo medio minimo in euro
+ * @param prezzoMassimo Prezzo medio massimo in euro
+ * @param delivery      Disponibilità richiesta del servizio delivery
+ * @param prenotazione  Disponibilità richiesta della prenotazione online
+ * @param mediaStelle   Media minima delle stelle
+ * @param parole        Parole da cercare nel nome o nella descrizione, già normalizzate da
+ *                      {@link IndiceTesto#parole(String)}: il ristorante deve contenerle tutte
+ * @author Marco Zaro
+ */
+record FiltriRicerca(TipoCucina tipoCucina, Float prezzoMinimo, Float prezzoMassimo,
+                     Boolean delivery, Boolean prenotazione, Float mediaStelle, List<String> parole) {
+
+    /**
+     * Crea i filtri di una ricerca senza parole.
+     *
+     * @param tipoCucina    Tipo di cucina richiesto
+     * @param prezzoMinimo  Prezzo medio minimo in euro
+     * @param prezzoMassimo Prezzo medio massimo in euro
+     * @param delivery      Disponibilità richiesta del servizio delivery
+     * @param prenotazione  Disponibilità richiesta della prenotazione online
+     * @param mediaStelle   Media minima delle stelle
+     */
+    FiltriRicerca(TipoCucina tipoCucina, Float prezzoMinimo, Float prezzoMassimo,
+                  Boolean delivery, Boolean prenotazione, Float mediaStelle) {
+        this(tipoCucina, prezzoMinimo, prezzoMassimo, delivery, prenotazione, mediaStelle, null);
+    }
+
+    /**
+     * Restituisce gli stessi filtri senza la fascia di prezzo.
+     *
+     * @return Filtri senza prezzo minimo e massimo
+     */
+    FiltriRicerca senzaPrezzo() {
+        return new FiltriRicerca(tipoCucina, null, null, delivery, prenotazione, mediaStelle, parole);
+    }
+
+    /**
+     * Restituisce gli stessi filtri senza la media minima delle stelle, cioè solo quelli che
+     * non dipendono dalle recensioni.
+     *
+     * @return Filtri senza media delle stelle
+     */
+    FiltriRicerca senzaStelle() {
+        return new FiltriRicerca(tipoCucina, prezzoMinimo, prezzoMassimo, delivery, prenotazione, null, parole);
+    }
+}
@@ -0,0 +1,165 @@
+package theknife.servizi;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Filtro di una ricerca valutato sulle {@link ColonneRistoranti} del catalogo (coordinate, prezzo medio,
+ * tipo di cucina, città e nazione) invece che sui singoli oggetti {@link theknife.entita.Ristorante}.
+ * <p>
+ * Il filtro ha due forme equivalenti: {@link #ammette} valuta un solo ristorante, mentre
+ * {@link #seleziona} elabora le colonne a blocchi di 64 ristoranti e produce una maschera di bit,
+ * con un ciclo senza salti condizionali dipendenti dai dati e senza chiamate virtuali.
+ * Delivery e prenotazione non fanno parte del filtro: sono già bitmap, da intersecare con la maschera.
+ * <p>
+ * Il filtro è conservativo: scarta solo ristoranti che sicuramente non soddisfano la ricerca,
+ * mentre quelli ammessi vanno verificati con il filtro completo (ad esempio per la distanza esatta
+ * vicino al bordo del raggio, o per la media delle stelle).
+ *
+ * @author Marco Zaro
+ */
+final class FiltroColonne {
+
+    /**
+     * Colonne su cui si valuta il filtro.
+     */
+    private final ColonneRistoranti colonne;
+
+    /**
+     * Cerchio della ricerca per raggio, o {@code null} se la ricerca non ha raggio.
+     */
+    private final CerchioRicerca cerchio;
+
+    /**
+     * Codice della città richiesta, o {@link ColonneRistoranti#NESSUN_CODICE} se la zona non è filtrata.
+     */
+    private final int codiceCitta;
+
+    /**
+     * Codice della nazione richiesta, significativo solo se la zona è filtrata.
+     */
+    private final int codiceNazione;
+
+    /**
+     * Ordinale del tipo di cucina richiesto, o {@link ColonneRistoranti#NESSUN_CODICE} se non richiesto.
+     */
+    private final byte cucina;
+
+    /**
+     * Prezzo medio minimo, o meno infinito se non richiesto.
+     */
+    private final float prezzoMinimo;
+
+    /**
+     * Prezzo medio massimo, o più infinito se non richiesto.
+     */
+    private final float prezzoMassimo;
+
+    /**
+     * Crea il filtro di una ricerca.
+     *
+     * @param colonne       Colonne del catalogo
+     * @param cerchio       Cerchio della ricerca per raggio, o {@code null}
+     * @param codiceCitta   Codice della città richiesta, o {@link ColonneRistoranti#NESSUN_CODICE} per non filtrare la zona
+     * @param codiceNazione Codice della nazione richiesta
+     * @param filtri        Filtri della ricerca, di cui si usano il tipo di cucina e la fascia di prezzo
+     */
+    FiltroColonne(ColonneRistoranti colonne, CerchioRicerca cerchio, int codiceCitta, int codiceNazione,
+                  FiltriRicerca filtri) {
+        this.colonne = colonne;
+        this.cerchio = cerchio;
+        this.codiceCitta = codiceCitta;
+        this.codiceNazione = codiceNazione;
+        this.cucina = (byte) (filtri.tipoCucina() != null ? filtri.tipoCucina().ordinal() : ColonneRistoranti.NESSUN_CODICE);
+        this.prezzoMinimo = filtri.prezzoMinimo() != null ? filtri.prezzoMinimo() : Float.NEGATIVE_INFINITY;
+        this.prezzoMassimo = filtri.prezzoMassimo() != null ? filtri.prezzoMassimo() : Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Indica se il filtro può scartare qualche ristorante, cioè se la ricerca ha un raggio, una zona,
+     * un tipo di cucina o una fascia di prezzo.
+     *
+     * @return {@code true} se il filtro non ammette tutti i ristoranti
+     */
+    boolean restrittivo() {
+        return cerchio != null || codiceCitta != ColonneRistoranti.NESSUN_CODICE
+                || cucina != ColonneRistoranti.NESSUN_CODICE
+                || prezzoMinimo != Float.NEGATIVE_INFINITY || prezzoMassimo != Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Valuta il filtro su un solo ristorante.
+     *
+     * @param id Identificativo del ristorante
+     * @return {@code false} solo se il ristorante sicuramente non soddisfa la ricerca
+     */
+    boolean ammette(int id) {
+        return ammette(id, colonne.latitudini(), colonne.longitudini(), colonne.prezzi(),
+                colonne.cucine(), colonne.citta(), colonne.nazioni());
+    }
+
+    /**
+     * Valuta il filtro sui primi ristoranti delle colonne, a blocchi di 64, azzerando nella maschera
+     * i bit dei ristoranti scartati. I blocchi con la parola già a zero non vengono elaborati.
+     *
+     * @param maschera Maschera da restringere, un bit per identificativo come in {@link java.util.BitSet#toLongArray()}
+     */
+    void seleziona(long[] maschera) {
+        seleziona(maschera, 0, maschera.length);
+    }
+
+    /**
+     * Valuta il filtro sui ristoranti di un intervallo di parole della maschera, come {@link #seleziona(long[])}.
+     * Intervalli disgiunti possono essere elaborati da thread diversi.
+     *
+     * @param maschera    Maschera da restringere
+     * @param primaParola Prima parola della maschera da elaborare
+     * @param fineParole  Parola successiva all'ultima da elaborare
+     */
+    void seleziona(long[] maschera, int primaParola, int fineParole) {
+        // Le colonne vengono lette una volta sola, così che nel ciclo restino in variabili locali
+        double[] latitudini = colonne.latitudini();
+        double[] longitudini = colonne.longitudini();
+        float[] prezzi = colonne.prezzi();
+        byte[] cucine = colonne.cucine();
+        int[] citta = colonne.citta();
+        int[] nazioni = colonne.nazioni();
+        int numero = colonne.numero();
+
+        int parole = Math.min(fineParole, (numero + 63) >>> 6);
+        for (int parola = primaParola; parola < parole; parola++) {
+            if (maschera[parola] == 0) {
+                continue;
+            }
+            int inizio = parola << 6;
+            int fine = Math.min(inizio + 64, numero);
+            long bit = 0;
+            for (int id = inizio; id < fine; id++) {
+                long ammesso = ammette(id, latitudini, longitudini, prezzi, cucine, citta, nazioni) ? 1L : 0L;
+                bit |= ammesso << (id - inizio);
+            }
+            maschera[parola] &= bit;
+        }
+    }
+
+    /**
+     * Valuta il filtro su un ristorante leggendo le colonne indicate. Le condizioni sui criteri assenti
+     * dipendono solo dal filtro, per cui il compilatore JIT le risolve fuori dal ciclo che la chiama.
+     */
+    private boolean ammette(int id, double[] latitudini, double[] longitudini, float[] prezzi,
+                            byte[] cucine, int[] citta, int[] nazioni) {
+        boolean ammesso = prezzi[id] >= prezzoMinimo & prezzi[id] <= prezzoMassimo;
+        if (cucina != ColonneRistoranti.NESSUN_CODICE) {
+            ammesso &= cucine[id] == cucina;
+        }
+        if (codiceCitta != ColonneRistoranti.NESSUN_CODICE) {
+            ammesso &= citta[id] == codiceCitta & nazioni[id] == codiceNazione;
+        }
+        if (cerchio != null) {
+            ammesso &= cerchio.puoContenere(latitudini[id], longitudini[id]);
+        }
+        return ammesso;
+    }
+}
@@ -0,0 +1,186 @@
+package theknife.servizi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Indice spaziale a griglia uniforme sulle coordinate dei ristoranti.
+ * <p>
+ * La superficie terrestre è suddivisa in celle di {@link #DIMENSIONE_CELLA_GRADI} gradi di latitudine
+ * e longitudine; ogni cella contiene gli identificativi dei ristoranti che vi ricadono. Una ricerca
+ * per raggio visita solo le celle che intersecano il rettangolo che racchiude il cerchio, per cui il
+ * numero di candidati dipende dalla densità dei ristoranti nella zona e non dal totale del catalogo.
+ * <p>
+ * I candidati restituiti sono un sovrainsieme dei ristoranti nel raggio: la distanza esatta va
+ * verificata dal chiamante. La classe non è thread-safe.
+ *
+ * @author Marco Zaro
+ */
+final class IndiceGriglia {
+
+    /**
+     * Lato di una cella in gradi, circa 11 km in latitudine.
+     */
+    private static final double DIMENSIONE_CELLA_GRADI = 0.1;
+
+    /**
+     * Numero di colonne della griglia, sull'intero giro di longitudine.
+     */
+    private static final int COLONNE = (int) Math.ceil(360 / DIMENSIONE_CELLA_GRADI);
+
+    /**
+     * Raggio medio della Terra in chilometri, lo stesso usato da {@link theknife.entita.Localita}.
+     */
+    private static final double RAGGIO_TERRA_KM = 6371.0;
+
+    /**
+     * Celle non vuote, indicizzate per riga e colonna.
+     */
+    private final Map<Long, Cella> celle = new HashMap<>();
+
+    /**
+     * Identificativi dei ristoranti di una cella.
+     */
+    private static final class Cella {
+
+        /**
+         * Identificativi, validi fino a {@link #numero}.
+         */
+        private int[] id = new int[4];
+
+        /**
+         * Numero di identificativi presenti.
+         */
+        private int numero;
+
+        private void aggiungi(int nuovo) {
+            if (numero == id.length) {
+                id = Arrays.copyOf(id, numero * 2);
+            }
+            id[numero++] = nuovo;
+        }
+    }
+
+    /**
+     * Aggiunge un ristorante all'indice.
+     *
+     * @param id          Identificativo del ristorante
+     * @param latitudine  Latitudine del ristorante in gradi
+     * @param longitudine Longitudine del ristorante in gradi
+     */
+    void aggiungi(int id, double latitudine, double longitudine) {
+        celle.computeIfAbsent(chiave(riga(latitudine), colonna(longitudine)), c -> new Cella()).aggiungi(id);
+    }
+
+    /**
+     * Restituisce i ristoranti delle celle che intersecano il cerchio indicato.
+     *
+     * @param latitudine  Latitudine del centro in gradi
+     * @param longitudine Longitudine del centro in gradi
+     * @param raggioKm    Raggio in chilometri
+     * @return Identificativi dei candidati, in ordine crescente
+     */
+    int[] candidati(double latitudine, double longitudine, double raggioKm) {
+        List<Cella> vicine = celleVicine(latitudine, longitudine, raggioKm);
+        int trovati = 0;
+        for (Cella cella : vicine) {
+            trovati += cella.numero;
+        }
+
+        int[] candidati = new int[trovati];
+        int posizione = 0;
+        for (Cella cella : vicine) {
+            System.arraycopy(cella.id, 0, candidati, posizione, cella.numero);
+            posizione += cella.numero;
+        }
+
+        // Le celle non seguono l'ordine del file: i candidati vengono riordinati per identificativo
+        Arrays.sort(candidati);
+        return candidati;
+    }
+
+    /**
+     * Conta i ristoranti che {@link #candidati(double, double, double)} restituirebbe,
+     * senza copiarli: serve a stimare il costo di una ricerca.
+     *
+     * @param latitudine  Latitudine del centro in gradi
+     * @param longitudine Longitudine del centro in gradi
+     * @param raggioKm    Raggio in chilometri
+     * @return Numero di candidati
+     */
+    int stima(double latitudine, double longitudine, double raggioKm) {
+        int trovati = 0;
+        for (Cella cella : celleVicine(latitudine, longitudine, raggioKm)) {
+            trovati += cella.numero;
+        }
+        return trovati;
+    }
+
+    /**
+     * Restituisce le celle non vuote che intersecano il rettangolo che racchiude il cerchio indicato.
+     */
+    private List<Cella> celleVicine(double latitudine, double longitudine, double raggioKm) {
+        // Rettangolo che racchiude il cerchio sulla sfera
+        double raggioAngolare = raggioKm / RAGGIO_TERRA_KM;
+        double deltaLatitudine = Math.toDegrees(raggioAngolare);
+        double latitudineMinima = latitudine - deltaLatitudine;
+        double latitudineMassima = latitudine + deltaLatitudine;
+
+        int primaColonna;
+        int numeroColonne;
+        double seno = Math.sin(raggioAngolare);
+        double coseno = Math.cos(Math.toRadians(latitudine));
+        if (latitudineMinima <= -90 || latitudineMassima >= 90 || seno >= coseno) {
+            // Il cerchio include un polo: servono tutte le longitudini
+            primaColonna = 0;
+            numeroColonne = COLONNE;
+        } else {
+            double deltaLongitudine = Math.toDegrees(Math.asin(seno / coseno));
+            int inizio = (int) Math.floor((longitudine - deltaLongitudine + 180) / DIMENSIONE_CELLA_GRADI);
+            int fine = (int) Math.floor((longitudine + deltaLongitudine + 180) / DIMENSIONE_CELLA_GRADI);
+            primaColonna = inizio;
+            numeroColonne = Math.min(fine - inizio + 1, COLONNE);
+        }
+
+        List<Cella> vicine = new ArrayList<>();
+        int rigaMassima = riga(Math.min(latitudineMassima, 90));
+        for (int r = riga(Math.max(latitudineMinima, -90)); r <= rigaMassima; r++) {
+            for (int i = 0; i < numeroColonne; i++) {
+                Cella cella = celle.get(chiave(r, Math.floorMod(primaColonna + i, COLONNE)));
+                if (cella != null) {
+                    vicine.add(cella);
+                }
+            }
+        }
+        return vicine;
+    }
+
+    /**
+     * Calcola la riga della cella che contiene una latitudine.
+     */
+    private static int riga(double latitudine) {
+        return (int) Math.floor((latitudine + 90) / DIMENSIONE_CELLA_GRADI);
+    }
+
+    /**
+     * Calcola la colonna della cella che contiene una longitudine.
+     */
+    private static int colonna(double longitudine) {
+        return Math.floorMod((int) Math.floor((longitudine + 180) / DIMENSIONE_CELLA_GRADI), COLONNE);
+    }
+
+    /**
+     * Combina riga e colonna nella chiave di una cella.
+     */
+    private static long chiave(int riga, int colonna) {
+        return (long) riga * COLONNE + colonna;
+    }
+}
@@ -0,0 +1,119 @@
+package theknife.servizi;
+
+import java.util.Arrays;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Indice ordinato sul prezzo medio dei ristoranti.
+ * <p>
+ * I prezzi sono conservati in un array di {@code float} ordinato, affiancato dagli identificativi
+ * dei ristoranti nello stesso ordine: una fascia di prezzo corrisponde a un intervallo contiguo
+ * dell'array, individuato con due ricerche binarie. La classe è immutabile dopo la costruzione.
+ *
+ * @author Marco Zaro
+ */
+final class IndicePrezzi {
+
+    /**
+     * Prezzi medi in ordine crescente.
+     */
+    private final float[] prezzi;
+
+    /**
+     * Identificativi dei ristoranti, nello stesso ordine dei prezzi.
+     */
+    private final int[] id;
+
+    /**
+     * Costruisce l'indice sui ristoranti di un intervallo di identificativi.
+     *
+     * @param prezziPerId Prezzi medi indicizzati per identificativo del ristorante
+     * @param da          Primo identificativo da indicizzare
+     * @param a           Identificativo successivo all'ultimo da indicizzare
+     */
+    IndicePrezzi(float[] prezziPerId, int da, int a) {
+        int numero = a - da;
+        // Prezzo e identificativo in un unico long: l'ordinamento primitivo evita il boxing
+        long[] chiavi = new long[numero];
+        for (int i = 0; i < numero; i++) {
+            chiavi[i] = ((long) ordinabile(prezziPerId[da + i]) << 32) | (da + i);
+        }
+        Arrays.sort(chiavi);
+
+        prezzi = new float[numero];
+        id = new int[numero];
+        for (int i = 0; i < numero; i++) {
+            id[i] = (int) chiavi[i];
+            prezzi[i] = prezziPerId[id[i]];
+        }
+    }
+
+    /**
+     * Restituisce il numero di ristoranti indicizzati.
+     *
+     * @return Numero di ristoranti
+     */
+    int numero() {
+        return id.length;
+    }
+
+    /**
+     * Restituisce la prima posizione con prezzo maggiore o uguale al minimo.
+     *
+     * @param minimo Prezzo minimo, o {@code null} per partire dall'inizio
+     * @return Posizione iniziale della fascia di prezzo
+     */
+    int inizio(Float minimo) {
+        return minimo == null ? 0 : primaPosizione(minimo, false);
+    }
+
+    /**
+     * Restituisce la posizione successiva all'ultima con prezzo minore o uguale al massimo.
+     *
+     * @param massimo Prezzo massimo, o {@code null} per arrivare alla fine
+     * @return Posizione finale (esclusa) della fascia di prezzo
+     */
+    int fine(Float massimo) {
+        return massimo == null ? id.length : primaPosizione(massimo, true);
+    }
+
+    /**
+     * Restituisce l'identificativo del ristorante in una posizione dell'indice.
+     *
+     * @param posizione Posizione nell'indice
+     * @return Identificativo del ristorante
+     */
+    int id(int posizione) {
+        return id[posizione];
+    }
+
+    /**
+     * Ricerca binaria della prima posizione con prezzo maggiore (o maggiore o uguale) del valore.
+     */
+    private int primaPosizione(float valore, boolean strettamenteMaggiore) {
+        int basso = 0;
+        int alto = prezzi.length;
+        while (basso < alto) {
+            int medio = (basso + alto) >>> 1;
+            boolean prima = strettamenteMaggiore ? prezzi[medio] <= valore : prezzi[medio] < valore;
+            if (prima) {
+                basso = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return basso;
+    }
+
+    /**
+     * Converte un {@code float} in un intero con lo stesso ordinamento.
+     */
+    private static int ordinabile(float valore) {
+        int bit = Float.floatToIntBits(valore);
+        return bit ^ ((bit >> 31) & 0x7fffffff);
+    }
+}
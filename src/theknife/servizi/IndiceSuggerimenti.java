@@ -0,0 +1,196 @@
+package theknife.servizi;
+
+import theknife.entita.Localita;
+import theknife.entita.Ristorante;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Indice per il completamento dei nomi dei ristoranti e dei luoghi (città e nazioni distinte),
+ * ordinati per numero di recensioni.
+ * <p>
+ * I nomi dei ristoranti e quelli dei luoghi sono in due {@link AlberoPrefissi}, con chiavi in minuscolo
+ * e senza accenti. Il peso di un ristorante è il suo numero di recensioni; quello di una città o di una
+ * nazione è la somma delle recensioni dei suoi ristoranti. Una città è identificata dal nome e dalla
+ * nazione, a meno di maiuscole e minuscole, come in {@link Localita#stessaZonaGeografica}, e viene
+ * mostrata come è scritta nel primo ristorante in cui compare.
+ * <p>
+ * I ristoranti vengono aggiunti uno alla volta con identificativi crescenti; quando cambiano le
+ * recensioni di un ristorante, {@link #recensioniModificate} aggiorna il suo peso e quello del suo luogo.
+ * <p>
+ * La classe non è sincronizzata: il catalogo la modifica e la legge con il proprio blocco.
+ *
+ * @author Marco Zaro
+ */
+final class IndiceSuggerimenti {
+
+    /**
+     * Nomi dei ristoranti.
+     */
+    private final AlberoPrefissi nomi = new AlberoPrefissi();
+
+    /**
+     * Nomi delle città e delle nazioni.
+     */
+    private final AlberoPrefissi luoghi = new AlberoPrefissi();
+
+    /**
+     * Voce del nome di ogni ristorante, per identificativo.
+     */
+    private AlberoPrefissi.Voce[] ristoranti = new AlberoPrefissi.Voce[0];
+
+    /**
+     * Voce della città di ogni ristorante, per identificativo, o {@code null}.
+     */
+    private AlberoPrefissi.Voce[] cittaRistoranti = new AlberoPrefissi.Voce[0];
+
+    /**
+     * Voce della nazione di ogni ristorante, per identificativo, o {@code null}.
+     */
+    private AlberoPrefissi.Voce[] nazioniRistoranti = new AlberoPrefissi.Voce[0];
+
+    /**
+     * Voci delle città per nome e nazione normalizzati.
+     */
+    private final HashMap<String, AlberoPrefissi.Voce> citta = new HashMap<>();
+
+    /**
+     * Voci delle nazioni per nome normalizzato.
+     */
+    private final HashMap<String, AlberoPrefissi.Voce> nazioni = new HashMap<>();
+
+    /**
+     * Numero di luoghi distinti inseriti, usato come ordine di inserimento.
+     */
+    private int numeroLuoghi;
+
+    /**
+     * Aggiunge il nome e il luogo di un ristorante.
+     *
+     * @param id         Identificativo del ristorante, successivo a quelli già aggiunti
+     * @param ristorante Ristorante da aggiungere
+     */
+    void aggiungi(int id, Ristorante ristorante) {
+        if (id >= ristoranti.length) {
+            int capacita = Math.max(16, id * 2);
+            ristoranti = Arrays.copyOf(ristoranti, capacita);
+            cittaRistoranti = Arrays.copyOf(cittaRistoranti, capacita);
+            nazioniRistoranti = Arrays.copyOf(nazioniRistoranti, capacita);
+        }
+        int recensioni = ristorante.getNumeroRecensioni();
+        Localita localita = ristorante.getLocalita();
+        String nomeCitta = localita != null ? localita.getCitta() : null;
+        String nomeNazione = localita != null ? localita.getNazione() : null;
+
+        if (ristorante.getNome() != null) {
+            ristoranti[id] = new AlberoPrefissi.Voce(chiave(ristorante.getNome()), Suggerimento.Tipo.RISTORANTE,
+                    ristorante.getNome(), nomeCitta, id, recensioni);
+            nomi.aggiungi(ristoranti[id]);
+        }
+        if (nomeNazione != null) {
+            nazioniRistoranti[id] = luogo(nazioni, ColonneRistoranti.normalizza(nomeNazione),
+                    Suggerimento.Tipo.NAZIONE, nomeNazione, null, recensioni);
+        }
+        if (nomeCitta != null) {
+            String identita = ColonneRistoranti.normalizza(nomeCitta) + '\n'
+                    + (nomeNazione != null ? ColonneRistoranti.normalizza(nomeNazione) : "");
+            cittaRistoranti[id] = luogo(citta, identita, Suggerimento.Tipo.CITTA, nomeCitta, nomeNazione, recensioni);
+        }
+    }
+
+    /**
+     * Aggiorna il peso di un ristorante, e del suo luogo, al numero attuale delle sue recensioni.
+     *
+     * @param id         Identificativo del ristorante
+     * @param ristorante Ristorante di cui sono cambiate le recensioni
+     */
+    void recensioniModificate(int id, Ristorante ristorante) {
+        if (id < 0 || id >= ristoranti.length || ristoranti[id] == null) {
+            return;
+        }
+        int variazione = ristorante.getNumeroRecensioni() - ristoranti[id].peso;
+        if (variazione == 0) {
+            return;
+        }
+        cambiaPeso(nomi, ristoranti[id], variazione);
+        if (cittaRistoranti[id] != null) {
+            cambiaPeso(luoghi, cittaRistoranti[id], variazione);
+        }
+        if (nazioniRistoranti[id] != null) {
+            cambiaPeso(luoghi, nazioniRistoranti[id], variazione);
+        }
+    }
+
+    /**
+     * Suggerisce i nomi dei ristoranti che iniziano con un prefisso.
+     *
+     * @param prefisso Prefisso digitato, senza distinzione di maiuscole e accenti
+     * @param numero   Numero massimo di suggerimenti, al più {@link AlberoPrefissi#MIGLIORI}
+     * @return Suggerimenti dal ristorante con più recensioni
+     */
+    List<Suggerimento> suggerisciRistoranti(String prefisso, int numero) {
+        return suggerimenti(nomi, prefisso, numero);
+    }
+
+    /**
+     * Suggerisce i nomi delle città e delle nazioni che iniziano con un prefisso.
+     *
+     * @param prefisso Prefisso digitato, senza distinzione di maiuscole e accenti
+     * @param numero   Numero massimo di suggerimenti, al più {@link AlberoPrefissi#MIGLIORI}
+     * @return Suggerimenti dal luogo con più recensioni
+     */
+    List<Suggerimento> suggerisciLuoghi(String prefisso, int numero) {
+        return suggerimenti(luoghi, prefisso, numero);
+    }
+
+    /**
+     * Restituisce la voce di un luogo, creandola se è nuovo, e vi aggiunge le recensioni di un ristorante.
+     */
+    private AlberoPrefissi.Voce luogo(HashMap<String, AlberoPrefissi.Voce> voci, String identita,
+                                      Suggerimento.Tipo tipo, String testo, String dettaglio, int recensioni) {
+        AlberoPrefissi.Voce voce = voci.get(identita);
+        if (voce == null) {
+            voce = new AlberoPrefissi.Voce(chiave(testo), tipo, testo, dettaglio, numeroLuoghi++, recensioni);
+            voci.put(identita, voce);
+            luoghi.aggiungi(voce);
+        } else if (recensioni != 0) {
+            cambiaPeso(luoghi, voce, recensioni);
+        }
+        return voce;
+    }
+
+    /**
+     * Cambia il peso di una voce e aggiorna l'albero che la contiene.
+     */
+    private static void cambiaPeso(AlberoPrefissi albero, AlberoPrefissi.Voce voce, int variazione) {
+        voce.peso += variazione;
+        albero.pesoModificato(voce);
+    }
+
+    /**
+     * Converte in suggerimenti i completamenti di un prefisso.
+     */
+    private static List<Suggerimento> suggerimenti(AlberoPrefissi albero, String prefisso, int numero) {
+        List<AlberoPrefissi.Voce> voci = albero.completa(chiave(prefisso), numero);
+        var suggerimenti = new ArrayList<Suggerimento>(voci.size());
+        for (AlberoPrefissi.Voce voce : voci) {
+            suggerimenti.add(voce.suggerimento());
+        }
+        return suggerimenti;
+    }
+
+    /**
+     * Restituisce la chiave di un nome: senza spazi iniziali e finali, in minuscolo e senza accenti.
+     */
+    private static String chiave(String nome) {
+        return IndiceTesto.piega(nome.strip());
+    }
+}
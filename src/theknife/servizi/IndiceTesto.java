@@ -0,0 +1,196 @@
+package theknife.servizi;
+
+import theknife.entita.Ristorante;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Indice invertito sulle parole del nome e della descrizione dei ristoranti.
+ * <p>
+ * Per ogni parola l'indice conserva la lista degli identificativi dei ristoranti che la contengono,
+ * in ordine crescente. Poiché i ristoranti vengono aggiunti con identificativi crescenti, un nuovo
+ * ristorante viene accodato alle liste delle sue parole senza riordinare nulla. Ogni lista è compressa
+ * ({@link ListaIdentificativi}), per cui le parole frequenti occupano circa un byte per ristorante.
+ * <p>
+ * Il testo viene diviso in parole con {@link #parole(String)}: lettere e cifre consecutive, in minuscolo
+ * e senza accenti, così che "caffè" e "Caffe" coincidano. L'apostrofo separa le parole, per cui
+ * "dell'osteria" produce "dell" e "osteria"; gli articoli, le preposizioni e le congiunzioni più comuni
+ * dell'italiano vengono ignorati.
+ * <p>
+ * La classe non è sincronizzata: il catalogo la modifica e la legge con il proprio blocco.
+ *
+ * @author Marco Zaro
+ */
+final class IndiceTesto {
+
+    /**
+     * Parole italiane troppo comuni per essere indicizzate, già senza accenti.
+     */
+    private static final Set<String> PAROLE_VUOTE = Set.of(
+            "a", "ad", "ai", "al", "all", "alla", "alle", "allo", "agli", "anche", "c", "che", "ci", "col",
+            "con", "d", "da", "dai", "dal", "dall", "dalla", "dalle", "dallo", "dagli", "de", "dei", "del",
+            "dell", "della", "delle", "dello", "degli", "di", "e", "ed", "fra", "gli", "i", "il", "in", "l",
+            "la", "le", "lo", "ma", "ne", "nei", "nel", "nell", "nella", "nelle", "nello", "negli", "non",
+            "o", "od", "per", "piu", "se", "si", "su", "sui", "sul", "sull", "sulla", "sulle", "sullo",
+            "sugli", "tra", "un", "una", "uno");
+
+    /**
+     * Primo carattere della tabella di {@link #PIEGATURE}.
+     */
+    private static final char PRIMO_ACCENTATO = 'À';
+
+    /**
+     * Lettera base, in minuscolo, dei caratteri latini da {@link #PRIMO_ACCENTATO} a U+017F:
+     * per esempio 'a' per 'à' e 'À'.
+     */
+    private static final char[] PIEGATURE = new char[0x0180 - PRIMO_ACCENTATO];
+
+    static {
+        for (int i = 0; i < PIEGATURE.length; i++) {
+            String scomposto = Normalizer.normalize(String.valueOf((char) (PRIMO_ACCENTATO + i)), Normalizer.Form.NFD);
+            PIEGATURE[i] = Character.toLowerCase(scomposto.charAt(0));
+        }
+    }
+
+    /**
+     * Liste degli identificativi per parola.
+     */
+    private final HashMap<String, ListaIdentificativi> liste = new HashMap<>();
+
+    /**
+     * Indicizza le parole del nome e della descrizione di un ristorante.
+     *
+     * @param id         Identificativo del ristorante, maggiore di quelli già indicizzati
+     * @param ristorante Ristorante da indicizzare
+     */
+    void aggiungi(int id, Ristorante ristorante) {
+        for (String parola : paroleRistorante(ristorante)) {
+            liste.computeIfAbsent(parola, _ -> new ListaIdentificativi()).aggiungi(id);
+        }
+    }
+
+    /**
+     * Restituisce il numero di ristoranti che contengono una parola.
+     *
+     * @param parola Parola già normalizzata da {@link #parole(String)}
+     * @return Numero di ristoranti, 0 se la parola non è indicizzata
+     */
+    int frequenza(String parola) {
+        ListaIdentificativi lista = liste.get(parola);
+        return lista != null ? lista.numero() : 0;
+    }
+
+    /**
+     * Restituisce i ristoranti che contengono tutte le parole indicate.
+     * <p>
+     * Si parte dalla lista più corta e la si interseca con le altre in ordine di lunghezza,
+     * scorrendo ciascuna una sola volta insieme ai candidati rimasti.
+     *
+     * @param parole Parole già normalizzate da {@link #parole(String)}, almeno una
+     * @return Identificativi dei ristoranti in ordine crescente
+     */
+    int[] cerca(List<String> parole) {
+        var selezionate = new ArrayList<ListaIdentificativi>(parole.size());
+        for (String parola : parole) {
+            ListaIdentificativi lista = liste.get(parola);
+            if (lista == null) {
+                return new int[0];
+            }
+            selezionate.add(lista);
+        }
+        selezionate.sort(Comparator.comparingInt(ListaIdentificativi::numero));
+
+        int[] candidati = selezionate.get(0).decodifica();
+        int numero = candidati.length;
+        for (int i = 1; i < selezionate.size() && numero > 0; i++) {
+            numero = selezionate.get(i).interseca(candidati, numero);
+        }
+        return Arrays.copyOf(candidati, numero);
+    }
+
+    /**
+     * Divide un testo nelle parole usate dall'indice, senza ripetizioni e nell'ordine del testo.
+     *
+     * @param testo Testo da dividere, anche {@code null}
+     * @return Parole normalizzate, vuota se il testo non contiene parole significative
+     */
+    static List<String> parole(String testo) {
+        var parole = new LinkedHashSet<String>();
+        aggiungiParole(testo, parole);
+        return List.copyOf(parole);
+    }
+
+    /**
+     * Restituisce le parole del nome e della descrizione di un ristorante.
+     *
+     * @param ristorante Ristorante
+     * @return Insieme delle parole normalizzate
+     */
+    static Set<String> paroleRistorante(Ristorante ristorante) {
+        var parole = new LinkedHashSet<String>();
+        aggiungiParole(ristorante.getNome(), parole);
+        aggiungiParole(ristorante.getDescrizione(), parole);
+        return parole;
+    }
+
+    /**
+     * Aggiunge all'insieme le parole significative di un testo.
+     */
+    private static void aggiungiParole(String testo, Set<String> parole) {
+        if (testo == null) {
+            return;
+        }
+        var parola = new StringBuilder();
+        for (int i = 0; i <= testo.length(); i++) {
+            char c = i < testo.length() ? testo.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                parola.append(piega(c));
+            } else if (!parola.isEmpty()) {
+                String normalizzata = parola.toString();
+                if (!PAROLE_VUOTE.contains(normalizzata)) {
+                    parole.add(normalizzata);
+                }
+                parola.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * Porta un testo in minuscolo e toglie gli accenti, carattere per carattere.
+     *
+     * @param testo Testo da piegare
+     * @return Testo della stessa lunghezza, in minuscolo e senza accenti
+     */
+    static String piega(String testo) {
+        char[] caratteri = testo.toCharArray();
+        for (int i = 0; i < caratteri.length; i++) {
+            caratteri[i] = piega(caratteri[i]);
+        }
+        return new String(caratteri);
+    }
+
+    /**
+     * Porta un carattere in minuscolo e toglie l'eventuale accento.
+     *
+     * @param c Carattere da piegare
+     * @return Carattere in minuscolo e senza accento
+     */
+    static char piega(char c) {
+        if (c >= PRIMO_ACCENTATO && c - PRIMO_ACCENTATO < PIEGATURE.length) {
+            return PIEGATURE[c - PRIMO_ACCENTATO];
+        }
+        return Character.toLowerCase(c);
+    }
+}
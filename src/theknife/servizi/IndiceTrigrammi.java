@@ -0,0 +1,237 @@
+package theknife.servizi;
+
+import theknife.entita.Ristorante;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.IntFunction;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Indice dei trigrammi dei nomi dei ristoranti, per trovare i nomi simili a quello cercato anche in
+ * presenza di errori di battitura.
+ * <p>
+ * Il nome, in minuscolo e senza accenti, viene preceduto e seguito da due caratteri di riempimento e
+ * diviso in tutte le sue sequenze di tre caratteri consecutivi; per ogni trigramma l'indice conserva
+ * la {@link ListaIdentificativi} dei ristoranti il cui nome lo contiene.
+ * <p>
+ * Ogni inserimento, cancellazione o sostituzione di un carattere altera al più tre trigrammi, per cui
+ * un nome a distanza di modifica (Levenshtein) al più {@code d} dal nome cercato contiene tutti i suoi
+ * trigrammi distinti tranne al più {@code 3d}. Basta quindi unire le liste dei {@code 3d + 1} trigrammi
+ * più rari del nome cercato per avere tutti i candidati: la distanza viene calcolata solo per loro,
+ * e con un limite, non per ogni nome del catalogo. Perché i trigrammi bastino, la distanza ammessa
+ * per i nomi cercati molto corti viene ridotta ({@link #distanzaAmmessa}).
+ * <p>
+ * La classe non è sincronizzata: il catalogo la modifica e la legge con il proprio blocco.
+ *
+ * @author Marco Zaro
+ */
+final class IndiceTrigrammi {
+
+    /**
+     * Carattere con cui il nome viene preceduto e seguito, che non compare nei nomi.
+     */
+    private static final char RIEMPIMENTO = '\0';
+
+    /**
+     * Lunghezza massima dei nomi cercati per cui è ammessa solo la corrispondenza esatta.
+     */
+    private static final int LUNGHEZZA_ESATTA = 2;
+
+    /**
+     * Lunghezza massima dei nomi cercati per cui è ammesso un solo errore.
+     */
+    private static final int LUNGHEZZA_UN_ERRORE = 5;
+
+    /**
+     * Nome trovato con la sua distanza di modifica dal nome cercato.
+     *
+     * @param id       Identificativo del ristorante
+     * @param distanza Distanza di modifica tra i nomi, in minuscolo e senza accenti
+     */
+    record Corrispondenza(int id, int distanza) {
+    }
+
+    /**
+     * Liste degli identificativi per trigramma.
+     */
+    private final HashMap<String, ListaIdentificativi> liste = new HashMap<>();
+
+    /**
+     * Indicizza i trigrammi del nome di un ristorante.
+     *
+     * @param id         Identificativo del ristorante, maggiore di quelli già indicizzati
+     * @param ristorante Ristorante da indicizzare
+     */
+    void aggiungi(int id, Ristorante ristorante) {
+        if (ristorante.getNome() == null) {
+            return;
+        }
+        String nome = riempi(normalizza(ristorante.getNome()));
+        for (int i = 0; i + 3 <= nome.length(); i++) {
+            ListaIdentificativi lista = liste.computeIfAbsent(nome.substring(i, i + 3), _ -> new ListaIdentificativi());
+            // Un trigramma ripetuto nello stesso nome compare una volta sola nella lista
+            if (lista.ultimo() != id) {
+                lista.aggiungi(id);
+            }
+        }
+    }
+
+    /**
+     * Restituisce la distanza di modifica effettivamente ammessa per un nome cercato: quella richiesta,
+     * ridotta per i nomi corti, per i quali due errori renderebbero simili troppi nomi (0 fino a
+     * {@link #LUNGHEZZA_ESATTA} caratteri, 1 fino a {@link #LUNGHEZZA_UN_ERRORE}), e comunque
+     * quanto basta perché un nome simile debba condividere almeno un trigramma con quello cercato.
+     *
+     * @param nome      Nome cercato
+     * @param richiesta Distanza massima richiesta
+     * @return Distanza ammessa, al più {@code richiesta}
+     */
+    static int distanzaAmmessa(String nome, int richiesta) {
+        String normalizzato = normalizza(nome);
+        int perLunghezza = normalizzato.length() <= LUNGHEZZA_ESATTA ? 0
+                : normalizzato.length() <= LUNGHEZZA_UN_ERRORE ? 1 : richiesta;
+        int perTrigrammi = (trigrammi(normalizzato).size() - 1) / 3;
+        return Math.max(0, Math.min(richiesta, Math.min(perLunghezza, perTrigrammi)));
+    }
+
+    /**
+     * Cerca i nomi a distanza di modifica limitata da un nome, senza distinguere maiuscole e accenti.
+     *
+     * @param nome     Nome cercato
+     * @param distanza Distanza massima, già ridotta con {@link #distanzaAmmessa}
+     * @param nomi     Nome del ristorante con un dato identificativo
+     * @return Corrispondenze in ordine di identificativo, in una lista modificabile
+     */
+    List<Corrispondenza> cerca(String nome, int distanza, IntFunction<String> nomi) {
+        String cercato = normalizza(nome);
+        var selezionate = new ArrayList<ListaIdentificativi>();
+        int assenti = 0;
+        for (String trigramma : trigrammi(cercato)) {
+            ListaIdentificativi lista = liste.get(trigramma);
+            if (lista != null) {
+                selezionate.add(lista);
+            } else {
+                assenti++;
+            }
+        }
+        // I trigrammi assenti da ogni nome sono i più rari: contano tra i 3d + 1 senza candidati
+        int daUnire = 3 * distanza + 1 - assenti;
+        var corrispondenze = new ArrayList<Corrispondenza>();
+        if (daUnire <= 0) {
+            return corrispondenze;
+        }
+        selezionate.sort(Comparator.comparingInt(ListaIdentificativi::numero));
+
+        int totale = 0;
+        int[][] decodificate = new int[Math.min(daUnire, selezionate.size())][];
+        for (int i = 0; i < decodificate.length; i++) {
+            decodificate[i] = selezionate.get(i).decodifica();
+            totale += decodificate[i].length;
+        }
+        int[] candidati = new int[totale];
+        int posizione = 0;
+        for (int[] lista : decodificate) {
+            System.arraycopy(lista, 0, candidati, posizione, lista.length);
+            posizione += lista.length;
+        }
+        Arrays.sort(candidati);
+
+        for (int i = 0; i < candidati.length; i++) {
+            if (i > 0 && candidati[i] == candidati[i - 1]) {
+                continue;
+            }
+            String candidato = nomi.apply(candidati[i]).strip();
+            if (Math.abs(candidato.length() - cercato.length()) > distanza) {
+                continue;
+            }
+            int trovata = distanzaModifica(cercato, candidato, distanza);
+            if (trovata <= distanza) {
+                corrispondenze.add(new Corrispondenza(candidati[i], trovata));
+            }
+        }
+        return corrispondenze;
+    }
+
+    /**
+     * Calcola la distanza di Levenshtein tra un nome cercato e il nome di un ristorante, fermandosi
+     * appena supera un limite. Vengono calcolate solo le celle entro {@code massima} dalla diagonale,
+     * le sole che possono restare entro il limite; il nome del ristorante viene portato in minuscolo e
+     * senza accenti carattere per carattere, senza copiarlo.
+     *
+     * @param a       Nome cercato, già normalizzato
+     * @param b       Nome del ristorante
+     * @param massima Limite della distanza
+     * @return Distanza tra i nomi, o {@code massima + 1} se la supera
+     */
+    static int distanzaModifica(String a, String b, int massima) {
+        if (Math.abs(a.length() - b.length()) > massima) {
+            return massima + 1;
+        }
+        int oltre = massima + 1;
+        int[] precedente = new int[b.length() + 1];
+        int[] corrente = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            precedente[j] = Math.min(j, oltre);
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            int inizio = Math.max(1, i - massima);
+            int fine = Math.min(b.length(), i + massima);
+            corrente[0] = Math.min(i, oltre);
+            if (inizio > 1) {
+                corrente[inizio - 1] = oltre;
+            }
+            int minimo = corrente[0];
+            for (int j = inizio; j <= fine; j++) {
+                int sostituzione = precedente[j - 1] + (a.charAt(i - 1) == IndiceTesto.piega(b.charAt(j - 1)) ? 0 : 1);
+                int valore = Math.min(sostituzione, Math.min(precedente[j], corrente[j - 1]) + 1);
+                corrente[j] = Math.min(valore, oltre);
+                minimo = Math.min(minimo, corrente[j]);
+            }
+            if (fine < b.length()) {
+                corrente[fine + 1] = oltre;
+            }
+            if (minimo > massima) {
+                return oltre;
+            }
+            int[] scambio = precedente;
+            precedente = corrente;
+            corrente = scambio;
+        }
+        return precedente[b.length()];
+    }
+
+    /**
+     * Restituisce i trigrammi distinti di un nome già normalizzato.
+     */
+    private static LinkedHashSet<String> trigrammi(String nome) {
+        String riempito = riempi(nome);
+        var trigrammi = new LinkedHashSet<String>();
+        for (int i = 0; i + 3 <= riempito.length(); i++) {
+            trigrammi.add(riempito.substring(i, i + 3));
+        }
+        return trigrammi;
+    }
+
+    /**
+     * Porta un nome in minuscolo e senza accenti, senza spazi iniziali e finali.
+     */
+    private static String normalizza(String nome) {
+        return IndiceTesto.piega(nome.strip());
+    }
+
+    /**
+     * Aggiunge i caratteri di riempimento prima e dopo un nome normalizzato.
+     */
+    private static String riempi(String nome) {
+        return "" + RIEMPIMENTO + RIEMPIMENTO + nome + RIEMPIMENTO + RIEMPIMENTO;
+    }
+}
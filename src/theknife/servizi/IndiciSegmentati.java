@@ -0,0 +1,161 @@
+package theknife.servizi;
+
+import java.util.ArrayList;
+import java.util.function.IntPredicate;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Albero k-d e indice dei prezzi del catalogo, divisi in segmenti di identificativi contigui.
+ * <p>
+ * {@link AlberoKD} e {@link IndicePrezzi} sono immutabili e vanno costruiti su un insieme fisso di
+ * ristoranti. Per non ricostruirli da capo a ogni ristorante aggiunto, i ristoranti sono divisi in
+ * segmenti, ciascuno con il proprio albero e il proprio indice, di dimensione decrescente: quando la coda
+ * dei ristoranti non ancora indicizzati raggiunge {@link #DIMENSIONE_CODA} diventa un nuovo segmento,
+ * che viene fuso con quelli precedenti finché ciascuno è almeno il doppio del successivo (metodo
+ * logaritmico). I segmenti sono quindi al più logaritmici nel numero di ristoranti, ogni ristorante
+ * viene reindicizzato un numero logaritmico di volte e la coda esaminata uno a uno resta sotto
+ * {@link #DIMENSIONE_CODA} ristoranti.
+ * <p>
+ * La classe non è sincronizzata: il catalogo la modifica e la legge con il proprio blocco.
+ *
+ * @author Marco Zaro
+ */
+final class IndiciSegmentati {
+
+    /**
+     * Numero di ristoranti non indicizzati oltre il quale la coda diventa un nuovo segmento.
+     */
+    static final int DIMENSIONE_CODA = 64;
+
+    /**
+     * Indici su un intervallo di identificativi.
+     *
+     * @param inizio Primo identificativo del segmento
+     * @param fine   Identificativo successivo all'ultimo del segmento
+     * @param albero Albero k-d sui ristoranti del segmento con coordinate
+     * @param prezzi Indice dei prezzi dei ristoranti del segmento
+     */
+    private record Segmento(int inizio, int fine, AlberoKD albero, IndicePrezzi prezzi) {
+
+        int numero() {
+            return fine - inizio;
+        }
+    }
+
+    /**
+     * Segmenti in ordine di identificativo, e quindi di dimensione decrescente.
+     */
+    private final ArrayList<Segmento> segmenti = new ArrayList<>();
+
+    /**
+     * Numero di ristoranti indicizzati nei segmenti: quelli successivi formano la coda.
+     */
+    private int indicizzati;
+
+    /**
+     * Indicizza la coda dei ristoranti, se ha raggiunto {@link #DIMENSIONE_CODA}.
+     *
+     * @param colonne Colonne del catalogo
+     * @param numero  Numero di ristoranti del catalogo
+     */
+    void aggiorna(ColonneRistoranti colonne, int numero) {
+        if (numero - indicizzati < DIMENSIONE_CODA) {
+            return;
+        }
+        int inizio = indicizzati;
+        int numeroUniti = numero - indicizzati;
+        // I segmenti non più grandi del doppio di quello nuovo vengono fusi in un unico segmento
+        while (!segmenti.isEmpty() && segmenti.getLast().numero() <= 2 * numeroUniti) {
+            Segmento ultimo = segmenti.removeLast();
+            inizio = ultimo.inizio();
+            numeroUniti = numero - inizio;
+        }
+        segmenti.add(costruisci(colonne, inizio, numero));
+        indicizzati = numero;
+    }
+
+    /**
+     * Restituisce il numero di ristoranti nei segmenti: quelli con identificativo successivo
+     * vanno esaminati uno a uno.
+     *
+     * @return Primo identificativo della coda
+     */
+    int indicizzati() {
+        return indicizzati;
+    }
+
+    /**
+     * Cerca nei segmenti i ristoranti più vicini al punto indicato che soddisfano il filtro.
+     * I ristoranti della coda non vengono considerati.
+     *
+     * @param punto  Punto cercato sulla sfera unitaria
+     * @param filtro Filtro sugli identificativi, valutato solo per i ristoranti abbastanza vicini
+     * @param vicini Insieme dei vicini da completare, condiviso tra i segmenti
+     */
+    void vicini(double[] punto, IntPredicate filtro, AlberoKD.Vicini vicini) {
+        // I segmenti più grandi per primi: la soglia dei vicini scende presto e pota i successivi
+        for (Segmento segmento : segmenti) {
+            segmento.albero().vicini(punto, filtro, vicini);
+        }
+    }
+
+    /**
+     * Conta i ristoranti indicizzati in una fascia di prezzo.
+     *
+     * @param minimo  Prezzo minimo, o {@code null}
+     * @param massimo Prezzo massimo, o {@code null}
+     * @return Numero di ristoranti dei segmenti nella fascia
+     */
+    long contaFascia(Float minimo, Float massimo) {
+        long totale = 0;
+        for (Segmento segmento : segmenti) {
+            totale += segmento.prezzi().fine(massimo) - segmento.prezzi().inizio(minimo);
+        }
+        return totale;
+    }
+
+    /**
+     * Restituisce gli identificativi dei ristoranti indicizzati in una fascia di prezzo.
+     *
+     * @param minimo  Prezzo minimo, o {@code null}
+     * @param massimo Prezzo massimo, o {@code null}
+     * @return Identificativi dei segmenti nella fascia, non ordinati
+     */
+    int[] fascia(Float minimo, Float massimo) {
+        int[] fascia = new int[Math.toIntExact(contaFascia(minimo, massimo))];
+        int posizione = 0;
+        for (Segmento segmento : segmenti) {
+            int fine = segmento.prezzi().fine(massimo);
+            for (int i = segmento.prezzi().inizio(minimo); i < fine; i++) {
+                fascia[posizione++] = segmento.prezzi().id(i);
+            }
+        }
+        return fascia;
+    }
+
+    /**
+     * Costruisce gli indici di un intervallo di identificativi, con i soli ristoranti con coordinate nell'albero.
+     */
+    private static Segmento costruisci(ColonneRistoranti colonne, int inizio, int fine) {
+        double[] latitudini = colonne.latitudini();
+        double[] longitudini = colonne.longitudini();
+        int[] id = new int[fine - inizio];
+        double[] latitudiniAlbero = new double[id.length];
+        double[] longitudiniAlbero = new double[id.length];
+        int conCoordinate = 0;
+        for (int i = inizio; i < fine; i++) {
+            if (!Double.isNaN(latitudini[i])) {
+                id[conCoordinate] = i;
+                latitudiniAlbero[conCoordinate] = latitudini[i];
+                longitudiniAlbero[conCoordinate] = longitudini[i];
+                conCoordinate++;
+            }
+        }
+        AlberoKD albero = new AlberoKD(id, latitudiniAlbero, longitudiniAlbero, conCoordinate);
+        return new Segmento(inizio, fine, albero, new IndicePrezzi(colonne.prezzi(), inizio, fine));
+    }
+}
@@ -0,0 +1,164 @@
+package theknife.servizi;
+
+import java.util.Arrays;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Lista compressa di identificativi di ristoranti in ordine crescente, usata dagli indici invertiti.
+ * <p>
+ * Si memorizza la differenza da un identificativo al precedente, in un numero variabile di byte
+ * (7 bit per byte, l'ultimo bit indica se il numero prosegue nel byte successivo), per cui le liste
+ * lunghe, con differenze piccole, occupano circa un byte per identificativo. Le liste di un solo
+ * identificativo, le più numerose, conservano solo quello.
+ * <p>
+ * La classe non è sincronizzata.
+ *
+ * @author Marco Zaro
+ */
+final class ListaIdentificativi {
+
+    /**
+     * Differenze tra identificativi consecutivi, in byte a lunghezza variabile, {@code null} finché
+     * la lista contiene un solo identificativo.
+     */
+    private byte[] dati;
+
+    /**
+     * Byte usati di {@link #dati}.
+     */
+    private int lunghezza;
+
+    /**
+     * Numero di identificativi nella lista.
+     */
+    private int numero;
+
+    /**
+     * Ultimo identificativo aggiunto, -1 se la lista è vuota.
+     */
+    private int ultimo = -1;
+
+    /**
+     * Restituisce il numero di identificativi nella lista.
+     *
+     * @return Numero di identificativi
+     */
+    int numero() {
+        return numero;
+    }
+
+    /**
+     * Restituisce l'ultimo identificativo aggiunto.
+     *
+     * @return Ultimo identificativo, -1 se la lista è vuota
+     */
+    int ultimo() {
+        return ultimo;
+    }
+
+    /**
+     * Accoda un identificativo maggiore dell'ultimo.
+     *
+     * @param id Identificativo da accodare
+     */
+    void aggiungi(int id) {
+        if (numero == 0) {
+            ultimo = id;
+            numero = 1;
+            return;
+        }
+        if (dati == null) {
+            // Al secondo identificativo anche il primo entra nella codifica, come differenza da -1
+            dati = new byte[16];
+            scrivi(ultimo + 1);
+        }
+        scrivi(id - ultimo);
+        ultimo = id;
+        numero++;
+    }
+
+    /**
+     * Accoda una differenza positiva in byte a lunghezza variabile.
+     */
+    private void scrivi(int differenza) {
+        if (lunghezza + 5 > dati.length) {
+            dati = Arrays.copyOf(dati, dati.length * 2);
+        }
+        while (differenza >= 0x80) {
+            dati[lunghezza++] = (byte) (differenza & 0x7F | 0x80);
+            differenza >>>= 7;
+        }
+        dati[lunghezza++] = (byte) differenza;
+    }
+
+    /**
+     * Decodifica tutti gli identificativi.
+     *
+     * @return Identificativi in ordine crescente
+     */
+    int[] decodifica() {
+        if (dati == null) {
+            return new int[]{ultimo};
+        }
+        int[] id = new int[numero];
+        int posizione = 0;
+        int corrente = -1;
+        for (int i = 0; i < numero; i++) {
+            int differenza = 0;
+            int spostamento = 0;
+            byte b;
+            do {
+                b = dati[posizione++];
+                differenza |= (b & 0x7F) << spostamento;
+                spostamento += 7;
+            } while (b < 0);
+            corrente += differenza;
+            id[i] = corrente;
+        }
+        return id;
+    }
+
+    /**
+     * Conserva all'inizio di {@code candidati} solo gli identificativi presenti nella lista.
+     *
+     * @param candidati       Identificativi in ordine crescente
+     * @param numeroCandidati Numero di identificativi validi all'inizio di {@code candidati}
+     * @return Numero di candidati rimasti
+     */
+    int interseca(int[] candidati, int numeroCandidati) {
+        if (dati == null) {
+            boolean presente = Arrays.binarySearch(candidati, 0, numeroCandidati, ultimo) >= 0;
+            candidati[0] = ultimo;
+            return presente ? 1 : 0;
+        }
+        int rimasti = 0;
+        int letto = 0;
+        int posizione = 0;
+        int corrente = -1;
+        for (int i = 0; i < numeroCandidati; i++) {
+            int candidato = candidati[i];
+            while (corrente < candidato && letto < numero) {
+                int differenza = 0;
+                int spostamento = 0;
+                byte b;
+                do {
+                    b = dati[posizione++];
+                    differenza |= (b & 0x7F) << spostamento;
+                    spostamento += 7;
+                } while (b < 0);
+                corrente += differenza;
+                letto++;
+            }
+            if (corrente == candidato) {
+                candidati[rimasti++] = candidato;
+            } else if (corrente < candidato) {
+                break;
+            }
+        }
+        return rimasti;
+    }
+}
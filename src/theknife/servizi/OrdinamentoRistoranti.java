@@ -0,0 +1,77 @@
+package theknife.servizi;
+
+import theknife.entita.Localita;
+import theknife.entita.Ristorante;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Criteri di ordinamento dei risultati di una ricerca a pagine.
+ * <p>
+ * Ogni criterio associa a un ristorante una chiave numerica, ordinata in senso crescente; a parità
+ * di chiave i ristoranti seguono l'ordine del file. L'ordine è quindi totale e una pagina riprende
+ * esattamente dal ristorante successivo all'ultimo mostrato.
+ *
+ * @author Marco Zaro
+ */
+public enum OrdinamentoRistoranti {
+    /**
+     * Dal più vicino al più lontano rispetto alla località della ricerca. I ristoranti senza
+     * coordinate, o tutti se la località non ha coordinate, seguono l'ordine del file in fondo.
+     */
+    DISTANZA("Distanza"),
+    /**
+     * Dalla media delle stelle più alta alla più bassa.
+     */
+    VALUTAZIONE("Valutazione"),
+    /**
+     * Dal prezzo medio più basso al più alto.
+     */
+    PREZZO("Prezzo");
+
+    /**
+     * Nome leggibile del criterio.
+     */
+    private final String nome;
+
+    /**
+     * Costruttore interno dell'enum, utilizzato per inizializzare il nome del criterio.
+     *
+     * @param nome Nome leggibile del criterio
+     */
+    OrdinamentoRistoranti(String nome) {
+        this.nome = nome;
+    }
+
+    /**
+     * Calcola la chiave di ordinamento di un ristorante.
+     *
+     * @param ristorante Ristorante da ordinare
+     * @param localita   Località della ricerca
+     * @return Chiave di ordinamento, crescente nell'ordine dei risultati
+     */
+    double chiave(Ristorante ristorante, Localita localita) {
+        return switch (this) {
+            case DISTANZA -> {
+                double distanza = ristorante.getLocalita() != null
+                        ? ristorante.getLocalita().calcolaDistanza(localita) : -1;
+                yield distanza >= 0 ? distanza : Double.POSITIVE_INFINITY;
+            }
+            case VALUTAZIONE -> -ristorante.getMediaStelle();
+            case PREZZO -> ristorante.getPrezzoMedio();
+        };
+    }
+
+    /**
+     * Restituisce il nome leggibile del criterio.
+     *
+     * @return Nome del criterio
+     */
+    @Override
+    public String toString() {
+        return nome;
+    }
+}
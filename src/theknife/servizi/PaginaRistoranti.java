@@ -0,0 +1,147 @@
+package theknife.servizi;
+
+import theknife.entita.Ristorante;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Pagina dei risultati di una ricerca, con il cursore per ottenere la pagina successiva.
+ * <p>
+ * Il cursore è un testo opaco da passare a {@link RistoranteService#paginaSuccessiva(String)}:
+ * contiene i parametri della ricerca e la posizione raggiunta, per cui può essere conservato
+ * e riutilizzato finché serve.
+ *
+ * @author Marco Zaro
+ */
+public final class PaginaRistoranti {
+
+    /**
+     * Ristoranti della pagina, nell'ordine richiesto.
+     */
+    private final List<Ristorante> ristoranti;
+
+    /**
+     * Cursore della pagina successiva, o {@code null} se questa è l'ultima.
+     */
+    private final String cursore;
+
+    /**
+     * Crea una pagina di risultati.
+     *
+     * @param ristoranti Ristoranti della pagina
+     * @param cursore    Cursore della pagina successiva, o {@code null} se questa è l'ultima
+     */
+    private PaginaRistoranti(List<Ristorante> ristoranti, String cursore) {
+        this.ristoranti = Collections.unmodifiableList(ristoranti);
+        this.cursore = cursore;
+    }
+
+    /**
+     * Seleziona la pagina indicata dal cursore tra i risultati di una ricerca, in qualunque ordine.
+     * <p>
+     * I risultati non vengono ordinati: una coda di priorità conserva solo i migliori
+     * {@code dimensione + 1} ristoranti successivi al cursore, dove l'ultimo serve a sapere
+     * se esiste una pagina successiva. La chiave di ordinamento viene calcolata una volta per ristorante.
+     *
+     * @param risultati Ristoranti che soddisfano la ricerca
+     * @param cursore   Cursore della ricerca, che indica l'ordinamento e la posizione raggiunta
+     * @return Pagina dei ristoranti successivi al cursore
+     */
+    static PaginaRistoranti seleziona(List<Ristorante> risultati, CursoreRicerca cursore) {
+        int dimensione = cursore.dimensione();
+        Comparator<Candidato> ordine = Comparator.comparingDouble(Candidato::chiave)
+                .thenComparingInt(candidato -> candidato.ristorante().getId());
+        // In testa alla coda c'è il peggiore dei candidati conservati
+        var migliori = new PriorityQueue<>(dimensione + 2, ordine.reversed());
+        for (Ristorante ristorante : risultati) {
+            double chiave = cursore.ordinamento().chiave(ristorante, cursore.localita());
+            if (!cursore.segue(chiave, ristorante.getId())) {
+                continue;
+            }
+            if (migliori.size() > dimensione) {
+                // Il candidato viene creato solo se migliora la selezione
+                Candidato peggiore = migliori.peek();
+                int confronto = Double.compare(chiave, peggiore.chiave());
+                if (confronto > 0 || confronto == 0 && ristorante.getId() > peggiore.ristorante().getId()) {
+                    continue;
+                }
+                migliori.poll();
+            }
+            migliori.add(new Candidato(chiave, ristorante));
+        }
+
+        var selezionati = new ArrayList<>(migliori);
+        selezionati.sort(ordine);
+        boolean altre = selezionati.size() > dimensione;
+        if (altre) {
+            selezionati.remove(dimensione);
+        }
+
+        var pagina = new ArrayList<Ristorante>(selezionati.size());
+        for (Candidato candidato : selezionati) {
+            pagina.add(candidato.ristorante());
+        }
+        String successivo = null;
+        if (altre) {
+            Candidato ultimo = selezionati.get(selezionati.size() - 1);
+            successivo = cursore.dopo(ultimo.chiave(), ultimo.ristorante().getId()).codifica();
+        }
+        return new PaginaRistoranti(pagina, successivo);
+    }
+
+    /**
+     * Restituisce una pagina con gli stessi risultati e lo stesso cursore, ma con altre istanze dei ristoranti,
+     * ad esempio le loro copie con le recensioni caricate.
+     *
+     * @param ristoranti Ristoranti della pagina, nello stesso ordine
+     * @return Nuova pagina
+     */
+    PaginaRistoranti conRistoranti(List<Ristorante> ristoranti) {
+        return new PaginaRistoranti(ristoranti, cursore);
+    }
+
+    /**
+     * Restituisce i ristoranti della pagina.
+     *
+     * @return Lista non modificabile dei ristoranti, nell'ordine richiesto
+     */
+    public List<Ristorante> getRistoranti() {
+        return ristoranti;
+    }
+
+    /**
+     * Restituisce il cursore della pagina successiva.
+     *
+     * @return Cursore opaco, o {@code null} se questa è l'ultima pagina
+     */
+    public String getCursore() {
+        return cursore;
+    }
+
+    /**
+     * Indica se esiste una pagina successiva.
+     *
+     * @return {@code true} se ci sono altri risultati
+     */
+    public boolean haSuccessiva() {
+        return cursore != null;
+    }
+
+    /**
+     * Ristorante candidato alla pagina, con la sua chiave di ordinamento.
+     *
+     * @param chiave     Chiave di ordinamento
+     * @param ristorante Ristorante
+     */
+    private record Candidato(double chiave, Ristorante ristorante) {
+    }
+}
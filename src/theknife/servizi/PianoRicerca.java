@@ -0,0 +1,272 @@
+package theknife.servizi;
+
+import theknife.entita.Localita;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Piano di esecuzione di una ricerca di ristoranti, scelto da {@link CatalogoRistoranti#pianifica}.
+ * <p>
+ * Il piano indica l'indice da cui parte la ricerca (l'accesso), con i costi stimati di tutti
+ * gli accessi considerati, e i filtri applicati in seguito ai singoli candidati. Dopo l'esecuzione
+ * registra anche il numero di ristoranti effettivamente esaminati e la durata, così che
+ * {@link #spiega()} mostri sia la scelta sia il suo esito.
+ *
+ * @author Marco Zaro
+ */
+final class PianoRicerca {
+
+    /**
+     * Modo in cui la ricerca individua i ristoranti candidati.
+     */
+    enum Accesso {
+        /**
+         * Nessun ristorante può soddisfare la ricerca, ad esempio un raggio senza coordinate.
+         */
+        NESSUNO("nessun accesso, la ricerca non può avere risultati"),
+        /**
+         * Tutti i ristoranti del catalogo.
+         */
+        SCANSIONE("scansione completa"),
+        /**
+         * Le celle dell'indice spaziale vicine alla località.
+         */
+        GRIGLIA("indice spaziale a griglia"),
+        /**
+         * La fascia dell'indice ordinato dei prezzi.
+         */
+        PREZZO("indice ordinato dei prezzi"),
+        /**
+         * L'intersezione delle bitmap di cucina, delivery e prenotazione.
+         */
+        CATEGORIE("indici bitmap di cucina, delivery e prenotazione"),
+        /**
+         * L'intersezione delle liste delle parole nell'indice invertito del testo.
+         */
+        TESTO("indice invertito su nome e descrizione");
+
+        /**
+         * Descrizione leggibile dell'accesso.
+         */
+        private final String descrizione;
+
+        Accesso(String descrizione) {
+            this.descrizione = descrizione;
+        }
+    }
+
+    /**
+     * Località di riferimento della ricerca, o {@code null} per cercare ovunque.
+     */
+    private final Localita localita;
+
+    /**
+     * Raggio della ricerca in chilometri, o {@code null}.
+     */
+    private final Double raggioKm;
+
+    /**
+     * Filtri della ricerca.
+     */
+    private final FiltriRicerca filtri;
+
+    /**
+     * Numero stimato di candidati di ogni accesso considerato.
+     */
+    private final Map<Accesso, Long> candidatiStimati = new EnumMap<>(Accesso.class);
+
+    /**
+     * Costo stimato di ogni accesso considerato, in ristoranti o parole di bitmap elaborate.
+     */
+    private final Map<Accesso, Long> costiStimati = new EnumMap<>(Accesso.class);
+
+    /**
+     * Accesso scelto.
+     */
+    private Accesso accesso = Accesso.SCANSIONE;
+
+    /**
+     * Ristoranti verificati uno a uno con il filtro completo durante l'esecuzione.
+     */
+    private long esaminati;
+
+    /**
+     * Ristoranti restituiti dall'esecuzione.
+     */
+    private int risultati;
+
+    /**
+     * Blocchi in cui è stata suddivisa la scansione parallela, 0 se l'esecuzione è stata sequenziale.
+     */
+    private int blocchiParalleli;
+
+    /**
+     * Durata dell'esecuzione in nanosecondi, o -1 se il piano non è stato eseguito.
+     */
+    private long durataNanos = -1;
+
+    /**
+     * Crea un piano per la ricerca indicata, con la scansione completa come accesso iniziale.
+     *
+     * @param localita Località di riferimento
+     * @param raggioKm Raggio in chilometri, o {@code null}
+     * @param filtri   Filtri della ricerca
+     */
+    PianoRicerca(Localita localita, Double raggioKm, FiltriRicerca filtri) {
+        this.localita = localita;
+        this.raggioKm = raggioKm;
+        this.filtri = filtri;
+    }
+
+    /**
+     * Registra la stima di un accesso e lo sceglie se è strettamente più economico di quello corrente.
+     *
+     * @param candidato Accesso valutato
+     * @param candidati Numero stimato di ristoranti candidati
+     * @param costo     Costo stimato dell'accesso
+     */
+    void valuta(Accesso candidato, long candidati, long costo) {
+        candidatiStimati.put(candidato, candidati);
+        costiStimati.put(candidato, costo);
+        if (!costiStimati.containsKey(accesso) || costo < costiStimati.get(accesso)) {
+            accesso = candidato;
+        }
+    }
+
+    /**
+     * Sceglie un accesso senza confrontarlo con gli altri.
+     *
+     * @param scelto Accesso da usare
+     */
+    void scegli(Accesso scelto) {
+        accesso = scelto;
+    }
+
+    /**
+     * Registra l'esito dell'esecuzione.
+     *
+     * @param esaminati        Ristoranti verificati con il filtro completo
+     * @param risultati        Ristoranti restituiti
+     * @param blocchiParalleli Blocchi della scansione parallela, 0 se l'esecuzione è stata sequenziale
+     * @param durataNanos      Durata in nanosecondi
+     */
+    void registraEsecuzione(long esaminati, int risultati, int blocchiParalleli, long durataNanos) {
+        this.esaminati = esaminati;
+        this.risultati = risultati;
+        this.blocchiParalleli = blocchiParalleli;
+        this.durataNanos = durataNanos;
+    }
+
+    /**
+     * Restituisce l'accesso scelto.
+     *
+     * @return Accesso da cui parte la ricerca
+     */
+    Accesso accesso() {
+        return accesso;
+    }
+
+    /**
+     * Restituisce la località di riferimento della ricerca.
+     *
+     * @return Località di riferimento
+     */
+    Localita localita() {
+        return localita;
+    }
+
+    /**
+     * Restituisce il raggio della ricerca.
+     *
+     * @return Raggio in chilometri, o {@code null}
+     */
+    Double raggioKm() {
+        return raggioKm;
+    }
+
+    /**
+     * Restituisce i filtri della ricerca.
+     *
+     * @return Filtri della ricerca
+     */
+    FiltriRicerca filtri() {
+        return filtri;
+    }
+
+    /**
+     * Descrive il piano: accesso scelto, costi stimati, filtri successivi ed eventuale esito.
+     *
+     * @return Descrizione testuale del piano su più righe
+     */
+    String spiega() {
+        StringBuilder testo = new StringBuilder();
+        testo.append("Piano di ricerca: ").append(accesso.descrizione).append('\n');
+
+        if (!costiStimati.isEmpty()) {
+            testo.append("  Accessi valutati:\n");
+            for (Map.Entry<Accesso, Long> costo : costiStimati.entrySet()) {
+                testo.append(String.format(Locale.ROOT, "    %-50s %10d candidati, costo %10d%s%n",
+                        costo.getKey().descrizione, candidatiStimati.get(costo.getKey()), costo.getValue(),
+                        costo.getKey() == accesso ? "  <- scelto" : ""));
+            }
+        }
+
+        List<String> successivi = filtriSuccessivi();
+        testo.append("  Filtri successivi: ")
+                .append(successivi.isEmpty() ? "nessuno" : String.join(", ", successivi)).append('\n');
+
+        if (durataNanos >= 0) {
+            testo.append(String.format(Locale.ROOT, "  Esecuzione: %d ristoranti verificati uno a uno, %d risultati in %.3f ms%s%n",
+                    esaminati, risultati, durataNanos / 1e6,
+                    blocchiParalleli > 0 ? ", in parallelo su " + blocchiParalleli + " blocchi" : ""));
+        }
+        return testo.toString();
+    }
+
+    /**
+     * Elenca i filtri verificati sui singoli candidati, cioè quelli non risolti dall'accesso scelto.
+     */
+    private List<String> filtriSuccessivi() {
+        List<String> successivi = new ArrayList<>();
+        if (accesso == Accesso.NESSUNO) {
+            return successivi;
+        }
+
+        if (raggioKm != null) {
+            successivi.add(String.format(Locale.ROOT, "distanza <= %.1f km", raggioKm));
+        } else if (localita != null) {
+            successivi.add("stessa zona di " + localita.getCitta() + ", " + localita.getNazione());
+        }
+        if (accesso != Accesso.TESTO && filtri.parole() != null) {
+            successivi.add("parole \"" + String.join(" ", filtri.parole()) + "\"");
+        }
+        if (accesso != Accesso.CATEGORIE) {
+            if (filtri.tipoCucina() != null) {
+                successivi.add("cucina " + filtri.tipoCucina());
+            }
+            if (filtri.delivery() != null) {
+                successivi.add(filtri.delivery() ? "con delivery" : "senza delivery");
+            }
+            if (filtri.prenotazione() != null) {
+                successivi.add(filtri.prenotazione() ? "con prenotazione" : "senza prenotazione");
+            }
+        }
+        if (accesso != Accesso.PREZZO && (filtri.prezzoMinimo() != null || filtri.prezzoMassimo() != null)) {
+            successivi.add("prezzo tra " + (filtri.prezzoMinimo() != null ? filtri.prezzoMinimo() : "-")
+                    + " e " + (filtri.prezzoMassimo() != null ? filtri.prezzoMassimo() : "-") + " euro");
+        }
+        if (filtri.mediaStelle() != null) {
+            successivi.add("media stelle >= " + filtri.mediaStelle());
+        }
+        return successivi;
+    }
+}
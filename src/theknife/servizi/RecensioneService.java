@@ -9,8 +9,7 @@ import theknife.io_file.GestoreFile;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 import static theknife.servizi.RistoranteService.getRecensioniRistorante;
 /*
@@ -61,8 +60,10 @@ public final class RecensioneService {
         if (!GestoreFile.aggiungiRecensione(recensione)) {
             return false;
         }
+        RistoranteService.recensioniModificate(ristorante);
 
-        return cliente.aggiungiRecensione(ristorante, recensione);
+        // Le recensioni del ristorante non vengono toccate: l'istanza può essere condivisa con l'archivio
+        return true;
     }
 
     /**
@@ -77,57 +78,41 @@ public final class RecensioneService {
     }
 
     /**
-     * Effettua il caricamento delle recensioni per i ristoranti
+     * Effettua il caricamento delle recensioni per i ristoranti.
+     * <p>
+     * I ristoranti ricevuti possono essere condivisi con l'archivio dei dati e non vengono modificati:
+     * le recensioni vengono caricate in loro copie.
      * @param ristoranti I ristoranti
+     * @return Copie dei ristoranti, nello stesso ordine, con le rispettive recensioni
      * @throws IOException Errore nella lettura del file
      * @throws CsvException Errore nel parsing del file CSV
      */
-    public static void caricaRecensioniPerTuttiRistoranti(ArrayList<Ristorante> ristoranti)
+    public static ArrayList<Ristorante> caricaRecensioniPerTuttiRistoranti(List<Ristorante> ristoranti)
             throws IOException, CsvException {
 
-        if (ristoranti == null || ristoranti.isEmpty()) {
-            return;
-        }
-
-        // Mappa per associare ristoranti tramite una chiave
-        // Usando capacità iniziale ottimizzata e load factor 0.75
-        Map<String, Ristorante> mappaRistoranti = new HashMap<>(ristoranti.size() * 4 / 3 + 1);
-
-        // Inizializzazione ristoranti con pre-allocazione delle liste
-        for (Ristorante r : ristoranti) {
-            mappaRistoranti.put(r.getChiave(), r);
-            // Pre-alloca ArrayList con capacità ragionevole (es. 10)
-            r.setRecensioni(new ArrayList<>(10));
-        }
-
-        // Caricamento recensioni
-        ArrayList<Recensione> tutteLeRecensioni = GestoreFile.caricaRecensioni();
-
-        if (tutteLeRecensioni.isEmpty()) {
-            return;
+        var conRecensioni = new ArrayList<Ristorante>();
+        if (ristoranti == null) {
+            return conRecensioni;
         }
 
-        // Assegnazione recensioni ai ristoranti
-        for (Recensione r : tutteLeRecensioni) {
-            String chiaveRistorante = r.getRistorante().getChiave();
-            Ristorante ristorante = mappaRistoranti.get(chiaveRistorante);
-            if (ristorante != null) {
-                ristorante.aggiungiRecensione(r);
-            }
+        // L'indice per ristorante evita di scorrere le recensioni di tutta la piattaforma
+        for (Ristorante ristorante : ristoranti) {
+            conRecensioni.add(caricaRecensioniRistorante(ristorante));
         }
+        return conRecensioni;
     }
 
     /**
-     * Carica le recensioni di un ristorante
+     * Carica le recensioni di un ristorante in una sua copia, senza modificare il ristorante ricevuto.
      * @param ristorante Ristorante
+     * @return Copia del ristorante con le sue recensioni
      * @throws IOException Errore nella lettura del file
      * @throws CsvException Errore nel parsing del file CSV
      */
-    public static void caricaRecensioniRistorante(Ristorante ristorante)
+    public static Ristorante caricaRecensioniRistorante(Ristorante ristorante)
             throws IOException, CsvException {
 
-        var recensioni = getRecensioniRistorante(ristorante);
-        ristorante.setRecensioni(recensioni);
+        return ristorante.conRecensioni(getRecensioniRistorante(ristorante));
     }
 
     /**
@@ -146,16 +131,15 @@ public final class RecensioneService {
             return false;
         }
 
-        caricaRecensioniRistorante(ristorante);
-
-        Recensione recensione = ristorante.trovaRecensioneCliente(cliente);
+        Recensione recensione = caricaRecensioniRistorante(ristorante).trovaRecensioneCliente(cliente);
         if (recensione == null) {
             return false;
         }
         if (!GestoreFile.eliminaRecensione(recensione)) {
             return false;
         }
-        return cliente.rimuoviRecensione(ristorante);
+        RistoranteService.recensioniModificate(ristorante);
+        return true;
     }
 
     /**
@@ -182,21 +166,23 @@ public final class RecensioneService {
             return false;
         }
 
-        caricaRecensioniRistorante(ristorante);
-
-        Recensione vecchiaRecensione = ristorante.trovaRecensioneCliente(cliente);
+        Recensione vecchiaRecensione = caricaRecensioniRistorante(ristorante).trovaRecensioneCliente(cliente);
         if (vecchiaRecensione == null) {
             return false;
         }
         if(!GestoreFile.aggiornaRecensione(vecchiaRecensione,  nuovaRecensione)) {
             return false;
         }
+        RistoranteService.recensioniModificate(ristorante);
 
-        return cliente.modificaRecensione(ristorante, nuovaRecensione);
+        return true;
     }
 
     /**
      * Aggiunge una risposta del ristoratore a una recensione.
+     * <p>
+     * La risposta viene aggiunta a una copia della recensione, salvata al posto dell'originale: la recensione
+     * ricevuta non viene modificata, mentre la copia sostituisce l'originale nelle recensioni del ristorante.
      *
      * @param ristoratore Ristoratore che risponde alla recensione.
      * @param ristorante  Ristorante per cui è stata fatta la recensione.
@@ -223,20 +209,18 @@ public final class RecensioneService {
             return false;
         }
 
-        boolean rispostaAggiunta = recensione.aggiungiRisposta(testoRisposta.trim());
-
-        if (!rispostaAggiunta) {
+        Recensione conRisposta = recensione.copia();
+        if (!conRisposta.aggiungiRisposta(testoRisposta.trim())) {
             return false;
         }
 
-        if (!GestoreFile.eliminaRecensione(recensione)) {
-            return false;
-        }
-        return GestoreFile.aggiungiRecensione(recensione);
+        return salvaRisposta(ristorante, recensione, conRisposta);
     }
 
     /**
      * Modifica la risposta del ristoratore a una recensione esistente.
+     * <p>
+     * Come in {@link #rispondiARecensione}, la modifica viene fatta su una copia della recensione.
      *
      * @param ristoratore Ristoratore che modifica la risposta alla recensione.
      * @param ristorante  Ristorante per cui è stata fatta la recensione.
@@ -271,27 +255,34 @@ public final class RecensioneService {
             return false;
         }
 
-        // Salva la risposta precedente per eventuale rollback
-        String rispostaPrecedente = recensione.getRispostaRistoratore();
-
-        // Modifica la risposta nella recensione
-        boolean rispostaModificata = recensione.modificaRisposta(nuovoTestoRisposta.trim());
-
-        if (!rispostaModificata) {
+        // Modifica la risposta in una copia: la recensione originale resta valida se il salvataggio fallisce
+        Recensione modificata = recensione.copia();
+        if (!modificata.modificaRisposta(nuovoTestoRisposta.trim())) {
             return false;
         }
 
-        if (!GestoreFile.eliminaRecensione(recensione)) {
-            recensione.modificaRisposta(rispostaPrecedente);
-            return false;
-        }
+        return salvaRisposta(ristorante, recensione, modificata);
+    }
 
-        if (!GestoreFile.aggiungiRecensione(recensione)) {
-            recensione.modificaRisposta(rispostaPrecedente);
-            GestoreFile.aggiungiRecensione(recensione);
+    /**
+     * Salva la copia di una recensione con la risposta aggiornata, che nell'archivio prende il posto
+     * dell'originale, e la sostituisce anche nelle recensioni caricate nel ristorante.
+     *
+     * @param ristorante Ristorante di cui sono state caricate le recensioni
+     * @param originale  Recensione prima della modifica
+     * @param modificata Copia della recensione con la risposta aggiornata
+     * @return {@code true} se la risposta è stata salvata, {@code false} altrimenti
+     * @throws IOException  Se si verifica un errore durante l'accesso al file.
+     * @throws CsvException Se si verifica un errore durante la gestione del CSV.
+     */
+    private static boolean salvaRisposta(Ristorante ristorante, Recensione originale, Recensione modificata)
+            throws IOException, CsvException {
+
+        if (!GestoreFile.salvaRispostaRecensione(modificata)) {
             return false;
         }
-
+        // Il ristorante riceve una copia distinta da quella dell'archivio, che non va più modificata
+        ristorante.modificaRecensione(originale, modificata.copia());
         return true;
     }
 
@@ -315,8 +306,7 @@ public final class RecensioneService {
      */
     public static void visualizzaRecensioniAnonime(Ristorante ristorante) throws IOException, CsvException {
         // Carica recensioni dal file associato al ristorante
-        caricaRecensioniRistorante(ristorante);
-        var recensioni = ristorante.getRecensioni();
+        var recensioni = caricaRecensioniRistorante(ristorante).getRecensioni();
         if (recensioni == null || recensioni.isEmpty()) {
             System.out.println("Nessuna recensione disponibile.");
             return;
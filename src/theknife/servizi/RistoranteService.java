@@ -6,7 +6,9 @@ import theknife.io_file.GestoreFile;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.function.Predicate;
 /*
  * Riotto Thomas 760981 VA
  * Pesavento Antonio 759933 VA
@@ -32,6 +34,17 @@ public final class RistoranteService {
      */
     public static boolean interrotto = false;
 
+    /**
+     * Catalogo indicizzato su cui vengono eseguite le ricerche.
+     */
+    private static final CatalogoRistoranti CATALOGO = new CatalogoRistoranti();
+
+    /**
+     * Cache dei risultati delle ricerche per località.
+     */
+    private static final CacheRicerche CACHE =
+            new CacheRicerche(CacheRicerche.CAPACITA_PREDEFINITA, CacheRicerche.DURATA_PREDEFINITA_NANOS);
+
     /**
      * Costruttore privato che impedisce l'istanziamento della classe {@code RistoranteService}.
      * <p>
@@ -41,6 +54,47 @@ public final class RistoranteService {
 
     }
 
+    /**
+     * Imposta il numero di ristoranti oltre il quale le ricerche che scorrono l'intero catalogo
+     * vengono suddivise in blocchi ed eseguite in parallelo. Il risultato e il suo ordine non cambiano.
+     *
+     * @param soglia Numero minimo di ristoranti per la scansione parallela; 0 per usarla sempre,
+     *               {@link Integer#MAX_VALUE} per non usarla mai
+     * @throws IllegalArgumentException Se la soglia è negativa
+     */
+    public static void impostaSogliaParallela(int soglia) {
+        if (soglia < 0) {
+            throw new IllegalArgumentException("La soglia per la ricerca parallela non può essere negativa");
+        }
+        CATALOGO.impostaSogliaParallela(soglia);
+    }
+
+    /**
+     * Restituisce il numero di ristoranti oltre il quale le ricerche vengono eseguite in parallelo.
+     *
+     * @return Soglia per la scansione parallela
+     */
+    public static int getSogliaParallela() {
+        return CATALOGO.getSogliaParallela();
+    }
+
+    /**
+     * Restituisce i contatori della cache delle ricerche: ricerche servite dalla cache, ricerche
+     * eseguite sul catalogo e voci eliminate per l'aggiunta di ristoranti o la modifica di recensioni.
+     *
+     * @return Statistiche della cache
+     */
+    public static StatisticheCache getStatisticheCache() {
+        return CACHE.statistiche();
+    }
+
+    /**
+     * Svuota la cache delle ricerche, ad esempio dopo una modifica dei dati fatta senza passare dai servizi.
+     */
+    public static void svuotaCache() {
+        CACHE.svuota();
+    }
+
 
     /**
      * Cerca ristoranti applicando una combinazione di filtri specificati.
@@ -74,12 +128,383 @@ public final class RistoranteService {
                                                         Float prezzoMinimo, Float prezzoMassimo, Boolean delivery, Boolean prenotazione,
                                                         Float mediaStelle, Double raggioKm) throws IOException, CsvException {
 
+        validaRicerca(localita, prezzoMinimo, prezzoMassimo, mediaStelle, raggioKm);
+        return trova(localita, raggioKm,
+                new FiltriRicerca(tipoCucina, prezzoMinimo, prezzoMassimo, delivery, prenotazione, mediaStelle));
+    }
+
+    /**
+     * Cerca i ristoranti che contengono tutte le parole di un testo nel nome o nella descrizione,
+     * combinando la ricerca con gli stessi filtri di
+     * {@link #cercaRistorante(TipoCucina, Localita, Float, Float, Boolean, Boolean, Float, Double)}.
+     *
+     * <p>Le parole vengono confrontate ignorando maiuscole, minuscole e accenti, per cui "caffè"
+     * trova anche "Caffe"; articoli, preposizioni e congiunzioni vengono ignorati, anche se elisi
+     * come in "dell'osteria". La ricerca usa un indice invertito aggiornato a ogni ristorante aggiunto.</p>
+     *
+     * @param testo         Parole da cercare (obbligatorio), separate da spazi o punteggiatura
+     * @param tipoCucina    Tipo di cucina desiderato, o {@code null}
+     * @param localita      Localita di riferimento, o {@code null} per cercare ovunque
+     * @param prezzoMinimo  Prezzo minimo in euro, o {@code null}
+     * @param prezzoMassimo Prezzo massimo in euro, o {@code null}
+     * @param delivery      Disponibilità servizio delivery, o {@code null}
+     * @param prenotazione  Disponibilità prenotazione online, o {@code null}
+     * @param mediaStelle   Media minima delle stelle richiesta, o {@code null}
+     * @param raggioKm      Raggio di ricerca in chilometri dalla localita, o {@code null}
+     * @return Lista dei ristoranti che soddisfano tutti i criteri, nell'ordine del file.
+     * Può essere una lista vuota se nessun ristorante soddisfa i criteri
+     * @throws IOException              Se si verifica un errore durante il caricamento dei dati dei ristoranti
+     * @throws CsvException             Se si verifica un errore durante la lettura del file CSV
+     * @throws IllegalArgumentException Se il testo non contiene parole da cercare, se è indicato un raggio
+     *                                  senza localita o se i parametri numerici hanno valori non validi
+     */
+    public static ArrayList<Ristorante> cercaPerParole(String testo, TipoCucina tipoCucina, Localita localita,
+                                                       Float prezzoMinimo, Float prezzoMassimo, Boolean delivery,
+                                                       Boolean prenotazione, Float mediaStelle, Double raggioKm)
+            throws IOException, CsvException {
+
+        List<String> parole = IndiceTesto.parole(testo);
+        if (parole.isEmpty()) {
+            throw new IllegalArgumentException("Il testo deve contenere almeno una parola da cercare");
+        }
+        if (localita == null && raggioKm != null) {
+            throw new IllegalArgumentException("Il raggio richiede una localita di riferimento");
+        }
+        validaFiltri(prezzoMinimo, prezzoMassimo, mediaStelle);
+        if (raggioKm != null && raggioKm <= 0) {
+            throw new IllegalArgumentException("Il raggio deve essere un valore positivo");
+        }
+        return trova(localita, raggioKm,
+                new FiltriRicerca(tipoCucina, prezzoMinimo, prezzoMassimo, delivery, prenotazione, mediaStelle, parole));
+    }
+
+    /**
+     * Cerca ovunque i ristoranti che contengono tutte le parole di un testo nel nome o nella descrizione.
+     *
+     * @param testo Parole da cercare (obbligatorio)
+     * @return Lista dei ristoranti che contengono tutte le parole, nell'ordine del file
+     * @throws IOException              Se si verifica un errore durante il caricamento dei dati dei ristoranti
+     * @throws CsvException             Se si verifica un errore durante la lettura del file CSV
+     * @throws IllegalArgumentException Se il testo non contiene parole da cercare
+     */
+    public static ArrayList<Ristorante> cercaPerParole(String testo) throws IOException, CsvException {
+        return cercaPerParole(testo, null, null, null, null, null, null, null, null);
+    }
+
+    /**
+     * Suggerisce i nomi dei ristoranti che iniziano con il testo digitato, dal più recensito.
+     * Maiuscole, minuscole e accenti non contano: "tratt" suggerisce anche "Trattoria Àncora".
+     *
+     * @param prefisso Inizio del nome digitato, anche vuoto
+     * @param numero   Numero massimo di suggerimenti, al più 10
+     * @return Suggerimenti con la città di ogni ristorante, vuota se nessun nome inizia con il prefisso
+     * @throws IOException              Se si verifica un errore durante il caricamento dei dati dei ristoranti
+     * @throws CsvException             Se si verifica un errore durante la lettura del file CSV
+     * @throws IllegalArgumentException Se il prefisso è nullo o il numero non è positivo
+     */
+    public static List<Suggerimento> suggerisciRistoranti(String prefisso, int numero) throws IOException, CsvException {
+        validaSuggerimenti(prefisso, numero);
+        CATALOGO.aggiorna();
+        CATALOGO.preparaSuggerimenti();
+        return CATALOGO.suggerisciRistoranti(prefisso, Math.min(numero, AlberoPrefissi.MIGLIORI));
+    }
+
+    /**
+     * Suggerisce le città e le nazioni dei ristoranti che iniziano con il testo digitato, dalla più
+     * recensita. Il numero di recensioni di un luogo è la somma di quelle dei suoi ristoranti.
+     *
+     * @param prefisso Inizio del nome digitato, anche vuoto
+     * @param numero   Numero massimo di suggerimenti, al più 10
+     * @return Suggerimenti con la nazione di ogni città, vuota se nessun luogo inizia con il prefisso
+     * @throws IOException              Se si verifica un errore durante il caricamento dei dati dei ristoranti
+     * @throws CsvException             Se si verifica un errore durante la lettura del file CSV
+     * @throws IllegalArgumentException Se il prefisso è nullo o il numero non è positivo
+     */
+    public static List<Suggerimento> suggerisciLuoghi(String prefisso, int numero) throws IOException, CsvException {
+        validaSuggerimenti(prefisso, numero);
+        CATALOGO.aggiorna();
+        CATALOGO.preparaSuggerimenti();
+        return CATALOGO.suggerisciLuoghi(prefisso, Math.min(numero, AlberoPrefissi.MIGLIORI));
+    }
+
+    /**
+     * Cerca i ristoranti il cui nome è simile a quello indicato, tollerando errori di battitura:
+     * sono trovati i nomi a distanza di modifica (caratteri inseriti, eliminati o sostituiti) al più
+     * {@code distanzaMassima}, senza distinguere maiuscole e accenti.
+     * <p>
+     * I ristoranti sono ordinati dal nome più simile e, a parità, dal più vicino alla località indicata:
+     * per distanza in km se la località ha coordinate, altrimenti prima quelli nella stessa città.
+     * Per i nomi corti la distanza ammessa viene ridotta, perché altrimenti quasi ogni nome corto sarebbe
+     * simile: 0 fino a 2 caratteri, 1 fino a 5, 2 fino a 7.
+     *
+     * <p>La ricerca usa un indice dei trigrammi dei nomi: la distanza viene calcolata solo per i nomi
+     * che condividono abbastanza trigrammi con quello cercato, non per l'intero catalogo.</p>
+     *
+     * @param nome            Nome cercato (obbligatorio)
+     * @param localita        Località di riferimento per l'ordinamento, o {@code null}
+     * @param distanzaMassima Numero massimo di caratteri sbagliati, tra 0 e 3
+     * @param numero          Numero massimo di ristoranti da restituire
+     * @return Lista dei ristoranti con nome simile, al massimo {@code numero}, dal più simile.
+     * Può essere una lista vuota se nessun nome è abbastanza simile
+     * @throws IOException              Se si verifica un errore durante il caricamento dei dati dei ristoranti
+     * @throws CsvException             Se si verifica un errore durante la lettura del file CSV
+     * @throws IllegalArgumentException Se il nome è nullo o vuoto, se la distanza non è tra 0 e 3
+     *                                  o se il numero non è positivo
+     */
+    public static ArrayList<Ristorante> cercaRistorantiSimili(String nome, Localita localita, int distanzaMassima,
+                                                              int numero) throws IOException, CsvException {
+        if (nome == null || nome.isBlank()) {
+            throw new IllegalArgumentException("Il nome da cercare non può essere vuoto");
+        }
+        if (distanzaMassima < 0 || distanzaMassima > 3) {
+            throw new IllegalArgumentException("La distanza massima deve essere compresa tra 0 e 3");
+        }
+        if (numero <= 0) {
+            throw new IllegalArgumentException("Il numero di ristoranti deve essere positivo");
+        }
+
+        CATALOGO.aggiorna();
+        CATALOGO.preparaTrigrammi();
+        return CATALOGO.simili(nome, IndiceTrigrammi.distanzaAmmessa(nome, distanzaMassima), localita, numero);
+    }
+
+    /**
+     * Cerca i dieci ristoranti con il nome più simile a quello indicato, tollerando fino a due
+     * caratteri sbagliati, come {@link #cercaRistorantiSimili(String, Localita, int, int)}.
+     *
+     * @param nome     Nome cercato (obbligatorio)
+     * @param localita Località di riferimento per l'ordinamento, o {@code null}
+     * @return Lista dei ristoranti con nome simile, dal più simile
+     * @throws IOException              Se si verifica un errore durante il caricamento dei dati dei ristoranti
+     * @throws CsvException             Se si verifica un errore durante la lettura del file CSV
+     * @throws IllegalArgumentException Se il nome è nullo o vuoto
+     */
+    public static ArrayList<Ristorante> cercaRistorantiSimili(String nome, Localita localita)
+            throws IOException, CsvException {
+        return cercaRistorantiSimili(nome, localita, 2, 10);
+    }
+
+    /**
+     * Valida i parametri di una richiesta di suggerimenti
+     * @param prefisso prefisso digitato
+     * @param numero numero massimo di suggerimenti
+     */
+    private static void validaSuggerimenti(String prefisso, int numero) {
+        if (prefisso == null) {
+            throw new IllegalArgumentException("Il prefisso non può essere nullo");
+        }
+        if (numero <= 0) {
+            throw new IllegalArgumentException("Il numero di suggerimenti deve essere positivo");
+        }
+    }
+
+    /**
+     * Esegue una ricerca come {@link #cercaRistorante(TipoCucina, Localita, Float, Float, Boolean, Boolean, Float, Double)}
+     * e ne descrive il piano di esecuzione: l'indice da cui è partita la ricerca, i costi stimati
+     * degli indici considerati, i filtri applicati in seguito e il numero di ristoranti esaminati.
+     *
+     * <p>Serve a capire perché una ricerca è lenta: i parametri sono gli stessi della ricerca.</p>
+     *
+     * @param tipoCucina    Tipo di cucina desiderato, o {@code null}
+     * @param localita      Localita di riferimento per la ricerca (obbligatorio)
+     * @param prezzoMinimo  Prezzo minimo in euro, o {@code null}
+     * @param prezzoMassimo Prezzo massimo in euro, o {@code null}
+     * @param delivery      Disponibilità servizio delivery, o {@code null}
+     * @param prenotazione  Disponibilità prenotazione online, o {@code null}
+     * @param mediaStelle   Media minima delle stelle richiesta, o {@code null}
+     * @param raggioKm      Raggio di ricerca in chilometri, o {@code null}
+     * @return Descrizione testuale del piano eseguito
+     * @throws IOException              Se si verifica un errore durante il caricamento dei dati dei ristoranti
+     * @throws CsvException             Se si verifica un errore durante la lettura del file CSV
+     * @throws IllegalArgumentException Se i parametri non sono validi, come per la ricerca
+     */
+    public static String spiegaRicerca(TipoCucina tipoCucina, Localita localita,
+                                       Float prezzoMinimo, Float prezzoMassimo, Boolean delivery, Boolean prenotazione,
+                                       Float mediaStelle, Double raggioKm) throws IOException, CsvException {
+        validaRicerca(localita, prezzoMinimo, prezzoMassimo, mediaStelle, raggioKm);
+        PianoRicerca piano = pianifica(localita, raggioKm,
+                new FiltriRicerca(tipoCucina, prezzoMinimo, prezzoMassimo, delivery, prenotazione, mediaStelle));
+        esegui(piano);
+        return piano.spiega();
+    }
+
+    /**
+     * Verifica i parametri di una ricerca per località.
+     * @param localita località di riferimento
+     * @param prezzoMinimo prezzo minimo
+     * @param prezzoMassimo prezzo massimo
+     * @param mediaStelle media minima delle stelle
+     * @param raggioKm raggio in km
+     * @throws IllegalArgumentException se la località è {@code null} o un valore non è valido
+     */
+    private static void validaRicerca(Localita localita, Float prezzoMinimo, Float prezzoMassimo,
+                                      Float mediaStelle, Double raggioKm) {
         // Validazione parametri obbligatori
         if (localita == null) {
             throw new IllegalArgumentException("La localita è un parametro obbligatorio e non può essere null");
         }
 
         // Validazioni parametri numerici
+        validaFiltri(prezzoMinimo, prezzoMassimo, mediaStelle);
+        if (raggioKm != null && raggioKm <= 0) {
+            throw new IllegalArgumentException("Il raggio deve essere un valore positivo");
+        }
+    }
+
+    /**
+     * Allinea il catalogo e pianifica una ricerca
+     * @param localita località di riferimento
+     * @param raggioKm raggio in km
+     * @param filtri filtri della ricerca
+     * @return Il piano della ricerca
+     * @throws IOException Errore nella lettura del file
+     * @throws CsvException Errore nel parsing CSV
+     */
+    private static PianoRicerca pianifica(Localita localita, Double raggioKm, FiltriRicerca filtri)
+            throws IOException, CsvException {
+        CATALOGO.aggiorna();
+        return CATALOGO.pianifica(localita, raggioKm, filtri);
+    }
+
+    /**
+     * Cerca i ristoranti che soddisfano una ricerca, usando la cache quando la ricerca vi può essere
+     * memorizzata. La voce della cache può coprire un'area più ampia della ricerca, per cui i suoi
+     * ristoranti vengono ristretti alla località esatta
+     * @param localita località di riferimento
+     * @param raggioKm raggio in km
+     * @param filtri filtri della ricerca
+     * @return I ristoranti che soddisfano tutti i criteri, nell'ordine del file
+     * @throws IOException Errore nella lettura del file
+     * @throws CsvException Errore nel parsing CSV
+     */
+    private static ArrayList<Ristorante> trova(Localita localita, Double raggioKm, FiltriRicerca filtri)
+            throws IOException, CsvException {
+        if (filtri.parole() != null) {
+            CATALOGO.preparaTesto();
+        }
+        CacheRicerche.Chiave chiave = CacheRicerche.Chiave.di(localita, raggioKm, filtri);
+        if (chiave == null) {
+            // Il catalogo parte dall'indice più selettivo e verifica gli altri filtri sui candidati
+            return esegui(pianifica(localita, raggioKm, filtri));
+        }
+
+        long versione = CACHE.versione();
+        CATALOGO.aggiorna();
+        long generazione = CATALOGO.generazione();
+        ArrayList<Ristorante> candidati = CACHE.cerca(chiave, generazione);
+        if (candidati == null) {
+            Localita centro = chiave.centro(localita);
+            Double raggioEsteso = chiave.raggioEsteso();
+            candidati = esegui(CATALOGO.pianifica(centro, raggioEsteso, filtri));
+            CACHE.inserisci(chiave, generazione, versione, candidati, filtroLocalita(centro, raggioEsteso),
+                    verifica(filtri.senzaStelle()));
+        }
+
+        Predicate<Ristorante> area = filtroLocalita(localita, raggioKm);
+        var risultato = new ArrayList<Ristorante>();
+        for (Ristorante ristorante : candidati) {
+            if (area.test(ristorante)) {
+                risultato.add(ristorante);
+            }
+        }
+        return risultato;
+    }
+
+    /**
+     * Notifica alla cache delle ricerche e all'indice dei suggerimenti che le recensioni di un ristorante sono cambiate
+     * @param ristorante ristorante di cui è stata aggiunta, modificata o eliminata una recensione, anche una sua copia
+     * @throws IOException Errore nella lettura del file
+     * @throws CsvException Errore nel parsing CSV
+     */
+    static void recensioniModificate(Ristorante ristorante) throws IOException, CsvException {
+        // Il catalogo contiene le istanze dell'archivio: quella ricevuta può esserne una copia o non avere identificativo
+        Ristorante registrato = GestoreFile.risolviRistorante(ristorante);
+        if (registrato == null) {
+            return;
+        }
+        CACHE.recensioniModificate(registrato);
+        CATALOGO.recensioniModificate(registrato);
+    }
+
+    /**
+     * Esegue un piano di ricerca applicando tutti i filtri ai candidati
+     * @param piano piano della ricerca
+     * @return I ristoranti che soddisfano tutti i criteri
+     */
+    private static ArrayList<Ristorante> esegui(PianoRicerca piano) {
+        Predicate<Ristorante> localita = filtroLocalita(piano.localita(), piano.raggioKm());
+        Predicate<Ristorante> verifica = verifica(piano.filtri());
+        return CATALOGO.esegui(piano, ristorante -> localita.test(ristorante) && verifica.test(ristorante));
+    }
+
+    /**
+     * Cerca i ristoranti più vicini a una località che soddisfano i filtri specificati,
+     * ordinati dal più vicino al più lontano.
+     * Tutti i filtri sono opzionali (possono essere {@code null}): se un filtro è {@code null} non viene applicato.
+     * I ristoranti senza coordinate non vengono considerati.
+     *
+     * <p>La ricerca usa un albero k-d sulle coordinate dei ristoranti: la distanza viene calcolata
+     * solo per i ristoranti che possono rientrare tra i più vicini, non per l'intero catalogo.</p>
+     *
+     * @param localita      Localita di riferimento (obbligatoria), con coordinate
+     * @param numero        Numero massimo di ristoranti da restituire
+     * @param tipoCucina    Tipo di cucina desiderato. Se {@code null}, non viene applicato il filtro per tipologia
+     * @param prezzoMinimo  Prezzo minimo in euro. Se {@code null}, non viene applicato il filtro per prezzo minimo
+     * @param prezzoMassimo Prezzo massimo in euro. Se {@code null}, non viene applicato il filtro per prezzo massimo
+     * @param delivery      Disponibilità servizio delivery. Se {@code null}, non viene applicato il filtro delivery
+     * @param prenotazione  Disponibilità prenotazione online. Se {@code null}, non viene applicato il filtro prenotazione
+     * @param mediaStelle   Media minima delle stelle richiesta (da 1.0 a 5.0). Se {@code null}, non viene applicato il filtro stelle
+     * @return Lista dei ristoranti più vicini, al massimo {@code numero}, ordinati per distanza crescente.
+     * Può essere una lista vuota se nessun ristorante soddisfa i criteri o se la località non ha coordinate
+     * @throws IOException              Se si verifica un errore durante il caricamento dei dati dei ristoranti
+     * @throws CsvException             Se si verifica un errore durante la lettura del file CSV
+     * @throws IllegalArgumentException Se la localita è {@code null}, se il numero non è positivo
+     *                                  o se i filtri numerici hanno valori non validi
+     */
+    public static ArrayList<Ristorante> cercaRistorantiVicini(Localita localita, int numero, TipoCucina tipoCucina,
+                                                              Float prezzoMinimo, Float prezzoMassimo, Boolean delivery,
+                                                              Boolean prenotazione, Float mediaStelle)
+            throws IOException, CsvException {
+
+        if (localita == null) {
+            throw new IllegalArgumentException("La localita è un parametro obbligatorio e non può essere null");
+        }
+        if (numero <= 0) {
+            throw new IllegalArgumentException("Il numero di ristoranti deve essere positivo");
+        }
+        validaFiltri(prezzoMinimo, prezzoMassimo, mediaStelle);
+
+        if (!localita.haCoordinate()) {
+            return new ArrayList<>();
+        }
+
+        FiltriRicerca filtri = new FiltriRicerca(tipoCucina, prezzoMinimo, prezzoMassimo, delivery, prenotazione, mediaStelle);
+        CATALOGO.aggiorna();
+        return CATALOGO.vicini(localita, numero, filtri, verifica(filtri));
+    }
+
+    /**
+     * Cerca i ristoranti più vicini a una località, ordinati dal più vicino al più lontano.
+     *
+     * @param localita Localita di riferimento (obbligatoria), con coordinate
+     * @param numero   Numero massimo di ristoranti da restituire
+     * @return Lista dei ristoranti più vicini, al massimo {@code numero}
+     * @throws IOException              Se si verifica un errore durante il caricamento dei dati dei ristoranti
+     * @throws CsvException             Se si verifica un errore durante la lettura del file CSV
+     * @throws IllegalArgumentException Se la localita è {@code null} o se il numero non è positivo
+     */
+    public static ArrayList<Ristorante> cercaRistorantiVicini(Localita localita, int numero) throws IOException, CsvException {
+        return cercaRistorantiVicini(localita, numero, null, null, null, null, null, null);
+    }
+
+    /**
+     * Verifica i valori dei filtri numerici.
+     * @param prezzoMinimo prezzo minimo
+     * @param prezzoMassimo prezzo massimo
+     * @param mediaStelle media minima delle stelle
+     * @throws IllegalArgumentException se un valore non è valido
+     */
+    private static void validaFiltri(Float prezzoMinimo, Float prezzoMassimo, Float mediaStelle) {
         if (prezzoMinimo != null && prezzoMinimo < 0) {
             throw new IllegalArgumentException("Il prezzo minimo non può essere negativo");
         }
@@ -92,39 +517,34 @@ public final class RistoranteService {
         if (mediaStelle != null && (mediaStelle < 1.0f || mediaStelle > 5.0f)) {
             throw new IllegalArgumentException("La media stelle deve essere compresa tra 1.0 e 5.0");
         }
-        if (raggioKm != null && raggioKm <= 0) {
-            throw new IllegalArgumentException("Il raggio deve essere un valore positivo");
-        }
-
-        var ristoranti = GestoreFile.caricaRistoranti();
-        var risultato = new ArrayList<Ristorante>();
+    }
 
-        for (Ristorante ristorante : ristoranti) {
-            if (!filtroTipoCucina(ristorante, tipoCucina)) {
-                continue;
-            }
-            if (!filtroLocalita(ristorante, localita, raggioKm)) {
-                continue;
-            }
-            if (!filtroPrezzoMinimo(ristorante, prezzoMinimo)) {
-                continue;
-            }
-            if (!filtroPrezzoMassimo(ristorante, prezzoMassimo)) {
-                continue;
-            }
-            if (!filtroDelivery(ristorante, delivery)) {
-                continue;
-            }
-            if (!filtroPrenotazione(ristorante, prenotazione)) {
-                continue;
-            }
-            if (!filtroMediaStelle(ristorante, mediaStelle)) {
-                continue;
-            }
+    /**
+     * Combina i filtri che non dipendono dalla località in un unico controllo sul ristorante
+     * @param filtri filtri della ricerca
+     * @return Il filtro superato dai ristoranti che soddisfano tutti i criteri
+     */
+    private static Predicate<Ristorante> verifica(FiltriRicerca filtri) {
+        return ristorante -> filtroTipoCucina(ristorante, filtri.tipoCucina())
+                && filtroPrezzoMinimo(ristorante, filtri.prezzoMinimo())
+                && filtroPrezzoMassimo(ristorante, filtri.prezzoMassimo())
+                && filtroDelivery(ristorante, filtri.delivery())
+                && filtroPrenotazione(ristorante, filtri.prenotazione())
+                && filtroMediaStelle(ristorante, filtri.mediaStelle())
+                && filtroParole(ristorante, filtri.parole());
+    }
 
-            risultato.add(ristorante);
+    /**
+     * Filtra per le parole nel nome o nella descrizione
+     * @param ristorante ristorante su cui effettuare il filtro
+     * @param parole parole normalizzate da cercare
+     * @return {@code true} se il filtro è passato {@code false} altrimenti
+     */
+    private static boolean filtroParole(Ristorante ristorante, List<String> parole) {
+        if (parole == null) {
+            return true;
         }
-        return risultato;
+        return IndiceTesto.paroleRistorante(ristorante).containsAll(parole);
     }
 
 
@@ -149,6 +569,95 @@ public final class RistoranteService {
         return cercaRistorante(null, localita, null, null, null, null, null, raggioKm);
     }
 
+    /**
+     * Cerca ristoranti come {@link #cercaRistorante(TipoCucina, Localita, Float, Float, Boolean, Boolean, Float, Double)}
+     * e restituisce solo la prima pagina dei risultati, nell'ordine richiesto.
+     *
+     * <p>I risultati non vengono ordinati per intero: si conservano solo i ristoranti della pagina,
+     * per cui il tempo per la prima pagina non dipende da quanti ristoranti soddisfano la ricerca
+     * oltre al costo della ricerca stessa. Le recensioni vengono caricate solo per i ristoranti
+     * della pagina. Le pagine successive si ottengono con {@link #paginaSuccessiva(String)}.</p>
+     *
+     * @param tipoCucina       Tipo di cucina desiderato, o {@code null}
+     * @param localita         Localita di riferimento per la ricerca (obbligatorio)
+     * @param prezzoMinimo     Prezzo minimo in euro, o {@code null}
+     * @param prezzoMassimo    Prezzo massimo in euro, o {@code null}
+     * @param delivery         Disponibilità servizio delivery, o {@code null}
+     * @param prenotazione     Disponibilità prenotazione online, o {@code null}
+     * @param mediaStelle      Media minima delle stelle richiesta, o {@code null}
+     * @param raggioKm         Raggio di ricerca in chilometri, o {@code null}
+     * @param ordinamento      Ordinamento dei risultati (obbligatorio)
+     * @param dimensionePagina Numero massimo di ristoranti per pagina
+     * @return Prima pagina dei risultati, con il cursore per la successiva
+     * @throws IOException              Se si verifica un errore durante il caricamento dei dati
+     * @throws CsvException             Se si verifica un errore durante la lettura del file CSV
+     * @throws IllegalArgumentException Se i parametri non sono validi, come per la ricerca, se l'ordinamento
+     *                                  è {@code null} o se la dimensione della pagina non è positiva
+     */
+    public static PaginaRistoranti cercaPagina(TipoCucina tipoCucina, Localita localita,
+                                               Float prezzoMinimo, Float prezzoMassimo, Boolean delivery,
+                                               Boolean prenotazione, Float mediaStelle, Double raggioKm,
+                                               OrdinamentoRistoranti ordinamento, int dimensionePagina)
+            throws IOException, CsvException {
+        return primaPagina(localita, raggioKm,
+                new FiltriRicerca(tipoCucina, prezzoMinimo, prezzoMassimo, delivery, prenotazione, mediaStelle),
+                ordinamento, dimensionePagina);
+    }
+
+    /**
+     * Verifica i parametri di una ricerca a pagine e ne restituisce la prima pagina
+     * @param localita località di riferimento
+     * @param raggioKm raggio in km
+     * @param filtri filtri della ricerca
+     * @param ordinamento ordinamento dei risultati
+     * @param dimensionePagina numero massimo di ristoranti per pagina
+     * @return La prima pagina dei risultati
+     * @throws IOException Errore nella lettura del file
+     * @throws CsvException Errore nel parsing CSV
+     */
+    private static PaginaRistoranti primaPagina(Localita localita, Double raggioKm, FiltriRicerca filtri,
+                                                OrdinamentoRistoranti ordinamento, int dimensionePagina)
+            throws IOException, CsvException {
+        validaRicerca(localita, filtri.prezzoMinimo(), filtri.prezzoMassimo(), filtri.mediaStelle(), raggioKm);
+        if (ordinamento == null) {
+            throw new IllegalArgumentException("L'ordinamento è un parametro obbligatorio e non può essere null");
+        }
+        if (dimensionePagina <= 0) {
+            throw new IllegalArgumentException("La dimensione della pagina deve essere positiva");
+        }
+        return calcolaPagina(CursoreRicerca.inizio(localita, raggioKm, filtri, ordinamento, dimensionePagina));
+    }
+
+    /**
+     * Restituisce la pagina successiva di una ricerca a pagine.
+     *
+     * <p>La ricerca viene ripetuta sui dati attuali: se nel frattempo sono cambiati, ad esempio per
+     * una nuova recensione con l'ordinamento per valutazione, un ristorante può comparire in due
+     * pagine o in nessuna.</p>
+     *
+     * @param cursore Cursore restituito da {@link PaginaRistoranti#getCursore()}
+     * @return Pagina successiva dei risultati
+     * @throws IOException              Se si verifica un errore durante il caricamento dei dati
+     * @throws CsvException             Se si verifica un errore durante la lettura del file CSV
+     * @throws IllegalArgumentException Se il cursore non è valido
+     */
+    public static PaginaRistoranti paginaSuccessiva(String cursore) throws IOException, CsvException {
+        return calcolaPagina(CursoreRicerca.decodifica(cursore));
+    }
+
+    /**
+     * Esegue la ricerca di un cursore e ne seleziona la pagina, caricando le recensioni dei soli ristoranti della pagina
+     * @param cursore cursore della ricerca
+     * @return La pagina dei risultati
+     * @throws IOException Errore nella lettura del file
+     * @throws CsvException Errore nel parsing CSV
+     */
+    private static PaginaRistoranti calcolaPagina(CursoreRicerca cursore) throws IOException, CsvException {
+        PaginaRistoranti pagina = PaginaRistoranti.seleziona(
+                trova(cursore.localita(), cursore.raggioKm(), cursore.filtri()), cursore);
+        return pagina.conRistoranti(RecensioneService.caricaRecensioniPerTuttiRistoranti(pagina.getRistoranti()));
+    }
+
 
     /**
      * Filtra per tipologia di cucina
@@ -164,31 +673,31 @@ public final class RistoranteService {
     }
 
     /**
-     * Filtra per la località
-     * @param ristorante ristorante su cui effettuare il filtro
-     * @param localita località
+     * Crea il filtro per la località. Con un raggio, i valori trigonometrici della località
+     * vengono calcolati una volta sola in un {@link CerchioRicerca}, invece che per ogni ristorante
+     * @param localita località, o {@code null} per non applicare il filtro
      * @param raggioKm raggio km
-     * @return {@code true} se il filtro è passato {@code false} altrimenti
+     * @return Il filtro superato dai ristoranti nel raggio o, senza raggio, nella stessa zona
      */
-    private static boolean filtroLocalita(Ristorante ristorante, Localita localita, Double raggioKm) {
-        if (ristorante == null || localita == null) {
-            return false;
-        }
-        Localita localitaRistorante = ristorante.getLocalita();
-
-        if (localitaRistorante == null) {
-            return false;
+    private static Predicate<Ristorante> filtroLocalita(Localita localita, Double raggioKm) {
+        if (localita == null) {
+            return ristorante -> true;
         }
 
         if (raggioKm != null) {
-            if (raggioKm > 0 && localita.haCoordinate() && localitaRistorante.haCoordinate()) {
-                double distanza = localitaRistorante.calcolaDistanza(localita);
-                return distanza != -1 && distanza <= raggioKm;
+            if (raggioKm <= 0 || !localita.haCoordinate()) {
+                return ristorante -> false;
             }
-            return false;
+            CerchioRicerca cerchio = new CerchioRicerca(localita.getLatitudine(), localita.getLongitudine(), raggioKm);
+            return ristorante -> {
+                Localita localitaRistorante = ristorante != null ? ristorante.getLocalita() : null;
+                return localitaRistorante != null && localitaRistorante.haCoordinate()
+                        && cerchio.contiene(localitaRistorante.getLatitudine(), localitaRistorante.getLongitudine());
+            };
         }
 
-        return localita.stessaZonaGeografica(localitaRistorante);
+        return ristorante -> ristorante != null && ristorante.getLocalita() != null
+                && localita.stessaZonaGeografica(ristorante.getLocalita());
     }
 
     /**
@@ -280,6 +789,7 @@ public final class RistoranteService {
         if (!GestoreFile.aggiungiRistorante(ristorante)) {
             return false;
         }
+        CACHE.ristoranteAggiunto(ristorante);
 
         return ristoratore.aggiungiRistorante(ristorante);
     }
@@ -306,6 +816,55 @@ public final class RistoranteService {
      * @throws CsvException Errore nel parsing CSV
      */
     public static ArrayList<Ristorante> ricercaAvanzata(Scanner scanner, Localita localita, String stop) throws IOException, CsvException {
+        RichiestaRicerca richiesta = chiediRicerca(scanner, stop);
+        if (richiesta == null) {
+            return new ArrayList<>();
+        }
+
+        System.out.println("Ricerca in corso...");
+
+        FiltriRicerca filtri = richiesta.filtri();
+        validaRicerca(localita, filtri.prezzoMinimo(), filtri.prezzoMassimo(), filtri.mediaStelle(),
+                richiesta.raggioKm());
+        return trova(localita, richiesta.raggioKm(), filtri);
+    }
+
+    /**
+     * Effettua la ricerca dei ristoranti interagendo con l'utente, chiedendo anche l'ordinamento,
+     * e restituisce la prima pagina dei risultati
+     * @param scanner Scanner per I/O
+     * @param localita Località
+     * @param stop stop
+     * @param dimensionePagina numero massimo di ristoranti per pagina
+     * @return La prima pagina dei ristoranti desiderati, {@code null} se la ricerca è stata interrotta
+     * @throws IOException Errore nella lettura del file
+     * @throws CsvException Errore nel parsing CSV
+     */
+    public static PaginaRistoranti ricercaAvanzataPaginata(Scanner scanner, Localita localita, String stop,
+                                                           int dimensionePagina) throws IOException, CsvException {
+        RichiestaRicerca richiesta = chiediRicerca(scanner, stop);
+        if (richiesta == null) {
+            return null;
+        }
+
+        OrdinamentoRistoranti ordinamento = selezionaOrdinamento(scanner, stop);
+        if (interrotto) {
+            System.out.println("\nInserito STOP; Ricerca interrotta!\n");
+            return null;
+        }
+
+        System.out.println("Ricerca in corso...");
+
+        return primaPagina(localita, richiesta.raggioKm(), richiesta.filtri(), ordinamento, dimensionePagina);
+    }
+
+    /**
+     * Chiede all'utente i filtri della ricerca avanzata
+     * @param scanner Scanner per I/O
+     * @param stop stop per fermare la ricerca
+     * @return I filtri e il raggio scelti, {@code null} se la ricerca è stata interrotta
+     */
+    private static RichiestaRicerca chiediRicerca(Scanner scanner, String stop) {
         interrotto = false;
 
         System.out.println("=== RICERCA AVANZATA RISTORANTI ===");
@@ -313,49 +872,118 @@ public final class RistoranteService {
         TipoCucina tipoCucina = selezionaTipoCucina(scanner, stop);
         if (interrotto) {
             System.out.println("\nInserito STOP; Ricerca interrotta!\n");
-            return new ArrayList<>();
+            return null;
+        }
+
+        List<String> parole = inserisciParole(scanner, stop);
+        if (interrotto) {
+            System.out.println("\nInserito STOP; Ricerca interrotta!\n");
+            return null;
         }
 
         Double raggioKm = inserisciRaggio(scanner, stop);
         if (interrotto) {
             System.out.println("\nInserito STOP; Ricerca interrotta!\n");
-            return new ArrayList<>();
+            return null;
         }
 
         Float[] prezzi = inserisciFasciaPrezzo(scanner, stop);
         if (interrotto) {
             System.out.println("\nInserito STOP; Ricerca interrotta!\n");
-            return new ArrayList<>();
+            return null;
         }
 
         Boolean delivery = inserisciServizio(scanner, "delivery", stop);
         if (interrotto) {
             System.out.println("\nInserito STOP; Ricerca interrotta!\n");
-            return new ArrayList<>();
+            return null;
         }
 
         Boolean prenotazione = inserisciServizio(scanner, "prenotazione online", stop);
         if (interrotto) {
             System.out.println("\nInserito STOP; Ricerca interrotta!\n");
-            return new ArrayList<>();
+            return null;
         }
 
         Float mediaStelle = inserisciMediaStelle(scanner, stop);
         if (interrotto) {
             System.out.println("\nInserito STOP; Ricerca interrotta!\n");
-            return new ArrayList<>();
+            return null;
         }
 
-        System.out.println("Ricerca in corso...");
+        return new RichiestaRicerca(
+                new FiltriRicerca(tipoCucina, prezzi[0], prezzi[1], delivery, prenotazione, mediaStelle, parole),
+                raggioKm);
+    }
+
+    /**
+     * Filtri e raggio scelti dall'utente nella ricerca avanzata
+     * @param filtri filtri della ricerca
+     * @param raggioKm raggio in km
+     */
+    private record RichiestaRicerca(FiltriRicerca filtri, Double raggioKm) {
+    }
+
+    /**
+     * Recupera l'ordinamento dei risultati dall'utente
+     * @param scanner scanner
+     * @param stop stop per fermare la ricerca
+     * @return L'ordinamento desiderato, per distanza se non indicato
+     */
+    private static OrdinamentoRistoranti selezionaOrdinamento(Scanner scanner, String stop) {
+        System.out.println("\nOrdina i risultati per (premi INVIO per distanza):");
+        OrdinamentoRistoranti[] ordinamenti = OrdinamentoRistoranti.values();
+        for (int i = 0; i < ordinamenti.length; i++) {
+            System.out.println((i + 1) + ". " + ordinamenti[i]);
+        }
+
+        System.out.print("\nScelta: ");
+        String input = scanner.nextLine().trim();
+
+        if (input.equalsIgnoreCase(stop)) {
+            interrotto = true;
+            return null;
+        }
+
+        if (input.isBlank()) {
+            return OrdinamentoRistoranti.DISTANZA;
+        }
+
+        try {
+            int scelta = Integer.parseInt(input);
+            if (scelta >= 1 && scelta <= ordinamenti.length) {
+                return ordinamenti[scelta - 1];
+            }
+        } catch (NumberFormatException ignored) {}
 
-        return RistoranteService.cercaRistorante(
-                tipoCucina, localita, prezzi[0], prezzi[1],
-                delivery, prenotazione, mediaStelle, raggioKm
-        );
+        System.out.println("Scelta non valida, risultati ordinati per distanza.");
+        return OrdinamentoRistoranti.DISTANZA;
     }
 
+    /**
+     * Recupera dall'utente le parole da cercare nel nome o nella descrizione
+     * @param scanner scanner
+     * @param stop stop per fermare la ricerca
+     * @return Le parole normalizzate, {@code null} se non indicate
+     */
+    private static List<String> inserisciParole(Scanner scanner, String stop) {
+        System.out.print("\nParole da cercare nel nome o nella descrizione (premi INVIO per saltare): ");
+        String input = scanner.nextLine().trim();
+
+        if (input.equalsIgnoreCase(stop)) {
+            interrotto = true;
+            return null;
+        }
 
+        if (input.isEmpty()) return null;
 
+        List<String> parole = IndiceTesto.parole(input);
+        if (parole.isEmpty()) {
+            System.out.println("Nessuna parola da cercare, filtro ignorato.");
+            return null;
+        }
+        return parole;
+    }
 
     /**
      * Recupera il tipo cucina dall'utente
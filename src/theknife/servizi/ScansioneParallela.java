@@ -0,0 +1,171 @@
+package theknife.servizi;
+
+import theknife.entita.Ristorante;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Predicate;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Scansione di una maschera di ristoranti candidati suddivisa in blocchi ed eseguita in parallelo
+ * su un {@link ForkJoinPool}.
+ * <p>
+ * Ogni blocco copre {@link #PAROLE_PER_BLOCCO} parole della maschera: il blocco viene prima ristretto
+ * con il {@link FiltroColonne} e poi i candidati rimasti vengono verificati con il filtro completo.
+ * I risultati di ciascun blocco sono raccolti separatamente e concatenati nell'ordine dei blocchi,
+ * per cui l'ordine finale è quello del file, come nella scansione sequenziale, indipendentemente
+ * da come i blocchi sono stati distribuiti tra i thread.
+ * <p>
+ * Il chiamante deve mantenere il catalogo bloccato in lettura per tutta la scansione: i blocchi
+ * leggono le colonne e i ristoranti senza acquisire altri blocchi.
+ *
+ * @author Marco Zaro
+ */
+// RecursiveAction è serializzabile, ma i compiti della scansione non vengono mai serializzati
+@SuppressWarnings("serial")
+final class ScansioneParallela extends RecursiveAction {
+
+    /**
+     * Parole della maschera elaborate da un blocco, cioè 16384 ristoranti: abbastanza perché il costo
+     * di un compito sia trascurabile rispetto al lavoro, e abbastanza poche da bilanciare il carico.
+     */
+    static final int PAROLE_PER_BLOCCO = 256;
+
+    /**
+     * Maschera dei candidati, ristretta sul posto.
+     */
+    private final long[] maschera;
+
+    /**
+     * Filtro sulle colonne, o {@code null} se non può scartare ristoranti.
+     */
+    private final FiltroColonne filtroColonne;
+
+    /**
+     * Ristoranti del catalogo per identificativo.
+     */
+    private final Ristorante[] ristoranti;
+
+    /**
+     * Filtro completo da applicare ai candidati.
+     */
+    private final Predicate<Ristorante> filtro;
+
+    /**
+     * Risultati di ciascun blocco.
+     */
+    private final ArrayList<ArrayList<Ristorante>> parziali;
+
+    /**
+     * Ristoranti verificati con il filtro completo in ciascun blocco.
+     */
+    private final long[] esaminati;
+
+    /**
+     * Primo blocco elaborato da questo compito.
+     */
+    private final int primoBlocco;
+
+    /**
+     * Blocco successivo all'ultimo elaborato da questo compito.
+     */
+    private final int fineBlocchi;
+
+    /**
+     * Crea il compito che elabora un intervallo di blocchi.
+     */
+    private ScansioneParallela(long[] maschera, FiltroColonne filtroColonne, Ristorante[] ristoranti,
+                               Predicate<Ristorante> filtro, ArrayList<ArrayList<Ristorante>> parziali,
+                               long[] esaminati, int primoBlocco, int fineBlocchi) {
+        this.maschera = maschera;
+        this.filtroColonne = filtroColonne;
+        this.ristoranti = ristoranti;
+        this.filtro = filtro;
+        this.parziali = parziali;
+        this.esaminati = esaminati;
+        this.primoBlocco = primoBlocco;
+        this.fineBlocchi = fineBlocchi;
+    }
+
+    /**
+     * Calcola il numero di blocchi in cui viene suddivisa una maschera.
+     *
+     * @param maschera Maschera dei candidati
+     * @return Numero di blocchi
+     */
+    static int blocchi(long[] maschera) {
+        return (maschera.length + PAROLE_PER_BLOCCO - 1) / PAROLE_PER_BLOCCO;
+    }
+
+    /**
+     * Esegue la scansione in parallelo e aggiunge al risultato i ristoranti che soddisfano il filtro,
+     * nell'ordine del file.
+     *
+     * @param maschera      Maschera dei candidati, un bit per identificativo; viene modificata
+     * @param filtroColonne Filtro sulle colonne, o {@code null} se non può scartare ristoranti
+     * @param ristoranti    Ristoranti del catalogo per identificativo
+     * @param filtro        Filtro completo da applicare ai candidati
+     * @param risultato     Lista a cui aggiungere i ristoranti trovati
+     * @return Numero di ristoranti verificati con il filtro completo
+     */
+    static long esegui(long[] maschera, FiltroColonne filtroColonne, Ristorante[] ristoranti,
+                       Predicate<Ristorante> filtro, ArrayList<Ristorante> risultato) {
+        int blocchi = blocchi(maschera);
+        if (blocchi == 0) {
+            return 0;
+        }
+        var parziali = new ArrayList<ArrayList<Ristorante>>(blocchi);
+        for (int i = 0; i < blocchi; i++) {
+            parziali.add(null);
+        }
+        long[] esaminati = new long[blocchi];
+        ForkJoinPool.commonPool().invoke(new ScansioneParallela(maschera, filtroColonne, ristoranti, filtro,
+                parziali, esaminati, 0, blocchi));
+
+        long totale = 0;
+        for (int i = 0; i < blocchi; i++) {
+            risultato.addAll(parziali.get(i));
+            totale += esaminati[i];
+        }
+        return totale;
+    }
+
+    @Override
+    protected void compute() {
+        if (fineBlocchi - primoBlocco > 1) {
+            int meta = (primoBlocco + fineBlocchi) >>> 1;
+            invokeAll(new ScansioneParallela(maschera, filtroColonne, ristoranti, filtro, parziali, esaminati,
+                            primoBlocco, meta),
+                    new ScansioneParallela(maschera, filtroColonne, ristoranti, filtro, parziali, esaminati,
+                            meta, fineBlocchi));
+            return;
+        }
+
+        int primaParola = primoBlocco * PAROLE_PER_BLOCCO;
+        int fineParole = Math.min(primaParola + PAROLE_PER_BLOCCO, maschera.length);
+        if (filtroColonne != null) {
+            filtroColonne.seleziona(maschera, primaParola, fineParole);
+        }
+        var trovati = new ArrayList<Ristorante>();
+        long verificati = 0;
+        for (int parola = primaParola; parola < fineParole; parola++) {
+            for (long bit = maschera[parola]; bit != 0; bit &= bit - 1) {
+                Ristorante ristorante = ristoranti[(parola << 6) + Long.numberOfTrailingZeros(bit)];
+                if (filtro.test(ristorante)) {
+                    trovati.add(ristorante);
+                }
+                verificati++;
+            }
+        }
+        // Ogni blocco scrive solo nelle proprie posizioni; invoke e invokeAll rendono le scritture
+        // visibili al thread che concatena i risultati
+        parziali.set(primoBlocco, trovati);
+        esaminati[primoBlocco] = verificati;
+    }
+}
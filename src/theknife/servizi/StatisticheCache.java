@@ -0,0 +1,28 @@
+package theknife.servizi;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Contatori della cache delle ricerche di {@link RistoranteService}.
+ *
+ * @param successi      Ricerche servite dalla cache
+ * @param mancati       Ricerche eseguite sul catalogo perché assenti dalla cache o scadute
+ * @param invalidazioni Voci eliminate per l'aggiunta di un ristorante o la modifica delle sue recensioni
+ * @param voci          Voci presenti nella cache
+ * @author Marco Zaro
+ */
+public record StatisticheCache(long successi, long mancati, long invalidazioni, int voci) {
+
+    /**
+     * Calcola la frazione di ricerche servite dalla cache.
+     *
+     * @return Frazione tra 0 e 1, 0 se non ci sono state ricerche
+     */
+    public double tassoSuccessi() {
+        long totale = successi + mancati;
+        return totale == 0 ? 0 : (double) successi / totale;
+    }
+}
@@ -0,0 +1,46 @@
+package theknife.servizi;
+/*
+ * Riotto Thomas 760981 VA
+ * Pesavento Antonio 759933 VA
+ * Tullo Alessandro 760760 VA
+ * Zaro Marco 760194 VA
+ */
+/**
+ * Suggerimento per il completamento di un nome digitato dall'utente.
+ *
+ * @param tipo       Tipo del nome suggerito
+ * @param testo      Nome suggerito, scritto come nel primo ristorante in cui compare
+ * @param dettaglio  Città del ristorante o nazione della città, {@code null} per le nazioni
+ * @param recensioni Numero di recensioni del ristorante, o dei ristoranti della città o della nazione
+ * @author Marco Zaro
+ */
+public record Suggerimento(Tipo tipo, String testo, String dettaglio, int recensioni) {
+
+    /**
+     * Tipo di nome suggerito.
+     */
+    public enum Tipo {
+        /**
+         * Nome di un ristorante.
+         */
+        RISTORANTE,
+        /**
+         * Nome di una città.
+         */
+        CITTA,
+        /**
+         * Nome di una nazione.
+         */
+        NAZIONE
+    }
+
+    /**
+     * Restituisce il suggerimento in forma leggibile, con il dettaglio tra parentesi.
+     *
+     * @return Descrizione del suggerimento
+     */
+    @Override
+    public String toString() {
+        return dettaglio != null ? testo + " (" + dettaglio + ")" : testo;
+    }
+}
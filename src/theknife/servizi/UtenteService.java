@@ -77,7 +77,7 @@ public final class UtenteService {
 
                     // Carica recensioni solo se ci sono preferiti
                     if (!preferiti.isEmpty()) {
-                        RecensioneService.caricaRecensioniPerTuttiRistoranti(preferiti);
+                        preferiti = RecensioneService.caricaRecensioniPerTuttiRistoranti(preferiti);
                     }
 
                     yield new Cliente(
@@ -108,7 +108,7 @@ public final class UtenteService {
                     ArrayList<Ristorante> ristoranti = GestoreFile.caricaRistoranti(r.getUsername());
 
                     if (!ristoranti.isEmpty()) {
-                        RecensioneService.caricaRecensioniPerTuttiRistoranti(ristoranti);
+                        ristoranti = RecensioneService.caricaRecensioniPerTuttiRistoranti(ristoranti);
                     }
 
                     yield new Ristoratore(
@@ -1,5 +1,15 @@
 package theknife.vista;
 
+import com.opencsv.exceptions.CsvException;
+import theknife.entita.Ristorante;
+import theknife.servizi.PaginaRistoranti;
+import theknife.servizi.RistoranteService;
+import theknife.servizi.Suggerimento;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Scanner;
+
 /*
  * Riotto Thomas 760981 VA
  * Pesavento Antonio 759933 VA
@@ -28,6 +38,92 @@ public abstract class Menu {
         System.out.println();
     }
 
+    /**
+     * Numero di ristoranti mostrati per pagina nei risultati delle ricerche.
+     */
+    protected static final int DIMENSIONE_PAGINA = 10;
+
+    /**
+     * Mostra i risultati di una ricerca una pagina alla volta, numerati in modo progressivo,
+     * chiedendo all'utente se proseguire con la pagina successiva.
+     *
+     * @param scanner Scanner per I/O
+     * @param pagina  Prima pagina dei risultati
+     * @return Tutti i ristoranti mostrati, nell'ordine in cui sono stati numerati
+     * @throws IOException  Errore nella lettura del file
+     * @throws CsvException Errore nel parsing CSV
+     */
+    protected static ArrayList<Ristorante> sfogliaRisultati(Scanner scanner, PaginaRistoranti pagina)
+            throws IOException, CsvException {
+        var mostrati = new ArrayList<Ristorante>();
+        while (true) {
+            for (Ristorante ristorante : pagina.getRistoranti()) {
+                mostrati.add(ristorante);
+                System.out.println(mostrati.size() + ". " + ristorante);
+            }
+            if (!pagina.haSuccessiva()) {
+                return mostrati;
+            }
+            System.out.print("Premi INVIO per altri risultati, 0 per proseguire: ");
+            if (!scanner.nextLine().isBlank()) {
+                return mostrati;
+            }
+            pagina = RistoranteService.paginaSuccessiva(pagina.getCursore());
+        }
+    }
+
+    /**
+     * Numero massimo di luoghi proposti per completare un nome inserito.
+     */
+    protected static final int NUMERO_SUGGERIMENTI = 5;
+
+    /**
+     * Propone i luoghi già presenti che iniziano con il nome inserito, dal più recensito, e lascia
+     * scegliere all'utente se usarne uno o mantenere quanto inserito. Non propone nulla se il nome
+     * corrisponde già a un luogo presente.
+     *
+     * @param scanner  Scanner per I/O
+     * @param inserito Nome inserito dall'utente
+     * @param tipo     Tipo di luogo da proporre, città o nazione
+     * @return Il nome scelto
+     * @throws IOException  Errore nella lettura del file
+     * @throws CsvException Errore nel parsing CSV
+     */
+    protected static String completaLuogo(Scanner scanner, String inserito, Suggerimento.Tipo tipo)
+            throws IOException, CsvException {
+        if (inserito.isBlank()) {
+            return inserito;
+        }
+        var proposti = new ArrayList<Suggerimento>();
+        for (Suggerimento suggerimento : RistoranteService.suggerisciLuoghi(inserito, 10)) {
+            if (suggerimento.tipo() != tipo) {
+                continue;
+            }
+            if (suggerimento.testo().equalsIgnoreCase(inserito)) {
+                return inserito;
+            }
+            if (proposti.size() < NUMERO_SUGGERIMENTI) {
+                proposti.add(suggerimento);
+            }
+        }
+        if (proposti.isEmpty()) {
+            return inserito;
+        }
+
+        System.out.println("Forse intendevi:");
+        for (int i = 0; i < proposti.size(); i++) {
+            System.out.println((i + 1) + ". " + proposti.get(i));
+        }
+        System.out.print("Seleziona un luogo (1-" + proposti.size() + "), INVIO per mantenere \"" + inserito + "\": ");
+        String scelta = scanner.nextLine().strip();
+        for (int i = 0; i < proposti.size(); i++) {
+            if (scelta.equals(String.valueOf(i + 1))) {
+                return proposti.get(i).testo();
+            }
+        }
+        return inserito;
+    }
+
     /**
      * Metodo astratto che mostra il menu
      */
@@ -7,6 +7,8 @@ import java.util.Scanner;
 import theknife.entita.*;
 import com.opencsv.exceptions.CsvException;
 import theknife.servizi.GeocodingService;
+import theknife.servizi.OrdinamentoRistoranti;
+import theknife.servizi.PaginaRistoranti;
 import theknife.servizi.RecensioneService;
 import theknife.servizi.RistoranteService;
 import theknife.servizi.UtenteService;
@@ -168,12 +170,13 @@ public final class MenuCliente extends Menu {
         }
         Localita localita = new Localita(coords[0], coords[1]);
         try {
-            var lista = RistoranteService.cercaRistorante(localita, 25.0);
-            if (lista.isEmpty()) {
+            PaginaRistoranti pagina = RistoranteService.cercaPagina(null, localita, null, null, null, null, null,
+                    25.0, OrdinamentoRistoranti.DISTANZA, DIMENSIONE_PAGINA);
+            if (pagina.getRistoranti().isEmpty()) {
                 System.out.println("Nessun ristorante trovato. Prova a restringere la ricerca.");
                 return;
             }
-            lista.forEach(System.out::println);
+            sfogliaRisultati(scanner, pagina);
         } catch (IOException | CsvException e) {
             System.err.println("Errore nella ricerca dei ristoranti vicini.");
         }
@@ -192,13 +195,14 @@ public final class MenuCliente extends Menu {
         }
         Localita localita = new Localita(coords[0], coords[1]);
         try {
-            ArrayList<Ristorante> risultati = RistoranteService.ricercaAvanzata(scanner, localita, stop);
-            if (risultati.isEmpty()) {
-                if (!RistoranteService.interrotto)
-                    System.out.println("Nessun ristorante trovato. Prova a restringere la ricerca.");
+            PaginaRistoranti pagina = RistoranteService.ricercaAvanzataPaginata(scanner, localita, stop, DIMENSIONE_PAGINA);
+            if (pagina == null) {
+                return;
+            }
+            if (pagina.getRistoranti().isEmpty()) {
+                System.out.println("Nessun ristorante trovato. Prova a restringere la ricerca.");
             } else {
-                RecensioneService.caricaRecensioniPerTuttiRistoranti(risultati);
-                gestisciRisultatiRicerca(risultati);
+                gestisciRisultatiRicerca(sfogliaRisultati(scanner, pagina));
             }
         } catch (IOException | CsvException e) {
             System.err.println("Errore nella ricerca dei ristoranti.");
@@ -206,15 +210,12 @@ public final class MenuCliente extends Menu {
     }
 
     /**
-     * Gestisce le azioni possibili sui risultati di ricerca.
+     * Gestisce le azioni possibili sui risultati di ricerca già mostrati.
      *
-     * @param risultati Lista di ristoranti trovati.
+     * @param risultati Lista di ristoranti mostrati, nell'ordine in cui sono stati numerati.
      */
     private void gestisciRisultatiRicerca(ArrayList<Ristorante> risultati) {
         System.out.println("\n=== AZIONI SUI RISULTATI ===");
-        for (int i = 0; i < risultati.size(); i++) {
-            System.out.println((i + 1) + ". " + risultati.get(i));
-        }
 
         int scelta;
 
@@ -7,6 +7,8 @@ import java.io.IOException;
 import theknife.entita.*;
 import com.opencsv.exceptions.CsvException;
 import theknife.servizi.GeocodingService;
+import theknife.servizi.OrdinamentoRistoranti;
+import theknife.servizi.PaginaRistoranti;
 import theknife.servizi.RecensioneService;
 import theknife.servizi.RistoranteService;
 import theknife.servizi.UtenteService;
@@ -232,12 +234,13 @@ public final class MenuIniziale extends Menu {
             switch (scelta) {
                 case 1 -> {
                     try {
-                        ultimiRisultati = RistoranteService.cercaRistorante(localita, 25.0);
-                        if (ultimiRisultati.isEmpty()) System.out.println("Nessun ristorante entro 25 km.");
-                        else {
-                            RecensioneService.caricaRecensioniPerTuttiRistoranti(ultimiRisultati);
-                            ultimiRisultati.forEach(System.out::println);
+                        PaginaRistoranti pagina = RistoranteService.cercaPagina(null, localita, null, null, null,
+                                null, null, 25.0, OrdinamentoRistoranti.DISTANZA, DIMENSIONE_PAGINA);
+                        if (pagina.getRistoranti().isEmpty()) {
+                            ultimiRisultati = new ArrayList<>();
+                            System.out.println("Nessun ristorante entro 25 km.");
                         }
+                        else ultimiRisultati = sfogliaRisultati(scanner, pagina);
                     }
                     catch (IOException | CsvException e) {
                         System.err.println("Errore durante la ricerca dei ristoranti.");
@@ -245,15 +248,15 @@ public final class MenuIniziale extends Menu {
                 }
                 case 2 -> {
                     try {
-                        ArrayList<Ristorante> ris = RistoranteService.ricercaAvanzata(scanner, localita, "stop");
-                        if (ris.isEmpty()) System.out.println("Nessun ristorante trovato.");
-                        else {
-                            ultimiRisultati = ris;
-                            RecensioneService.caricaRecensioniPerTuttiRistoranti(ultimiRisultati);
+                        PaginaRistoranti pagina = RistoranteService.ricercaAvanzataPaginata(scanner, localita, "stop",
+                                DIMENSIONE_PAGINA);
+                        if (pagina != null && pagina.getRistoranti().isEmpty()) {
+                            ultimiRisultati = new ArrayList<>();
+                            System.out.println("Nessun ristorante trovato.");
+                        }
+                        else if (pagina != null) {
                             System.out.println("Risultati:");
-                            for (int i = 0; i < ris.size(); i++) {
-                                System.out.printf("%d. %s%n", i+1, ris.get(i).getNome());
-                            }
+                            ultimiRisultati = sfogliaRisultati(scanner, pagina);
                         }
                     } catch (IOException | CsvException e) {
                         System.err.println("Errore nella ricerca avanzata.");
@@ -5,6 +5,7 @@ import com.opencsv.exceptions.CsvException;
 import theknife.servizi.GeocodingService;
 import theknife.servizi.RecensioneService;
 import theknife.servizi.RistoranteService;
+import theknife.servizi.Suggerimento;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -155,6 +156,7 @@ public final class MenuRistoratore extends Menu {
                 System.out.println("\nInserito STOP; Inserimento nuovo ristorante interrotto\n");
                 return;
             }
+            nazione = completaLuogo(scanner, nazione, Suggerimento.Tipo.NAZIONE);
 
             System.out.print("Città: ");
             String citta = scanner.nextLine().trim();
@@ -162,6 +164,7 @@ public final class MenuRistoratore extends Menu {
                 System.out.println("\nInserito STOP; Inserimento nuovo ristorante interrotto\n");
                 return;
             }
+            citta = completaLuogo(scanner, citta, Suggerimento.Tipo.CITTA);
 
             System.out.print("Indirizzo: ");
             String indirizzo = scanner.nextLine().trim();
@@ -652,14 +655,9 @@ public final class MenuRistoratore extends Menu {
                     ristoratore, ristorante, recensione, nuovoTestoRisposta
             );
 
+            // Il servizio ha già sostituito la recensione nel ristorante
             if (successo) {
-                successo = ristoratore.modificaRisposta(ristorante.getNome(),ristorante.getLocalita(),recensione.getCliente().getUsername(),nuovoTestoRisposta);
-                if (successo) {
-                    System.out.println("✓ Risposta modificata con successo!");
-                }
-                else {
-                    System.err.println("Errore nella modifica della risposta.");
-                }
+                System.out.println("✓ Risposta modificata con successo!");
             } else {
                 System.err.println("Errore nella modifica della risposta.");
             }